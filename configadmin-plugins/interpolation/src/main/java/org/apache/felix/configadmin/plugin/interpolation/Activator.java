@@ -32,6 +32,7 @@ public class Activator implements BundleActivator {
     static final String DEPRECATED_DIR_PROPERTY = "org.apache.felix.configadmin.plugin.interpolation.dir";
     static final String DIR_PROPERTY = "org.apache.felix.configadmin.plugin.interpolation.secretsdir";
     static final String ENCODING_PROPERTY = "org.apache.felix.configadmin.plugin.interpolation.file.encoding";
+    static final String WATCH_PROPERTY = "org.apache.felix.configadmin.plugin.interpolation.secretsdir.watch";
 
     static final String PLUGIN_ID = "org.apache.felix.configadmin.plugin.interpolation";
 
@@ -39,6 +40,8 @@ public class Activator implements BundleActivator {
 
     static final Logger LOG = LoggerFactory.getLogger(InterpolationConfigurationPlugin.class);
 
+    private volatile InterpolationConfigurationPlugin plugin;
+
     @Override
     public void start(BundleContext context) throws Exception {
         String directory = context.getProperty(DIR_PROPERTY);
@@ -50,8 +53,9 @@ public class Activator implements BundleActivator {
             }
         }
         String encoding = context.getProperty(ENCODING_PROPERTY);
+        boolean watch = Boolean.parseBoolean(context.getProperty(WATCH_PROPERTY));
 
-        ConfigurationPlugin plugin = new InterpolationConfigurationPlugin(context::getProperty, directory, encoding);
+        plugin = new InterpolationConfigurationPlugin(context::getProperty, directory, encoding, watch);
         Dictionary<String, Object> props = new Hashtable<>();
         props.put(ConfigurationPlugin.CM_RANKING, PLUGIN_RANKING);
         props.put("config.plugin.id", PLUGIN_ID);
@@ -72,5 +76,9 @@ public class Activator implements BundleActivator {
     @Override
     public void stop(BundleContext context) throws Exception {
         // Service is automatically unregistered when bundle is stopped.
+        if (plugin != null) {
+            plugin.close();
+            plugin = null;
+        }
     }
 }
@@ -22,7 +22,6 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -103,7 +102,14 @@ class InterpolationConfigurationPlugin implements ConfigurationPlugin {
 
     private final Charset encodingCharset;
 
+    private final SecretCache secretCache;
+
     InterpolationConfigurationPlugin(Function<String, String> pp, String dir, String fileEncoding) {
+        this(pp, dir, fileEncoding, false);
+    }
+
+    InterpolationConfigurationPlugin(Function<String, String> pp, String dir, String fileEncoding,
+            boolean watchSecrets) {
         propertiesProvider = pp;
         if (dir != null) {
             directory = Stream.of(dir.split("\\s*,\\s*")).map(File::new).collect(toList());
@@ -116,7 +122,18 @@ class InterpolationConfigurationPlugin implements ConfigurationPlugin {
         } else {
             encodingCharset = Charset.forName(fileEncoding);
         }
+        secretCache = new SecretCache(encodingCharset, directory, watchSecrets && !directory.isEmpty());
+    }
 
+    SecretCache getSecretCache() {
+        return secretCache;
+    }
+
+    /**
+     * Stops watching the secrets directories and reports the secret cache statistics.
+     */
+    void close() {
+        secretCache.close();
     }
 
     private Logger getLog() {
@@ -250,6 +267,17 @@ class InterpolationConfigurationPlugin implements ConfigurationPlugin {
             return null;
         }
 
+        try {
+            return secretCache.read(name, this::resolveSecretFile);
+        } catch (IOException e) {
+            getLog().error("Problem replacing configuration property '{}' for PID {} from secret {}",
+                        key, pid, name, e);
+
+            return null;
+        }
+    }
+
+    private File resolveSecretFile(final String name) {
         if (name.contains("..")) {
             getLog().error("Illegal secret location: " + name + " Going up in the directory structure is not allowed");
             return null;
@@ -266,20 +294,9 @@ class InterpolationConfigurationPlugin implements ConfigurationPlugin {
             return null;
         }
 
-        File file = files.stream().findFirst().orElseThrow(
+        return files.stream().findFirst().orElseThrow(
             () -> new IllegalStateException(
                 "Something went terribly wrong. This should not be possible."));
-
-        byte[] bytes;
-        try {
-            bytes = Files.readAllBytes(file.toPath());
-        } catch (IOException e) {
-            getLog().error("Problem replacing configuration property '{}' for PID {} from file {}",
-                        key, pid, file, e);
-
-            return null;
-        }
-        return new String(bytes, this.encodingCharset).trim();
     }
 
     /**
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.configadmin.plugin.interpolation;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+/**
+ * Cache of the values of secret files keyed by the path of the file.
+ * <p>
+ * The names of secrets are resolved to their files once, such that the
+ * secrets directories are only searched again after a resolved file has been
+ * removed or, if watching is enabled, anything in the directories changed.
+ * <p>
+ * By default a cached value is used as long as the modification time, size
+ * and file key of the file are unchanged, which requires reading the file
+ * attributes but not the file itself. If watching is enabled, the secrets
+ * directories are watched with a {@link WatchService} instead, such that
+ * cached values are used without accessing the file system at all. Only
+ * when anything in the directories changes, the attributes of the files are
+ * checked again on their next use.
+ */
+class SecretCache implements Closeable {
+
+    private final Charset charset;
+
+    private final ConcurrentMap<Path, Secret> secrets = new ConcurrentHashMap<>();
+
+    /** The secret files the names of secrets resolved to. */
+    private final ConcurrentMap<String, File> files = new ConcurrentHashMap<>();
+
+    /** Incremented whenever a change in the watched directories is detected. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong reloads = new AtomicLong();
+
+    private final WatchService watchService;
+
+    SecretCache(final Charset charset, final List<File> directories, final boolean watch) {
+        this.charset = charset;
+        this.watchService = watch ? startWatching(directories) : null;
+    }
+
+    private Logger getLog() {
+        return Activator.LOG;
+    }
+
+    /**
+     * Returns the trimmed content of the secret file with the given name.
+     *
+     * @param name The name of the secret
+     * @param resolver Resolves the name to the secret file, returns {@code null}
+     *            if there is no valid file for the name
+     * @return The value of the secret or {@code null} if the name cannot be resolved
+     * @throws IOException If the file cannot be read
+     */
+    String read(final String name, final Function<String, File> resolver) throws IOException {
+        final File cached = files.get(name);
+        if (cached != null) {
+            try {
+                return read(cached);
+            } catch (NoSuchFileException e) {
+                // the secret has been removed, search the directories again
+                files.remove(name, cached);
+            }
+        }
+
+        final long currentGeneration = generation.get();
+        final File file = resolver.apply(name);
+        if (file == null) {
+            return null;
+        }
+        files.put(name, file);
+        if (generation.get() != currentGeneration) {
+            // the directories changed while resolving, the file may be outdated
+            files.remove(name, file);
+        }
+        return read(file);
+    }
+
+    /**
+     * Returns the trimmed content of the secret file.
+     *
+     * @param file The secret file
+     * @return The value of the secret
+     * @throws IOException If the file cannot be read
+     */
+    String read(final File file) throws IOException {
+        final Path path = file.toPath();
+        final Secret cached = secrets.get(path);
+        if (cached != null && watchService != null && !cached.stale) {
+            hits.incrementAndGet();
+            return cached.value;
+        }
+
+        final long currentGeneration = generation.get();
+        final BasicFileAttributes attrs;
+        final boolean current;
+        final String value;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            current = cached != null && cached.isCurrent(attrs);
+            value = current ? cached.value : new String(Files.readAllBytes(path), this.charset).trim();
+        } catch (NoSuchFileException e) {
+            // the secret has been removed, do not keep its value
+            secrets.remove(path);
+            throw e;
+        }
+
+        final Secret secret = new Secret(attrs, value);
+        secrets.put(path, secret);
+        if (generation.get() != currentGeneration) {
+            // the directories changed while reading, the value may be outdated
+            secret.stale = true;
+        }
+
+        if (current) {
+            hits.incrementAndGet();
+        } else if (cached == null) {
+            loads.incrementAndGet();
+            getLog().debug("Loaded secret file {}", path);
+        } else {
+            reloads.incrementAndGet();
+            getLog().info("Reloaded secret file {} after it has been modified", path);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of values returned from the cache.
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of secret files read for the first time.
+     */
+    long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * Returns the number of secret files read again after they changed.
+     */
+    long getReloads() {
+        return reloads.get();
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                getLog().debug("Problem closing the watch service of the secrets directories", e);
+            }
+        }
+        getLog().info("Secret cache statistics: {} hits, {} loads, {} reloads", getHits(), getLoads(), getReloads());
+        secrets.clear();
+        files.clear();
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        files.clear();
+        secrets.values().forEach(secret -> secret.stale = true);
+        getLog().debug("Secrets directory changed, checking cached secrets for modifications");
+    }
+
+    private WatchService startWatching(final List<File> directories) {
+        final WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            for (final File dir : directories) {
+                register(service, dir.toPath());
+            }
+        } catch (IOException e) {
+            getLog().warn("Cannot watch the secrets directories, checking secret files for modifications instead", e);
+            return null;
+        }
+
+        final Thread watcher = new Thread(() -> watch(service), "Apache Felix Interpolation Plugin Secrets Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return service;
+    }
+
+    private void watch(final WatchService service) {
+        try {
+            for (;;) {
+                final WatchKey key = service.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == ENTRY_CREATE) {
+                        final Path created = ((Path) key.watchable()).resolve((Path) event.context());
+                        if (Files.isDirectory(created)) {
+                            register(service, created);
+                        }
+                    }
+                }
+                invalidate();
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed, stop watching
+        } catch (IOException e) {
+            getLog().warn("Cannot watch the secrets directories anymore", e);
+            invalidate();
+        }
+    }
+
+    private static void register(final WatchService service, final Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path d, final BasicFileAttributes attrs) throws IOException {
+                d.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static final class Secret {
+        private final FileTime lastModified;
+        private final long size;
+        private final Object fileKey;
+        private final String value;
+
+        /** Set when the file may have changed since it was read. */
+        private volatile boolean stale;
+
+        Secret(final BasicFileAttributes attrs, final String value) {
+            this.lastModified = attrs.lastModifiedTime();
+            this.size = attrs.size();
+            this.fileKey = attrs.fileKey();
+            this.value = value;
+        }
+
+        boolean isCurrent(final BasicFileAttributes attrs) {
+            return lastModified.equals(attrs.lastModifiedTime()) && size == attrs.size()
+                    && Objects.equals(fileKey, attrs.fileKey());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.configadmin.plugin.interpolation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SecretCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReloadModifiedSecret() throws Exception {
+        File secret = folder.newFile("password");
+        Files.write(secret.toPath(), "secret\n".getBytes(StandardCharsets.UTF_8));
+
+        SecretCache cache = new SecretCache(StandardCharsets.UTF_8, Collections.singletonList(folder.getRoot()), false);
+        try {
+            assertEquals("secret", cache.read(secret));
+            assertEquals("secret", cache.read(secret));
+            assertEquals(1, cache.getLoads());
+            assertEquals(1, cache.getHits());
+            assertEquals(0, cache.getReloads());
+
+            Files.write(secret.toPath(), "changed secret\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("changed secret", cache.read(secret));
+            assertEquals(1, cache.getLoads());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getReloads());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRemoveDeletedSecret() throws Exception {
+        File secret = folder.newFile("password");
+        Files.write(secret.toPath(), "secret\n".getBytes(StandardCharsets.UTF_8));
+
+        SecretCache cache = new SecretCache(StandardCharsets.UTF_8, Collections.singletonList(folder.getRoot()), false);
+        try {
+            assertEquals("secret", cache.read(secret));
+
+            Files.delete(secret.toPath());
+            try {
+                cache.read(secret);
+                fail("Expected NoSuchFileException");
+            } catch (NoSuchFileException expected) {
+                // the deleted secret is not returned
+            }
+
+            // a secret created again is loaded like a new one
+            Files.write(secret.toPath(), "new secret\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("new secret", cache.read(secret));
+            assertEquals(2, cache.getLoads());
+            assertEquals(0, cache.getReloads());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testResolveSecretOnce() throws Exception {
+        File first = folder.newFolder("first");
+        File second = folder.newFolder("second");
+        File secret = new File(first, "password");
+        Files.write(secret.toPath(), "first\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(second, "password").toPath(), "second\n".getBytes(StandardCharsets.UTF_8));
+
+        AtomicInteger resolved = new AtomicInteger();
+        Function<String, File> resolver = name -> {
+            resolved.incrementAndGet();
+            return Arrays.asList(new File(first, name), new File(second, name)).stream()
+                    .filter(File::isFile).findFirst().orElse(null);
+        };
+
+        SecretCache cache = new SecretCache(StandardCharsets.UTF_8, Arrays.asList(first, second), false);
+        try {
+            assertEquals("first", cache.read("password", resolver));
+            assertEquals("first", cache.read("password", resolver));
+            assertEquals(1, resolved.get());
+
+            // a removed secret is searched for again
+            Files.delete(secret.toPath());
+            assertEquals("second", cache.read("password", resolver));
+            assertEquals(2, resolved.get());
+
+            assertEquals(null, cache.read("missing", resolver));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testWatchModifiedSecret() throws Exception {
+        File secret = folder.newFile("password");
+        Files.write(secret.toPath(), "secret\n".getBytes(StandardCharsets.UTF_8));
+
+        SecretCache cache = new SecretCache(StandardCharsets.UTF_8, Collections.singletonList(folder.getRoot()), true);
+        try {
+            assertEquals("secret", cache.read(secret));
+            assertEquals("secret", cache.read(secret));
+            assertEquals(1, cache.getLoads());
+            assertEquals(1, cache.getHits());
+
+            Files.write(secret.toPath(), "changed secret\n".getBytes(StandardCharsets.UTF_8));
+            assertSecret(cache, secret, "changed secret");
+            assertEquals(1, cache.getLoads());
+            assertEquals(1, cache.getReloads());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testWatchKubernetesSecretUpdate() throws Exception {
+        // Kubernetes mounts secrets as links to a ..data link to a timestamped directory
+        Path root = folder.getRoot().toPath();
+        Path version1 = Files.createDirectory(root.resolve("..2024_01_01_00_00_00.1"));
+        Files.write(version1.resolve("password"), "secret\n".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(root.resolve("..data"), version1.getFileName());
+        Files.createSymbolicLink(root.resolve("password"), Paths.get("..data", "password"));
+        File secret = root.resolve("password").toFile();
+
+        SecretCache cache = new SecretCache(StandardCharsets.UTF_8, Collections.singletonList(folder.getRoot()), true);
+        try {
+            assertEquals("secret", cache.read(secret));
+            assertEquals("secret", cache.read(secret));
+            assertEquals(1, cache.getHits());
+
+            // an update writes a new directory and atomically swaps the ..data link
+            Path version2 = Files.createDirectory(root.resolve("..2024_01_02_00_00_00.2"));
+            Files.write(version2.resolve("password"), "rotated\n".getBytes(StandardCharsets.UTF_8));
+            Files.createSymbolicLink(root.resolve("..data_tmp"), version2.getFileName());
+            Files.move(root.resolve("..data_tmp"), root.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(version1.resolve("password"));
+            Files.delete(version1);
+
+            assertSecret(cache, secret, "rotated");
+            assertEquals(1, cache.getLoads());
+            assertEquals(1, cache.getReloads());
+        } finally {
+            cache.close();
+        }
+    }
+
+    private static void assertSecret(SecretCache cache, File secret, String expected) throws Exception {
+        // the watch service reports changes asynchronously
+        final long timeout = System.currentTimeMillis() + 30000;
+        String value = cache.read(secret);
+        while (!expected.equals(value) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+            value = cache.read(secret);
+        }
+        assertEquals(expected, value);
+    }
+
+    @Test
+    public void testSecretsFromPlugin() throws Exception {
+        String rf = getClass().getResource("/testfile").getFile();
+        InterpolationConfigurationPlugin plugin = new InterpolationConfigurationPlugin(null,
+                new File(rf).getParent(), null);
+        try {
+            assertEquals("line1\nline2", plugin.getVariableFromFile("key", "testfile", "pid"));
+            assertEquals("line1\nline2", plugin.getVariableFromFile("key", "testfile", "pid"));
+            assertEquals(1, plugin.getSecretCache().getLoads());
+            assertEquals(1, plugin.getSecretCache().getHits());
+        } finally {
+            plugin.close();
+        }
+    }
+}
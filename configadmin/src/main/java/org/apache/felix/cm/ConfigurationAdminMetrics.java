@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm;
+
+
+import java.util.Map;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.ServiceReference;
+
+
+/**
+ * The <code>ConfigurationAdminMetrics</code> service provides the time it
+ * takes the Configuration Admin Service to deliver configurations to their
+ * consumers and the time spent in configuration plugins and the persistence
+ * manager. The service is registered by the Configuration Admin Service
+ * while it is active.
+ * <p>
+ * The statistics of services are indexed by the service reference of the
+ * <code>ManagedService</code>, <code>ManagedServiceFactory</code>,
+ * <code>ConfigurationListener</code> or <code>ConfigurationPlugin</code>
+ * service and only contain services currently registered.
+ *
+ * @since 1.3
+ */
+@ProviderType
+public interface ConfigurationAdminMetrics
+{
+
+    /**
+     * The durations recorded for one kind of call.
+     */
+    @ProviderType
+    interface Statistics
+    {
+        /**
+         * Returns the number of recorded calls.
+         */
+        long getCount();
+
+
+        /**
+         * Returns the total time in nanoseconds of the recorded calls.
+         */
+        long getTotalNanos();
+
+
+        /**
+         * Returns the average time in nanoseconds of a recorded call or
+         * zero if no call has been recorded yet.
+         */
+        long getAverageNanos();
+
+
+        /**
+         * Returns the time in nanoseconds of the longest recorded call.
+         */
+        long getMaxNanos();
+
+
+        /**
+         * Returns the time in nanoseconds of the last recorded call.
+         */
+        long getLastNanos();
+    }
+
+
+    /**
+     * Returns the number of <code>ManagedService[Factory]</code> updates
+     * scheduled but not started yet.
+     */
+    int getUpdateQueueLength();
+
+
+    /**
+     * Returns the number of configuration updates which have not been
+     * provided because a newer update of the same configuration was
+     * scheduled before they were started.
+     */
+    long getCoalescedUpdates();
+
+
+    /**
+     * Returns the time spent in the <code>updated</code> and
+     * <code>deleted</code> methods of the <code>ManagedService</code> and
+     * <code>ManagedServiceFactory</code> services.
+     */
+    Map<ServiceReference<?>, Statistics> getUpdateStatistics();
+
+
+    /**
+     * Returns the time from the call to <code>Configuration.update</code>
+     * until the <code>updated</code> method of the
+     * <code>ManagedService</code> or <code>ManagedServiceFactory</code>
+     * service receiving the configuration returns. This includes storing
+     * the configuration, waiting for the update to be scheduled, calling
+     * the configuration plugins and the call to the service itself.
+     */
+    Map<ServiceReference<?>, Statistics> getDeliveryStatistics();
+
+
+    /**
+     * Returns the time from firing a configuration event until the
+     * <code>configurationEvent</code> method of the
+     * <code>ConfigurationListener</code> or
+     * <code>SynchronousConfigurationListener</code> service returns.
+     */
+    Map<ServiceReference<?>, Statistics> getListenerStatistics();
+
+
+    /**
+     * Returns the time spent in the <code>modifyConfiguration</code> method
+     * of the <code>ConfigurationPlugin</code> services.
+     */
+    Map<ServiceReference<?>, Statistics> getPluginStatistics();
+
+
+    /**
+     * Returns the time spent loading single configurations from the
+     * persistence manager.
+     */
+    Statistics getLoadStatistics();
+
+
+    /**
+     * Returns the time spent storing configurations with the persistence
+     * manager.
+     */
+    Statistics getStoreStatistics();
+}
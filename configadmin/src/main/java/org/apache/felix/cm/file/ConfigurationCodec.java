@@ -0,0 +1,1693 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.file;
+
+
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_ARR_CLOS;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_ARR_OPEN;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_COMMA;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_COMMENT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_EQ;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_NAME;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_BOOLEAN;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_BYTE;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_CHAR;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_DOUBLE;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_FLOAT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_INT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_LONG;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_PRIMITIVE_SHORT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_BOOLEAN;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_BYTE;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_CHARACTER;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_DOUBLE;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_FLOAT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_INTEGER;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_LONG;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_SHORT;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_SIMPLE_STRING;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_VAL_CLOS;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_VAL_OPEN;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_VEC_CLOS;
+import static org.apache.felix.cm.file.ConfigurationHandler.TOKEN_VEC_OPEN;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * The <code>ConfigurationCodec</code> class reads and writes configurations
+ * in the format of the {@link ConfigurationHandler} directly from and to
+ * UTF-8 encoded bytes.
+ * <p>
+ * The codec accepts and produces exactly the same data as the
+ * {@link ConfigurationHandler} but does not decode the input into characters
+ * and tokenize it through a <code>PushbackReader</code>. Instead the
+ * structure of the configuration, which only consists of ASCII characters,
+ * is parsed from the bytes and quoted values are only decoded when they are
+ * turned into strings. Numbers, characters and booleans are parsed from the
+ * bytes without creating intermediate strings and arrays of primitive types
+ * are filled without boxing their elements. Property names are interned
+ * and cached, such that all configurations share the same name instances.
+ * <p>
+ * Each thread reuses its own buffers, hence reading or writing a
+ * configuration only allocates the resulting objects.
+ *
+ * @since 1.2
+ */
+public final class ConfigurationCodec
+{
+
+    // initial size of the input and output buffers
+    private static final int BUFFER_SIZE = 4096;
+
+    // buffers larger than this are not kept for the next configuration
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] INDENT = { ' ', ' ' };
+
+    private static final byte[] COLLECTION_LINE_BREAK = { ' ', '\\', '\r', '\n' };
+
+    // the character unread by the ConfigurationHandler at the end of input
+    private static final int EOF_UNREAD = 0xffff;
+
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    // cache of interned property names, indexed by their hash code
+    private static final String[] NAMES = new String[1024];
+
+    // ASCII characters for which Character.isWhitespace is true
+    private static final boolean[] WHITESPACE = new boolean[128];
+
+    // ASCII characters starting a property name
+    private static final boolean[] NAME_START = new boolean[128];
+
+    // ASCII characters which are type codes
+    private static final boolean[] TYPE_CODE = new boolean[128];
+
+    private static final ThreadLocal<ConfigurationCodec> CODECS = new ThreadLocal<ConfigurationCodec>()
+    {
+        @Override
+        protected ConfigurationCodec initialValue()
+        {
+            return new ConfigurationCodec();
+        }
+    };
+
+    static
+    {
+        final int[] types = { TOKEN_SIMPLE_STRING, TOKEN_SIMPLE_INTEGER, TOKEN_SIMPLE_LONG, TOKEN_SIMPLE_FLOAT,
+            TOKEN_SIMPLE_DOUBLE, TOKEN_SIMPLE_BYTE, TOKEN_SIMPLE_SHORT, TOKEN_SIMPLE_CHARACTER, TOKEN_SIMPLE_BOOLEAN,
+            TOKEN_PRIMITIVE_INT, TOKEN_PRIMITIVE_LONG, TOKEN_PRIMITIVE_FLOAT, TOKEN_PRIMITIVE_DOUBLE,
+            TOKEN_PRIMITIVE_BYTE, TOKEN_PRIMITIVE_SHORT, TOKEN_PRIMITIVE_CHAR, TOKEN_PRIMITIVE_BOOLEAN };
+        final int[] tokens = { TOKEN_EQ, TOKEN_ARR_OPEN, TOKEN_ARR_CLOS, TOKEN_VEC_OPEN, TOKEN_VEC_CLOS, TOKEN_COMMA,
+            TOKEN_VAL_OPEN, TOKEN_VAL_CLOS };
+
+        // like the ConfigurationHandler any character other than the
+        // tokens starts a property name
+        for ( int c = 0; c < 128; c++ )
+        {
+            WHITESPACE[c] = Character.isWhitespace( ( char ) c );
+            NAME_START[c] = true;
+        }
+        for ( final int token : tokens )
+        {
+            NAME_START[token] = false;
+        }
+        for ( final int type : types )
+        {
+            TYPE_CODE[type] = true;
+        }
+    }
+
+
+    /**
+     * Reads configuration data from the given <code>InputStream</code> and
+     * returns a new <code>Dictionary</code> object containing the data.
+     * <p>
+     * This method reads from the current location in the stream up to the end of
+     * the stream but does not close the stream at the end.
+     *
+     * @param ins
+     *            The <code>InputStream</code> from which to read the
+     *            configuration data.
+     * @return A <code>Dictionary</code> object containing the configuration
+     *         data. This object may be empty if the stream contains no
+     *         configuration data.
+     * @throws IOException
+     *             If an error occurs reading from the stream. This exception
+     *             is also thrown if a syntax error is encountered.
+     */
+    public static Dictionary<String, Object> read( final InputStream ins ) throws IOException
+    {
+        final ConfigurationCodec codec = CODECS.get();
+        byte[] buf = codec.input != null ? codec.input : new byte[BUFFER_SIZE];
+        int len = 0;
+        for ( ;; )
+        {
+            if ( len == buf.length )
+            {
+                buf = Arrays.copyOf( buf, buf.length * 2 );
+            }
+            final int read = ins.read( buf, len, buf.length - len );
+            if ( read < 0 )
+            {
+                break;
+            }
+            len += read;
+        }
+
+        codec.input = buf.length <= RETAINED_BUFFER_SIZE ? buf : null;
+        return codec.parse( buf, 0, len );
+    }
+
+
+    /**
+     * Reads configuration data from the given range of the byte array and
+     * returns a new <code>Dictionary</code> object containing the data.
+     *
+     * @param buf The array containing the UTF-8 encoded configuration data.
+     * @param off The offset of the configuration data in the array.
+     * @param len The length of the configuration data.
+     * @return A <code>Dictionary</code> object containing the configuration
+     *         data. This object may be empty if the range contains no
+     *         configuration data.
+     * @throws IOException If a syntax error is encountered.
+     */
+    public static Dictionary<String, Object> read( final byte[] buf, final int off, final int len ) throws IOException
+    {
+        if ( off < 0 || len < 0 || len > buf.length - off )
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        return CODECS.get().parse( buf, off, len );
+    }
+
+
+    /**
+     * Reads configuration data from the remaining bytes of the given buffer
+     * and returns a new <code>Dictionary</code> object containing the data.
+     * The position of the buffer is set to its limit.
+     *
+     * @param buf The buffer containing the UTF-8 encoded configuration data.
+     * @return A <code>Dictionary</code> object containing the configuration
+     *         data. This object may be empty if the buffer contains no
+     *         configuration data.
+     * @throws IOException If a syntax error is encountered.
+     */
+    public static Dictionary<String, Object> read( final ByteBuffer buf ) throws IOException
+    {
+        final Dictionary<String, Object> configuration;
+        if ( buf.hasArray() )
+        {
+            configuration = read( buf.array(), buf.arrayOffset() + buf.position(), buf.remaining() );
+        }
+        else
+        {
+            final ConfigurationCodec codec = CODECS.get();
+            final int len = buf.remaining();
+            byte[] copy = codec.input;
+            if ( copy == null || copy.length < len )
+            {
+                copy = new byte[Math.max( len, BUFFER_SIZE )];
+            }
+            buf.duplicate().get( copy, 0, len );
+            codec.input = copy.length <= RETAINED_BUFFER_SIZE ? copy : null;
+            configuration = codec.parse( copy, 0, len );
+        }
+        buf.position( buf.limit() );
+        return configuration;
+    }
+
+
+    /**
+     * Writes the configuration data from the <code>Dictionary</code> to the
+     * given <code>OutputStream</code> exactly as
+     * {@link ConfigurationHandler#write(OutputStream, Dictionary)} does.
+     * <p>
+     * This method writes at the current location in the stream and does not
+     * close the output stream.
+     *
+     * @param out
+     *            The <code>OutputStream</code> to write the configuration data
+     *            to.
+     * @param properties
+     *            The <code>Dictionary</code> to write.
+     * @throws IOException
+     *             If an error occurs writing to the output stream.
+     */
+    @SuppressWarnings("rawtypes")
+    public static void write( final OutputStream out, final Dictionary properties ) throws IOException
+    {
+        final ConfigurationCodec codec = CODECS.get();
+        try
+        {
+            codec.encode( properties );
+            out.write( codec.output, 0, codec.count );
+            out.flush();
+        }
+        finally
+        {
+            codec.release();
+        }
+    }
+
+
+    // instances are only used through the thread local codecs
+    private ConfigurationCodec()
+    {
+    }
+
+    // ---------- Configuration Input Implementation ---------------------------
+
+    // reused buffer for reading from streams
+    private byte[] input;
+
+    // reused element buffers for reading arrays
+    private long[] values = new long[16];
+    private String[] strings = new String[16];
+
+    private byte[] b;
+    private int start;
+    private int p;
+    private int e;
+
+    // pending low surrogate of a decoded supplementary character or the
+    // character the ConfigurationHandler reads after unreading the end of
+    // its input through the PushbackReader
+    private int low;
+
+    // state before the last character read, to unread it
+    private int mark;
+    private int markLow;
+
+    private int token;
+    private String name;
+
+    // range and kind of the last quoted value scanned
+    private int prefix;
+    private int qs;
+    private int qe;
+    private boolean qplain;
+    private boolean qascii;
+
+    // whether the last number parsed from the bytes was valid
+    private boolean valid;
+
+
+    private Dictionary<String, Object> parse( final byte[] buf, final int off, final int len ) throws IOException
+    {
+        b = buf;
+        start = p = off;
+        e = off + len;
+        low = -1;
+        token = 0;
+        try
+        {
+            final Dictionary<String, Object> configuration = new Hashtable<>();
+            while ( nextToken( true ) == TOKEN_NAME )
+            {
+                final String key = name;
+
+                // expect equal sign
+                if ( nextToken( false ) != TOKEN_EQ )
+                {
+                    throw readFailure( token, TOKEN_EQ );
+                }
+
+                // expect the token value
+                final Object value = readValue();
+                if ( value != null )
+                {
+                    configuration.put( key, value );
+                }
+            }
+
+            return configuration;
+        }
+        finally
+        {
+            b = null;
+            name = null;
+            if ( values.length > RETAINED_BUFFER_SIZE )
+            {
+                values = new long[16];
+                strings = new String[16];
+            }
+        }
+    }
+
+
+    private Object readValue() throws IOException
+    {
+        // read past any whitespace and (optional) type code
+        int type = ignorableWhiteSpace();
+
+        // read value kind code if type code is not a value kind code
+        final int code;
+        if ( type >= 0 && type < 128 && TYPE_CODE[type] )
+        {
+            code = next();
+        }
+        else
+        {
+            code = type;
+            type = TOKEN_SIMPLE_STRING;
+        }
+
+        switch ( code )
+        {
+            case TOKEN_ARR_OPEN:
+                return readArray( type );
+
+            case TOKEN_VEC_OPEN:
+                return readCollection( type );
+
+            case TOKEN_VAL_OPEN:
+                final Object value = readSimple( type );
+                // the closing quote is not verified, like the ConfigurationHandler
+                next();
+                return value;
+
+            default:
+                return null;
+        }
+    }
+
+
+    private Object readArray( final int typeCode ) throws IOException
+    {
+        int size = 0;
+        for ( ;; )
+        {
+            int c = ignorablePageBreakAndWhiteSpace();
+            if ( c == TOKEN_VAL_OPEN )
+            {
+                if ( size == values.length )
+                {
+                    values = Arrays.copyOf( values, size * 2 );
+                    strings = Arrays.copyOf( strings, size * 2 );
+                }
+
+                if ( typeCode == TOKEN_SIMPLE_STRING )
+                {
+                    scan();
+                    strings[size++] = string();
+                }
+                else
+                {
+                    final long value = readBits( typeCode );
+                    if ( value < 0 && ( typeCode == TOKEN_SIMPLE_CHARACTER || typeCode == TOKEN_PRIMITIVE_CHAR ) )
+                    {
+                        // abort due to error
+                        return null;
+                    }
+                    values[size++] = value;
+                }
+
+                next();
+
+                c = ignorablePageBreakAndWhiteSpace();
+            }
+
+            if ( c == TOKEN_ARR_CLOS )
+            {
+                return toArray( typeCode, size );
+            }
+            else if ( c != TOKEN_COMMA )
+            {
+                Arrays.fill( strings, 0, size, null );
+                return null;
+            }
+        }
+    }
+
+
+    private Object toArray( final int typeCode, final int size )
+    {
+        switch ( typeCode )
+        {
+            case TOKEN_SIMPLE_STRING:
+                final String[] stringArray = Arrays.copyOf( strings, size );
+                Arrays.fill( strings, 0, size, null );
+                return stringArray;
+
+            case TOKEN_PRIMITIVE_INT:
+                final int[] intArray = new int[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    intArray[i] = ( int ) values[i];
+                }
+                return intArray;
+
+            case TOKEN_PRIMITIVE_LONG:
+                return Arrays.copyOf( values, size );
+
+            case TOKEN_PRIMITIVE_FLOAT:
+                final float[] floatArray = new float[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    floatArray[i] = Float.intBitsToFloat( ( int ) values[i] );
+                }
+                return floatArray;
+
+            case TOKEN_PRIMITIVE_DOUBLE:
+                final double[] doubleArray = new double[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    doubleArray[i] = Double.longBitsToDouble( values[i] );
+                }
+                return doubleArray;
+
+            case TOKEN_PRIMITIVE_BYTE:
+                final byte[] byteArray = new byte[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    byteArray[i] = ( byte ) values[i];
+                }
+                return byteArray;
+
+            case TOKEN_PRIMITIVE_SHORT:
+                final short[] shortArray = new short[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    shortArray[i] = ( short ) values[i];
+                }
+                return shortArray;
+
+            case TOKEN_PRIMITIVE_CHAR:
+                final char[] charArray = new char[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    charArray[i] = ( char ) values[i];
+                }
+                return charArray;
+
+            case TOKEN_PRIMITIVE_BOOLEAN:
+                final boolean[] booleanArray = new boolean[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    booleanArray[i] = values[i] != 0;
+                }
+                return booleanArray;
+
+            default:
+                // arrays of wrapper objects
+                final Object[] array = newWrapperArray( typeCode, size );
+                for ( int i = 0; i < size; i++ )
+                {
+                    array[i] = box( typeCode, values[i] );
+                }
+                return array;
+        }
+    }
+
+
+    private static Object[] newWrapperArray( final int typeCode, final int size )
+    {
+        switch ( typeCode )
+        {
+            case TOKEN_SIMPLE_INTEGER:
+                return new Integer[size];
+            case TOKEN_SIMPLE_LONG:
+                return new Long[size];
+            case TOKEN_SIMPLE_FLOAT:
+                return new Float[size];
+            case TOKEN_SIMPLE_DOUBLE:
+                return new Double[size];
+            case TOKEN_SIMPLE_BYTE:
+                return new Byte[size];
+            case TOKEN_SIMPLE_SHORT:
+                return new Short[size];
+            case TOKEN_SIMPLE_CHARACTER:
+                return new Character[size];
+            default:
+                return new Boolean[size];
+        }
+    }
+
+
+    private Collection<Object> readCollection( final int typeCode ) throws IOException
+    {
+        final List<Object> collection = new ArrayList<>();
+        for ( ;; )
+        {
+            int c = ignorablePageBreakAndWhiteSpace();
+            if ( c == TOKEN_VAL_OPEN )
+            {
+                final Object value = readSimple( typeCode );
+                if ( value == null )
+                {
+                    // abort due to error
+                    return null;
+                }
+
+                next();
+
+                collection.add( value );
+
+                c = ignorablePageBreakAndWhiteSpace();
+            }
+
+            if ( c == TOKEN_VEC_CLOS )
+            {
+                return collection;
+            }
+            else if ( c != TOKEN_COMMA )
+            {
+                return null;
+            }
+        }
+    }
+
+
+    private Object readSimple( final int code ) throws IOException
+    {
+        if ( code == TOKEN_SIMPLE_STRING )
+        {
+            scan();
+            return string();
+        }
+        else if ( code >= 0 && code < 128 && TYPE_CODE[code] )
+        {
+            return box( code, readBits( code ) );
+        }
+
+        // unknown type code
+        return null;
+    }
+
+
+    // boxes the value returned by readBits for the type code
+    private static Object box( final int code, final long value )
+    {
+        switch ( code )
+        {
+            case TOKEN_SIMPLE_INTEGER:
+            case TOKEN_PRIMITIVE_INT:
+                return Integer.valueOf( ( int ) value );
+
+            case TOKEN_SIMPLE_LONG:
+            case TOKEN_PRIMITIVE_LONG:
+                return Long.valueOf( value );
+
+            case TOKEN_SIMPLE_FLOAT:
+            case TOKEN_PRIMITIVE_FLOAT:
+                return Float.valueOf( Float.intBitsToFloat( ( int ) value ) );
+
+            case TOKEN_SIMPLE_DOUBLE:
+            case TOKEN_PRIMITIVE_DOUBLE:
+                return Double.valueOf( Double.longBitsToDouble( value ) );
+
+            case TOKEN_SIMPLE_BYTE:
+            case TOKEN_PRIMITIVE_BYTE:
+                return Byte.valueOf( ( byte ) value );
+
+            case TOKEN_SIMPLE_SHORT:
+            case TOKEN_PRIMITIVE_SHORT:
+                return Short.valueOf( ( short ) value );
+
+            case TOKEN_SIMPLE_CHARACTER:
+            case TOKEN_PRIMITIVE_CHAR:
+                return value < 0 ? null : Character.valueOf( ( char ) value );
+
+            default:
+                return Boolean.valueOf( value != 0 );
+        }
+    }
+
+
+    /**
+     * Reads the quoted value of the given type code other than the string
+     * type as a long: Numbers are returned as is with floating point numbers
+     * as their bits, characters as their value or -1 if the value is empty
+     * and booleans as 1 or 0.
+     */
+    private long readBits( final int code )
+    {
+        scan();
+        switch ( code )
+        {
+            case TOKEN_SIMPLE_CHARACTER:
+            case TOKEN_PRIMITIVE_CHAR:
+                if ( qplain && qascii )
+                {
+                    return qe > qs ? b[qs] : -1;
+                }
+                final String cString = string();
+                return cString.length() > 0 ? cString.charAt( 0 ) : -1;
+
+            case TOKEN_SIMPLE_BOOLEAN:
+            case TOKEN_PRIMITIVE_BOOLEAN:
+                if ( qplain && qascii )
+                {
+                    return qe - qs == 4 && ( b[qs] | 0x20 ) == 't' && ( b[qs + 1] | 0x20 ) == 'r'
+                        && ( b[qs + 2] | 0x20 ) == 'u' && ( b[qs + 3] | 0x20 ) == 'e' ? 1 : 0;
+                }
+                return Boolean.parseBoolean( string() ) ? 1 : 0;
+
+            case TOKEN_SIMPLE_LONG:
+            case TOKEN_PRIMITIVE_LONG:
+            case TOKEN_SIMPLE_DOUBLE:
+            case TOKEN_PRIMITIVE_DOUBLE:
+                final long l = parseNumber( Long.MIN_VALUE, Long.MAX_VALUE );
+                return valid ? l : Long.parseLong( string() );
+
+            case TOKEN_SIMPLE_BYTE:
+            case TOKEN_PRIMITIVE_BYTE:
+                final long x = parseNumber( Byte.MIN_VALUE, Byte.MAX_VALUE );
+                return valid ? x : Byte.parseByte( string() );
+
+            case TOKEN_SIMPLE_SHORT:
+            case TOKEN_PRIMITIVE_SHORT:
+                final long s = parseNumber( Short.MIN_VALUE, Short.MAX_VALUE );
+                return valid ? s : Short.parseShort( string() );
+
+            default:
+                // int and float
+                final long i = parseNumber( Integer.MIN_VALUE, Integer.MAX_VALUE );
+                return valid ? i : Integer.parseInt( string() );
+        }
+    }
+
+
+    /**
+     * Parses the last scanned quoted value as a decimal number in the given
+     * range like <code>Long.parseLong</code>. If the value is not a plain
+     * ASCII number in the range, {@link #valid} is set to <code>false</code>
+     * and the value must be parsed from its string to get the exact result or
+     * exception of the <code>ConfigurationHandler</code>.
+     */
+    private long parseNumber( final long min, final long max )
+    {
+        valid = false;
+        if ( !qplain || !qascii || qe == qs )
+        {
+            return 0;
+        }
+
+        int i = qs;
+        final boolean negative = b[i] == '-';
+        if ( negative || b[i] == '+' )
+        {
+            i++;
+            if ( i == qe )
+            {
+                return 0;
+            }
+        }
+
+        // accumulate negatively like Long.parseLong to cover Long.MIN_VALUE
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multmin = limit / 10;
+        long result = 0;
+        for ( ; i < qe; i++ )
+        {
+            final int digit = b[i] - '0';
+            if ( digit < 0 || digit > 9 || result < multmin )
+            {
+                return 0;
+            }
+            result *= 10;
+            if ( result < limit + digit )
+            {
+                return 0;
+            }
+            result -= digit;
+        }
+
+        final long value = negative ? result : -result;
+        valid = value >= min && value <= max;
+        return value;
+    }
+
+
+    /**
+     * Scans a quoted value or property name up to the next unescaped equals
+     * sign or double quote or the end of the input. The range is recorded
+     * together with whether it is plain, that is without escapes and carriage
+     * returns, and whether it only consists of ASCII characters.
+     */
+    private void scan()
+    {
+        prefix = low;
+        low = -1;
+
+        boolean plain = prefix < 0;
+        boolean ascii = true;
+        qs = p;
+        while ( p < e )
+        {
+            final int c = b[p];
+            if ( c == TOKEN_EQ || c == TOKEN_VAL_CLOS )
+            {
+                break;
+            }
+            else if ( c == '\\' )
+            {
+                plain = false;
+                p++;
+                if ( p < e && b[p] == 'u' )
+                {
+                    p = skipCharacters( p + 1, 4 );
+                }
+                else if ( p < e )
+                {
+                    p++;
+                }
+            }
+            else
+            {
+                if ( c == '\r' )
+                {
+                    plain = false;
+                }
+                else if ( c < 0 )
+                {
+                    ascii = false;
+                }
+                p++;
+            }
+        }
+        qe = p;
+        qplain = plain;
+        qascii = ascii;
+
+        if ( p == e )
+        {
+            low = EOF_UNREAD;
+        }
+    }
+
+
+    // returns the index after the given number of characters
+    private int skipCharacters( int i, int count )
+    {
+        for ( ; count > 0 && i < e; count-- )
+        {
+            if ( b[i] == '\r' && i + 1 < e && b[i + 1] == '\n' )
+            {
+                i += 2;
+            }
+            else
+            {
+                i++;
+                while ( i < e && ( b[i] & 0xc0 ) == 0x80 )
+                {
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+
+    // returns the last scanned value as a string
+    private String string()
+    {
+        final int len = qe - qs;
+        if ( qplain )
+        {
+            return new String( b, qs, len, qascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8 );
+        }
+
+        String raw = new String( b, qs, len, StandardCharsets.UTF_8 );
+        if ( prefix >= 0 )
+        {
+            raw = ( char ) prefix + raw;
+        }
+        return unescape( raw, qe == e );
+    }
+
+
+    /**
+     * Resolves line breaks and escapes like
+     * <code>ConfigurationHandler.readQuoted</code>, which reads carriage
+     * returns and CRLF as line feeds.
+     */
+    private static String unescape( final String raw, final boolean eof )
+    {
+        final int len = raw.length();
+        final StringBuilder chars = new StringBuilder( len + 1 );
+        for ( int i = 0; i < len; i++ )
+        {
+            final char c = raw.charAt( i );
+            if ( c != '\r' )
+            {
+                chars.append( c );
+            }
+            else if ( i + 1 < len && raw.charAt( i + 1 ) == '\n' )
+            {
+                // CRLF is read as LF
+            }
+            else
+            {
+                chars.append( '\n' );
+                if ( i + 1 == len && eof )
+                {
+                    chars.append( ( char ) EOF_UNREAD );
+                }
+            }
+        }
+
+        final int count = chars.length();
+        final StringBuilder buf = new StringBuilder( count );
+        int i = 0;
+        while ( i < count )
+        {
+            char c = chars.charAt( i++ );
+            if ( c != '\\' )
+            {
+                buf.append( c );
+                continue;
+            }
+
+            // escaped character at the end of the input
+            if ( i == count )
+            {
+                buf.append( ( char ) -1 );
+                break;
+            }
+
+            c = chars.charAt( i++ );
+            switch ( c )
+            {
+                // well known escapes
+                case 'b':
+                    buf.append( '\b' );
+                    break;
+                case 't':
+                    buf.append( '\t' );
+                    break;
+                case 'n':
+                    buf.append( '\n' );
+                    break;
+                case 'f':
+                    buf.append( '\f' );
+                    break;
+                case 'r':
+                    buf.append( '\r' );
+                    break;
+                case 'u':// need 4 characters !
+                    if ( i + 4 <= count )
+                    {
+                        buf.append( ( char ) Integer.parseInt( chars.substring( i, i + 4 ), 16 ) );
+                        i += 4;
+                    }
+                    else
+                    {
+                        i = count;
+                    }
+                    break;
+
+                // just an escaped character, unescape
+                default:
+                    buf.append( c );
+            }
+        }
+        return buf.toString();
+    }
+
+
+    // reads a property name, which is trimmed and cached if plain ASCII
+    private String readName()
+    {
+        scan();
+        if ( !qplain || !qascii )
+        {
+            return string().trim();
+        }
+
+        int s = qs;
+        int end = qe;
+        while ( s < end && b[s] <= ' ' )
+        {
+            s++;
+        }
+        while ( end > s && b[end - 1] <= ' ' )
+        {
+            end--;
+        }
+        return name( b, s, end );
+    }
+
+
+    private static String name( final byte[] b, final int s, final int e )
+    {
+        int hash = 0;
+        for ( int i = s; i < e; i++ )
+        {
+            hash = 31 * hash + b[i];
+        }
+        final int slot = ( hash ^ ( hash >>> 16 ) ) & ( NAMES.length - 1 );
+
+        // racy but safe as strings are immutable
+        final String cached = NAMES[slot];
+        if ( cached != null && cached.length() == e - s )
+        {
+            int i = 0;
+            while ( i < e - s && cached.charAt( i ) == b[s + i] )
+            {
+                i++;
+            }
+            if ( i == e - s )
+            {
+                return cached;
+            }
+        }
+
+        final String name = new String( b, s, e - s, StandardCharsets.ISO_8859_1 ).intern();
+        NAMES[slot] = name;
+        return name;
+    }
+
+
+    private int nextToken( final boolean newLine )
+    {
+        for ( ;; )
+        {
+            final int c = ignorableWhiteSpace();
+
+            // immediately return EOF
+            if ( c < 0 )
+            {
+                return ( token = c );
+            }
+
+            // check for comment and skip everything until end of line
+            if ( newLine && c == TOKEN_COMMENT )
+            {
+                while ( p < e && b[p] != '\n' && b[p] != '\r' )
+                {
+                    p++;
+                }
+                if ( next() < 0 )
+                {
+                    return ( token = -1 );
+                }
+                // and start over
+                continue;
+            }
+
+            // check whether there is a name
+            if ( c >= 128 || NAME_START[c] )
+            {
+                // read the property name
+                unread();
+                name = readName();
+                return ( token = TOKEN_NAME );
+            }
+
+            return ( token = c );
+        }
+    }
+
+
+    private int ignorableWhiteSpace()
+    {
+        int c = next();
+        while ( c >= 0 && ( c < 128 ? WHITESPACE[c] : Character.isWhitespace( ( char ) c ) ) )
+        {
+            c = next();
+        }
+        return c;
+    }
+
+
+    private int ignorablePageBreakAndWhiteSpace()
+    {
+        int c = ignorableWhiteSpace();
+        while ( c == '\\' && p < e && ( b[p] == '\r' || b[p] == '\n' ) )
+        {
+            p++;
+            c = ignorableWhiteSpace();
+        }
+        if ( c == '\\' && p == e )
+        {
+            low = EOF_UNREAD;
+        }
+        return c;
+    }
+
+
+    // reads the next character, reporting line breaks as '\n'
+    private int next()
+    {
+        mark = p;
+        markLow = low;
+        if ( low >= 0 )
+        {
+            final int c = low;
+            low = -1;
+            return c;
+        }
+        if ( p >= e )
+        {
+            return -1;
+        }
+
+        final int c = b[p++];
+        if ( c >= 0 )
+        {
+            if ( c == '\r' )
+            {
+                if ( p < e && b[p] == '\n' )
+                {
+                    p++;
+                }
+                else if ( p == e )
+                {
+                    low = EOF_UNREAD;
+                }
+                return '\n';
+            }
+            return c;
+        }
+        return decode( c & 0xff );
+    }
+
+
+    private void unread()
+    {
+        p = mark;
+        low = markLow;
+    }
+
+
+    /**
+     * Decodes the UTF-8 sequence whose first byte has already been read.
+     * Malformed sequences are replaced by U+FFFD and consume the same number
+     * of bytes as with the decoder of the <code>InputStreamReader</code> used
+     * by the <code>ConfigurationHandler</code>, which is reflected in the
+     * following tokens.
+     */
+    private int decode( final int b0 )
+    {
+        final int remaining = e - p;
+        if ( b0 >= 0xc2 && b0 <= 0xdf )
+        {
+            if ( remaining > 0 && continuation( b[p] ) )
+            {
+                return ( ( b0 & 0x1f ) << 6 ) | ( b[p++] & 0x3f );
+            }
+        }
+        else if ( b0 >= 0xe0 && b0 <= 0xef )
+        {
+            if ( remaining < 2 )
+            {
+                if ( remaining == 0 || !malformed3( b0, b[p] ) )
+                {
+                    // truncated at the end of the input
+                    p = e;
+                }
+            }
+            else if ( !malformed3( b0, b[p] ) )
+            {
+                if ( !continuation( b[p + 1] ) )
+                {
+                    p++;
+                }
+                else
+                {
+                    final int c = ( ( b0 & 0x0f ) << 12 ) | ( ( b[p] & 0x3f ) << 6 ) | ( b[p + 1] & 0x3f );
+                    p += 2;
+                    if ( !Character.isSurrogate( ( char ) c ) )
+                    {
+                        return c;
+                    }
+                }
+            }
+        }
+        else if ( b0 >= 0xf0 && b0 <= 0xf7 )
+        {
+            if ( b0 > 0xf4 || remaining > 0 && malformed4( b0, b[p] & 0xff ) )
+            {
+                // single malformed byte
+            }
+            else if ( remaining > 1 && !continuation( b[p + 1] ) )
+            {
+                p++;
+            }
+            else if ( remaining < 3 )
+            {
+                // truncated at the end of the input
+                p = e;
+            }
+            else if ( !continuation( b[p + 2] ) )
+            {
+                p += 2;
+            }
+            else
+            {
+                final int c = ( ( b0 & 0x07 ) << 18 ) | ( ( b[p] & 0x3f ) << 12 ) | ( ( b[p + 1] & 0x3f ) << 6 )
+                    | ( b[p + 2] & 0x3f );
+                p += 3;
+                low = Character.lowSurrogate( c );
+                return Character.highSurrogate( c );
+            }
+        }
+
+        // malformed
+        return 0xfffd;
+    }
+
+
+    private static boolean continuation( final int b )
+    {
+        return ( b & 0xc0 ) == 0x80;
+    }
+
+
+    // whether the second byte of a three byte sequence is malformed
+    private static boolean malformed3( final int b0, final int b1 )
+    {
+        return ( b0 == 0xe0 && ( b1 & 0xe0 ) == 0x80 ) || !continuation( b1 );
+    }
+
+
+    // whether the second byte of a four byte sequence is malformed
+    private static boolean malformed4( final int b0, final int b1 )
+    {
+        return ( b0 == 0xf0 && ( b1 < 0x90 || b1 > 0xbf ) ) || ( b0 == 0xf4 && ( b1 & 0xf0 ) != 0x80 )
+            || !continuation( b1 );
+    }
+
+
+    private IOException readFailure( final int current, final int expected )
+    {
+        int line = 0;
+        int pos = 0;
+        for ( int i = start; i < p; i++ )
+        {
+            final int c = b[i];
+            if ( c == '\r' || c == '\n' )
+            {
+                if ( c == '\r' && i + 1 < p && b[i + 1] == '\n' )
+                {
+                    i++;
+                }
+                line++;
+                pos = 0;
+            }
+            else if ( ( c & 0xc0 ) != 0x80 )
+            {
+                pos++;
+            }
+        }
+        return new IOException( "Unexpected token " + current + "; expected: " + expected + " (line=" + line + ", pos="
+            + pos + ")" );
+    }
+
+    // ---------- Configuration Output Implementation --------------------------
+
+    private byte[] output;
+    private int count;
+    private String[] keys = new String[16];
+
+
+    @SuppressWarnings("rawtypes")
+    private void encode( final Dictionary properties )
+    {
+        if ( output == null )
+        {
+            output = new byte[BUFFER_SIZE];
+        }
+        count = 0;
+
+        // write the properties ordered by their names
+        if ( keys.length < properties.size() )
+        {
+            keys = new String[properties.size()];
+        }
+        int size = 0;
+        for ( Enumeration ce = properties.keys(); ce.hasMoreElements(); )
+        {
+            keys[size++] = ( String ) ce.nextElement();
+        }
+        Arrays.sort( keys, 0, size );
+
+        for ( int i = 0; i < size; i++ )
+        {
+            // cfg = prop "=" value "." .
+            writeQuoted( keys[i] );
+            write( TOKEN_EQ );
+            writeValue( properties.get( keys[i] ) );
+            write( '\r' );
+            write( '\n' );
+        }
+        Arrays.fill( keys, 0, size, null );
+    }
+
+
+    private void release()
+    {
+        if ( output != null && output.length > RETAINED_BUFFER_SIZE )
+        {
+            output = null;
+        }
+        if ( keys.length > RETAINED_BUFFER_SIZE )
+        {
+            keys = new String[16];
+        }
+    }
+
+
+    private void writeValue( final Object value )
+    {
+        final Class<?> clazz = value.getClass();
+        if ( clazz.isArray() )
+        {
+            writeArray( value, clazz.getComponentType() );
+        }
+        else if ( value instanceof Collection )
+        {
+            writeCollection( ( Collection<?> ) value );
+        }
+        else
+        {
+            writeType( clazz );
+            writeSimple( value );
+        }
+    }
+
+
+    private void writeArray( final Object array, final Class<?> componentType )
+    {
+        writeType( componentType );
+        write( TOKEN_ARR_OPEN );
+        write( COLLECTION_LINE_BREAK );
+        if ( componentType == Integer.TYPE )
+        {
+            for ( final int value : ( int[] ) array )
+            {
+                writeElement( value );
+            }
+        }
+        else if ( componentType == Long.TYPE )
+        {
+            for ( final long value : ( long[] ) array )
+            {
+                writeElement( value );
+            }
+        }
+        else if ( componentType == Float.TYPE )
+        {
+            for ( final float value : ( float[] ) array )
+            {
+                writeElement( Float.floatToRawIntBits( value ) );
+            }
+        }
+        else if ( componentType == Double.TYPE )
+        {
+            for ( final double value : ( double[] ) array )
+            {
+                writeElement( Double.doubleToRawLongBits( value ) );
+            }
+        }
+        else if ( componentType == Byte.TYPE )
+        {
+            for ( final byte value : ( byte[] ) array )
+            {
+                writeElement( value );
+            }
+        }
+        else if ( componentType == Short.TYPE )
+        {
+            for ( final short value : ( short[] ) array )
+            {
+                writeElement( value );
+            }
+        }
+        else if ( componentType == Character.TYPE )
+        {
+            for ( final char value : ( char[] ) array )
+            {
+                write( INDENT );
+                write( TOKEN_VAL_OPEN );
+                ensure( 6 );
+                writeQuoted( value );
+                write( TOKEN_VAL_CLOS );
+                write( TOKEN_COMMA );
+                write( COLLECTION_LINE_BREAK );
+            }
+        }
+        else if ( componentType == Boolean.TYPE )
+        {
+            for ( final boolean value : ( boolean[] ) array )
+            {
+                writeCollectionElement( Boolean.valueOf( value ) );
+            }
+        }
+        else
+        {
+            for ( final Object value : ( Object[] ) array )
+            {
+                writeCollectionElement( value );
+            }
+        }
+        write( INDENT );
+        write( TOKEN_ARR_CLOS );
+    }
+
+
+    private void writeCollection( final Collection<?> collection )
+    {
+        if ( collection.isEmpty() )
+        {
+            write( TOKEN_VEC_OPEN );
+            write( COLLECTION_LINE_BREAK );
+            write( TOKEN_VEC_CLOS );
+        }
+        else
+        {
+            final Iterator<?> ci = collection.iterator();
+            final Object firstElement = ci.next();
+
+            writeType( firstElement.getClass() );
+            write( TOKEN_VEC_OPEN );
+            write( COLLECTION_LINE_BREAK );
+
+            writeCollectionElement( firstElement );
+
+            while ( ci.hasNext() )
+            {
+                writeCollectionElement( ci.next() );
+            }
+            write( TOKEN_VEC_CLOS );
+        }
+    }
+
+
+    private void writeCollectionElement( final Object element )
+    {
+        write( INDENT );
+        writeSimple( element );
+        write( TOKEN_COMMA );
+        write( COLLECTION_LINE_BREAK );
+    }
+
+
+    private void writeElement( final long value )
+    {
+        write( INDENT );
+        write( TOKEN_VAL_OPEN );
+        writeNumber( value );
+        write( TOKEN_VAL_CLOS );
+        write( TOKEN_COMMA );
+        write( COLLECTION_LINE_BREAK );
+    }
+
+
+    private void writeType( final Class<?> valueType )
+    {
+        final int code = typeCode( valueType );
+        if ( code != 0 )
+        {
+            write( code );
+        }
+    }
+
+
+    // the type code written for the type or 0 for strings and other types
+    private static int typeCode( final Class<?> type )
+    {
+        if ( type == String.class )
+        {
+            return 0;
+        }
+        else if ( type == Integer.class )
+        {
+            return TOKEN_SIMPLE_INTEGER;
+        }
+        else if ( type == Long.class )
+        {
+            return TOKEN_SIMPLE_LONG;
+        }
+        else if ( type == Boolean.class )
+        {
+            return TOKEN_SIMPLE_BOOLEAN;
+        }
+        else if ( type == Float.class )
+        {
+            return TOKEN_SIMPLE_FLOAT;
+        }
+        else if ( type == Double.class )
+        {
+            return TOKEN_SIMPLE_DOUBLE;
+        }
+        else if ( type == Byte.class )
+        {
+            return TOKEN_SIMPLE_BYTE;
+        }
+        else if ( type == Short.class )
+        {
+            return TOKEN_SIMPLE_SHORT;
+        }
+        else if ( type == Character.class )
+        {
+            return TOKEN_SIMPLE_CHARACTER;
+        }
+        else if ( type == Integer.TYPE )
+        {
+            return TOKEN_PRIMITIVE_INT;
+        }
+        else if ( type == Long.TYPE )
+        {
+            return TOKEN_PRIMITIVE_LONG;
+        }
+        else if ( type == Boolean.TYPE )
+        {
+            return TOKEN_PRIMITIVE_BOOLEAN;
+        }
+        else if ( type == Float.TYPE )
+        {
+            return TOKEN_PRIMITIVE_FLOAT;
+        }
+        else if ( type == Double.TYPE )
+        {
+            return TOKEN_PRIMITIVE_DOUBLE;
+        }
+        else if ( type == Byte.TYPE )
+        {
+            return TOKEN_PRIMITIVE_BYTE;
+        }
+        else if ( type == Short.TYPE )
+        {
+            return TOKEN_PRIMITIVE_SHORT;
+        }
+        else if ( type == Character.TYPE )
+        {
+            return TOKEN_PRIMITIVE_CHAR;
+        }
+        return 0;
+    }
+
+
+    private void writeSimple( final Object value )
+    {
+        write( TOKEN_VAL_OPEN );
+        if ( value instanceof Double )
+        {
+            writeNumber( Double.doubleToRawLongBits( ( ( Double ) value ).doubleValue() ) );
+        }
+        else if ( value instanceof Float )
+        {
+            writeNumber( Float.floatToRawIntBits( ( ( Float ) value ).floatValue() ) );
+        }
+        else if ( value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte )
+        {
+            writeNumber( ( ( Number ) value ).longValue() );
+        }
+        else if ( value instanceof Character )
+        {
+            ensure( 6 );
+            writeQuoted( ( ( Character ) value ).charValue() );
+        }
+        else
+        {
+            writeQuoted( String.valueOf( value ) );
+        }
+        write( TOKEN_VAL_CLOS );
+    }
+
+
+    private void writeNumber( long value )
+    {
+        if ( value == Long.MIN_VALUE )
+        {
+            writeQuoted( String.valueOf( value ) );
+            return;
+        }
+
+        ensure( 20 );
+        if ( value < 0 )
+        {
+            output[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for ( long rest = value; rest >= 10; rest /= 10 )
+        {
+            digits++;
+        }
+        count += digits;
+        int i = count;
+        do
+        {
+            output[--i] = ( byte ) ( '0' + value % 10 );
+            value /= 10;
+        }
+        while ( value != 0 );
+    }
+
+
+    // writes the escaped and UTF-8 encoded string
+    private void writeQuoted( final String simple )
+    {
+        if ( simple == null || simple.length() == 0 )
+        {
+            return;
+        }
+
+        final int len = simple.length();
+        ensure( len * 6 );
+        for ( int i = 0; i < len; i++ )
+        {
+            final char c = simple.charAt( i );
+            if ( Character.isHighSurrogate( c ) && i + 1 < len && Character.isLowSurrogate( simple.charAt( i + 1 ) ) )
+            {
+                final int cp = Character.toCodePoint( c, simple.charAt( ++i ) );
+                output[count++] = ( byte ) ( 0xf0 | ( cp >> 18 ) );
+                output[count++] = ( byte ) ( 0x80 | ( ( cp >> 12 ) & 0x3f ) );
+                output[count++] = ( byte ) ( 0x80 | ( ( cp >> 6 ) & 0x3f ) );
+                output[count++] = ( byte ) ( 0x80 | ( cp & 0x3f ) );
+            }
+            else
+            {
+                writeQuoted( c );
+            }
+        }
+    }
+
+
+    // writes the escaped and UTF-8 encoded character, requires 6 bytes
+    private void writeQuoted( final char c )
+    {
+        switch ( c )
+        {
+            case '\\':
+            case TOKEN_VAL_CLOS:
+            case ' ':
+            case TOKEN_EQ:
+                output[count++] = '\\';
+                output[count++] = ( byte ) c;
+                break;
+
+            // well known escapes
+            case '\b':
+                output[count++] = '\\';
+                output[count++] = 'b';
+                break;
+            case '\t':
+                output[count++] = '\\';
+                output[count++] = 't';
+                break;
+            case '\n':
+                output[count++] = '\\';
+                output[count++] = 'n';
+                break;
+            case '\f':
+                output[count++] = '\\';
+                output[count++] = 'f';
+                break;
+            case '\r':
+                output[count++] = '\\';
+                output[count++] = 'r';
+                break;
+
+            // other escaping
+            default:
+                if ( c < ' ' )
+                {
+                    output[count++] = '\\';
+                    output[count++] = 'u';
+                    output[count++] = '0';
+                    output[count++] = '0';
+                    output[count++] = HEX[c >> 4];
+                    output[count++] = HEX[c & 0xf];
+                }
+                else if ( c < 0x80 )
+                {
+                    output[count++] = ( byte ) c;
+                }
+                else if ( c < 0x800 )
+                {
+                    output[count++] = ( byte ) ( 0xc0 | ( c >> 6 ) );
+                    output[count++] = ( byte ) ( 0x80 | ( c & 0x3f ) );
+                }
+                else if ( Character.isSurrogate( c ) )
+                {
+                    // unpaired surrogate, replaced like the OutputStreamWriter
+                    output[count++] = '?';
+                }
+                else
+                {
+                    output[count++] = ( byte ) ( 0xe0 | ( c >> 12 ) );
+                    output[count++] = ( byte ) ( 0x80 | ( ( c >> 6 ) & 0x3f ) );
+                    output[count++] = ( byte ) ( 0x80 | ( c & 0x3f ) );
+                }
+        }
+    }
+
+
+    private void write( final int c )
+    {
+        ensure( 1 );
+        output[count++] = ( byte ) c;
+    }
+
+
+    private void write( final byte[] bytes )
+    {
+        ensure( bytes.length );
+        System.arraycopy( bytes, 0, output, count, bytes.length );
+        count += bytes.length;
+    }
+
+
+    private void ensure( final int length )
+    {
+        if ( count + length > output.length )
+        {
+            output = Arrays.copyOf( output, Math.max( output.length * 2, count + length ) );
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.file;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * The <code>ConfigurationSnapshot</code> class reads and writes the binary
+ * snapshot of all configurations of the {@link FilePersistenceManager}.
+ * <p>
+ * The snapshot starts with a header consisting of a magic number, the
+ * format version and the configuration directory. It is followed by the
+ * number of records and the records, each consisting of the name of the
+ * configuration file and the length and bytes of the binary encoded
+ * configuration. The snapshot ends with the CRC32 checksum of all
+ * preceding bytes.
+ * <p>
+ * Each configuration is encoded as the number of properties followed by the
+ * name and the type tagged value of each property. The type tags are the
+ * type codes of the {@link ConfigurationHandler}.
+ */
+final class ConfigurationSnapshot
+{
+
+    private static final int MAGIC = 0x46434D53; // "FCMS"
+
+    private static final int VERSION = 1;
+
+    private static final int TAG_ARRAY = '[';
+
+    private static final int TAG_COLLECTION = '(';
+
+    private static final Map<Class<?>, Integer> TYPE_TAGS = new HashMap<>();
+
+    private static final Map<Integer, Class<?>> TAG_TYPES = new HashMap<>();
+
+    static
+    {
+        tag( String.class, ConfigurationHandler.TOKEN_SIMPLE_STRING );
+        tag( Integer.class, ConfigurationHandler.TOKEN_SIMPLE_INTEGER );
+        tag( Long.class, ConfigurationHandler.TOKEN_SIMPLE_LONG );
+        tag( Float.class, ConfigurationHandler.TOKEN_SIMPLE_FLOAT );
+        tag( Double.class, ConfigurationHandler.TOKEN_SIMPLE_DOUBLE );
+        tag( Byte.class, ConfigurationHandler.TOKEN_SIMPLE_BYTE );
+        tag( Short.class, ConfigurationHandler.TOKEN_SIMPLE_SHORT );
+        tag( Character.class, ConfigurationHandler.TOKEN_SIMPLE_CHARACTER );
+        tag( Boolean.class, ConfigurationHandler.TOKEN_SIMPLE_BOOLEAN );
+        tag( Integer.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_INT );
+        tag( Long.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_LONG );
+        tag( Float.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_FLOAT );
+        tag( Double.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_DOUBLE );
+        tag( Byte.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_BYTE );
+        tag( Short.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_SHORT );
+        tag( Character.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_CHAR );
+        tag( Boolean.TYPE, ConfigurationHandler.TOKEN_PRIMITIVE_BOOLEAN );
+    }
+
+    private static void tag( final Class<?> type, final int tag )
+    {
+        TYPE_TAGS.put( type, tag );
+        TAG_TYPES.put( tag, type );
+    }
+
+
+    private ConfigurationSnapshot()
+    {
+    }
+
+
+    /**
+     * Writes the records to the snapshot file. The snapshot is first written
+     * to a temporary file, which then atomically replaces the snapshot file.
+     *
+     * @param file The snapshot file
+     * @param location The configuration directory
+     * @param records The encoded configurations indexed by the name of
+     *      their configuration file
+     * @throws IOException If the snapshot cannot be written
+     */
+    static void write( final File file, final File location, final Map<String, byte[]> records ) throws IOException
+    {
+        final File tmpFile = new File( file.getPath() + ".tmp" );
+        try
+        {
+            final CRC32 crc = new CRC32();
+            try ( DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ), crc ) ) )
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                writeString( out, location.getPath() );
+                out.writeInt( records.size() );
+                for ( final Map.Entry<String, byte[]> record : records.entrySet() )
+                {
+                    writeString( out, record.getKey() );
+                    out.writeInt( record.getValue().length );
+                    out.write( record.getValue() );
+                }
+
+                // the checksum itself is not part of the checksum
+                out.writeLong( crc.getValue() );
+            }
+            Files.move( tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            tmpFile.delete();
+        }
+    }
+
+
+    /**
+     * Reads the records from the snapshot file.
+     *
+     * @param file The snapshot file
+     * @param location The configuration directory
+     * @return The encoded configurations indexed by the name of their
+     *      configuration file
+     * @throws IOException If the snapshot cannot be read, is corrupt or
+     *      has been written for another configuration directory
+     */
+    static Map<String, byte[]> read( final File file, final File location ) throws IOException
+    {
+        final long limit = file.length();
+        final CRC32 crc = new CRC32();
+        try ( DataInputStream in = new DataInputStream(
+            new CheckedInputStream( new BufferedInputStream( new FileInputStream( file ) ), crc ) ) )
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+            {
+                throw new IOException( "Unsupported snapshot format " + file );
+            }
+            if ( !location.getPath().equals( readString( in, limit ) ) )
+            {
+                throw new IOException( "Snapshot " + file + " has not been written for " + location );
+            }
+
+            final int count = in.readInt();
+            final Map<String, byte[]> records = new HashMap<>( count * 4 / 3 + 1 );
+            for ( int i = 0; i < count; i++ )
+            {
+                final String name = readString( in, limit );
+                final byte[] record = new byte[checkLength( in.readInt(), limit )];
+                in.readFully( record );
+                records.put( name, record );
+            }
+
+            final long checksum = crc.getValue();
+            if ( in.readLong() != checksum )
+            {
+                throw new IOException( "Checksum mismatch in snapshot " + file );
+            }
+            return records;
+        }
+    }
+
+
+    /**
+     * Encodes the configuration.
+     *
+     * @throws IOException If a property value has a type not supported by
+     *      configurations
+     */
+    @SuppressWarnings("rawtypes")
+    static byte[] encode( final Dictionary properties ) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+        final DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( properties.size() );
+        for ( Enumeration keys = properties.keys(); keys.hasMoreElements(); )
+        {
+            final String key = ( String ) keys.nextElement();
+            writeString( out, key );
+            writeValue( out, properties.get( key ) );
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Decodes a configuration encoded by {@link #encode(Dictionary)}.
+     */
+    @SuppressWarnings("rawtypes")
+    static Dictionary decode( final byte[] record ) throws IOException
+    {
+        final DataInputStream in = new DataInputStream( new ByteArrayInputStream( record ) );
+        final int size = in.readInt();
+        final Hashtable<String, Object> properties = new Hashtable<>( size * 4 / 3 + 1 );
+        for ( int i = 0; i < size; i++ )
+        {
+            final String key = readString( in, record.length );
+            properties.put( key, readValue( in, record.length ) );
+        }
+        return properties;
+    }
+
+
+    private static void writeValue( final DataOutputStream out, final Object value ) throws IOException
+    {
+        if ( value instanceof Collection )
+        {
+            final Collection<?> collection = ( Collection<?> ) value;
+            out.writeByte( TAG_COLLECTION );
+            out.writeInt( collection.size() );
+            for ( final Object element : collection )
+            {
+                writeSimple( out, element );
+            }
+        }
+        else if ( value != null && value.getClass().isArray() )
+        {
+            final Integer tag = TYPE_TAGS.get( value.getClass().getComponentType() );
+            if ( tag == null )
+            {
+                throw new IOException( "Unsupported array type " + value.getClass() );
+            }
+            final int length = Array.getLength( value );
+            out.writeByte( TAG_ARRAY );
+            out.writeByte( tag );
+            out.writeInt( length );
+            for ( int i = 0; i < length; i++ )
+            {
+                writeData( out, tag, Array.get( value, i ) );
+            }
+        }
+        else
+        {
+            writeSimple( out, value );
+        }
+    }
+
+
+    private static void writeSimple( final DataOutputStream out, final Object value ) throws IOException
+    {
+        final Integer tag = ( value == null ) ? null : TYPE_TAGS.get( value.getClass() );
+        if ( tag == null )
+        {
+            throw new IOException( "Unsupported value " + value );
+        }
+        out.writeByte( tag );
+        writeData( out, tag, value );
+    }
+
+
+    private static void writeData( final DataOutputStream out, final int tag, final Object value ) throws IOException
+    {
+        switch ( Character.toUpperCase( tag ) )
+        {
+            case ConfigurationHandler.TOKEN_SIMPLE_STRING:
+                writeString( out, ( String ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_INTEGER:
+                out.writeInt( ( Integer ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_LONG:
+                out.writeLong( ( Long ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_FLOAT:
+                out.writeFloat( ( Float ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_DOUBLE:
+                out.writeDouble( ( Double ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_BYTE:
+                out.writeByte( ( Byte ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_SHORT:
+                out.writeShort( ( Short ) value );
+                break;
+            case ConfigurationHandler.TOKEN_SIMPLE_CHARACTER:
+                out.writeChar( ( Character ) value );
+                break;
+            default:
+                out.writeBoolean( ( Boolean ) value );
+                break;
+        }
+    }
+
+
+    private static Object readValue( final DataInputStream in, final long limit ) throws IOException
+    {
+        final int tag = in.readByte();
+        if ( tag == TAG_COLLECTION )
+        {
+            final int size = checkLength( in.readInt(), limit );
+            final List<Object> collection = new ArrayList<>( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                collection.add( readData( in, in.readByte(), limit ) );
+            }
+            return collection;
+        }
+        else if ( tag == TAG_ARRAY )
+        {
+            final int componentTag = in.readByte();
+            final Class<?> type = TAG_TYPES.get( componentTag );
+            if ( type == null )
+            {
+                throw new IOException( "Unsupported array type " + componentTag );
+            }
+            final int length = checkLength( in.readInt(), limit );
+            final Object array = Array.newInstance( type, length );
+            for ( int i = 0; i < length; i++ )
+            {
+                Array.set( array, i, readData( in, componentTag, limit ) );
+            }
+            return array;
+        }
+        return readData( in, tag, limit );
+    }
+
+
+    private static Object readData( final DataInputStream in, final int tag, final long limit ) throws IOException
+    {
+        switch ( Character.toUpperCase( tag ) )
+        {
+            case ConfigurationHandler.TOKEN_SIMPLE_STRING:
+                return readString( in, limit );
+            case ConfigurationHandler.TOKEN_SIMPLE_INTEGER:
+                return in.readInt();
+            case ConfigurationHandler.TOKEN_SIMPLE_LONG:
+                return in.readLong();
+            case ConfigurationHandler.TOKEN_SIMPLE_FLOAT:
+                return in.readFloat();
+            case ConfigurationHandler.TOKEN_SIMPLE_DOUBLE:
+                return in.readDouble();
+            case ConfigurationHandler.TOKEN_SIMPLE_BYTE:
+                return in.readByte();
+            case ConfigurationHandler.TOKEN_SIMPLE_SHORT:
+                return in.readShort();
+            case ConfigurationHandler.TOKEN_SIMPLE_CHARACTER:
+                return in.readChar();
+            case ConfigurationHandler.TOKEN_SIMPLE_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException( "Unsupported type " + tag );
+        }
+    }
+
+
+    // strings are written as length and UTF-8 bytes because writeUTF
+    // is limited to 64k bytes
+    private static void writeString( final DataOutputStream out, final String value ) throws IOException
+    {
+        final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static String readString( final DataInputStream in, final long limit ) throws IOException
+    {
+        final byte[] bytes = new byte[checkLength( in.readInt(), limit )];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+
+    // ensures a length read from a corrupt snapshot does not exceed the data
+    private static int checkLength( final int length, final long limit ) throws IOException
+    {
+        if ( length < 0 || length > limit )
+        {
+            throw new EOFException( "Invalid length " + length );
+        }
+        return length;
+    }
+}
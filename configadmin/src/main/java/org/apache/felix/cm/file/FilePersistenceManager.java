@@ -30,12 +30,23 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.felix.cm.PersistenceManager;
 import org.osgi.framework.BundleContext;
@@ -100,21 +111,34 @@ import org.osgi.framework.Constants;
  * file currently being written and thus loading corrupt data (if data is
  * available at all).
  * <p>
- * To prevent this situation from happening, the methods use synchronization and
- * temporary files as follows:
+ * To prevent this situation from happening, the methods use a read-write lock
+ * and temporary files as follows:
  * <ul>
  * <li>The {@link #store(String, Dictionary)} method writes a temporary file
  * with file extension <code>.tmp</code>. When done, the file is renamed to
  * actual configuration file name as implied by the PID. This last step of
- * renaming the file is synchronized on the FilePersistenceManager
- * instance.</li>
- * <li>The {@link #load(String)} method is completeley synchronized on the
- * FilePersistenceManager instance such that the {@link #store} method might
- * inadvertantly try to replace the file while it is being read.</li>
+ * renaming the file holds the write lock.</li>
+ * <li>The {@link #load(String)} method holds the read lock while reading the
+ * file such that the {@link #store} method might not inadvertantly try to
+ * replace the file while it is being read. Files can be read
+ * concurrently.</li>
  * <li>Finally the <code>Iterator</code> returned by {@link #getDictionaries()}
  * is implemented such that any temporary configuration file is just
  * ignored.</li>
  * </ul>
+ * <p>
+ * <b>Snapshot</b>
+ * <p>
+ * If created with the snapshot option, this persistence manager keeps a
+ * binary snapshot of all configurations next to the configuration directory
+ * in a file with the name of the directory and the extension
+ * <code>.snapshot</code>. The {@link #getDictionaries()} method reads the
+ * configurations from the snapshot instead of parsing each configuration
+ * file if the snapshot is newer than all files and directories in the
+ * configuration directory. Otherwise all files are parsed and the snapshot
+ * is written again. Storing or deleting a configuration deletes the
+ * snapshot. It is written again by the {@link #writeSnapshot()} method,
+ * which is called when the Configuration Admin Service is stopped.
  */
 public class FilePersistenceManager implements PersistenceManager
 {
@@ -144,6 +168,17 @@ public class FilePersistenceManager implements PersistenceManager
      */
     private static final String TMP_EXT = ".tmp";
 
+    /**
+     * The extension of the snapshot file (value is ".snapshot").
+     */
+    private static final String SNAPSHOT_EXT = ".snapshot";
+
+    /**
+     * The minimum number of files parsed by a single task when reading all
+     * configurations.
+     */
+    private static final int PARSE_BATCH = 32;
+
     private static final BitSet VALID_PATH_CHARS;
 
     /**
@@ -162,6 +197,30 @@ public class FilePersistenceManager implements PersistenceManager
      */
     private final boolean isWin;
 
+    /**
+     * The lock held to read configuration files (read lock) and to replace
+     * or delete configuration files (write lock).
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The snapshot file or <code>null</code> if no snapshot is kept.
+     */
+    private final File snapshotFile;
+
+    /**
+     * The encoded configurations of the snapshot indexed by the path of
+     * their configuration file or <code>null</code> if the configurations
+     * have not been read yet.
+     */
+    private volatile Map<String, byte[]> snapshotRecords;
+
+    /**
+     * Whether the configurations have changed since the snapshot file has
+     * been written.
+     */
+    private volatile boolean snapshotChanged;
+
     // sets up this class defining the set of valid characters in path
     // set getFile(String) for details.
     static
@@ -260,7 +319,7 @@ public class FilePersistenceManager implements PersistenceManager
      */
     public FilePersistenceManager( String location )
     {
-        this( null, location );
+        this( null, location, false );
     }
 
 
@@ -303,6 +362,32 @@ public class FilePersistenceManager implements PersistenceManager
      *      valid.
      */
     public FilePersistenceManager( BundleContext bundleContext, String location )
+    {
+        this( bundleContext, location, false );
+    }
+
+
+    /**
+     * Creates an instance of this persistence manager using the given location
+     * as the directory to store and retrieve the configuration files and
+     * optionally keeping a binary snapshot of all configurations to speed up
+     * reading all configurations. See the class comment for details on the
+     * snapshot.
+     *
+     * @param bundleContext The <code>BundleContext</code> to optionally get
+     *      the data location for the configuration files. This may be
+     *      <code>null</code>.
+     * @param location The configuration file location. See
+     *      {@link #FilePersistenceManager(BundleContext, String)} for details.
+     * @param snapshot Whether to keep a snapshot of all configurations.
+     *
+     * @throws IllegalArgumentException If the location exists but is not a
+     *      directory or does not exist and cannot be created.
+     * @throws IllegalStateException If the <code>bundleContext</code> is not
+     *      valid.
+     * @since 1.2
+     */
+    public FilePersistenceManager( BundleContext bundleContext, String location, boolean snapshot )
     {
         // setup the access control context from the calling setup
         if ( System.getSecurityManager() != null )
@@ -364,6 +449,7 @@ public class FilePersistenceManager implements PersistenceManager
         }
 
         this.location = locationFile;
+        this.snapshotFile = snapshot ? new File( locationFile.getPath() + SNAPSHOT_EXT ) : null;
     }
 
 
@@ -468,8 +554,11 @@ public class FilePersistenceManager implements PersistenceManager
      * Loads configuration data from the configuration location and returns
      * it as <code>Dictionary</code> objects.
      * <p>
-     * This method is a lazy implementation, which is just one configuration
-     * file ahead of the current enumeration location.
+     * The configuration directories are scanned and the configuration files
+     * are parsed in parallel unless a valid snapshot can be used. In the
+     * presence of a security manager, this method is a lazy implementation,
+     * which is just one configuration file ahead of the current enumeration
+     * location.
      *
      * @return an enumeration of configuration data returned as instances of
      *      the <code>Dictionary</code> class.
@@ -478,7 +567,160 @@ public class FilePersistenceManager implements PersistenceManager
     @Override
     public Enumeration getDictionaries()
     {
-        return new DictionaryEnumeration();
+        if ( System.getSecurityManager() != null )
+        {
+            return new DictionaryEnumeration();
+        }
+
+        return Collections.enumeration( loadDictionaries() );
+    }
+
+
+    /**
+     * Writes the snapshot of all configurations if configurations have been
+     * stored or deleted since the snapshot has been written. This method does
+     * nothing if this persistence manager does not keep a snapshot or has not
+     * read all configurations yet.
+     *
+     * @throws IOException If the snapshot cannot be written
+     * @since 1.2
+     */
+    public void writeSnapshot() throws IOException
+    {
+        if ( snapshotFile != null )
+        {
+            final Lock readLock = lock.readLock();
+            readLock.lock();
+            try
+            {
+                writeSnapshot0();
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+        }
+    }
+
+
+    // writes the snapshot while holding the read lock
+    private void writeSnapshot0() throws IOException
+    {
+        synchronized ( snapshotFile )
+        {
+            final Map<String, byte[]> records = snapshotRecords;
+            if ( records != null && snapshotChanged )
+            {
+                ConfigurationSnapshot.write( snapshotFile, location, records );
+                snapshotChanged = false;
+            }
+        }
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    private List<Dictionary> loadDictionaries()
+    {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try
+        {
+            final DirectoryScan scan = ForkJoinPool.commonPool().invoke( new DirectoryScan( location ) );
+
+            // use the snapshot if no file has been modified since writing it
+            if ( snapshotFile != null && snapshotFile.lastModified() > scan.lastModified )
+            {
+                try
+                {
+                    final Map<String, byte[]> records = ConfigurationSnapshot.read( snapshotFile, location );
+                    final List<Dictionary> dictionaries = new ArrayList<>( records.size() );
+                    for ( final byte[] record : records.values() )
+                    {
+                        dictionaries.add( ConfigurationSnapshot.decode( record ) );
+                    }
+                    snapshotRecords = records;
+                    return dictionaries;
+                }
+                catch ( IOException ioe )
+                {
+                    // corrupt snapshot, parse the configuration files
+                }
+            }
+
+            final File[] files = scan.files.toArray( new File[scan.files.size()] );
+            final Dictionary[] parsed = new Dictionary[files.length];
+            ForkJoinPool.commonPool().invoke( new ParseTask( files, parsed, 0, files.length ) );
+
+            final List<Dictionary> dictionaries = new ArrayList<>( files.length );
+            Map<String, byte[]> records = ( snapshotFile != null ) ? new HashMap<String, byte[]>() : null;
+            for ( int i = 0; i < files.length; i++ )
+            {
+                if ( parsed[i] != null )
+                {
+                    dictionaries.add( parsed[i] );
+                    if ( records != null )
+                    {
+                        try
+                        {
+                            records.put( files[i].getPath(), ConfigurationSnapshot.encode( parsed[i] ) );
+                        }
+                        catch ( IOException ioe )
+                        {
+                            // unsupported property type, no snapshot
+                            records = null;
+                        }
+                    }
+                }
+            }
+
+            if ( records != null )
+            {
+                snapshotRecords = records;
+                snapshotChanged = true;
+                try
+                {
+                    writeSnapshot0();
+                }
+                catch ( IOException ioe )
+                {
+                    // the snapshot is optional
+                }
+            }
+
+            return dictionaries;
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    // called while holding the write lock after storing or deleting the
+    // configuration file
+    private void snapshotChanged( final File cfgFile, final byte[] record )
+    {
+        if ( snapshotFile != null )
+        {
+            if ( !snapshotChanged )
+            {
+                snapshotFile.delete();
+                snapshotChanged = true;
+            }
+
+            final Map<String, byte[]> records = snapshotRecords;
+            if ( records != null )
+            {
+                if ( record != null )
+                {
+                    records.put( cfgFile.getPath(), record );
+                }
+                else
+                {
+                    records.remove( cfgFile.getPath() );
+                }
+            }
+        }
     }
 
 
@@ -517,9 +759,17 @@ public class FilePersistenceManager implements PersistenceManager
 
     private void _delete( final String pid )
     {
-        synchronized ( this )
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try
         {
-            getFile( pid ).delete();
+            final File cfgFile = getFile( pid );
+            cfgFile.delete();
+            snapshotChanged( cfgFile, null );
+        }
+        finally
+        {
+            writeLock.unlock();
         }
     }
 
@@ -561,10 +811,16 @@ public class FilePersistenceManager implements PersistenceManager
 
     private boolean _exists( final String pid )
     {
-        synchronized ( this )
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try
         {
             return getFile( pid ).isFile();
         }
+        finally
+        {
+            readLock.unlock();
+        }
     }
 
 
@@ -636,32 +892,46 @@ public class FilePersistenceManager implements PersistenceManager
         // package private to prevent the creation of a synthetic method
         // for use by the DictionaryEnumeration._seek method
 
-        // synchronize this instance to make at least sure, the file is
-        // not at the same time accessed by another thread (see store())
-        // we have to synchronize the complete load time as the store
+        // hold the read lock to make at least sure, the file is
+        // not at the same time replaced by another thread (see store())
+        // we have to hold the lock for the complete load time as the store
         // method might want to replace the file while we are reading and
         // still have the file open. This might be a problem e.g. in Windows
         // environments, where files may not be removed which are still open
-        synchronized ( this )
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try
         {
-            InputStream ins = null;
-            try
-            {
-                ins = new FileInputStream( cfgFile );
-                return ConfigurationHandler.read( ins );
-            }
-            finally
+            return read( cfgFile );
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    // reads the file without locking
+    @SuppressWarnings("rawtypes")
+    private static Dictionary read( final File cfgFile ) throws IOException
+    {
+        InputStream ins = null;
+        try
+        {
+            ins = new FileInputStream( cfgFile );
+            return ConfigurationCodec.read( ins );
+        }
+        finally
+        {
+            if ( ins != null )
             {
-                if ( ins != null )
+                try
                 {
-                    try
-                    {
-                        ins.close();
-                    }
-                    catch ( IOException ioe )
-                    {
-                        // ignore
-                    }
+                    ins.close();
+                }
+                catch ( IOException ioe )
+                {
+                    // ignore
                 }
             }
         }
@@ -731,13 +1001,29 @@ public class FilePersistenceManager implements PersistenceManager
             // write the configuration to a temporary file
             tmpFile = File.createTempFile( cfgFile.getName(), TMP_EXT, cfgDir );
             try(OutputStream out = new FileOutputStream( tmpFile )) {
-                ConfigurationHandler.write( out, props );
+                ConfigurationCodec.write( out, props );
+            }
+
+            // encode the configuration for the snapshot
+            byte[] record = null;
+            if ( snapshotFile != null )
+            {
+                try
+                {
+                    record = ConfigurationSnapshot.encode( props );
+                }
+                catch ( IOException ioe )
+                {
+                    // unsupported property type, no snapshot
+                }
             }
 
             // after writing the file, rename it but ensure, that no other
             // might at the same time open the new file
             // see load(File)
-            synchronized ( this )
+            final Lock writeLock = lock.writeLock();
+            writeLock.lock();
+            try
             {
                 // make sure the cfg file does not exists (just for sanity)
                 if ( cfgFile.exists() )
@@ -756,6 +1042,16 @@ public class FilePersistenceManager implements PersistenceManager
                     throw new IOException( "Failed to rename configuration file from '" + tmpFile + "' to '" + cfgFile );
                 }
                 tmpFile = null;
+
+                snapshotChanged( cfgFile, record );
+                if ( snapshotFile != null && record == null )
+                {
+                    snapshotRecords = null;
+                }
+            }
+            finally
+            {
+                writeLock.unlock();
             }
         }
         finally
@@ -912,4 +1208,120 @@ public class FilePersistenceManager implements PersistenceManager
         }
     }
 
+
+    /**
+     * The <code>DirectoryScan</code> task collects the configuration files
+     * in a directory and its subdirectories, which are scanned in parallel,
+     * and the latest modification time of these files and directories.
+     */
+    private static class DirectoryScan extends RecursiveTask<DirectoryScan>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final File dir;
+
+        final List<File> files = new ArrayList<>();
+
+        long lastModified;
+
+
+        DirectoryScan( final File dir )
+        {
+            this.dir = dir;
+        }
+
+
+        @Override
+        protected DirectoryScan compute()
+        {
+            lastModified = dir.lastModified();
+
+            final List<DirectoryScan> subdirs = new ArrayList<>();
+            final File[] fileList = dir.listFiles();
+            for ( int i = 0; fileList != null && i < fileList.length; i++ )
+            {
+                final File cfgFile = fileList[i];
+                if ( cfgFile.isFile() && !cfgFile.getName().endsWith( TMP_EXT ) )
+                {
+                    files.add( cfgFile );
+                    lastModified = Math.max( lastModified, cfgFile.lastModified() );
+                }
+                else if ( cfgFile.isDirectory() )
+                {
+                    final DirectoryScan subdir = new DirectoryScan( cfgFile );
+                    subdir.fork();
+                    subdirs.add( subdir );
+                }
+            }
+
+            for ( final DirectoryScan subdir : subdirs )
+            {
+                subdir.join();
+                files.addAll( subdir.files );
+                lastModified = Math.max( lastModified, subdir.lastModified );
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * The <code>ParseTask</code> parses a range of configuration files in
+     * parallel. Files which cannot be parsed or whose name does not match
+     * the PID of the configuration are ignored.
+     */
+    @SuppressWarnings("rawtypes")
+    private class ParseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] files;
+
+        private final Dictionary[] parsed;
+
+        private final int from;
+
+        private final int to;
+
+
+        ParseTask( final File[] files, final Dictionary[] parsed, final int from, final int to )
+        {
+            this.files = files;
+            this.parsed = parsed;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from > PARSE_BATCH )
+            {
+                final int middle = ( from + to ) >>> 1;
+                invokeAll( new ParseTask( files, parsed, from, middle ), new ParseTask( files, parsed, middle, to ) );
+                return;
+            }
+
+            for ( int i = from; i < to; i++ )
+            {
+                try
+                {
+                    final Dictionary dict = read( files[i] );
+
+                    // use the dictionary if it has no PID or the PID
+                    // derived file name matches the source file name
+                    if ( dict.get( Constants.SERVICE_PID ) == null
+                        || files[i].equals( getFile( ( String ) dict.get( Constants.SERVICE_PID ) ) ) )
+                    {
+                        parsed[i] = dict;
+                    }
+                }
+                catch ( IOException ioe )
+                {
+                    // ignore, check next file
+                }
+            }
+        }
+    }
 }
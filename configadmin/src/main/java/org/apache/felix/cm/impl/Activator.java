@@ -18,6 +18,8 @@
  */
 package org.apache.felix.cm.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -27,6 +29,7 @@ import java.util.List;
 
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.file.FilePersistenceManager;
+import org.apache.felix.cm.impl.persistence.JournalPersistenceManager;
 import org.apache.felix.cm.impl.persistence.MemoryPersistenceManager;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -87,14 +90,84 @@ public class Activator implements BundleActivator
      */
     public static final String CM_CONFIG_PLUGINS = "felix.cm.config.plugins";
 
+    /**
+     * The name of the framework context property defining the names of the
+     * configuration properties indexed in addition to the
+     * <code>service.pid</code> and <code>service.factoryPid</code> to speed up
+     * listing configurations with filters on these properties.
+     *
+     * @see #start(BundleContext)
+     */
+    private static final String CM_CONFIG_INDEX = "felix.cm.config.index";
+
+    /**
+     * The name of the framework context property defining the location of
+     * the journal of the journal persistence manager (value is
+     * "felix.cm.journal.dir"). If not set the <code>journal</code> directory
+     * in the bundle's persistent storage area is used.
+     *
+     * @see #start(BundleContext)
+     */
+    private static final String CM_JOURNAL_DIR = "felix.cm.journal.dir";
+
+    /**
+     * The name of the framework context property defining whether the
+     * journal persistence manager forces each commit to the storage device
+     * (value is "felix.cm.journal.sync").
+     *
+     * @see #start(BundleContext)
+     */
+    private static final String CM_JOURNAL_SYNC = "felix.cm.journal.sync";
+
+    /**
+     * The name of the framework context property defining the number of
+     * threads used to update <code>ManagedService</code> and
+     * <code>ManagedServiceFactory</code> services (value is
+     * "felix.cm.update.threads"). Updates for the same PID are always
+     * provided in order. If not set a single thread is used.
+     *
+     * @see ConfigurationManager#start()
+     */
+    public static final String CM_UPDATE_THREADS = "felix.cm.update.threads";
+
+    /**
+     * The name of the framework context property defining whether a
+     * configuration update not yet provided to the <code>ManagedService</code>
+     * or <code>ManagedServiceFactory</code> services is dropped if the
+     * configuration is updated again (value is "felix.cm.update.coalesce").
+     * Services then only receive the latest revision. The default is
+     * <code>false</code>.
+     *
+     * @see ConfigurationManager#start()
+     */
+    public static final String CM_UPDATE_COALESCE = "felix.cm.update.coalesce";
+
+    /**
+     * The name of the framework context property defining whether the file
+     * persistence manager keeps a binary snapshot of all configurations to
+     * speed up startup (value is "felix.cm.snapshot").
+     *
+     * @see #start(BundleContext)
+     */
+    private static final String CM_SNAPSHOT = "felix.cm.snapshot";
+
     private volatile DependencyTracker tracker;
 
     // the service registration of the default file persistence manager
     private volatile ServiceRegistration<PersistenceManager> filepmRegistration;
 
+    // the default file persistence manager, once it has been used
+    private volatile FilePersistenceManager filepm;
+
     // the service registration of the memory persistence manager
     private volatile ServiceRegistration<PersistenceManager> memorypmRegistration;
 
+    // the service registration of the journal persistence manager
+    private volatile ServiceRegistration<PersistenceManager> journalpmRegistration;
+
+    // the journal persistence manager, once it has been used
+    private volatile JournalPersistenceManager journalpm;
+
     @Override
     public void start( final BundleContext bundleContext ) throws BundleException
     {
@@ -107,11 +180,17 @@ public class Activator implements BundleActivator
         // register memory persistence manager
         registerMemoryPersistenceManager(bundleContext);
 
+        // register journal persistence manager if it is used
+        if (JournalPersistenceManager.PERSISTENCE_MANAGER_NAME.equals(getConfiguredPersistenceManager(bundleContext))) {
+            registerJournalPersistenceManager(bundleContext);
+        }
+
         try
         {
             this.tracker = new DependencyTracker(bundleContext, defaultFactory,
                     getConfiguredPersistenceManager(bundleContext),
-                    getConfiguredConfigurationPlugins(bundleContext));
+                    getConfiguredList(bundleContext, CM_CONFIG_PLUGINS),
+                    getConfiguredList(bundleContext, CM_CONFIG_INDEX));
         }
         catch ( InvalidSyntaxException iae )
         {
@@ -129,23 +208,23 @@ public class Activator implements BundleActivator
         return configuredPM;
     }
 
-    private String[] getConfiguredConfigurationPlugins(final BundleContext bundleContext) {
-        String[] configuredPlugins = null;
-        String configuredPls = bundleContext.getProperty(CM_CONFIG_PLUGINS);
-        if (configuredPls != null) {
+    private String[] getConfiguredList(final BundleContext bundleContext, final String name) {
+        String[] configuredValues = null;
+        String configured = bundleContext.getProperty(name);
+        if (configured != null) {
             final List<String> values = new ArrayList<>();
-            configuredPlugins = configuredPls.split(",");
-            for (int i = 0; i < configuredPlugins.length; i++) {
-                final String v = configuredPlugins[i].trim();
+            configuredValues = configured.split(",");
+            for (int i = 0; i < configuredValues.length; i++) {
+                final String v = configuredValues[i].trim();
                 if (!v.isEmpty()) {
                     values.add(v);
                 }
             }
             if (!values.isEmpty()) {
-                configuredPlugins = values.toArray(new String[values.size()]);
+                configuredValues = values.toArray(new String[values.size()]);
             }
         }
-        return configuredPlugins;
+        return configuredValues;
     }
 
     @Override
@@ -164,6 +243,7 @@ public class Activator implements BundleActivator
         // shutdown the file and memory persistence manager and unregister
         this.unregisterFilePersistenceManager();
         this.unregisterMemoryPersistenceManager();
+        this.unregisterJournalPersistenceManager();
     }
 
     private ServiceFactory<PersistenceManager> registerFilePersistenceManager(final BundleContext bundleContext)
@@ -177,15 +257,14 @@ public class Activator implements BundleActivator
         final ServiceFactory<PersistenceManager> factory = new ServiceFactory<PersistenceManager>()
         {
 
-            private volatile FilePersistenceManager fpm;
-
             @Override
             public PersistenceManager getService(Bundle bundle, ServiceRegistration<PersistenceManager> registration) {
-                if (fpm == null) {
-                    fpm = new FilePersistenceManager(bundleContext, bundleContext.getProperty(CM_CONFIG_DIR));
+                if (filepm == null) {
+                    filepm = new FilePersistenceManager(bundleContext, bundleContext.getProperty(CM_CONFIG_DIR),
+                            Boolean.parseBoolean(bundleContext.getProperty(CM_SNAPSHOT)));
                 }
 
-                return fpm;
+                return filepm;
             }
 
             @Override
@@ -209,6 +288,45 @@ public class Activator implements BundleActivator
         memorypmRegistration = bundleContext.registerService(PersistenceManager.class, mpm, props);
     }
 
+    private void registerJournalPersistenceManager(final BundleContext bundleContext) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(Constants.SERVICE_DESCRIPTION, "Platform Journal Persistence Manager");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(PersistenceManager.PROPERTY_NAME, JournalPersistenceManager.PERSISTENCE_MANAGER_NAME);
+
+        final ServiceFactory<PersistenceManager> factory = new ServiceFactory<PersistenceManager>()
+        {
+
+            @Override
+            public synchronized PersistenceManager getService(Bundle bundle, ServiceRegistration<PersistenceManager> registration) {
+                if (journalpm == null) {
+                    String location = bundleContext.getProperty(CM_JOURNAL_DIR);
+                    File dir = location == null ? bundleContext.getDataFile("journal") : new File(location);
+                    if (dir == null) {
+                        dir = new File(System.getProperty("user.dir"), "journal");
+                    }
+                    try {
+                        journalpm = new JournalPersistenceManager(dir.getAbsoluteFile(),
+                                Boolean.parseBoolean(bundleContext.getProperty(CM_JOURNAL_SYNC)));
+                    } catch (final IOException ioe) {
+                        Log.logger.log(LogService.LOG_ERROR, "Cannot open the configuration journal in {0}",
+                                new Object[] {dir, ioe});
+                    }
+                }
+
+                return journalpm;
+            }
+
+            @Override
+            public void ungetService(Bundle bundle, ServiceRegistration<PersistenceManager> registration,
+                    PersistenceManager service) {
+                // nothing to do
+            }
+
+        };
+        journalpmRegistration = bundleContext.registerService(PersistenceManager.class, factory, props);
+    }
+
     private void unregisterFilePersistenceManager()
     {
         if ( this.filepmRegistration != null )
@@ -216,6 +334,18 @@ public class Activator implements BundleActivator
             this.filepmRegistration.unregister();
             this.filepmRegistration = null;
         }
+        if ( this.filepm != null )
+        {
+            try
+            {
+                this.filepm.writeSnapshot();
+            }
+            catch ( final IOException ioe )
+            {
+                Log.logger.log( LogService.LOG_WARNING, "Cannot write the configuration snapshot", ioe );
+            }
+            this.filepm = null;
+        }
     }
 
     private void unregisterMemoryPersistenceManager() {
@@ -225,6 +355,17 @@ public class Activator implements BundleActivator
         }
     }
 
+    private void unregisterJournalPersistenceManager() {
+        if (this.journalpmRegistration != null) {
+            this.journalpmRegistration.unregister();
+            this.journalpmRegistration = null;
+        }
+        if (this.journalpm != null) {
+            this.journalpm.close();
+            this.journalpm = null;
+        }
+    }
+
     public static String getLocation(final Bundle bundle)
     {
         if (System.getSecurityManager() != null)
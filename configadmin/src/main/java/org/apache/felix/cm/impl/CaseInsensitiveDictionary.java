@@ -49,6 +49,12 @@ public class CaseInsensitiveDictionary extends Dictionary<String, Object>
      */
     private SortedMap<String, Object> internalMap;
 
+    /**
+     * Whether the backend map is shared with another dictionary and must be
+     * copied before it is modified.
+     */
+    private boolean shared;
+
     public CaseInsensitiveDictionary()
     {
         internalMap = new TreeMap<>( CASE_INSENSITIVE_ORDER );
@@ -129,6 +135,29 @@ public class CaseInsensitiveDictionary extends Dictionary<String, Object>
     }
 
 
+    /**
+     * Returns a dictionary with the same properties as the given dictionary,
+     * which shares the properties with the given dictionary until it is
+     * modified itself. This allows handing out copies of dictionaries, which
+     * are never modified, without actually copying them unless needed.
+     *
+     * @param props The dictionary to copy, which must not be modified
+     *      afterwards.
+     * @return A dictionary lazily copying the properties on first modification
+     */
+    public static CaseInsensitiveDictionary copyOnWrite( final CaseInsensitiveDictionary props )
+    {
+        return new CaseInsensitiveDictionary( props.internalMap, true );
+    }
+
+
+    private CaseInsensitiveDictionary( final SortedMap<String, Object> internalMap, final boolean shared )
+    {
+        this.internalMap = internalMap;
+        this.shared = shared;
+    }
+
+
     /*
      * (non-Javadoc)
      *
@@ -198,6 +227,7 @@ public class CaseInsensitiveDictionary extends Dictionary<String, Object>
         checkKey( key );
         value = checkValue( value );
 
+        unshare();
         return internalMap.put( key, value );
     }
 
@@ -215,6 +245,7 @@ public class CaseInsensitiveDictionary extends Dictionary<String, Object>
             throw new NullPointerException( "key" );
         }
 
+        unshare();
         return internalMap.remove( key );
     }
 
@@ -233,6 +264,16 @@ public class CaseInsensitiveDictionary extends Dictionary<String, Object>
 
     // ---------- internal -----------------------------------------------------
 
+    private void unshare()
+    {
+        if ( shared )
+        {
+            internalMap = new TreeMap<>( internalMap );
+            shared = false;
+        }
+    }
+
+
     /**
      * Ensures the <code>key</code> complies with the <em>symbolic-name</em>
      * production of the OSGi core specification (1.3.2):
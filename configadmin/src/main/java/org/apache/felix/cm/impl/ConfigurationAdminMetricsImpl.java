@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.cm.ConfigurationAdminMetrics;
+import org.apache.felix.cm.impl.helper.UpdateStatistics;
+import org.apache.felix.cm.impl.persistence.ExtPersistenceManager;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+
+/**
+ * The <code>ConfigurationAdminMetricsImpl</code> is the implementation of
+ * the {@link ConfigurationAdminMetrics} service. The statistics of the
+ * managed services are kept by the service trackers of the
+ * {@link ConfigurationManager}, the statistics of the persistence manager by
+ * its proxy. The statistics of configuration listeners and plugins are kept
+ * here.
+ * <p>
+ * The {@link #printConfiguration(PrintWriter)} method makes this service a
+ * status printer of the Apache Felix Web Console, which lists the slowest
+ * services first.
+ */
+public class ConfigurationAdminMetricsImpl implements ConfigurationAdminMetrics
+{
+
+    private final ConfigurationManager configurationManager;
+
+    private final ExtPersistenceManager persistenceManager;
+
+    private final ConcurrentMap<ServiceReference<?>, UpdateStatistics> listenerStatistics = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ServiceReference<?>, UpdateStatistics> pluginStatistics = new ConcurrentHashMap<>();
+
+
+    ConfigurationAdminMetricsImpl( final ConfigurationManager configurationManager,
+        final ExtPersistenceManager persistenceManager )
+    {
+        this.configurationManager = configurationManager;
+        this.persistenceManager = persistenceManager;
+    }
+
+
+    void recordListener( final ServiceReference<?> listener, final long nanos )
+    {
+        record( listenerStatistics, listener, nanos );
+    }
+
+
+    void recordPlugin( final ServiceReference<?> plugin, final long nanos )
+    {
+        record( pluginStatistics, plugin, nanos );
+    }
+
+
+    @Override
+    public int getUpdateQueueLength()
+    {
+        return configurationManager.getUpdateQueueLength();
+    }
+
+
+    @Override
+    public long getCoalescedUpdates()
+    {
+        return configurationManager.getCoalescedUpdates();
+    }
+
+
+    @Override
+    public Map<ServiceReference<?>, Statistics> getUpdateStatistics()
+    {
+        return new HashMap<ServiceReference<?>, Statistics>( configurationManager.getUpdateStatistics() );
+    }
+
+
+    @Override
+    public Map<ServiceReference<?>, Statistics> getDeliveryStatistics()
+    {
+        return new HashMap<ServiceReference<?>, Statistics>( configurationManager.getDeliveryStatistics() );
+    }
+
+
+    @Override
+    public Map<ServiceReference<?>, Statistics> getListenerStatistics()
+    {
+        return registered( listenerStatistics );
+    }
+
+
+    @Override
+    public Map<ServiceReference<?>, Statistics> getPluginStatistics()
+    {
+        return registered( pluginStatistics );
+    }
+
+
+    @Override
+    public Statistics getLoadStatistics()
+    {
+        final UpdateStatistics statistics = persistenceManager.getLoadStatistics();
+        return ( statistics != null ) ? statistics : new UpdateStatistics();
+    }
+
+
+    @Override
+    public Statistics getStoreStatistics()
+    {
+        final UpdateStatistics statistics = persistenceManager.getStoreStatistics();
+        return ( statistics != null ) ? statistics : new UpdateStatistics();
+    }
+
+
+    /**
+     * Prints the metrics for the Apache Felix Web Console.
+     */
+    public void printConfiguration( final PrintWriter pw )
+    {
+        pw.println( "Configuration Admin Metrics" );
+        pw.println( "===========================" );
+        pw.println();
+        pw.println( "Update queue length: " + getUpdateQueueLength() );
+        pw.println( "Coalesced updates: " + getCoalescedUpdates() );
+        pw.println();
+
+        pw.println( "Persistence Manager" );
+        pw.println( "  load:  " + format( getLoadStatistics() ) );
+        pw.println( "  store: " + format( getStoreStatistics() ) );
+        pw.println();
+
+        print( pw, "Delivery (Configuration.update until ManagedService[Factory].updated returns)",
+            getDeliveryStatistics() );
+        print( pw, "ManagedService[Factory] Calls", getUpdateStatistics() );
+        print( pw, "ConfigurationListener Calls (event fired until configurationEvent returns)",
+            getListenerStatistics() );
+        print( pw, "ConfigurationPlugin Calls", getPluginStatistics() );
+    }
+
+
+    private static void print( final PrintWriter pw, final String title,
+        final Map<ServiceReference<?>, Statistics> statistics )
+    {
+        pw.println( title );
+        if ( statistics.isEmpty() )
+        {
+            pw.println( "  none" );
+        }
+        else
+        {
+            // slowest services first
+            final List<Map.Entry<ServiceReference<?>, Statistics>> entries = new ArrayList<>( statistics.entrySet() );
+            Collections.sort( entries, new Comparator<Map.Entry<ServiceReference<?>, Statistics>>()
+            {
+                @Override
+                public int compare( final Map.Entry<ServiceReference<?>, Statistics> e1,
+                    final Map.Entry<ServiceReference<?>, Statistics> e2 )
+                {
+                    return Long.compare( e2.getValue().getAverageNanos(), e1.getValue().getAverageNanos() );
+                }
+            } );
+            for ( final Map.Entry<ServiceReference<?>, Statistics> entry : entries )
+            {
+                pw.println( "  " + describe( entry.getKey() ) );
+                pw.println( "    " + format( entry.getValue() ) );
+            }
+        }
+        pw.println();
+    }
+
+
+    private static String describe( final ServiceReference<?> ref )
+    {
+        final StringBuilder buf = new StringBuilder();
+        buf.append( "Service " ).append( ref.getProperty( Constants.SERVICE_ID ) );
+        final Object pid = ref.getProperty( Constants.SERVICE_PID );
+        if ( pid != null )
+        {
+            buf.append( ", PID " ).append( ( pid instanceof Object[] ) ? Arrays.toString( ( Object[] ) pid ) : pid );
+        }
+        final Bundle bundle = ref.getBundle();
+        if ( bundle != null )
+        {
+            buf.append( ", bundle " ).append( bundle.getSymbolicName() ).append( " (" ).append( bundle.getBundleId() )
+                .append( ')' );
+        }
+        return buf.toString();
+    }
+
+
+    private static String format( final Statistics statistics )
+    {
+        return String.format( Locale.ROOT, "count=%d, average=%.3fms, max=%.3fms, last=%.3fms, total=%.3fms",
+            statistics.getCount(), millis( statistics.getAverageNanos() ), millis( statistics.getMaxNanos() ),
+            millis( statistics.getLastNanos() ), millis( statistics.getTotalNanos() ) );
+    }
+
+
+    private static double millis( final long nanos )
+    {
+        return nanos / 1000000d;
+    }
+
+
+    private static void record( final ConcurrentMap<ServiceReference<?>, UpdateStatistics> statistics,
+        final ServiceReference<?> ref, final long nanos )
+    {
+        UpdateStatistics stats = statistics.get( ref );
+        if ( stats == null )
+        {
+            // drop the statistics of unregistered services before adding
+            // a new service to not keep them forever
+            removeUnregistered( statistics );
+            stats = new UpdateStatistics();
+            final UpdateStatistics existing = statistics.putIfAbsent( ref, stats );
+            if ( existing != null )
+            {
+                stats = existing;
+            }
+        }
+        stats.record( nanos );
+    }
+
+
+    private static Map<ServiceReference<?>, Statistics> registered(
+        final ConcurrentMap<ServiceReference<?>, UpdateStatistics> statistics )
+    {
+        removeUnregistered( statistics );
+        return new HashMap<ServiceReference<?>, Statistics>( statistics );
+    }
+
+
+    private static void removeUnregistered( final ConcurrentMap<ServiceReference<?>, UpdateStatistics> statistics )
+    {
+        for ( Iterator<ServiceReference<?>> refs = statistics.keySet().iterator(); refs.hasNext(); )
+        {
+            if ( refs.next().getBundle() == null )
+            {
+                refs.remove();
+            }
+        }
+    }
+}
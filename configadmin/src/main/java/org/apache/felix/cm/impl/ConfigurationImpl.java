@@ -148,6 +148,13 @@ public class ConfigurationImpl
      */
     private volatile long revision;
 
+    /**
+     * The value of <code>System.nanoTime()</code> when one of the
+     * <code>update</code> methods has last been called. The delivery of
+     * the configuration to the services is measured from this time.
+     */
+    private volatile long updateTime;
+
     private volatile boolean locked;
 
 
@@ -420,6 +427,8 @@ public class ConfigurationImpl
      */
     public void update() throws IOException
     {
+        this.updateTime = System.nanoTime();
+
         // read configuration from persistence (again)
         if ( persistenceManager.exists( getPidString() ) )
         {
@@ -449,6 +458,7 @@ public class ConfigurationImpl
      */
     public void update( Dictionary<String, ?> properties ) throws IOException
     {
+        this.updateTime = System.nanoTime();
         CaseInsensitiveDictionary newProperties = new CaseInsensitiveDictionary( properties );
 
         Log.logger.log( LogService.LOG_DEBUG, "Updating config {0} with {1}", new Object[]
@@ -588,6 +598,16 @@ public class ConfigurationImpl
     }
 
 
+    /**
+     * Returns the value of <code>System.nanoTime()</code> when this
+     * configuration has last been updated.
+     */
+    long getUpdateTime()
+    {
+        return updateTime;
+    }
+
+
     /**
      * Returns <code>false</code> if this configuration contains configuration
      * properties. Otherwise <code>true</code> is returned and this is a
@@ -33,15 +33,20 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.felix.cm.ConfigurationAdminMetrics;
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.impl.helper.BaseTracker;
 import org.apache.felix.cm.impl.helper.ConfigurationMap;
 import org.apache.felix.cm.impl.helper.ManagedServiceFactoryTracker;
 import org.apache.felix.cm.impl.helper.ManagedServiceTracker;
 import org.apache.felix.cm.impl.helper.TargetedPID;
+import org.apache.felix.cm.impl.helper.UpdateStatistics;
 import org.apache.felix.cm.impl.persistence.CachingPersistenceManagerProxy;
 import org.apache.felix.cm.impl.persistence.ExtPersistenceManager;
 import org.osgi.framework.Bundle;
@@ -149,6 +154,21 @@ public class ConfigurationManager implements BundleListener
     // Coordinator service if available
     private volatile Object coordinator;
 
+    // whether pending updates are replaced by newer updates of the same configuration
+    private volatile boolean coalesceUpdates;
+
+    // the updates not started yet indexed by configuration PID, if coalescing
+    private final Map<String, UpdateConfiguration> pendingUpdates = new HashMap<>();
+
+    // the number of updates replaced by newer updates
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+
+    // the metrics of delivering configurations
+    private final ConfigurationAdminMetricsImpl metrics;
+
+    // the service registration of the metrics
+    private volatile ServiceRegistration<ConfigurationAdminMetrics> metricsRegistration;
+
     public ConfigurationManager(final ExtPersistenceManager persistenceManager,
             final BundleContext bundleContext)
     throws IOException
@@ -157,6 +177,7 @@ public class ConfigurationManager implements BundleListener
         this.bundleContext = bundleContext;
         this.dynamicBindings = new DynamicBindings( bundleContext, persistenceManager.getDelegatee() );
         this.persistenceManager = persistenceManager;
+        this.metrics = new ConfigurationAdminMetricsImpl( this, persistenceManager );
     }
 
     public ServiceReference<ConfigurationAdmin> start()
@@ -171,7 +192,9 @@ public class ConfigurationManager implements BundleListener
         // initialize the asynchonous updater thread
         ThreadGroup tg = new ThreadGroup( "Configuration Admin Service" );
         tg.setDaemon( true );
-        this.updateThread = new UpdateThread( tg, "CM Configuration Updater" );
+        this.updateThread = new UpdateThread( tg, "CM Configuration Updater", getUpdateThreads() );
+        this.coalesceUpdates = bundleContext != null
+                && Boolean.parseBoolean( bundleContext.getProperty( Activator.CM_UPDATE_COALESCE ) );
         this.eventThread = new UpdateThread( tg, "CM Event Dispatcher" );
 
         // register as bundle and service listener
@@ -199,6 +222,16 @@ public class ConfigurationManager implements BundleListener
         configurationAdminRegistration = bundleContext.registerService(ConfigurationAdmin.class, caf,
                 serviceProperties);
 
+        // register the metrics, which are also a web console status printer
+        final Dictionary<String, Object> metricsProperties = new Hashtable<>();
+        metricsProperties.put(Constants.SERVICE_DESCRIPTION, "Configuration Admin Service Metrics");
+        metricsProperties.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        metricsProperties.put("felix.webconsole.label", "configadminmetrics");
+        metricsProperties.put("felix.webconsole.title", "Configuration Admin Metrics");
+        metricsProperties.put("felix.webconsole.configprinter.modes", "always");
+        metricsRegistration = bundleContext.registerService(ConfigurationAdminMetrics.class, metrics,
+                metricsProperties);
+
         // start handling ManagedService[Factory] services
         managedServiceTracker = new ManagedServiceTracker(this);
         managedServiceFactoryTracker = new ManagedServiceFactoryTracker(this);
@@ -212,6 +245,95 @@ public class ConfigurationManager implements BundleListener
     }
 
 
+    // returns the number of threads to update ManagedService[Factory] services
+    private int getUpdateThreads()
+    {
+        final String threads = ( bundleContext != null ) ? bundleContext.getProperty( Activator.CM_UPDATE_THREADS ) : null;
+        if ( threads != null )
+        {
+            try
+            {
+                return Integer.parseInt( threads.trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                Log.logger.log( LogService.LOG_WARNING, "Ignoring invalid number of update threads {0}", new Object[]
+                        { threads } );
+            }
+        }
+        return 1;
+    }
+
+
+    /**
+     * Returns the number of ManagedService[Factory] updates scheduled but
+     * not started yet or -1 if the manager has not been started.
+     */
+    public int getUpdateQueueLength()
+    {
+        final UpdateThread thread = this.updateThread;
+        return ( thread != null ) ? thread.getQueueLength() : -1;
+    }
+
+
+    /**
+     * Returns the number of configuration updates which have not been
+     * provided to ManagedService[Factory] services because a newer update
+     * of the same configuration was scheduled before they were started.
+     */
+    public long getCoalescedUpdates()
+    {
+        return coalescedUpdates.get();
+    }
+
+
+    /**
+     * Returns the update statistics of the tracked ManagedService and
+     * ManagedServiceFactory services indexed by their service reference.
+     */
+    public Map<ServiceReference<?>, UpdateStatistics> getUpdateStatistics()
+    {
+        final Map<ServiceReference<?>, UpdateStatistics> statistics = new HashMap<>();
+        if ( managedServiceTracker != null )
+        {
+            statistics.putAll( managedServiceTracker.getUpdateStatistics() );
+        }
+        if ( managedServiceFactoryTracker != null )
+        {
+            statistics.putAll( managedServiceFactoryTracker.getUpdateStatistics() );
+        }
+        return statistics;
+    }
+
+
+    /**
+     * Returns the delivery statistics of the tracked ManagedService and
+     * ManagedServiceFactory services indexed by their service reference.
+     */
+    public Map<ServiceReference<?>, UpdateStatistics> getDeliveryStatistics()
+    {
+        final Map<ServiceReference<?>, UpdateStatistics> statistics = new HashMap<>();
+        if ( managedServiceTracker != null )
+        {
+            statistics.putAll( managedServiceTracker.getDeliveryStatistics() );
+        }
+        if ( managedServiceFactoryTracker != null )
+        {
+            statistics.putAll( managedServiceFactoryTracker.getDeliveryStatistics() );
+        }
+        return statistics;
+    }
+
+
+    /**
+     * Returns the metrics of delivering configurations.
+     */
+    public ConfigurationAdminMetricsImpl getMetrics()
+    {
+        return metrics;
+    }
+
+
     public void stop( )
     {
 
@@ -237,6 +359,13 @@ public class ConfigurationManager implements BundleListener
             eventThread.terminate();
         }
 
+        final ServiceRegistration<ConfigurationAdminMetrics> metricsReg = metricsRegistration;
+        metricsRegistration = null;
+        if ( metricsReg != null )
+        {
+            metricsReg.unregister();
+        }
+
         // immediately unregister the Configuration Admin before cleaning up
         // clearing the field before actually unregistering the service
         // prevents IllegalStateException in getServiceReference() if
@@ -595,6 +724,10 @@ public class ConfigurationManager implements BundleListener
     {
         // remove the configuration from the cache
         removeConfiguration( config );
+        if ( this.coalesceUpdates )
+        {
+            this.cancelPendingUpdate( config );
+        }
         fireConfigurationEvent( ConfigurationEvent.CM_DELETED, config.getPidString(), config.getFactoryPidString() );
         final Runnable task = new DeleteConfiguration( config );
         if ( this.coordinator == null || !CoordinatorUtil.addToCoordination(this.coordinator, updateThread, task) )
@@ -612,7 +745,11 @@ public class ConfigurationManager implements BundleListener
         {
             fireConfigurationEvent( ConfigurationEvent.CM_UPDATED, config.getPidString(), config.getFactoryPidString() );
         }
-        final Runnable task = new UpdateConfiguration( config );
+        final UpdateConfiguration task = new UpdateConfiguration( config );
+        if ( this.coalesceUpdates && !this.coalesce( task ) )
+        {
+            return;
+        }
         if ( this.coordinator == null || !CoordinatorUtil.addToCoordination(this.coordinator, updateThread, task) )
         {
             updateThread.schedule( task );
@@ -622,6 +759,60 @@ public class ConfigurationManager implements BundleListener
     }
 
 
+    /**
+     * Registers the update as the pending update of its configuration. A
+     * pending update of an older revision which has not been started yet
+     * is cancelled.
+     *
+     * @return <code>false</code> if a pending update of a newer revision
+     *      of the same configuration object exists, in which case the
+     *      update need not be scheduled at all.
+     */
+    private boolean coalesce( final UpdateConfiguration task )
+    {
+        final String pid = task.config.getPidString();
+        synchronized ( pendingUpdates )
+        {
+            final UpdateConfiguration pending = pendingUpdates.get( pid );
+            if ( pending != null && pending.config == task.config && pending.revision > task.revision )
+            {
+                Log.logger.log( LogService.LOG_DEBUG, "UpdateConfiguration({0}) superseded by revision #{1}", new Object[]
+                        { pid, pending.revision } );
+                coalescedUpdates.incrementAndGet();
+                return false;
+            }
+            if ( pending != null && pending.cancel() )
+            {
+                Log.logger.log( LogService.LOG_DEBUG, "UpdateConfiguration({0}) to revision #{1} superseded by revision #{2}",
+                        new Object[] { pid, pending.revision, task.revision } );
+                coalescedUpdates.incrementAndGet();
+            }
+            pendingUpdates.put( pid, task );
+        }
+        return true;
+    }
+
+
+    /**
+     * Cancels the pending update of the deleted configuration, such that
+     * it is neither provided after the deletion nor prevents updates of a
+     * configuration created with the same PID later.
+     */
+    private void cancelPendingUpdate( final ConfigurationImpl config )
+    {
+        final String pid = config.getPidString();
+        synchronized ( pendingUpdates )
+        {
+            final UpdateConfiguration pending = pendingUpdates.remove( pid );
+            if ( pending != null && pending.cancel() )
+            {
+                Log.logger.log( LogService.LOG_DEBUG, "UpdateConfiguration({0}) to revision #{1} cancelled by deletion",
+                        new Object[] { pid, pending.revision } );
+            }
+        }
+    }
+
+
     void locationChanged( ConfigurationImpl config, String oldLocation )
     {
         fireConfigurationEvent( ConfigurationEvent.CM_LOCATION_CHANGED, config.getPidString(), config.getFactoryPidString() );
@@ -923,6 +1114,7 @@ public class ConfigurationManager implements BundleListener
                     ignore = (ranking < 0 ) || (ranking > 1000);
                 }
 
+                final long start = System.nanoTime();
                 try
                 {
                     plugin.modifyConfiguration( sr, ignore ? CaseInsensitiveDictionary.unmodifiable(props) : props );
@@ -934,6 +1126,8 @@ public class ConfigurationManager implements BundleListener
                 }
                 finally
                 {
+                    metrics.recordPlugin( pluginRef, System.nanoTime() - start );
+
                     // ensure ungetting the plugin
                     bundleContext.ungetService( pluginRef );
                 }
@@ -1057,7 +1251,7 @@ public class ConfigurationManager implements BundleListener
      * ManagedService is registered with multiple PIDs an instance of this
      * class is used for each registered PID.
      */
-    public class ManagedServiceUpdate implements Runnable
+    public class ManagedServiceUpdate implements Runnable, UpdateThread.Ordered
     {
         public final List<String> pids = new ArrayList<>();
 
@@ -1131,6 +1325,13 @@ public class ConfigurationManager implements BundleListener
             managedServiceTracker.provideConfiguration( sr, configPid, null, properties, revision, this.configs );
         }
 
+        @Override
+        public String[] getOrderingPids()
+        {
+            return this.pids.toArray( new String[this.pids.size()] );
+        }
+
+
         @Override
         public String toString()
         {
@@ -1145,7 +1346,7 @@ public class ConfigurationManager implements BundleListener
      * multiple PIDs an instance of this class is used for each registered
      * PID.
      */
-    public class ManagedServiceFactoryUpdate implements Runnable
+    public class ManagedServiceFactoryUpdate implements Runnable, UpdateThread.Ordered
     {
         private final String[] factoryPids;
 
@@ -1269,6 +1470,13 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        @Override
+        public String[] getOrderingPids()
+        {
+            return this.factoryPids;
+        }
+
+
         @Override
         public String toString()
         {
@@ -1276,7 +1484,7 @@ public class ConfigurationManager implements BundleListener
         }
     }
 
-    public abstract class ConfigurationProvider<T> implements Runnable
+    public abstract class ConfigurationProvider<T> implements Runnable, UpdateThread.Ordered
     {
 
         protected final ConfigurationImpl config;
@@ -1307,6 +1515,13 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        @Override
+        public String[] getOrderingPids()
+        {
+            return new String[] { getTargetedServicePid().getServicePid() };
+        }
+
+
         protected BaseTracker<T> getHelper()
         {
             if ( this.helper == null )
@@ -1373,15 +1588,43 @@ public class ConfigurationManager implements BundleListener
     public class UpdateConfiguration extends ConfigurationProvider
     {
 
+        // whether this update has been started or cancelled
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        // System.nanoTime() when the configuration has been updated
+        private final long updateTime;
+
         UpdateConfiguration( final ConfigurationImpl config )
         {
             super( config );
+            this.updateTime = config.getUpdateTime();
+        }
+
+
+        // cancels this update unless it has already been started
+        boolean cancel()
+        {
+            return done.compareAndSet( false, true );
         }
 
 
         @Override
         public void run()
         {
+            if ( !done.compareAndSet( false, true ) )
+            {
+                Log.logger.log( LogService.LOG_DEBUG, "Skipping superseded update of configuration {0} to revision #{1}",
+                        new Object[] { config.getPid(), revision } );
+                return;
+            }
+            synchronized ( pendingUpdates )
+            {
+                if ( pendingUpdates.get( config.getPidString() ) == this )
+                {
+                    pendingUpdates.remove( config.getPidString() );
+                }
+            }
+
             Log.logger.log( LogService.LOG_DEBUG, "Updating configuration {0} to revision #{1}", new Object[]
                     { config.getPid(), revision } );
 
@@ -1415,8 +1658,12 @@ public class ConfigurationManager implements BundleListener
                     }
                     else if ( canReceive( refBundle, configBundleLocation ) )
                     {
-                        this.getHelper().provideConfiguration( ref, this.config.getPid(), this.config.getFactoryPid(),
-                                this.properties, this.revision, null );
+                        if ( this.getHelper().provideConfiguration( ref, this.config.getPid(), this.config.getFactoryPid(),
+                                this.properties, this.revision, null ) )
+                        {
+                            final BaseTracker<?> helper = this.getHelper();
+                            helper.recordDelivery( ref, System.nanoTime() - this.updateTime );
+                        }
                     }
                     else
                     {
@@ -1607,6 +1854,9 @@ public class ConfigurationManager implements BundleListener
 
         private ConfigurationEvent event;
 
+        // System.nanoTime() when the event has been fired
+        private final long fired = System.nanoTime();
+
         private FireConfigurationEvent( final ServiceTracker listenerTracker, final int type, final String pid, final String factoryPid)
         {
             this.type = type;
@@ -1730,6 +1980,7 @@ public class ConfigurationManager implements BundleListener
                 }
                 finally
                 {
+                    metrics.recordListener( listenerReferences[serviceIndex], System.nanoTime() - fired );
                     this.listeners[serviceIndex] = null;
                 }
             }
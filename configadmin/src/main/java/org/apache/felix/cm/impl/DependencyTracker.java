@@ -47,7 +47,8 @@ public class DependencyTracker
 
     public DependencyTracker(final BundleContext bundleContext,
             final ServiceFactory<PersistenceManager> defaultFactory,
-            final String pmName, final String[] pluginNames)
+            final String pmName, final String[] pluginNames,
+            final String[] indexedProperties)
             throws BundleException, InvalidSyntaxException
     {
         this.starter = new ConfigurationAdminStarter(bundleContext);
@@ -68,7 +69,8 @@ public class DependencyTracker
         if ( pmName != null )
         {
             Log.logger.log(LogService.LOG_DEBUG, "Using persistence manager {0}", new Object[] {pmName});
-            this.persistenceManagerTracker = new PersistenceManagerTracker(bundleContext, starter, pmName);
+            this.persistenceManagerTracker = new PersistenceManagerTracker(bundleContext, starter, pmName,
+                    indexedProperties);
         }
         else
         {
@@ -85,7 +87,8 @@ public class DependencyTracker
                 throw new BundleException("Unable to register default persistence manager.");
             }
 
-            final ExtPersistenceManager epm = PersistenceManagerTracker.createPersistenceManagerProxy(defaultPM);
+            final ExtPersistenceManager epm = PersistenceManagerTracker.createPersistenceManagerProxy(defaultPM,
+                    indexedProperties);
             if (hasPlugins) {
                 starter.setPersistenceManager(epm);
             } else {
@@ -22,8 +22,13 @@ import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.service.log.LogService;
 
@@ -31,29 +36,67 @@ import org.osgi.service.log.LogService;
 /**
  * The <code>UpdateThread</code> is the thread used to update managed services
  * and managed service factories as well as to send configuration events.
+ * <p>
+ * By default a single worker thread runs all tasks in the order in which they
+ * have been scheduled. If more than one worker thread is configured, tasks
+ * are run concurrently: A task implementing {@link Ordered} is only started
+ * once all tasks scheduled before it for any of the same PIDs have finished.
+ * All other tasks are run in the order in which they have been scheduled
+ * relative to each other.
  */
 public class UpdateThread implements Runnable
 {
 
+    /**
+     * A task whose execution must be ordered with respect to other tasks
+     * for the same PIDs.
+     */
+    public interface Ordered
+    {
+        /**
+         * Returns the PIDs for which this task provides or revokes
+         * configuration. For factory configurations this is the factory PID.
+         */
+        String[] getOrderingPids();
+    }
+
+    // the ordering key of tasks not implementing Ordered
+    private static final String UNORDERED = "";
+
     // the thread group into which the worker thread will be placed
     private final ThreadGroup workerThreadGroup;
 
     // the thread's base name
     private final String workerBaseName;
 
+    // the number of worker threads
+    private final int workerCount;
+
     // the queue of Runnable instances  to be run
     private final BlockingDeque<Runnable> updateTasks = new LinkedBlockingDeque<>();
 
-    // the actual thread
-    private volatile Thread worker;
+    // the last task scheduled per PID, used to order tasks for the same PID
+    private final Map<String, OrderedTask> lastTasks = new HashMap<>();
+
+    // the number of tasks scheduled but not started yet
+    private final AtomicInteger queueLength = new AtomicInteger();
+
+    // the actual threads
+    private volatile Thread[] workers;
 
     // the access control context
     private final AccessControlContext acc;
 
     public UpdateThread( final ThreadGroup tg, final String name )
+    {
+        this( tg, name, 1 );
+    }
+
+    public UpdateThread( final ThreadGroup tg, final String name, final int threads )
     {
         this.workerThreadGroup = tg;
         this.workerBaseName = name;
+        this.workerCount = Math.max( 1, threads );
         this.acc = AccessController.getContext();
     }
 
@@ -66,17 +109,20 @@ public class UpdateThread implements Runnable
     @Override
     public void run()
     {
+        final String idleName = Thread.currentThread().getName();
         try
         {
             Runnable task;
             // return if the task is this thread itself
             while ((task = updateTasks.take()) != this)
             {
+                queueLength.decrementAndGet();
+
                 // otherwise execute the task, log any issues
                 try
                 {
                     // set the thread name indicating the current task
-                    Thread.currentThread().setName( workerBaseName + " (" + task + ")" );
+                    Thread.currentThread().setName( idleName + " (" + task + ")" );
 
                     Log.logger.log( LogService.LOG_DEBUG, "Running task {0}", new Object[]
                         { task } );
@@ -90,7 +136,12 @@ public class UpdateThread implements Runnable
                 finally
                 {
                     // reset the thread name to "idle"
-                    Thread.currentThread().setName( workerBaseName );
+                    Thread.currentThread().setName( idleName );
+
+                    if ( task instanceof OrderedTask )
+                    {
+                        finished( ( OrderedTask ) task );
+                    }
                 }
             }
         }
@@ -125,30 +176,35 @@ public class UpdateThread implements Runnable
 
     /**
      * Starts processing the queued tasks. This method does nothing if the
-     * worker has already been started.
+     * workers have already been started.
      */
     synchronized void start()
     {
-        if ( this.worker == null )
+        if ( this.workers == null )
         {
-            Thread workerThread = new Thread( workerThreadGroup, this, workerBaseName );
-            workerThread.setDaemon( true );
-            workerThread.start();
-            this.worker = workerThread;
+            final Thread[] workerThreads = new Thread[workerCount];
+            for ( int i = 0; i < workerThreads.length; i++ )
+            {
+                final String name = ( workerCount == 1 ) ? workerBaseName : workerBaseName + " #" + ( i + 1 );
+                workerThreads[i] = new Thread( workerThreadGroup, this, name );
+                workerThreads[i].setDaemon( true );
+                workerThreads[i].start();
+            }
+            this.workers = workerThreads;
         }
     }
 
 
     /**
-     * Terminates the worker thread and waits for the thread to have processed
-     * all outstanding events up to and including the termination job. All
-     * jobs {@link #schedule(Runnable) scheduled} after termination has been
-     * initiated will not be processed any more. This method does nothing if
-     * the worker thread is not currently active.
+     * Terminates the worker threads and waits for the threads to have
+     * processed all outstanding events up to and including the termination
+     * job. All jobs {@link #schedule(Runnable) scheduled} after termination
+     * has been initiated will not be processed any more. This method does
+     * nothing if the worker threads are not currently active.
      * <p>
-     * If the worker thread does not terminate within 5 seconds it is killed
+     * If the worker threads do not terminate within 5 seconds they are killed
      * by calling the (deprecated) <code>Thread.stop()</code> method. It may
-     * be that the worker thread may be blocked by a deadlock (it should not,
+     * be that a worker thread may be blocked by a deadlock (it should not,
      * though). In this case hope is that <code>Thread.stop()</code> will be
      * able to released that deadlock at the expense of one or more tasks to
      * not be executed any longer.... In any case an ERROR message is logged
@@ -156,29 +212,36 @@ public class UpdateThread implements Runnable
      */
     synchronized void terminate()
     {
-        if ( this.worker != null )
+        if ( this.workers != null )
         {
-            Thread workerThread = this.worker;
-            this.worker = null;
-
-            updateTasks.offerFirst( this );
+            final Thread[] workerThreads = this.workers;
+            this.workers = null;
 
-            // wait for all updates to terminate (<= 10 seconds !)
-            try
+            for ( int i = 0; i < workerThreads.length; i++ )
             {
-                workerThread.join( 5000 );
-            }
-            catch ( InterruptedException ie )
-            {
-                // don't really care
+                updateTasks.offerFirst( this );
             }
 
-            if ( workerThread.isAlive() )
+            // wait for all updates to terminate (<= 5 seconds !)
+            final long deadline = System.currentTimeMillis() + 5000;
+            for ( final Thread workerThread : workerThreads )
             {
-                Log.logger.log( LogService.LOG_ERROR,
-                    "Worker thread {0} did not terminate within 5 seconds; trying to kill", new Object[]
-                        { workerBaseName } );
-                workerThread.stop();
+                try
+                {
+                    workerThread.join( Math.max( 1, deadline - System.currentTimeMillis() ) );
+                }
+                catch ( InterruptedException ie )
+                {
+                    // don't really care
+                }
+
+                if ( workerThread.isAlive() )
+                {
+                    Log.logger.log( LogService.LOG_ERROR,
+                        "Worker thread {0} did not terminate within 5 seconds; trying to kill", new Object[]
+                            { workerThread.getName() } );
+                    workerThread.stop();
+                }
             }
         }
     }
@@ -190,7 +253,107 @@ public class UpdateThread implements Runnable
         Log.logger.log( LogService.LOG_DEBUG, "Scheduling task {0}", new Object[]
             { update } );
 
-        // append to the task queue
-        updateTasks.offer( update );
+        queueLength.incrementAndGet();
+
+        if ( workerCount == 1 )
+        {
+            // append to the task queue
+            updateTasks.offer( update );
+            return;
+        }
+
+        final String[] pids = ( update instanceof Ordered ) ? ( ( Ordered ) update ).getOrderingPids() : null;
+        final OrderedTask task = new OrderedTask( update,
+            ( pids == null || pids.length == 0 ) ? new String[] { UNORDERED } : pids );
+        synchronized ( lastTasks )
+        {
+            for ( final String pid : task.pids )
+            {
+                final OrderedTask last = lastTasks.put( pid, task );
+                if ( last != null && last != task && !last.successors.contains( task ) )
+                {
+                    last.successors.add( task );
+                    task.predecessors++;
+                }
+            }
+            if ( task.predecessors > 0 )
+            {
+                return;
+            }
+        }
+
+        // append to the task queue if there is nothing to wait for
+        updateTasks.offer( task );
+    }
+
+
+    /**
+     * Returns the number of tasks scheduled but not started yet.
+     */
+    public int getQueueLength()
+    {
+        return queueLength.get();
+    }
+
+
+    // releases the tasks waiting for the finished task
+    private void finished( final OrderedTask task )
+    {
+        final List<OrderedTask> ready = new ArrayList<>();
+        synchronized ( lastTasks )
+        {
+            for ( final String pid : task.pids )
+            {
+                if ( lastTasks.get( pid ) == task )
+                {
+                    lastTasks.remove( pid );
+                }
+            }
+            for ( final OrderedTask successor : task.successors )
+            {
+                if ( --successor.predecessors == 0 )
+                {
+                    ready.add( successor );
+                }
+            }
+        }
+
+        for ( final OrderedTask successor : ready )
+        {
+            updateTasks.offer( successor );
+        }
+    }
+
+
+    // a task run by one of several worker threads
+    private static final class OrderedTask implements Runnable
+    {
+        final Runnable task;
+
+        final String[] pids;
+
+        // the tasks for the same PIDs scheduled after this task
+        final List<OrderedTask> successors = new ArrayList<>( 1 );
+
+        // the number of unfinished tasks for the same PIDs scheduled before
+        int predecessors;
+
+        OrderedTask( final Runnable task, final String[] pids )
+        {
+            this.task = task;
+            this.pids = pids;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+
+        @Override
+        public String toString()
+        {
+            return task.toString();
+        }
     }
 }
@@ -28,7 +28,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.felix.cm.impl.CaseInsensitiveDictionary;
 import org.apache.felix.cm.impl.ConfigurationManager;
@@ -142,6 +144,54 @@ public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<
     }
 
 
+    /**
+     * Returns the update statistics of the tracked services indexed by
+     * their service reference.
+     */
+    public final Map<ServiceReference<S>, UpdateStatistics> getUpdateStatistics()
+    {
+        final Map<ServiceReference<S>, UpdateStatistics> result = new HashMap<ServiceReference<S>, UpdateStatistics>();
+        for ( Map.Entry<ServiceReference<S>, ConfigurationMap<?>> entry : this.getTracked().entrySet() )
+        {
+            result.put( entry.getKey(), entry.getValue().getStatistics() );
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the delivery statistics of the tracked services indexed by
+     * their service reference.
+     *
+     * @see ConfigurationMap#getDeliveryStatistics()
+     */
+    public final Map<ServiceReference<S>, UpdateStatistics> getDeliveryStatistics()
+    {
+        final Map<ServiceReference<S>, UpdateStatistics> result = new HashMap<ServiceReference<S>, UpdateStatistics>();
+        for ( Map.Entry<ServiceReference<S>, ConfigurationMap<?>> entry : this.getTracked().entrySet() )
+        {
+            result.put( entry.getKey(), entry.getValue().getDeliveryStatistics() );
+        }
+        return result;
+    }
+
+
+    /**
+     * Records the time from updating a configuration until it has been
+     * provided to the given service.
+     */
+    @SuppressWarnings("unchecked")
+    public final void recordDelivery( final ServiceReference<?> service, final long nanos )
+    {
+        // the reference has been returned by getServices of this tracker
+        final ConfigurationMap<?> configs = this.getService( ( ServiceReference<S> ) service );
+        if ( configs != null )
+        {
+            configs.getDeliveryStatistics().record( nanos );
+        }
+    }
+
+
     protected abstract ConfigurationMap<?> createConfigurationMap( String[] pids );
 
     /**
@@ -179,11 +229,13 @@ public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<
      *      configuration actually to provide.
      * @param configurationMap The PID to configuration map for PIDs
      *      used by the service to update
+     * @return <code>true</code> if the service has been called with the
+     *      configuration
      *
      * @see ManagedServiceTracker#provideConfiguration(ServiceReference, TargetedPID, TargetedPID, Dictionary, long, ConfigurationMap)
      * @see ManagedServiceFactoryTracker#provideConfiguration(ServiceReference, TargetedPID, TargetedPID, Dictionary, long, ConfigurationMap)
      */
-    public abstract void provideConfiguration( ServiceReference<S> service, TargetedPID configPid,
+    public abstract boolean provideConfiguration( ServiceReference<S> service, TargetedPID configPid,
         TargetedPID factoryPid, Dictionary<String, ?> properties, long revision,
         ConfigurationMap<?> configurationMap);
 
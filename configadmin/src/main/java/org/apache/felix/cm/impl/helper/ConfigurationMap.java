@@ -30,6 +30,10 @@ public abstract class ConfigurationMap<T>
 {
     private Map<String, T> configurations;
 
+    private final UpdateStatistics statistics = new UpdateStatistics();
+
+    private final UpdateStatistics deliveryStatistics = new UpdateStatistics();
+
 
     protected ConfigurationMap( final String[] configuredPids )
     {
@@ -41,6 +45,25 @@ public abstract class ConfigurationMap<T>
     protected abstract Map<String, T> createMap( int size );
 
 
+    /**
+     * Returns the statistics of the calls to the service owning this map.
+     */
+    public UpdateStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+
+    /**
+     * Returns the statistics of the time from updating configurations until
+     * the service owning this map has been called with them.
+     */
+    public UpdateStatistics getDeliveryStatistics()
+    {
+        return deliveryStatistics;
+    }
+
+
     protected abstract boolean shallTake( TargetedPID configPid, TargetedPID factoryPid, long revision );
 
 
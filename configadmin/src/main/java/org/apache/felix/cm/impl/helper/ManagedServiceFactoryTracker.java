@@ -58,14 +58,14 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
 
 
     @Override
-    public void provideConfiguration( ServiceReference<ManagedServiceFactory> reference, TargetedPID configPid,
+    public boolean provideConfiguration( ServiceReference<ManagedServiceFactory> reference, TargetedPID configPid,
         TargetedPID factoryPid, Dictionary<String, ?> properties, long revision, ConfigurationMap<?> configs )
     {
         // Get the ManagedServiceFactory and terminate here if already
         // unregistered from the framework concurrently
         ManagedServiceFactory service = getRealService( reference );
         if (service == null) {
-            return;
+            return false;
         }
 
         // Get the Configuration-to-PID map from the parameter or from
@@ -76,7 +76,7 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
             configs =  this.getService( reference );
             if ( configs == null )
             {
-                return;
+                return false;
             }
         }
 
@@ -84,24 +84,33 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
         // are available, so the service can be updated with the
         // configuration (which may be null)
 
-        if ( configs.shallTake( configPid, factoryPid, revision ) )
+        // Updates to the same service are serialized because they may be
+        // provided by concurrent update threads
+        synchronized ( configs )
         {
-            try
-            {
-                Dictionary props = getProperties( properties, reference, configPid.toString(),
-                    factoryPid.toString() );
-                updated( reference, service, configPid.toString(), props );
-                configs.record( configPid, factoryPid, revision );
-            }
-            catch ( Throwable t )
-            {
-                this.handleCallBackError( t, reference, configPid );
-            }
-            finally
+            if ( configs.shallTake( configPid, factoryPid, revision ) )
             {
-                this.ungetRealService( reference );
+                final long start = System.nanoTime();
+                try
+                {
+                    Dictionary props = getProperties( properties, reference, configPid.toString(),
+                        factoryPid.toString() );
+                    updated( reference, service, configPid.toString(), props );
+                    configs.record( configPid, factoryPid, revision );
+                }
+                catch ( Throwable t )
+                {
+                    this.handleCallBackError( t, reference, configPid );
+                }
+                finally
+                {
+                    configs.getStatistics().record( System.nanoTime() - start );
+                    this.ungetRealService( reference );
+                }
+                return true;
             }
         }
+        return false;
     }
 
 
@@ -113,20 +122,25 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
         final ConfigurationMap configs = this.getService( reference );
         if ( service != null && configs != null)
         {
-            if ( configs.removeConfiguration( configPid, factoryPid ) )
+            synchronized ( configs )
             {
-                try
-                {
-                    deleted( reference, service, configPid.toString() );
-                    configs.record( configPid, factoryPid, -1 );
-                }
-                catch ( Throwable t )
-                {
-                    this.handleCallBackError( t, reference, configPid );
-                }
-                finally
+                if ( configs.removeConfiguration( configPid, factoryPid ) )
                 {
-                    this.ungetRealService( reference );
+                    final long start = System.nanoTime();
+                    try
+                    {
+                        deleted( reference, service, configPid.toString() );
+                        configs.record( configPid, factoryPid, -1 );
+                    }
+                    catch ( Throwable t )
+                    {
+                        this.handleCallBackError( t, reference, configPid );
+                    }
+                    finally
+                    {
+                        configs.getStatistics().record( System.nanoTime() - start );
+                        this.ungetRealService( reference );
+                    }
                 }
             }
         }
@@ -78,11 +78,11 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
      * the deleted or invisible configuration.
      */
     @Override
-    public void provideConfiguration( ServiceReference<ManagedService> service, TargetedPID configPid,
+    public boolean provideConfiguration( ServiceReference<ManagedService> service, TargetedPID configPid,
         TargetedPID factoryPid, Dictionary<String, ?> properties, long revision, ConfigurationMap<?> configs )
     {
         Dictionary<String, ?> supplied = ( properties == null ) ? INITIAL_MARKER : properties;
-        updateService( service, configPid, supplied, revision, configs );
+        return updateService( service, configPid, supplied, revision, configs );
     }
 
 
@@ -94,14 +94,14 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
     }
 
 
-    private void updateService( ServiceReference<ManagedService> service, final TargetedPID configPid,
+    private boolean updateService( ServiceReference<ManagedService> service, final TargetedPID configPid,
         Dictionary<String, ?> properties, long revision, ConfigurationMap<?> configs)
     {
         // Get the ManagedService and terminate here if already
         // unregistered from the framework concurrently
         final ManagedService srv = this.getRealService( service );
         if (srv == null) {
-            return;
+            return false;
         }
 
         // Get the Configuration-to-PID map from the parameter or from
@@ -112,7 +112,7 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
             configs = this.getService( service );
             if ( configs == null )
             {
-                return;
+                return false;
             }
         }
 
@@ -120,46 +120,54 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
         // are available, so the service can be updated with the
         // configuration (which may be null)
 
-        boolean doUpdate = false;
-        if ( properties == null )
+        // Updates to the same service are serialized because they may be
+        // provided by concurrent update threads
+        synchronized ( configs )
         {
-            doUpdate = configs.removeConfiguration( configPid, null );
-        }
-        else if ( properties == INITIAL_MARKER )
-        {
-            // initial call to ManagedService may supply null properties
-            properties = null;
-            revision = -1;
-            doUpdate = true;
-        }
-        else if ( revision < 0 || configs.shallTake( configPid, null, revision ) )
-        {
-            // run the plugins and cause the update
-            properties = getProperties( properties, service, configPid.toString(), null );
-            doUpdate = true;
-            revision = Math.abs( revision );
-        }
-        else
-        {
-            // new configuration is not a better match, don't update
-            doUpdate = false;
-        }
-
-        if ( doUpdate )
-        {
-            try
+            boolean doUpdate = false;
+            if ( properties == null )
+            {
+                doUpdate = configs.removeConfiguration( configPid, null );
+            }
+            else if ( properties == INITIAL_MARKER )
             {
-                updated( service, srv, properties );
-                configs.record( configPid, null, revision );
+                // initial call to ManagedService may supply null properties
+                properties = null;
+                revision = -1;
+                doUpdate = true;
             }
-            catch ( Throwable t )
+            else if ( revision < 0 || configs.shallTake( configPid, null, revision ) )
             {
-                this.handleCallBackError( t, service, configPid );
+                // run the plugins and cause the update
+                properties = getProperties( properties, service, configPid.toString(), null );
+                doUpdate = true;
+                revision = Math.abs( revision );
             }
-            finally
+            else
             {
-                this.ungetRealService( service );
+                // new configuration is not a better match, don't update
+                doUpdate = false;
+            }
+
+            if ( doUpdate )
+            {
+                final long start = System.nanoTime();
+                try
+                {
+                    updated( service, srv, properties );
+                    configs.record( configPid, null, revision );
+                }
+                catch ( Throwable t )
+                {
+                    this.handleCallBackError( t, service, configPid );
+                }
+                finally
+                {
+                    configs.getStatistics().record( System.nanoTime() - start );
+                    this.ungetRealService( service );
+                }
             }
+            return doUpdate;
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.helper;
+
+
+import org.apache.felix.cm.ConfigurationAdminMetrics;
+
+
+/**
+ * The <code>UpdateStatistics</code> records how long the calls to the
+ * <code>updated</code> and <code>deleted</code> methods of a single
+ * <code>ManagedService</code> or <code>ManagedServiceFactory</code>
+ * take. It is also used to record the delivery of configurations and
+ * the calls to configuration plugins, configuration listeners and the
+ * persistence manager.
+ */
+public class UpdateStatistics implements ConfigurationAdminMetrics.Statistics
+{
+    private long count;
+
+    private long totalNanos;
+
+    private long maxNanos;
+
+    private long lastNanos;
+
+
+    public synchronized void record( final long nanos )
+    {
+        this.count++;
+        this.totalNanos += nanos;
+        this.maxNanos = Math.max( this.maxNanos, nanos );
+        this.lastNanos = nanos;
+    }
+
+
+    /**
+     * Returns the number of recorded calls.
+     */
+    @Override
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * Returns the total time in nanoseconds of the recorded calls.
+     */
+    @Override
+    public synchronized long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+
+    /**
+     * Returns the average time in nanoseconds of a recorded call or
+     * zero if no call has been recorded yet.
+     */
+    @Override
+    public synchronized long getAverageNanos()
+    {
+        return ( count == 0 ) ? 0 : totalNanos / count;
+    }
+
+
+    /**
+     * Returns the time in nanoseconds of the longest recorded call.
+     */
+    @Override
+    public synchronized long getMaxNanos()
+    {
+        return maxNanos;
+    }
+
+
+    /**
+     * Returns the time in nanoseconds of the last recorded call.
+     */
+    @Override
+    public synchronized long getLastNanos()
+    {
+        return lastNanos;
+    }
+
+
+    @Override
+    public synchronized String toString()
+    {
+        return "UpdateStatistics: count=" + count + ", average=" + getAverageNanos() + "ns, max=" + maxNanos
+            + "ns, last=" + lastNanos + "ns";
+    }
+}
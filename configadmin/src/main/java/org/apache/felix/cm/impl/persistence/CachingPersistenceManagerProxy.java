@@ -30,6 +30,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -37,6 +38,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.impl.CaseInsensitiveDictionary;
 import org.apache.felix.cm.impl.SimpleFilter;
+import org.apache.felix.cm.impl.helper.UpdateStatistics;
 import org.osgi.framework.Constants;
 import org.osgi.service.cm.ConfigurationAdmin;
 
@@ -46,6 +48,12 @@ import org.osgi.service.cm.ConfigurationAdmin;
  * underlying actual {@link PersistenceManager} implementation. All API calls
  * are also (or primarily) routed through a local cache of dictionaries indexed
  * by the <code>service.pid</code>.
+ * <p>
+ * In addition the cached dictionaries are indexed by the values of the
+ * <code>service.factoryPid</code> property and of any further configured
+ * properties. Filters with equality terms on these properties, or on the
+ * <code>service.pid</code>, only match the dictionaries found in the indexes
+ * instead of all cached dictionaries.
  */
 public class CachingPersistenceManagerProxy implements ExtPersistenceManager
 {
@@ -59,6 +67,22 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
     /** Protecting lock */
     private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
 
+    /**
+     * Whether the persistence manager is called without holding the global
+     * lock when storing and deleting, because it orders concurrent writes
+     * itself and commits them together.
+     */
+    private final boolean concurrentWrites;
+
+    /** Locks ordering the concurrent writes of the same pid */
+    private final Object[] pidLocks = new Object[64];
+
+    /** Statistics of loading single configurations */
+    private final UpdateStatistics loadStatistics = new UpdateStatistics();
+
+    /** Statistics of storing configurations */
+    private final UpdateStatistics storeStatistics = new UpdateStatistics();
+
     /**
      * Indicates whether the getDictionaries method has already been called
      * and the cache is complete with respect to the contents of the underlying
@@ -67,15 +91,47 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
     private volatile boolean fullyLoaded;
 
     /** Factory configuration cache. */
-    private final Map<String, Set<String>> factoryConfigCache = new HashMap<>();
+    private final PropertyIndex factoryConfigCache = new PropertyIndex();
+
+    /** Property indexes by property name, including the factory pid index */
+    private final Map<String, PropertyIndex> indexes = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
 
     /**
      * Creates a new caching layer for the given actual {@link PersistenceManager}.
      * @param pm The actual {@link PersistenceManager}
      */
     public CachingPersistenceManagerProxy( final PersistenceManager pm )
+    {
+        this( pm, null );
+    }
+
+    /**
+     * Creates a new caching layer for the given actual {@link PersistenceManager}
+     * indexing the given properties in addition to the <code>service.pid</code>
+     * and <code>service.factoryPid</code>.
+     * @param pm The actual {@link PersistenceManager}
+     * @param indexedProperties The names of additional properties to index,
+     *      may be <code>null</code>
+     */
+    public CachingPersistenceManagerProxy( final PersistenceManager pm, final String[] indexedProperties )
     {
         this.pm = pm;
+        this.concurrentWrites = pm instanceof JournalPersistenceManager;
+        for ( int i = 0; i < this.pidLocks.length; i++ )
+        {
+            this.pidLocks[i] = new Object();
+        }
+        this.indexes.put( ConfigurationAdmin.SERVICE_FACTORYPID, this.factoryConfigCache );
+        if ( indexedProperties != null )
+        {
+            for ( final String name : indexedProperties )
+            {
+                if ( !this.indexes.containsKey( name ) && !Constants.SERVICE_PID.equalsIgnoreCase( name ) )
+                {
+                    this.indexes.put( name, new PropertyIndex() );
+                }
+            }
+        }
     }
 
     @Override
@@ -84,35 +140,52 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         return pm;
     }
 
+    @Override
+    public UpdateStatistics getLoadStatistics()
+    {
+        return loadStatistics;
+    }
+
+    @Override
+    public UpdateStatistics getStoreStatistics()
+    {
+        return storeStatistics;
+    }
+
     /**
      * Remove the configuration with the given PID. This implementation removes
      * the entry from the cache before calling the underlying persistence
-     * manager.
+     * manager, unless the persistence manager is called without holding the
+     * global lock. Then the entry is removed afterwards, so the configuration
+     * is not cached again from the persistence manager in the meantime.
      */
     @Override
     public void delete( final String pid ) throws IOException
     {
-        Lock lock = globalLock.writeLock();
-        try
+        if ( concurrentWrites )
         {
-            lock.lock();
-            final Dictionary props = cache.remove( pid );
-            if ( props != null )
+            synchronized ( pidLock( pid ) )
             {
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
+                pm.delete( pid );
+                final Lock lock = globalLock.writeLock();
+                lock.lock();
+                try
                 {
-                    final Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids != null )
-                    {
-                        factoryPids.remove(pid);
-                        if ( factoryPids.isEmpty() )
-                        {
-                            this.factoryConfigCache.remove(factoryPid);
-                        }
-                    }
+                    this.uncache( pid );
+                }
+                finally
+                {
+                    lock.unlock();
                 }
             }
+            return;
+        }
+
+        Lock lock = globalLock.writeLock();
+        try
+        {
+            lock.lock();
+            this.uncache( pid );
             pm.delete(pid);
         }
         finally
@@ -151,7 +224,9 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
      * <p>
      * Note, that each call to this method will return new dictionary objects.
      * That is modifying the contents of a dictionary returned from this method
-     * has no influence on the dictionaries stored in the cache.
+     * has no influence on the dictionaries stored in the cache. The contents
+     * of the cached dictionaries are only copied when a returned dictionary
+     * is first modified.
      */
     @Override
     public Enumeration getDictionaries() throws IOException
@@ -170,22 +245,81 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
             {
                 dict = new CaseInsensitiveDictionary(props);
                 cache.put( pid, dict );
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
+                for ( final Map.Entry<String, PropertyIndex> index : this.indexes.entrySet() )
                 {
-                    Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids == null )
-                    {
-                        factoryPids = new HashSet<>();
-                        this.factoryConfigCache.put(factoryPid, factoryPids);
-                    }
-                    factoryPids.add(pid);
+                    index.getValue().add( pid, dict.get( index.getKey() ) );
                 }
             }
         }
         return dict;
     }
 
+    private final void uncache(final String pid)
+    {
+        final CaseInsensitiveDictionary dict = cache.remove( pid );
+        if ( dict != null )
+        {
+            for ( final Map.Entry<String, PropertyIndex> index : this.indexes.entrySet() )
+            {
+                index.getValue().remove( pid, dict.get( index.getKey() ) );
+            }
+        }
+    }
+
+    /**
+     * Returns the pids of the cached dictionaries which may match the filter
+     * according to the indexes or <code>null</code> if the filter cannot be
+     * answered from the indexes. The returned set must not be modified.
+     */
+    private Set<String> getCandidates(final SimpleFilter filter)
+    {
+        switch ( filter.getOperation() )
+        {
+            case SimpleFilter.EQ:
+                if ( !( filter.getValue() instanceof String ) )
+                {
+                    return null;
+                }
+                final String value = (String) filter.getValue();
+                if ( Constants.SERVICE_PID.equalsIgnoreCase( filter.getName() ) )
+                {
+                    return cache.containsKey( value ) ? Collections.singleton( value ) : Collections.<String>emptySet();
+                }
+                final PropertyIndex index = this.indexes.get( filter.getName() );
+                return index == null ? null : index.get( value );
+
+            case SimpleFilter.AND:
+                // the smallest candidate set of the indexed terms
+                Set<String> smallest = null;
+                for ( final SimpleFilter child : (List<SimpleFilter>) filter.getValue() )
+                {
+                    final Set<String> candidates = getCandidates( child );
+                    if ( candidates != null && ( smallest == null || candidates.size() < smallest.size() ) )
+                    {
+                        smallest = candidates;
+                    }
+                }
+                return smallest;
+
+            case SimpleFilter.OR:
+                // the union of the candidate sets if all terms are indexed
+                final Set<String> union = new HashSet<>();
+                for ( final SimpleFilter child : (List<SimpleFilter>) filter.getValue() )
+                {
+                    final Set<String> candidates = getCandidates( child );
+                    if ( candidates == null )
+                    {
+                        return null;
+                    }
+                    union.addAll( candidates );
+                }
+                return union;
+
+            default:
+                return null;
+        }
+    }
+
     @Override
     public Collection<Dictionary> getDictionaries( final SimpleFilter filter ) throws IOException
     {
@@ -212,13 +346,29 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
                 }
             }
 
-            // Deep copy the configuration to avoid any threading issue
+            // only consider the dictionaries found in the indexes, if any
+            Collection<CaseInsensitiveDictionary> dicts = cache.values();
+            final Set<String> candidates = filter == null ? null : getCandidates( filter );
+            if ( candidates != null )
+            {
+                dicts = new ArrayList<>( candidates.size() );
+                for ( final String pid : candidates )
+                {
+                    final CaseInsensitiveDictionary d = cache.get( pid );
+                    if ( d != null )
+                    {
+                        dicts.add( d );
+                    }
+                }
+            }
+
+            // Copy the configuration on write to avoid any threading issue
             final List<Dictionary> configs = new ArrayList<>();
-            for (final Dictionary d : cache.values())
+            for (final CaseInsensitiveDictionary d : dicts)
             {
                 if ( d.get( Constants.SERVICE_PID ) != null && ( filter == null || filter.matches( d ) ) )
                 {
-                    configs.add( new CaseInsensitiveDictionary( d ) );
+                    configs.add( CaseInsensitiveDictionary.copyOnWrite( d ) );
                 }
             }
             return configs;
@@ -256,14 +406,16 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
                 loaded = cache.get( pid );
                 if ( loaded == null )
                 {
+                    final long start = System.nanoTime();
                     final Dictionary props = pm.load( pid );
+                    loadStatistics.record( System.nanoTime() - start );
                     if ( props != null )
                     {
                         loaded = this.cache(props);
                     }
                 }
             }
-            return loaded == null ? null : new CaseInsensitiveDictionary(loaded);
+            return loaded == null ? null : CaseInsensitiveDictionary.copyOnWrite(loaded);
         }
         finally
         {
@@ -280,16 +432,44 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
      * Note, that actually a copy of the dictionary is stored in the cache. That
      * is subsequent modification to the given dictionary has no influence on
      * the cached data.
+     * <p>
+     * A persistence manager committing concurrent writes together is called
+     * without holding the global lock, only ordered with the other writes of
+     * the pid.
      */
     @Override
     public void store( final String pid, final Dictionary properties ) throws IOException
     {
+        if ( concurrentWrites )
+        {
+            synchronized ( pidLock( pid ) )
+            {
+                final long start = System.nanoTime();
+                pm.store( pid, properties );
+                storeStatistics.record( System.nanoTime() - start );
+                final Lock lock = globalLock.writeLock();
+                lock.lock();
+                try
+                {
+                    this.uncache( pid );
+                    this.cache( properties );
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+            return;
+        }
+
         final Lock lock = globalLock.writeLock();
         try
         {
             lock.lock();
+            final long start = System.nanoTime();
             pm.store( pid, properties );
-            this.cache.remove(pid);
+            storeStatistics.record( System.nanoTime() - start );
+            this.uncache(pid);
             this.cache(properties);
         }
         finally
@@ -298,6 +478,11 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         }
     }
 
+    private Object pidLock( final String pid )
+    {
+        return pidLocks[( pid.hashCode() & 0x7fffffff ) % pidLocks.length];
+    }
+
     @Override
     public Set<String> getFactoryConfigurationPids(final List<String> targetedFactoryPids )
     throws IOException
@@ -328,11 +513,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
             }
             for(final String targetFactoryPid : targetedFactoryPids)
             {
-                final Set<String> cachedPids = this.factoryConfigCache.get(targetFactoryPid);
-                if ( cachedPids != null )
-                {
-                    pids.addAll(cachedPids);
-                }
+                pids.addAll(this.factoryConfigCache.get(targetFactoryPid));
             }
         }
         finally
@@ -341,4 +522,114 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         }
         return pids;
     }
+
+    /**
+     * The index of the pids of the cached dictionaries by the value of a
+     * property. String values and the String elements of array and collection
+     * values are indexed. The pids of dictionaries with other values are kept
+     * apart as they may match any filter value after type coercion.
+     */
+    private static final class PropertyIndex
+    {
+        private final Map<String, Set<String>> pids = new HashMap<>();
+
+        private final Set<String> unindexed = new HashSet<>();
+
+        void add(final String pid, final Object value)
+        {
+            update( pid, value, true );
+        }
+
+        void remove(final String pid, final Object value)
+        {
+            update( pid, value, false );
+        }
+
+        /**
+         * Returns the pids whose property may be equal to the given value.
+         */
+        Set<String> get(final String value)
+        {
+            final Set<String> found = pids.get( value );
+            if ( unindexed.isEmpty() )
+            {
+                return found == null ? Collections.<String>emptySet() : found;
+            }
+            else if ( found == null )
+            {
+                return unindexed;
+            }
+            final Set<String> result = new HashSet<>( found );
+            result.addAll( unindexed );
+            return result;
+        }
+
+        private void update(final String pid, final Object value, final boolean add)
+        {
+            if ( value == null )
+            {
+                return;
+            }
+            if ( value instanceof String )
+            {
+                update( pid, (String) value, add );
+            }
+            else if ( value instanceof String[] )
+            {
+                for ( final String v : (String[]) value )
+                {
+                    update( pid, v, add );
+                }
+            }
+            else if ( value instanceof Collection && isStrings( (Collection) value ) )
+            {
+                for ( final Object v : (Collection) value )
+                {
+                    update( pid, (String) v, add );
+                }
+            }
+            else if ( add )
+            {
+                unindexed.add( pid );
+            }
+            else
+            {
+                unindexed.remove( pid );
+            }
+        }
+
+        private void update(final String pid, final String value, final boolean add)
+        {
+            Set<String> set = pids.get( value );
+            if ( add )
+            {
+                if ( set == null )
+                {
+                    set = new HashSet<>();
+                    pids.put( value, set );
+                }
+                set.add( pid );
+            }
+            else if ( set != null )
+            {
+                set.remove( pid );
+                if ( set.isEmpty() )
+                {
+                    pids.remove( value );
+                }
+            }
+        }
+
+        private static boolean isStrings(final Collection values)
+        {
+            for ( final Object v : values )
+            {
+                if ( !( v instanceof String ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.impl.SimpleFilter;
+import org.apache.felix.cm.impl.helper.UpdateStatistics;
 
 /**
  * Extension of the {@link PersistenceManager}.
@@ -38,4 +39,15 @@ public interface ExtPersistenceManager extends PersistenceManager
     throws IOException;
 
     PersistenceManager getDelegatee();
+
+    /**
+     * Returns the statistics of loading single configurations from the
+     * delegatee.
+     */
+    UpdateStatistics getLoadStatistics();
+
+    /**
+     * Returns the statistics of storing configurations with the delegatee.
+     */
+    UpdateStatistics getStoreStatistics();
 }
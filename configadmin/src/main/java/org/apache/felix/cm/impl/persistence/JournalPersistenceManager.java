@@ -0,0 +1,756 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+import org.apache.felix.cm.PersistenceManager;
+import org.apache.felix.cm.file.ConfigurationHandler;
+
+
+/**
+ * The <code>JournalPersistenceManager</code> stores all configurations in a
+ * single append-only journal file instead of one file per configuration.
+ * <p>
+ * Each {@link #store(String, Dictionary)} and {@link #delete(String)} appends
+ * a record to the journal. Records appended concurrently by several threads
+ * are written to the journal together by whichever thread gets to write
+ * first (group commit), so bulk updates need far fewer file operations than
+ * the {@link org.apache.felix.cm.file.FilePersistenceManager}. If the journal
+ * is synchronized, the records are also forced to the storage device before
+ * the calls return.
+ * <p>
+ * The current configurations are kept in memory in their serialized form.
+ * When more than half of the journal consists of records replaced by later
+ * records, the journal is compacted by writing the current configurations to
+ * a new journal file which then atomically replaces the journal.
+ * <p>
+ * Each record carries its length and a checksum. When the journal is opened
+ * after a crash, a partially written record at the end of the journal is
+ * detected and cut off, thus restoring the configurations as of the last
+ * completely written record.
+ */
+public class JournalPersistenceManager implements PersistenceManager
+{
+
+    /**
+     * The name of this persistence manager when registered in the service registry.
+     * (value is "journal").
+     */
+    public static final String PERSISTENCE_MANAGER_NAME = "journal";
+
+    /**
+     * The name of the journal file in the journal directory.
+     */
+    static final String JOURNAL_FILE = "config.journal";
+
+    /**
+     * The extension of the journal file while it is being compacted.
+     */
+    private static final String TMP_EXT = ".tmp";
+
+    private static final int MAGIC = 0x46434d4a; // "FCMJ"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    // record length and checksum preceding the record body
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte OP_STORE = 1;
+
+    private static final byte OP_DELETE = 2;
+
+    /**
+     * The minimum size of replaced records in the journal before the journal
+     * is compacted.
+     */
+    static final long COMPACT_THRESHOLD = 1024 * 1024;
+
+    private final File journal;
+
+    private final boolean sync;
+
+    /** The current configurations by pid in journal order */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private FileChannel channel;
+
+    /** The size of the journal including records not written yet */
+    private long size;
+
+    /** The size of the records of the current configurations */
+    private long liveSize;
+
+    /** The records to be written by the next commit */
+    private Batch pending = new Batch();
+
+    /** Whether a thread is currently writing a batch */
+    private boolean committing;
+
+    /** The batch currently written, <code>null</code> if not committing */
+    private Batch writing;
+
+
+    /**
+     * Opens the journal in the given directory creating the directory and
+     * the journal if needed.
+     *
+     * @param directory The directory of the journal file
+     * @param sync Whether to force written records to the storage device
+     *      before returning from {@link #store(String, Dictionary)} and
+     *      {@link #delete(String)}.
+     *
+     * @throws IOException If the journal cannot be created or read
+     */
+    public JournalPersistenceManager( final File directory, final boolean sync ) throws IOException
+    {
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory " + directory );
+        }
+
+        this.journal = new File( directory, JOURNAL_FILE );
+        this.sync = sync;
+
+        // a left over compacted journal was not completely written
+        final File tmp = new File( directory, JOURNAL_FILE + TMP_EXT );
+        if ( tmp.exists() && !tmp.delete() )
+        {
+            throw new IOException( "Cannot remove incompletely compacted journal " + tmp );
+        }
+
+        this.open();
+    }
+
+
+    /**
+     * Returns the journal file.
+     */
+    public File getJournal()
+    {
+        return journal;
+    }
+
+
+    /**
+     * Closes the journal. Any further calls to this instance fail.
+     */
+    public synchronized void close()
+    {
+        if ( channel != null )
+        {
+            try
+            {
+                channel.close();
+            }
+            catch ( IOException ioe )
+            {
+                // ignore
+            }
+            channel = null;
+        }
+        entries.clear();
+    }
+
+
+    @Override
+    public synchronized boolean exists( final String pid )
+    {
+        return entries.containsKey( pid );
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Dictionary load( final String pid ) throws IOException
+    {
+        final Entry entry;
+        synchronized ( this )
+        {
+            entry = entries.get( pid );
+        }
+        if ( entry == null )
+        {
+            throw new IOException( "No configuration stored for " + pid );
+        }
+        return entry.read();
+    }
+
+
+    /**
+     * Returns the current configurations. The dictionaries are read from
+     * their serialized form while the enumeration is iterated.
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Enumeration getDictionaries()
+    {
+        final List<Entry> current;
+        synchronized ( this )
+        {
+            current = new ArrayList<>( entries.values() );
+        }
+
+        final Iterator<Entry> iter = current.iterator();
+        return new Enumeration()
+        {
+            private Dictionary next = seek();
+
+            @Override
+            public boolean hasMoreElements()
+            {
+                return next != null;
+            }
+
+            @Override
+            public Object nextElement()
+            {
+                if ( next == null )
+                {
+                    throw new NoSuchElementException();
+                }
+                final Dictionary toReturn = next;
+                next = seek();
+                return toReturn;
+            }
+
+            private Dictionary seek()
+            {
+                while ( iter.hasNext() )
+                {
+                    try
+                    {
+                        return iter.next().read();
+                    }
+                    catch ( IOException ioe )
+                    {
+                        // ignore, check next entry
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void store( final String pid, final Dictionary properties ) throws IOException
+    {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( body );
+        out.writeByte( OP_STORE );
+        out.writeUTF( pid );
+        final int offset = RECORD_HEADER_SIZE + out.size();
+        ConfigurationHandler.write( body, properties );
+
+        final byte[] record = toRecord( body );
+        commit( pid, new Entry( record, offset ), record );
+    }
+
+
+    @Override
+    public void delete( final String pid ) throws IOException
+    {
+        synchronized ( this )
+        {
+            if ( !isStored( pid ) )
+            {
+                return;
+            }
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( body );
+        out.writeByte( OP_DELETE );
+        out.writeUTF( pid );
+
+        commit( pid, null, toRecord( body ) );
+    }
+
+
+    /**
+     * Returns whether the configuration is stored once the records appended
+     * so far have been written, checking the pending batch, the batch being
+     * written and the current configurations in this order.
+     */
+    private boolean isStored( final String pid )
+    {
+        if ( pending.changes.containsKey( pid ) )
+        {
+            return pending.contains( pid );
+        }
+        if ( writing != null && writing.changes.containsKey( pid ) )
+        {
+            return writing.contains( pid );
+        }
+        return entries.containsKey( pid );
+    }
+
+
+    /**
+     * Appends the record to the pending batch and waits for the batch to be
+     * written. If no other thread is writing a batch, the calling thread
+     * writes the pending batch including the records of all other threads
+     * waiting for it.
+     */
+    private void commit( final String pid, final Entry entry, final byte[] record ) throws IOException
+    {
+        final Batch batch;
+        synchronized ( this )
+        {
+            ensureOpen();
+            batch = pending;
+            batch.add( pid, entry, record );
+            size += record.length;
+        }
+
+        boolean interrupted = false;
+        try
+        {
+            while ( true )
+            {
+                synchronized ( this )
+                {
+                    while ( committing && !batch.done )
+                    {
+                        try
+                        {
+                            wait();
+                        }
+                        catch ( InterruptedException ie )
+                        {
+                            interrupted = true;
+                        }
+                    }
+
+                    if ( batch.done )
+                    {
+                        if ( batch.failure != null )
+                        {
+                            throw new IOException( "Failed to write journal " + journal, batch.failure );
+                        }
+                        return;
+                    }
+
+                    // the pending batch is ours to write
+                    committing = true;
+                    writing = batch;
+                    pending = new Batch();
+                }
+
+                write( batch );
+            }
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void write( final Batch batch )
+    {
+        final FileChannel ch;
+        final long start;
+        synchronized ( this )
+        {
+            ch = channel;
+            start = size - batch.size - pending.size;
+        }
+
+        IOException failure = null;
+        try
+        {
+            if ( ch == null )
+            {
+                throw new IOException( "Journal " + journal + " is closed" );
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap( batch.buffer.toByteArray() );
+            while ( buffer.hasRemaining() )
+            {
+                ch.write( buffer );
+            }
+            if ( sync )
+            {
+                ch.force( false );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            failure = ioe;
+        }
+
+        synchronized ( this )
+        {
+            if ( failure == null )
+            {
+                batch.apply();
+            }
+            else
+            {
+                // drop the batch including a partially written record
+                size -= batch.size;
+                try
+                {
+                    if ( channel != null && channel.isOpen() )
+                    {
+                        channel.truncate( start );
+                        channel.position( start );
+                    }
+                    else if ( channel != null )
+                    {
+                        // closed by interrupting the writing thread
+                        open();
+                        size += pending.size;
+                    }
+                }
+                catch ( IOException ioe )
+                {
+                    // ignore, a partial record is cut off on open
+                }
+            }
+
+            batch.failure = failure;
+            batch.done = true;
+            committing = false;
+            writing = null;
+
+            if ( failure == null && needsCompaction() )
+            {
+                try
+                {
+                    compact();
+                }
+                catch ( IOException ioe )
+                {
+                    // ignore, compaction is retried with the next commit
+                }
+            }
+
+            notifyAll();
+        }
+    }
+
+
+    private boolean needsCompaction()
+    {
+        final long garbage = size - HEADER_SIZE - liveSize;
+        return pending.isEmpty() && garbage > COMPACT_THRESHOLD && garbage > liveSize;
+    }
+
+
+    /**
+     * Writes the current configurations to a new journal which then replaces
+     * the journal. Nothing is done while records are being written.
+     */
+    synchronized void compact() throws IOException
+    {
+        ensureOpen();
+        if ( committing || !pending.isEmpty() )
+        {
+            return;
+        }
+
+        final File tmp = new File( journal.getPath() + TMP_EXT );
+        try ( FileChannel out = FileChannel.open( tmp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( MAGIC ).putInt( VERSION ).flip();
+            writeFully( out, header );
+            for ( final Entry entry : entries.values() )
+            {
+                writeFully( out, ByteBuffer.wrap( entry.record ) );
+            }
+            out.force( true );
+        }
+
+        channel.close();
+        channel = null;
+        try
+        {
+            Files.move( tmp.toPath(), journal.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( AtomicMoveNotSupportedException amnse )
+        {
+            Files.move( tmp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally
+        {
+            // reopen the journal, whether it has been replaced or not
+            open();
+        }
+    }
+
+
+    /**
+     * Opens the journal and reads the current configurations from it. A
+     * partially written record at the end of the journal is cut off.
+     */
+    private synchronized void open() throws IOException
+    {
+        entries.clear();
+        liveSize = 0;
+
+        channel = FileChannel.open( journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE );
+        try
+        {
+            long valid = HEADER_SIZE;
+            if ( channel.size() < HEADER_SIZE )
+            {
+                // new journal or crashed while creating it
+                channel.truncate( 0 );
+                final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+                header.putInt( MAGIC ).putInt( VERSION ).flip();
+                writeFully( channel, header );
+                channel.force( true );
+            }
+            else
+            {
+                channel.position( 0 );
+                final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream( Channels.newInputStream( channel ), 65536 ) );
+                if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+                {
+                    throw new IOException( journal + " is not a configuration journal" );
+                }
+                valid = replay( in, valid, channel.size() );
+                if ( valid < channel.size() )
+                {
+                    channel.truncate( valid );
+                }
+            }
+            channel.position( valid );
+            size = valid;
+        }
+        catch ( IOException ioe )
+        {
+            channel.close();
+            channel = null;
+            throw ioe;
+        }
+    }
+
+
+    /**
+     * Applies the records read from the stream to the current configurations
+     * and returns the position after the last valid record.
+     */
+    private long replay( final DataInputStream in, long valid, final long limit ) throws IOException
+    {
+        final CRC32 crc = new CRC32();
+        while ( true )
+        {
+            final byte[] record;
+            try
+            {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if ( length <= 0 || valid + RECORD_HEADER_SIZE + length > limit )
+                {
+                    return valid;
+                }
+                record = new byte[RECORD_HEADER_SIZE + length];
+                in.readFully( record, RECORD_HEADER_SIZE, length );
+                crc.reset();
+                crc.update( record, RECORD_HEADER_SIZE, length );
+                if ( ( int ) crc.getValue() != checksum )
+                {
+                    return valid;
+                }
+                ByteBuffer.wrap( record ).putInt( length ).putInt( checksum );
+            }
+            catch ( EOFException eofe )
+            {
+                return valid;
+            }
+
+            final DataInputStream body = new DataInputStream(
+                new ByteArrayInputStream( record, RECORD_HEADER_SIZE, record.length - RECORD_HEADER_SIZE ) );
+            final byte op = body.readByte();
+            final String pid = body.readUTF();
+            final Entry old;
+            if ( op == OP_STORE )
+            {
+                final int offset = record.length - body.available();
+                old = entries.put( pid, new Entry( record, offset ) );
+                liveSize += record.length;
+            }
+            else if ( op == OP_DELETE )
+            {
+                old = entries.remove( pid );
+            }
+            else
+            {
+                return valid;
+            }
+            if ( old != null )
+            {
+                liveSize -= old.record.length;
+            }
+            valid += record.length;
+        }
+    }
+
+
+    private void ensureOpen() throws IOException
+    {
+        if ( channel == null )
+        {
+            throw new IOException( "Journal " + journal + " is closed" );
+        }
+    }
+
+
+    private static byte[] toRecord( final ByteArrayOutputStream body )
+    {
+        final byte[] data = body.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update( data, 0, data.length );
+
+        final byte[] record = new byte[RECORD_HEADER_SIZE + data.length];
+        ByteBuffer.wrap( record ).putInt( data.length ).putInt( ( int ) crc.getValue() ).put( data );
+        return record;
+    }
+
+
+    private static void writeFully( final FileChannel ch, final ByteBuffer buffer ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            ch.write( buffer );
+        }
+    }
+
+
+    /**
+     * A current configuration in its serialized form.
+     */
+    private static final class Entry
+    {
+        /** The complete journal record */
+        final byte[] record;
+
+        /** The offset of the properties in the record */
+        final int offset;
+
+        Entry( final byte[] record, final int offset )
+        {
+            this.record = record;
+            this.offset = offset;
+        }
+
+        @SuppressWarnings("rawtypes")
+        Dictionary read() throws IOException
+        {
+            final InputStream ins = new ByteArrayInputStream( record, offset, record.length - offset );
+            return ConfigurationHandler.read( ins );
+        }
+    }
+
+
+    /**
+     * The records written to the journal by a single commit.
+     */
+    private final class Batch
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        /** The changes to apply once written, <code>null</code> for deletes */
+        final Map<String, Entry> changes = new LinkedHashMap<>();
+
+        long size;
+
+        boolean done;
+
+        IOException failure;
+
+        void add( final String pid, final Entry entry, final byte[] record )
+        {
+            buffer.write( record, 0, record.length );
+            changes.remove( pid );
+            changes.put( pid, entry );
+            size += record.length;
+        }
+
+        boolean contains( final String pid )
+        {
+            return changes.get( pid ) != null;
+        }
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        void apply()
+        {
+            for ( final Map.Entry<String, Entry> change : changes.entrySet() )
+            {
+                final Entry old;
+                if ( change.getValue() == null )
+                {
+                    old = entries.remove( change.getKey() );
+                }
+                else
+                {
+                    old = entries.put( change.getKey(), change.getValue() );
+                    liveSize += change.getValue().record.length;
+                }
+                if ( old != null )
+                {
+                    liveSize -= old.record.length;
+                }
+            }
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.impl.CaseInsensitiveDictionary;
 import org.apache.felix.cm.impl.SimpleFilter;
+import org.apache.felix.cm.impl.helper.UpdateStatistics;
 import org.osgi.framework.Constants;
 import org.osgi.service.cm.ConfigurationAdmin;
 
@@ -49,6 +50,19 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
     /** protecting lock */
     private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
 
+    /**
+     * whether the persistence manager is called without holding the lock
+     * when storing and deleting, because it orders concurrent writes itself
+     * and commits them together
+     */
+    private final boolean concurrentWrites;
+
+    /** statistics of loading single configurations */
+    private final UpdateStatistics loadStatistics = new UpdateStatistics();
+
+    /** statistics of storing configurations */
+    private final UpdateStatistics storeStatistics = new UpdateStatistics();
+
     /**
      * Creates a new proxy for the given actual {@link PersistenceManager}.
      * @param pm The actual {@link PersistenceManager}
@@ -56,6 +70,7 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
     public PersistenceManagerProxy( final PersistenceManager pm )
     {
         this.pm = pm;
+        this.concurrentWrites = pm instanceof JournalPersistenceManager;
     }
 
     @Override
@@ -64,6 +79,18 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
         return pm;
     }
 
+    @Override
+    public UpdateStatistics getLoadStatistics()
+    {
+        return loadStatistics;
+    }
+
+    @Override
+    public UpdateStatistics getStoreStatistics()
+    {
+        return storeStatistics;
+    }
+
     /**
      * Remove the configuration with the given PID. This implementation removes
      * the entry from the cache before calling the underlying persistence
@@ -72,6 +99,11 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
     @Override
     public void delete( final String pid ) throws IOException
     {
+        if ( concurrentWrites )
+        {
+            pm.delete( pid );
+            return;
+        }
         Lock lock = globalLock.writeLock();
         try
         {
@@ -170,7 +202,9 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
         try
         {
             lock.lock();
+            final long start = System.nanoTime();
             Dictionary loaded = pm.load( pid );
+            loadStatistics.record( System.nanoTime() - start );
             if ( loaded != null )
             {
                 return new CaseInsensitiveDictionary( loaded );
@@ -196,11 +230,20 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
     @Override
     public void store( String pid, Dictionary properties ) throws IOException
     {
+        if ( concurrentWrites )
+        {
+            final long start = System.nanoTime();
+            pm.store( pid, properties );
+            storeStatistics.record( System.nanoTime() - start );
+            return;
+        }
         Lock lock = globalLock.writeLock();
         try
         {
             lock.lock();
+            final long start = System.nanoTime();
             pm.store( pid, properties );
+            storeStatistics.record( System.nanoTime() - start );
         }
         finally
         {
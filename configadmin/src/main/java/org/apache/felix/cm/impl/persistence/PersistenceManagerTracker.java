@@ -52,12 +52,16 @@ public class PersistenceManagerTracker
 
     private final ConfigurationAdminStarter starter;
 
+    private final String[] indexedProperties;
+
     public PersistenceManagerTracker(final BundleContext bundleContext,
             final ConfigurationAdminStarter starter,
-            final String pmName)
+            final String pmName,
+            final String[] indexedProperties)
             throws BundleException, InvalidSyntaxException
     {
         this.starter = starter;
+        this.indexedProperties = indexedProperties;
         this.bundleContext = bundleContext;
         this.persistenceManagerTracker = new ServiceTracker<>(bundleContext,
                     bundleContext.createFilter("(&(" + Constants.OBJECTCLASS + "=" + PersistenceManager.class.getName() + ")(name=" + pmName + "))"),
@@ -73,7 +77,8 @@ public class PersistenceManagerTracker
         this.persistenceManagerTracker.close();
     }
 
-    public static ExtPersistenceManager createPersistenceManagerProxy(final PersistenceManager pm)
+    public static ExtPersistenceManager createPersistenceManagerProxy(final PersistenceManager pm,
+            final String[] indexedProperties)
     {
         final ExtPersistenceManager extPM;
         if ( pm instanceof NotCachablePersistenceManager )
@@ -82,7 +87,7 @@ public class PersistenceManagerTracker
         }
         else
         {
-            extPM = new CachingPersistenceManagerProxy( pm );
+            extPM = new CachingPersistenceManagerProxy( pm, indexedProperties );
         }
         return extPM;
     }
@@ -93,7 +98,7 @@ public class PersistenceManagerTracker
         final PersistenceManager pm = this.bundleContext.getService(reference);
         if ( pm != null )
         {
-            final ExtPersistenceManager extPM = createPersistenceManagerProxy(pm);
+            final ExtPersistenceManager extPM = createPersistenceManagerProxy(pm, this.indexedProperties);
             final Holder holder = new Holder(reference, extPM);
 
             synchronized ( this.holders )
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.benchmark;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.cm.file.ConfigurationCodec;
+import org.apache.felix.cm.file.ConfigurationHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+
+/**
+ * Compares parsing and serializing configurations with the
+ * {@link ConfigurationCodec} to the {@link ConfigurationHandler}. The
+ * {@code typical} configuration has a dozen properties of the usual types,
+ * the {@code large} configuration additionally has long arrays of strings and
+ * numbers. Run with the GC profiler, as done by {@link #main(String[])}, to
+ * compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationCodecBenchmark
+{
+    @Param({"typical", "large"})
+    public String configuration;
+
+    private Dictionary<String, Object> properties;
+
+    private byte[] data;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException
+    {
+        properties = new Hashtable<>();
+        properties.put( Constants.SERVICE_PID, "org.example.factory.3f1e2d4c-5b6a-4798-8a9b-0c1d2e3f4a5b" );
+        properties.put( ConfigurationAdmin.SERVICE_FACTORYPID, "org.example.factory" );
+        properties.put( ConfigurationAdmin.SERVICE_BUNDLELOCATION, "?" );
+        properties.put( ":org.apache.felix.configadmin.revision:", Long.valueOf( 17 ) );
+        properties.put( "name", "Example configuration with some spaces" );
+        properties.put( "url", "https://alpha.example.org:8443/service?mode=fast" );
+        properties.put( "port", Integer.valueOf( 8443 ) );
+        properties.put( "timeout", Long.valueOf( 30000 ) );
+        properties.put( "ratio", Double.valueOf( 0.75 ) );
+        properties.put( "enabled", Boolean.TRUE );
+        properties.put( "hosts", new String[] { "alpha.example.org", "beta.example.org", "gamma.example.org" } );
+        properties.put( "retries", new int[] { 1, 2, 4, 8 } );
+
+        if ( "large".equals( configuration ) )
+        {
+            final String[] strings = new String[1000];
+            final long[] longs = new long[1000];
+            final Integer[] integers = new Integer[1000];
+            for ( int i = 0; i < strings.length; i++ )
+            {
+                strings[i] = "/content/example/path/" + i;
+                longs[i] = i * 1234567L;
+                integers[i] = Integer.valueOf( i );
+            }
+            properties.put( "paths", strings );
+            properties.put( "offsets", longs );
+            properties.put( "ids", integers );
+            properties.put( "list", Arrays.asList( strings ).subList( 0, 100 ) );
+            for ( int i = 0; i < 100; i++ )
+            {
+                properties.put( "property." + i, "value " + i );
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConfigurationHandler.write( bytes, properties );
+        data = bytes.toByteArray();
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public Dictionary parseHandler() throws IOException
+    {
+        return ConfigurationHandler.read( new ByteArrayInputStream( data ) );
+    }
+
+    @Benchmark
+    public Dictionary<String, Object> parseCodec() throws IOException
+    {
+        return ConfigurationCodec.read( data, 0, data.length );
+    }
+
+    @Benchmark
+    public int serializeHandler() throws IOException
+    {
+        out.reset();
+        ConfigurationHandler.write( out, properties );
+        return out.size();
+    }
+
+    @Benchmark
+    public int serializeCodec() throws IOException
+    {
+        out.reset();
+        ConfigurationCodec.write( out, properties );
+        return out.size();
+    }
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( new CommandLineOptions( args ) )
+            .include( ConfigurationCodecBenchmark.class.getName() )
+            .addProfiler( GCProfiler.class );
+        new Runner( options.build() ).run();
+    }
+}
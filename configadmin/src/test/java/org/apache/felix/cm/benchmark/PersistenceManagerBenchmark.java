@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.benchmark;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.cm.PersistenceManager;
+import org.apache.felix.cm.file.FilePersistenceManager;
+import org.apache.felix.cm.impl.persistence.JournalPersistenceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+
+/**
+ * Compares the {@link FilePersistenceManager}, with and without a snapshot,
+ * with the {@link JournalPersistenceManager}, with and without forcing each
+ * commit to the storage device. The {@code store} benchmark updates the given number of
+ * factory configurations round robin. Run it with more JMH threads, for
+ * example {@code -t 8}, to measure concurrent bulk updates, which the journal
+ * writes by group commit. The {@code startup} benchmark reads all
+ * configurations from a fresh persistence manager instance as done when
+ * Configuration Admin starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceManagerBenchmark
+{
+    @Param({"file", "file-snapshot", "journal", "journal-sync"})
+    public String store;
+
+    @Param({"1000", "10000"})
+    public int configurations;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private File dir;
+
+    private PersistenceManager pm;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        dir = Files.createTempDirectory( "cm-benchmark" ).toFile();
+        pm = create();
+        for ( int i = 0; i < configurations; i++ )
+        {
+            update();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        close( pm );
+        delete( dir );
+    }
+
+    @Benchmark
+    public void store() throws IOException
+    {
+        update();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int startup() throws IOException
+    {
+        final PersistenceManager fresh = create();
+        try
+        {
+            int count = 0;
+            final Enumeration<?> dictionaries = fresh.getDictionaries();
+            while ( dictionaries.hasMoreElements() )
+            {
+                dictionaries.nextElement();
+                count++;
+            }
+            return count;
+        }
+        finally
+        {
+            close( fresh );
+        }
+    }
+
+    private void update() throws IOException
+    {
+        final int n = counter.getAndIncrement();
+        final String pid = "org.example.factory." + ( n % configurations );
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, pid );
+        props.put( ConfigurationAdmin.SERVICE_FACTORYPID, "org.example.factory" );
+        props.put( "name", "configuration " + n );
+        props.put( "port", Integer.valueOf( 8000 + n % 1000 ) );
+        props.put( "enabled", Boolean.TRUE );
+        props.put( "hosts", new String[] { "alpha.example.org", "beta.example.org" } );
+        props.put( ":org.apache.felix.configadmin.revision:", Long.valueOf( n ) );
+        pm.store( pid, props );
+    }
+
+    private PersistenceManager create() throws IOException
+    {
+        switch ( store )
+        {
+            case "file":
+                return new FilePersistenceManager( dir.getAbsolutePath() );
+            case "file-snapshot":
+                return new FilePersistenceManager( null, dir.getAbsolutePath(), true );
+            case "journal":
+                return new JournalPersistenceManager( dir, false );
+            case "journal-sync":
+                return new JournalPersistenceManager( dir, true );
+            default:
+                throw new IllegalArgumentException( store );
+        }
+    }
+
+    private static void close( final PersistenceManager pm )
+    {
+        if ( pm instanceof JournalPersistenceManager )
+        {
+            ( ( JournalPersistenceManager ) pm ).close();
+        }
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] children = file.listFiles();
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            delete( children[i] );
+        }
+        file.delete();
+    }
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( new CommandLineOptions( args ) )
+            .include( PersistenceManagerBenchmark.class.getName() );
+        new Runner( options.build() ).run();
+    }
+}
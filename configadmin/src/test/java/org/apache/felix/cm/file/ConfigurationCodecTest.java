@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfigurationCodecTest
+{
+
+    private static Dictionary<String, Object> createConfiguration()
+    {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( "service.pid", "org.example.pid" );
+        props.put( "string", "with spaces, = signs, \"quotes\", \\ backslashes,\ttabs and\r\nline breaks" );
+        props.put( "unicode", "\u00e4\u00f6\u00fc \u20ac \ud83d\ude00 \u0001 \ud800" );
+        props.put( "empty", "" );
+        props.put( "int", Integer.valueOf( Integer.MIN_VALUE ) );
+        props.put( "long", Long.valueOf( Long.MIN_VALUE ) );
+        props.put( "float", Float.valueOf( -1.5f ) );
+        props.put( "double", Double.valueOf( Double.NaN ) );
+        props.put( "byte", Byte.valueOf( Byte.MAX_VALUE ) );
+        props.put( "short", Short.valueOf( Short.MIN_VALUE ) );
+        props.put( "char", Character.valueOf( '"' ) );
+        props.put( "boolean", Boolean.TRUE );
+        props.put( "ints", new int[] { 0, -1, Integer.MAX_VALUE } );
+        props.put( "longs", new long[] { Long.MAX_VALUE, 42 } );
+        props.put( "floats", new float[] { 0.1f, Float.NEGATIVE_INFINITY } );
+        props.put( "doubles", new double[] { -0.0, Double.MIN_VALUE } );
+        props.put( "bytes", new byte[] { -128, 0 } );
+        props.put( "shorts", new short[] { 1 } );
+        props.put( "chars", new char[] { 'a', ' ', '\n', '\u20ac' } );
+        props.put( "booleans", new boolean[] { true, false } );
+        props.put( "emptyInts", new int[0] );
+        props.put( "strings", new String[] { "a", "b c", "" } );
+        props.put( "Integers", new Integer[] { Integer.valueOf( 1 ), Integer.valueOf( -2 ) } );
+        props.put( "Characters", new Character[] { Character.valueOf( 'x' ) } );
+        props.put( "Booleans", new Boolean[] { Boolean.FALSE } );
+        props.put( "Doubles", new Double[] { Double.valueOf( 2.5 ) } );
+        props.put( "collection", new ArrayList<>( Arrays.asList( Long.valueOf( 1 ), Long.valueOf( 2 ) ) ) );
+        props.put( "stringCollection", new ArrayList<>( Arrays.asList( "x", "y=z" ) ) );
+        props.put( "emptyCollection", Collections.emptyList() );
+        props.put( "name with spaces=and equals", "value" );
+        return props;
+    }
+
+
+    private static byte[] handlerWrite( final Dictionary<String, Object> props ) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigurationHandler.write( out, props );
+        return out.toByteArray();
+    }
+
+
+    private static byte[] codecWrite( final Dictionary<String, Object> props ) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigurationCodec.write( out, props );
+        return out.toByteArray();
+    }
+
+
+    @Test
+    public void testWriteAsConfigurationHandler() throws IOException
+    {
+        final Dictionary<String, Object> props = createConfiguration();
+        Assert.assertArrayEquals( handlerWrite( props ), codecWrite( props ) );
+    }
+
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        final byte[] data = codecWrite( createConfiguration() );
+
+        final Dictionary<String, Object> read = ConfigurationCodec.read( new ByteArrayInputStream( data ) );
+        assertEquivalent( ConfigurationHandler.read( new ByteArrayInputStream( data ) ), read );
+        Assert.assertArrayEquals( new int[] { 0, -1, Integer.MAX_VALUE }, ( int[] ) read.get( "ints" ) );
+        Assert.assertEquals( Long.valueOf( Long.MIN_VALUE ), read.get( "long" ) );
+        Assert.assertEquals( "value", read.get( "name with spaces=and equals" ) );
+        Assert.assertArrayEquals( data, codecWrite( read ) );
+
+        // byte array and buffer with surrounding data
+        final byte[] padded = new byte[data.length + 6];
+        System.arraycopy( data, 0, padded, 3, data.length );
+        assertEquivalent( read, ConfigurationCodec.read( padded, 3, data.length ) );
+        final ByteBuffer buffer = ByteBuffer.allocateDirect( data.length );
+        buffer.put( data ).flip();
+        assertEquivalent( read, ConfigurationCodec.read( buffer ) );
+        Assert.assertFalse( buffer.hasRemaining() );
+    }
+
+
+    @Test
+    public void testNamesAreInterned() throws IOException
+    {
+        final byte[] data = "service.pid=\"a\"\r\nsome.property.name=\"b\"\r\n".getBytes( StandardCharsets.UTF_8 );
+        final Dictionary<String, Object> first = ConfigurationCodec.read( data, 0, data.length );
+        final Dictionary<String, Object> second = ConfigurationCodec.read( data, 0, data.length );
+
+        Assert.assertSame( "service.pid", key( first, "service.pid" ) );
+        Assert.assertSame( key( first, "some.property.name" ), key( second, "some.property.name" ) );
+    }
+
+
+    @Test
+    public void testReadAsConfigurationHandler() throws IOException
+    {
+        final String[] configs = {
+            "",
+            "# comment only",
+            "#mongodb URI\nmongouri=\"127.0.0.1:27017\"\n\n  # custom datastore\ncustomBlobStore=B\"true\"\n",
+            "a = \"1\" \r\n b=I\"2\"\rc=l[\"1\" , \"2\"]\r\nd=T(\"x\",\\\r\n\"y\")",
+            "scripts=[\\\n    \"create path /test\n    set \\\"one\\=two\\\"\n    end\",\\\n  \"x\"\\\n]",
+            "b1=B\"TRUE\"\nb2=b\"yes\"\nc=C\"\"\nc2=c[\"a\",\"\"]\nx=X\"-128\"\ns=S\"+12\"",
+            "u=\"\\u0041\\u00e4\\t\\b\\f\\r\\n\\\\\\z\"\nv=\"\u00e4\u20ac\ud83d\ude00\"",
+            "\u00e4key=\"v\"\n\ud83d\ude00=\"w\"",
+            "key\\ with\\ spaces\\=x=\"v\"",
+            "unknown=Q\"1\"\nnext=\"2\"",
+            "noquotes=value\nother=\"x\"",
+            "a=[\"1\" \"2\"]\nb=(\"1\";\"2\")\nc=\"3\"",
+            "emoji=\ud83d\ude00\"x\"\ny=\"z\"",
+            "whitespace\u3000=\"x\"\u2028next=\"y\"",
+            "empty=()\ne2=[]\ne3=i[]",
+            "\"quoted=\"x\"",
+            "trailing=\"x",
+            "trailing=[\"x\",\\",
+        };
+
+        for ( final String config : configs )
+        {
+            assertReadSame( config.getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        // malformed UTF-8
+        assertReadSame( new byte[] { 'a', '=', '"', ( byte ) 0xc3, '"', '\n', 'b', '=', '"', ( byte ) 0xe2, ( byte ) 0x82,
+            '"' } );
+    }
+
+
+    @Test
+    public void testReadFailures() throws IOException
+    {
+        final String[] configs = { "key", "key\"x\"", "a=\"1\"\nkey\n", "i=I\"1x\"", "i=I\"2147483648\"",
+            "l=L\"9223372036854775808\"", "x=x[\"128\"]", "s=S\"-\"", "u=\"\\uzzzz\"" };
+
+        for ( final String config : configs )
+        {
+            assertReadSame( config.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+
+    @Test
+    public void testRandomInput() throws IOException
+    {
+        final byte[] valid = codecWrite( createConfiguration() );
+        final byte[] alphabet = "=[](),\"\\ \r\n#TILFDXSCBilfdxscb-+09azu".getBytes( StandardCharsets.US_ASCII );
+        final Random random = new Random( 42 );
+        for ( int i = 0; i < 2000; i++ )
+        {
+            final byte[] data = valid.clone();
+            for ( int m = random.nextInt( 5 ); m >= 0; m-- )
+            {
+                data[random.nextInt( data.length )] = alphabet[random.nextInt( alphabet.length )];
+            }
+            assertReadSame( Arrays.copyOf( data, random.nextInt( data.length + 1 ) ) );
+        }
+    }
+
+
+    private static void assertReadSame( final byte[] data ) throws IOException
+    {
+        final String context = new String( data, StandardCharsets.UTF_8 );
+
+        Object expected;
+        try
+        {
+            expected = ConfigurationHandler.read( new ByteArrayInputStream( data ) );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            expected = e;
+        }
+
+        Object actual;
+        try
+        {
+            actual = ConfigurationCodec.read( data, 0, data.length );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            actual = e;
+        }
+
+        if ( expected instanceof Exception || actual instanceof Exception )
+        {
+            // the position in the message of syntax errors may differ
+            Assert.assertEquals( context, expected.getClass(), actual.getClass() );
+        }
+        else
+        {
+            assertEquivalent( ( Dictionary<?, ?> ) expected, ( Dictionary<?, ?> ) actual );
+        }
+    }
+
+
+    private static void assertEquivalent( final Dictionary<?, ?> expected, final Dictionary<?, ?> actual )
+    {
+        Assert.assertEquals( expected.size(), actual.size() );
+        for ( Enumeration<?> keys = expected.keys(); keys.hasMoreElements(); )
+        {
+            final Object key = keys.nextElement();
+            final Object value = expected.get( key );
+            final Object other = actual.get( key );
+            Assert.assertNotNull( String.valueOf( key ), other );
+            Assert.assertEquals( String.valueOf( key ), value.getClass(), other.getClass() );
+            if ( value.getClass().isArray() )
+            {
+                Assert.assertEquals( Array.getLength( value ), Array.getLength( other ) );
+                for ( int i = 0; i < Array.getLength( value ); i++ )
+                {
+                    Assert.assertEquals( Array.get( value, i ), Array.get( other, i ) );
+                }
+            }
+            else
+            {
+                Assert.assertEquals( value, other );
+            }
+        }
+    }
+
+
+    private static String key( final Dictionary<String, Object> props, final String name )
+    {
+        for ( Enumeration<String> keys = props.keys(); keys.hasMoreElements(); )
+        {
+            final String key = keys.nextElement();
+            if ( key.equals( name ) )
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+}
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Array;
@@ -305,6 +306,121 @@ public class FilePersistenceManagerTest
         }
     }
 
+    @Test
+    public void testSnapshot() throws IOException
+    {
+        final File dir = new File( System.getProperty( "java.io.tmpdir" ), "config-snapshot" );
+        final File snapshot = new File( dir.getAbsolutePath() + ".snapshot" );
+        delete( dir );
+        snapshot.delete();
+        fpm = new FilePersistenceManager( null, dir.getAbsolutePath(), true );
+        try
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                Dictionary<String, Object> props = new Hashtable<>();
+                props.put( "service.pid", "snapshot" + i );
+                props.put( "value", Integer.valueOf( i ) );
+                props.put( "values", new long[] { i, -i } );
+                props.put( "list", new ArrayList<>( Arrays.asList( "a", "b" ) ) );
+                fpm.store( "snapshot" + i, props );
+            }
+            setLastModified( dir, System.currentTimeMillis() - 10000 );
+
+            // parsing the files writes the snapshot
+            assertEquals( 100, count( fpm.getDictionaries() ) );
+            assertTrue( snapshot.isFile() );
+
+            // change a file without changing its modification time
+            final File changed = new File( dir, "snapshot7.config" );
+            final long lastModified = changed.lastModified();
+            Dictionary<String, Object> props = new Hashtable<>();
+            props.put( "service.pid", "snapshot7" );
+            props.put( "value", "changed" );
+            try ( FileOutputStream out = new FileOutputStream( changed ) )
+            {
+                ConfigurationHandler.write( out, props );
+            }
+            changed.setLastModified( lastModified );
+
+            // a new instance reads the snapshot
+            fpm = new FilePersistenceManager( null, dir.getAbsolutePath(), true );
+            Dictionary<String, Object> loaded = find( fpm.getDictionaries(), "snapshot7" );
+            assertEquals( Integer.valueOf( 7 ), loaded.get( "value" ) );
+            checkValues( new long[] { 7, -7 }, loaded.get( "values" ) );
+            assertEquals( Arrays.asList( "a", "b" ), loaded.get( "list" ) );
+
+            // a newer file is parsed again
+            changed.setLastModified( System.currentTimeMillis() + 10000 );
+            fpm = new FilePersistenceManager( null, dir.getAbsolutePath(), true );
+            assertEquals( "changed", find( fpm.getDictionaries(), "snapshot7" ).get( "value" ) );
+            setLastModified( dir, System.currentTimeMillis() - 10000 );
+
+            // storing deletes the snapshot, which is written again on request
+            fpm.delete( "snapshot3" );
+            props.put( "value", "stored" );
+            fpm.store( "snapshot7", props );
+            assertFalse( snapshot.exists() );
+            fpm.writeSnapshot();
+            assertTrue( snapshot.isFile() );
+
+            fpm = new FilePersistenceManager( null, dir.getAbsolutePath(), true );
+            assertEquals( 99, count( fpm.getDictionaries() ) );
+            assertEquals( "stored", find( fpm.getDictionaries(), "snapshot7" ).get( "value" ) );
+        }
+        finally
+        {
+            delete( dir );
+            snapshot.delete();
+        }
+    }
+
+    private static void delete( File dir )
+    {
+        File[] children = dir.listFiles();
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            delete( children[i] );
+        }
+        dir.delete();
+    }
+
+    private static void setLastModified( File dir, long time )
+    {
+        File[] children = dir.listFiles();
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            setLastModified( children[i], time );
+        }
+        dir.setLastModified( time );
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static int count( Enumeration dictionaries )
+    {
+        int count = 0;
+        while ( dictionaries.hasMoreElements() )
+        {
+            dictionaries.nextElement();
+            count++;
+        }
+        return count;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Dictionary<String, Object> find( Enumeration dictionaries, String pid )
+    {
+        while ( dictionaries.hasMoreElements() )
+        {
+            Dictionary dict = ( Dictionary ) dictionaries.nextElement();
+            if ( pid.equals( dict.get( "service.pid" ) ) )
+            {
+                return dict;
+            }
+        }
+        return null;
+    }
+
     private void check( String name, Object value ) throws IOException
     {
         Dictionary<String, Object> props = new Hashtable<>();
@@ -20,6 +20,7 @@ package org.apache.felix.cm.impl;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -278,6 +279,31 @@ public class CaseInsensitiveDictionaryTest
     }
 
 
+    @Test
+    public void testCopyOnWrite()
+    {
+        final CaseInsensitiveDictionary dict = new CaseInsensitiveDictionary();
+        dict.put( "Key1", "value1" );
+        dict.put( "key2", "value2" );
+
+        final CaseInsensitiveDictionary copy = CaseInsensitiveDictionary.copyOnWrite( dict );
+        assertEquals( dict, copy );
+        assertEquals( "value1", copy.get( "KEY1" ) );
+
+        copy.put( "key1", "changed" );
+        copy.remove( "KEY2" );
+        copy.put( "key3", "value3" );
+        assertEquals( "changed", copy.get( "key1" ) );
+        assertNull( copy.get( "key2" ) );
+        assertEquals( 2, copy.size() );
+
+        assertEquals( "value1", dict.get( "key1" ) );
+        assertEquals( "value2", dict.get( "key2" ) );
+        assertNull( dict.get( "key3" ) );
+        assertEquals( 2, dict.size() );
+    }
+
+
     private void testFailingKey( String key )
     {
         try
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.apache.felix.cm.ConfigurationAdminMetrics;
+import org.apache.felix.cm.MockPersistenceManager;
+import org.apache.felix.cm.impl.persistence.PersistenceManagerProxy;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+
+public class ConfigurationAdminMetricsImplTest
+{
+
+    @Test
+    public void test_metrics() throws Exception
+    {
+        final PersistenceManagerProxy pm = new PersistenceManagerProxy( new MockPersistenceManager() );
+        final ConfigurationManager configMgr = new ConfigurationManager( pm, null );
+        final ConfigurationAdminMetricsImpl metrics = configMgr.getMetrics();
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, "org.acme.testpid" );
+        pm.store( "org.acme.testpid", props );
+        pm.load( "org.acme.testpid" );
+        pm.load( "org.acme.testpid" );
+        assertEquals( 1, metrics.getStoreStatistics().getCount() );
+        assertEquals( 2, metrics.getLoadStatistics().getCount() );
+
+        final ServiceReference<?> plugin = Mockito.mock( ServiceReference.class );
+        Mockito.when( plugin.getProperty( Constants.SERVICE_ID ) ).thenReturn( 5L );
+        Mockito.when( plugin.getProperty( Constants.SERVICE_PID ) ).thenReturn( "org.acme.plugin" );
+        Mockito.when( plugin.getBundle() ).thenReturn( Mockito.mock( Bundle.class ) );
+        final ServiceReference<?> unregistered = Mockito.mock( ServiceReference.class );
+
+        metrics.recordPlugin( plugin, 3000000 );
+        metrics.recordPlugin( plugin, 1000000 );
+        metrics.recordPlugin( unregistered, 1000000 );
+
+        final Map<ServiceReference<?>, ConfigurationAdminMetrics.Statistics> plugins = metrics.getPluginStatistics();
+        assertEquals( "Statistics of unregistered services are dropped", 1, plugins.size() );
+        final ConfigurationAdminMetrics.Statistics stats = plugins.get( plugin );
+        assertEquals( 2, stats.getCount() );
+        assertEquals( 2000000, stats.getAverageNanos() );
+        assertEquals( 3000000, stats.getMaxNanos() );
+        assertEquals( 1000000, stats.getLastNanos() );
+
+        final StringWriter out = new StringWriter();
+        metrics.printConfiguration( new PrintWriter( out ) );
+        final String printed = out.toString();
+        assertTrue( printed, printed.contains( "Service 5, PID org.acme.plugin" ) );
+        assertTrue( printed, printed.contains( "count=2, average=2.000ms, max=3.000ms, last=1.000ms" ) );
+    }
+}
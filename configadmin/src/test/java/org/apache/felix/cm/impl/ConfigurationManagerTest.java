@@ -20,25 +20,34 @@ package org.apache.felix.cm.impl;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.felix.cm.ConfigurationAdminMetrics;
 import org.apache.felix.cm.MockBundleContext;
 import org.apache.felix.cm.MockLogService;
 import org.apache.felix.cm.MockNotCachablePersistenceManager;
 import org.apache.felix.cm.MockPersistenceManager;
 import org.apache.felix.cm.PersistenceManager;
+import org.apache.felix.cm.impl.helper.ConfigurationMap;
 import org.apache.felix.cm.impl.helper.ManagedServiceFactoryTracker;
+import org.apache.felix.cm.impl.helper.ManagedServiceTracker;
 import org.apache.felix.cm.impl.persistence.CachingPersistenceManagerProxy;
 import org.apache.felix.cm.impl.persistence.PersistenceManagerProxy;
 import org.junit.After;
@@ -52,6 +61,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.cm.SynchronousConfigurationListener;
 import org.osgi.service.log.LogService;
 import org.osgi.util.tracker.ServiceTracker;
@@ -513,6 +523,239 @@ public class ConfigurationManagerTest
         assertEquals(0, pm.getStored().size());
     }
 
+    @Test
+    public void test_coalesceUpdates() throws Exception
+    {
+        final List<Runnable> scheduled = new ArrayList<>();
+        final ConfigurationManager configMgr = createCoalescingConfigurationManager( scheduled );
+
+        Dictionary<String, Object> props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, "org.acme.testpid" );
+        final ConfigurationImpl config = new ConfigurationImpl( configMgr, new MockPersistenceManager(), props );
+        props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, "org.acme.otherpid" );
+        final ConfigurationImpl other = new ConfigurationImpl( configMgr, new MockPersistenceManager(), props );
+
+        // the first two updates are replaced by the third one
+        configMgr.updated( config, false );
+        configMgr.updated( other, false );
+        configMgr.updated( config, false );
+        configMgr.updated( config, false );
+        assertEquals( 4, scheduled.size() );
+        assertEquals( 2, configMgr.getCoalescedUpdates() );
+
+        for ( Runnable task : scheduled )
+        {
+            task.run();
+        }
+
+        // an update already started is not replaced
+        configMgr.updated( config, false );
+        assertEquals( 2, configMgr.getCoalescedUpdates() );
+    }
+
+    @Test
+    public void test_coalesceUpdatesOfRecreatedConfiguration() throws Exception
+    {
+        final List<Runnable> scheduled = new ArrayList<>();
+        final ConfigurationManager configMgr = createCoalescingConfigurationManager( scheduled );
+        setServiceTrackerField( configMgr, "configurationListenerTracker" );
+        setServiceTrackerField( configMgr, "syncConfigurationListenerTracker" );
+
+        final PersistenceManager pm = new MockPersistenceManager();
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, "org.acme.testpid" );
+        props.put( ":org.apache.felix.configadmin.revision:", Long.valueOf( 4 ) );
+        final ConfigurationImpl config = new ConfigurationImpl( configMgr, pm, props );
+        assertEquals( 5, config.getRevision() );
+
+        // the update to revision 5 is still pending when the configuration is deleted
+        configMgr.updated( config, false );
+        config.delete();
+        final ConfigurationManager.UpdateConfiguration deletedUpdate = ( ConfigurationManager.UpdateConfiguration ) scheduled.get( 0 );
+        assertFalse( "Update of deleted configuration must be cancelled", deletedUpdate.cancel() );
+
+        // the update of the recreated configuration to revision 2 is not superseded
+        final ConfigurationImpl recreated = new ConfigurationImpl( configMgr, pm, "org.acme.testpid", null, null );
+        final Dictionary<String, Object> newProps = new Hashtable<>();
+        newProps.put( "prop", "value" );
+        recreated.update( newProps );
+        assertEquals( 2, recreated.getRevision() );
+
+        assertEquals( 3, scheduled.size() );
+        assertTrue( scheduled.get( 1 ) instanceof ConfigurationManager.DeleteConfiguration );
+        assertTrue( scheduled.get( 2 ) instanceof ConfigurationManager.UpdateConfiguration );
+        assertEquals( 0, configMgr.getCoalescedUpdates() );
+
+        // a newer update of the recreated configuration still replaces it
+        recreated.update( newProps );
+        assertEquals( 4, scheduled.size() );
+        assertEquals( 1, configMgr.getCoalescedUpdates() );
+    }
+
+    @Test
+    public void test_deliveryAndListenerStatistics() throws Exception
+    {
+        final String pid = "org.acme.testpid";
+        final List<Dictionary<String, ?>> delivered = new ArrayList<>();
+        final ManagedService managedService = new ManagedService()
+        {
+            @Override
+            public void updated( Dictionary<String, ?> properties )
+            {
+                delivered.add( properties );
+                sleep( 20 );
+            }
+        };
+        final List<ConfigurationEvent> events = new ArrayList<>();
+        final SynchronousConfigurationListener listener = new SynchronousConfigurationListener()
+        {
+            @Override
+            public void configurationEvent( ConfigurationEvent event )
+            {
+                events.add( event );
+                sleep( 10 );
+            }
+        };
+
+        final Bundle bundle = Mockito.mock( Bundle.class );
+        Mockito.when( bundle.getState() ).thenReturn( Bundle.ACTIVE );
+        Mockito.when( bundle.getLocation() ).thenReturn( "test:bundle" );
+        final ServiceReference msRef = Mockito.mock( ServiceReference.class );
+        Mockito.when( msRef.getBundle() ).thenReturn( bundle );
+        Mockito.when( msRef.getProperty( Constants.SERVICE_PID ) ).thenReturn( pid );
+
+        final ConfigurationManager configMgr = new ConfigurationManager(new PersistenceManagerProxy(new MockPersistenceManager()), null);
+        final Field bcField = configMgr.getClass().getDeclaredField("bundleContext");
+        bcField.setAccessible(true);
+        bcField.set(configMgr, new MockBundleContext()
+        {
+            @Override
+            public <S> S getService( ServiceReference<S> reference )
+            {
+                return ( S ) ( reference == msRef ? managedService : null );
+            }
+        });
+        final ServiceRegistration caReg = Mockito.mock( ServiceRegistration.class );
+        Mockito.when( caReg.getReference() ).thenReturn( Mockito.mock( ServiceReference.class ) );
+        final Field srField = configMgr.getClass().getDeclaredField( "configurationAdminRegistration" );
+        srField.setAccessible( true );
+        srField.set( configMgr, caReg );
+        setServiceTrackerField( configMgr, "configurationListenerTracker" );
+        final ServiceReference[] listenerRefs = setServiceTrackerField( configMgr, "syncConfigurationListenerTracker", listener );
+        Mockito.when( listenerRefs[0].getBundle() ).thenReturn( bundle );
+
+        final Field mstField = configMgr.getClass().getDeclaredField("managedServiceTracker");
+        mstField.setAccessible(true);
+        mstField.set(configMgr, new ManagedServiceTracker(configMgr) {
+
+            private final ConfigurationMap<?> configs = createConfigurationMap( new String[] { pid } );
+
+            @Override
+            public void open() {
+            }
+
+            @Override
+            public ServiceReference<ManagedService>[] getServiceReferences() {
+                return new ServiceReference[] { msRef };
+            }
+
+            @Override
+            public ConfigurationMap<?> getService( ServiceReference<ManagedService> reference ) {
+                return reference == msRef ? configs : null;
+            }
+
+            @Override
+            public SortedMap<ServiceReference<ManagedService>, ConfigurationMap<?>> getTracked() {
+                final SortedMap<ServiceReference<ManagedService>, ConfigurationMap<?>> tracked = new TreeMap<>();
+                tracked.put( msRef, configs );
+                return tracked;
+            }
+        });
+        final List<Runnable> scheduled = new ArrayList<>();
+        final Field utField = configMgr.getClass().getDeclaredField("updateThread");
+        utField.setAccessible(true);
+        utField.set(configMgr, new UpdateThread(null, "Test updater") {
+
+            @Override
+            void schedule(Runnable update) {
+                scheduled.add(update);
+            }
+        });
+
+        Dictionary<String, Object> props = new Hashtable<>();
+        props.put( Constants.SERVICE_PID, pid );
+        final ConfigurationImpl config = new ConfigurationImpl( configMgr, new MockPersistenceManager(), props );
+        props = new Hashtable<>();
+        props.put( "prop", "value" );
+        config.update( props );
+
+        // the update is delivered when the scheduled task runs, after the listener returned
+        sleep( 5 );
+        assertEquals( 1, scheduled.size() );
+        assertTrue( scheduled.get( 0 ) instanceof ConfigurationManager.UpdateConfiguration );
+        scheduled.get( 0 ).run();
+        assertEquals( 1, delivered.size() );
+        assertEquals( "value", delivered.get( 0 ).get( "prop" ) );
+
+        final ConfigurationAdminMetricsImpl metrics = configMgr.getMetrics();
+        final ConfigurationAdminMetrics.Statistics delivery = metrics.getDeliveryStatistics().get( msRef );
+        assertEquals( 1, delivery.getCount() );
+        assertTrue( "Delivery time includes the listener, the wait and the update: " + delivery.getLastNanos(),
+                delivery.getLastNanos() >= TimeUnit.MILLISECONDS.toNanos( 35 ) );
+
+        final ConfigurationAdminMetrics.Statistics listenerStats = metrics.getListenerStatistics().get( listenerRefs[0] );
+        assertEquals( events.size(), listenerStats.getCount() );
+        assertTrue( "Listener time includes the event handling: " + listenerStats.getMaxNanos(),
+                listenerStats.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos( 10 ) );
+        assertTrue( "Listener time excludes the delivery: " + listenerStats.getMaxNanos(),
+                listenerStats.getMaxNanos() < delivery.getLastNanos() );
+    }
+
+    private static void sleep( final long millis )
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ConfigurationManager createCoalescingConfigurationManager( final List<Runnable> scheduled )
+            throws Exception
+    {
+        ConfigurationManager configMgr = new ConfigurationManager(new PersistenceManagerProxy(new MockPersistenceManager()), null);
+
+        final Field bcField = configMgr.getClass().getDeclaredField("bundleContext");
+        bcField.setAccessible(true);
+        bcField.set(configMgr, new MockBundleContext());
+        final Field coalesceField = configMgr.getClass().getDeclaredField("coalesceUpdates");
+        coalesceField.setAccessible(true);
+        coalesceField.set(configMgr, Boolean.TRUE);
+
+        final Field mstField = configMgr.getClass().getDeclaredField("managedServiceTracker");
+        mstField.setAccessible(true);
+        mstField.set(configMgr, new ManagedServiceTracker(configMgr) {
+
+            @Override
+            public void open() {
+            }
+        });
+        final Field utField = configMgr.getClass().getDeclaredField("updateThread");
+        utField.setAccessible(true);
+        utField.set(configMgr, new UpdateThread(null, "Test updater") {
+
+            @Override
+            void schedule(Runnable update) {
+                scheduled.add(update);
+            }
+        });
+        return configMgr;
+    }
+
     private void assertNoLog( ConfigurationManager configMgr, int level, String message, Throwable t )
     {
         try
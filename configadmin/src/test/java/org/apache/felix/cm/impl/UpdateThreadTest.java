@@ -19,11 +19,15 @@
 package org.apache.felix.cm.impl;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -50,4 +54,95 @@ public class UpdateThreadTest
             updateThread.terminate();
         }
     }
+
+    @Test
+    public void testSlowUpdateDoesNotBlockOtherPids() throws Exception {
+        final UpdateThread updateThread = new UpdateThread(null, "name", 2);
+        updateThread.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            updateThread.schedule(new OrderedTask("slow") {
+                @Override
+                public void run() {
+                    try {
+                        release.await(1L, TimeUnit.MINUTES);
+                    } catch (InterruptedException ie) {
+                        // ignore
+                    }
+                }
+            });
+            updateThread.schedule(new OrderedTask("fast") {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(1L, TimeUnit.MINUTES));
+        } finally {
+            release.countDown();
+            updateThread.terminate();
+        }
+    }
+
+    @Test
+    public void testOrderPerPid() throws Exception {
+        final UpdateThread updateThread = new UpdateThread(null, "name", 4);
+        updateThread.start();
+        try {
+            final List<String> runs = Collections.synchronizedList(new ArrayList<String>());
+            final CountDownLatch counter = new CountDownLatch(COUNT * 3);
+            for (int i = 0; i < COUNT; ++i) {
+                final int index = i;
+                updateThread.schedule(new OrderedTask("a") {
+                    @Override
+                    public void run() {
+                        runs.add("a" + index);
+                        counter.countDown();
+                    }
+                });
+                updateThread.schedule(new OrderedTask("b") {
+                    @Override
+                    public void run() {
+                        runs.add("b" + index);
+                        counter.countDown();
+                    }
+                });
+                updateThread.schedule(new OrderedTask("a", "b") {
+                    @Override
+                    public void run() {
+                        runs.add("ab" + index);
+                        counter.countDown();
+                    }
+                });
+            }
+            assertTrue(counter.await(1L, TimeUnit.MINUTES));
+            assertEquals(0, updateThread.getQueueLength());
+
+            for (int i = 0; i < COUNT; ++i) {
+                final int ab = runs.indexOf("ab" + i);
+                assertTrue(runs.indexOf("a" + i) < ab);
+                assertTrue(runs.indexOf("b" + i) < ab);
+                if (i > 0) {
+                    assertTrue(runs.indexOf("ab" + (i - 1)) < runs.indexOf("a" + i));
+                    assertTrue(runs.indexOf("ab" + (i - 1)) < runs.indexOf("b" + i));
+                }
+            }
+        } finally {
+            updateThread.terminate();
+        }
+    }
+
+    private abstract static class OrderedTask implements Runnable, UpdateThread.Ordered {
+        private final String[] pids;
+
+        OrderedTask(final String... pids) {
+            this.pids = pids;
+        }
+
+        @Override
+        public String[] getOrderingPids() {
+            return pids;
+        }
+    }
 }
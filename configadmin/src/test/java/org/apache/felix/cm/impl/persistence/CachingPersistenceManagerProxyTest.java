@@ -20,14 +20,24 @@ package org.apache.felix.cm.impl.persistence;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.cm.MockPersistenceManager;
 import org.apache.felix.cm.PersistenceManager;
@@ -178,4 +188,154 @@ public class CachingPersistenceManagerProxyTest
         assertTrue(pids.contains("new_pid_for_newf1"));
         assertTrue(pids.contains("new_pid_for_newf2"));
     }
-}
\ No newline at end of file
+
+    private Set<String> listPids(final CachingPersistenceManagerProxy cpm, final String filter) throws Exception
+    {
+        final Set<String> pids = new HashSet<>();
+        for(final Dictionary dict : cpm.getDictionaries(SimpleFilter.parse(filter)))
+        {
+            pids.add((String) dict.get(Constants.SERVICE_PID));
+        }
+        return pids;
+    }
+
+    @Test public void testIndexedQueries() throws Exception
+    {
+        final PersistenceManager pm = this.createAndPopulatePersistenceManager();
+        final Dictionary<String, Object> tagged = createConfiguration("tagged", null);
+        tagged.put("tags", new String[] {"one", "two"});
+        pm.store("tagged", tagged);
+        final Dictionary<String, Object> numbered = createConfiguration("numbered", null);
+        numbered.put("tags", 2);
+        pm.store("numbered", numbered);
+
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(pm, new String[] {"value", "Tags"});
+
+        assertEquals(Collections.singleton(PID_B), listPids(cpm, "(service.pid=" + PID_B + ")"));
+        assertTrue(listPids(cpm, "(service.pid=foo)").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(FB_PID_A, FB_PID_B)),
+                listPids(cpm, "(service.factoryPid=" + FACTORY_PID_B + ")"));
+        assertEquals(Collections.singleton(FA_PID_B),
+                listPids(cpm, "(&(service.factoryPid=" + FACTORY_PID_A + ")(value=" + PREFIX + FA_PID_B + "))"));
+        assertEquals(new HashSet<>(Arrays.asList(PID_A, FB_PID_A)),
+                listPids(cpm, "(|(VALUE=" + PREFIX + PID_A + ")(value=" + PREFIX + FB_PID_A + "))"));
+        assertTrue(listPids(cpm, "(&(service.factoryPid=" + FACTORY_PID_A + ")(value=" + PREFIX + PID_A + "))").isEmpty());
+
+        // array values are indexed by element, other values are always matched
+        assertEquals(Collections.singleton("tagged"), listPids(cpm, "(tags=two)"));
+        assertEquals(Collections.singleton("numbered"), listPids(cpm, "(tags=2)"));
+
+        // not indexed terms are still evaluated
+        assertEquals(Collections.singleton(FA_PID_C),
+                listPids(cpm, "(&(service.factoryPid=" + FACTORY_PID_A + ")(!(value=" + PREFIX + FA_PID_A + "))(value=*-c))"));
+        assertEquals(10, listPids(cpm, "(|(service.factoryPid=" + FACTORY_PID_A + ")(value=*))").size());
+
+        // indexes follow store and delete
+        cpm.store(FA_PID_A, createConfiguration(FA_PID_A, FACTORY_PID_B));
+        cpm.delete(FA_PID_B);
+        assertEquals(Collections.singleton(FA_PID_C), listPids(cpm, "(service.factoryPid=" + FACTORY_PID_A + ")"));
+        assertEquals(new HashSet<>(Arrays.asList(FA_PID_A, FB_PID_A, FB_PID_B)),
+                listPids(cpm, "(service.factoryPid=" + FACTORY_PID_B + ")"));
+        assertTrue(listPids(cpm, "(value=" + PREFIX + FA_PID_B + ")").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(FA_PID_A, FB_PID_A, FB_PID_B)),
+                cpm.getFactoryConfigurationPids(Collections.singletonList(FACTORY_PID_B)));
+    }
+
+    @Test public void testReturnedDictionariesAreCopies() throws Exception
+    {
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(this.createAndPopulatePersistenceManager());
+
+        final Dictionary listed = cpm.getDictionaries(SimpleFilter.parse("(service.pid=" + PID_A + ")")).iterator().next();
+        listed.remove(Constants.SERVICE_PID);
+        listed.put("value", "changed");
+
+        final Dictionary loaded = cpm.load(PID_A);
+        assertEquals(PID_A, loaded.get(Constants.SERVICE_PID));
+        assertEquals(PREFIX + PID_A, loaded.get("value"));
+        loaded.remove("value");
+        assertNull(loaded.get("value"));
+
+        assertEquals(PREFIX + PID_A, cpm.load(PID_A).get("value"));
+        assertEquals(Collections.singleton(PID_A), listPids(cpm, "(value=" + PREFIX + PID_A + ")"));
+    }
+
+    @Test public void testJournalIsWrittenWithoutGlobalLock() throws Exception
+    {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "caching-journal-test");
+        deleteDirectory(dir);
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final JournalPersistenceManager jpm = new JournalPersistenceManager(dir, false)
+        {
+            @Override
+            public void store(final String pid, final Dictionary properties) throws IOException
+            {
+                if (PID_A.equals(pid))
+                {
+                    storing.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (final InterruptedException ie)
+                    {
+                        throw new IOException(ie);
+                    }
+                }
+                super.store(pid, properties);
+            }
+        };
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(jpm);
+            cpm.store(PID_B, createConfiguration(PID_B, null));
+            final Future<?> store = executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    cpm.store(PID_A, createConfiguration(PID_A, null));
+                    return null;
+                }
+            });
+            assertTrue(storing.await(5, TimeUnit.SECONDS));
+
+            // other configurations are read and written while the store is pending
+            executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    assertEquals(PREFIX + PID_B, cpm.load(PID_B).get("value"));
+                    cpm.store(PID_C, createConfiguration(PID_C, null));
+                    cpm.delete(PID_B);
+                    return null;
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertFalse(cpm.exists(PID_A));
+
+            release.countDown();
+            store.get(5, TimeUnit.SECONDS);
+            assertEquals(PREFIX + PID_A, cpm.load(PID_A).get("value"));
+            assertEquals(new HashSet<>(Arrays.asList(PID_A, PID_C)), listPids(cpm, "(service.pid=*)"));
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdownNow();
+            jpm.close();
+            deleteDirectory(dir);
+        }
+    }
+
+    private static void deleteDirectory(final File dir)
+    {
+        final File[] children = dir.listFiles();
+        for (int i = 0; children != null && i < children.length; i++)
+        {
+            children[i].delete();
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+
+public class JournalPersistenceManagerTest
+{
+    private final File dir = new File( System.getProperty( "java.io.tmpdir" ), "journal-test" );
+
+    private JournalPersistenceManager jpm;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        tearDown();
+        jpm = new JournalPersistenceManager( dir, false );
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if ( jpm != null )
+        {
+            jpm.close();
+        }
+        final File[] children = dir.listFiles();
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            children[i].delete();
+        }
+        dir.delete();
+    }
+
+    private Dictionary<String, Object> createConfiguration( final String pid, final Object value )
+    {
+        final Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put( Constants.SERVICE_PID, pid );
+        dict.put( "value", value );
+        return dict;
+    }
+
+    private JournalPersistenceManager reopen() throws IOException
+    {
+        jpm.close();
+        jpm = new JournalPersistenceManager( dir, false );
+        return jpm;
+    }
+
+    @Test
+    public void testStoreLoadDelete() throws Exception
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", new String[] { "x", "y" } ) );
+        jpm.store( "a", createConfiguration( "a", Long.valueOf( 2 ) ) );
+        jpm.store( "c", createConfiguration( "c", "three" ) );
+        jpm.delete( "c" );
+        jpm.delete( "unknown" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertTrue( jpm.exists( "a" ) );
+            assertTrue( jpm.exists( "b" ) );
+            assertFalse( jpm.exists( "c" ) );
+            assertEquals( Long.valueOf( 2 ), jpm.load( "a" ).get( "value" ) );
+            assertArrayEquals( new String[] { "x", "y" }, ( String[] ) jpm.load( "b" ).get( "value" ) );
+            assertEquals( 2, pids( jpm.getDictionaries() ).size() );
+            try
+            {
+                jpm.load( "c" );
+                fail( "Expected IOException for deleted configuration" );
+            }
+            catch ( IOException ioe )
+            {
+                // expected
+            }
+
+            // same state after reading the journal again
+            reopen();
+        }
+    }
+
+    @Test
+    public void testPartialRecordIsCutOff() throws Exception
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+        final long complete = jpm.getJournal().length();
+        jpm.store( "a", createConfiguration( "a", "changed" ) );
+        jpm.close();
+
+        // simulate a crash while writing the last record
+        try ( RandomAccessFile file = new RandomAccessFile( jpm.getJournal(), "rw" ) )
+        {
+            file.setLength( file.length() - 3 );
+        }
+
+        reopen();
+        assertEquals( "one", jpm.load( "a" ).get( "value" ) );
+        assertEquals( "two", jpm.load( "b" ).get( "value" ) );
+        assertEquals( complete, jpm.getJournal().length() );
+
+        // corrupt the last record
+        jpm.store( "c", createConfiguration( "c", "three" ) );
+        jpm.close();
+        try ( RandomAccessFile file = new RandomAccessFile( jpm.getJournal(), "rw" ) )
+        {
+            file.seek( file.length() - 1 );
+            final int last = file.read();
+            file.seek( file.length() - 1 );
+            file.write( last ^ 0xff );
+        }
+
+        reopen();
+        assertFalse( jpm.exists( "c" ) );
+        assertEquals( complete, jpm.getJournal().length() );
+
+        // the journal is appended to after the last complete record
+        jpm.store( "c", createConfiguration( "c", "three" ) );
+        assertEquals( "three", reopen().load( "c" ).get( "value" ) );
+    }
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        final StringBuilder value = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            value.append( 'x' );
+        }
+
+        jpm.store( "kept", createConfiguration( "kept", "kept" ) );
+        final int count = ( int ) ( 2 * JournalPersistenceManager.COMPACT_THRESHOLD / value.length() );
+        for ( int i = 0; i < count; i++ )
+        {
+            jpm.store( "replaced", createConfiguration( "replaced", value.toString() + i ) );
+        }
+
+        // compacted automatically while storing
+        assertTrue( jpm.getJournal().length() < count * value.length() / 2 );
+
+        jpm.store( "replaced", createConfiguration( "replaced", "last" ) );
+        jpm.delete( "kept" );
+        jpm.store( "kept", createConfiguration( "kept", "again" ) );
+        jpm.compact();
+
+        assertTrue( jpm.getJournal().length() < 1024 );
+        assertFalse( new File( dir, JournalPersistenceManager.JOURNAL_FILE + ".tmp" ).exists() );
+        assertEquals( "last", jpm.load( "replaced" ).get( "value" ) );
+        assertEquals( "again", jpm.load( "kept" ).get( "value" ) );
+
+        reopen();
+        assertEquals( "last", jpm.load( "replaced" ).get( "value" ) );
+        assertEquals( "again", jpm.load( "kept" ).get( "value" ) );
+        assertEquals( 2, pids( jpm.getDictionaries() ).size() );
+    }
+
+    @Test
+    public void testConcurrentStores() throws Exception
+    {
+        final Thread[] threads = new Thread[8];
+        final IOException[] failure = new IOException[1];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < 200; i++ )
+                        {
+                            final String pid = "pid." + thread + "." + i;
+                            jpm.store( pid, createConfiguration( pid, Integer.valueOf( i ) ) );
+                            if ( i % 3 == 0 )
+                            {
+                                jpm.delete( pid );
+                            }
+                        }
+                    }
+                    catch ( IOException ioe )
+                    {
+                        failure[0] = ioe;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( final Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure[0] != null )
+        {
+            throw failure[0];
+        }
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final Set<String> pids = pids( jpm.getDictionaries() );
+            assertEquals( threads.length * 133, pids.size() );
+            assertFalse( pids.contains( "pid.3.99" ) );
+            assertEquals( Integer.valueOf( 100 ), jpm.load( "pid.3.100" ).get( "value" ) );
+            reopen();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Set<String> pids( final Enumeration dictionaries )
+    {
+        final Set<String> pids = new HashSet<>();
+        while ( dictionaries.hasMoreElements() )
+        {
+            pids.add( ( String ) ( ( Dictionary ) dictionaries.nextElement() ).get( Constants.SERVICE_PID ) );
+        }
+        return pids;
+    }
+}
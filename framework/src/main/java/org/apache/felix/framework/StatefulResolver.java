@@ -36,6 +36,8 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
@@ -86,6 +88,9 @@ class StatefulResolver
     private final Set<BundleRevision> m_fragments;
     // Capability sets.
     private final Map<String, CapabilitySet> m_capSets;
+    // Guards the capability sets, so that providers can be looked up
+    // concurrently while the sets are only changed under the write lock.
+    private final ReadWriteLock m_capSetsLock = new ReentrantReadWriteLock();
     // Maps singleton symbolic names to list of bundle revisions sorted by version.
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
@@ -98,7 +103,8 @@ class StatefulResolver
         m_registry = registry;
         m_logger = m_felix.getLogger();
         m_executor = getExecutor();
-        m_resolver = new ResolverImpl(m_logger, m_executor);
+        m_resolver = new ResolverImpl(m_logger, m_executor,
+            Boolean.parseBoolean(m_felix.getProperty(FelixConstants.RESOLVER_INCREMENTAL)));
 
         m_revisions = new HashSet<BundleRevision>();
         m_fragments = new HashSet<BundleRevision>();
@@ -242,7 +248,7 @@ class StatefulResolver
         return ((effective == null) || effective.equals(Constants.EFFECTIVE_RESOLVE));
     }
 
-    synchronized List<BundleCapability> findProviders(
+    List<BundleCapability> findProviders(
         BundleRequirement req, boolean obeyMandatory)
     {
         ResolverHookRecord record = new ResolverHookRecord(
@@ -250,7 +256,7 @@ class StatefulResolver
         return findProvidersInternal(record, req, obeyMandatory, true);
     }
 
-    synchronized List<BundleCapability> findProvidersInternal(
+    List<BundleCapability> findProvidersInternal(
         final ResolverHookRecord record,
         final Requirement req,
         final boolean obeyMandatory,
@@ -258,32 +264,46 @@ class StatefulResolver
     {
         List<BundleCapability> result = new ArrayList<BundleCapability>();
 
-        CapabilitySet capSet = m_capSets.get(req.getNamespace());
-        if (capSet != null)
+        // Find the matching candidates; only the lookup itself holds the
+        // read lock, the security checks and hooks below run without it.
+        Set<Capability> matches = null;
+        m_capSetsLock.readLock().lock();
+        try
         {
-            // Get the requirement's filter; if this is our own impl we
-            // have a shortcut to get the already parsed filter, otherwise
-            // we must parse it from the directive.
-            SimpleFilter sf;
-            if (req instanceof BundleRequirementImpl)
-            {
-                sf = ((BundleRequirementImpl) req).getFilter();
-            }
-            else
+            CapabilitySet capSet = m_capSets.get(req.getNamespace());
+            if (capSet != null)
             {
-                String filter = req.getDirectives().get(Constants.FILTER_DIRECTIVE);
-                if (filter == null)
+                // Get the requirement's filter; if this is our own impl we
+                // have a shortcut to get the already parsed filter, otherwise
+                // we must parse it from the directive.
+                SimpleFilter sf;
+                if (req instanceof BundleRequirementImpl)
                 {
-                    sf = new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+                    sf = ((BundleRequirementImpl) req).getFilter();
                 }
                 else
                 {
-                    sf = SimpleFilter.parse(filter);
+                    String filter = req.getDirectives().get(Constants.FILTER_DIRECTIVE);
+                    if (filter == null)
+                    {
+                        sf = new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+                    }
+                    else
+                    {
+                        sf = SimpleFilter.parse(filter);
+                    }
                 }
+
+                matches = capSet.match(sf, obeyMandatory);
             }
+        }
+        finally
+        {
+            m_capSetsLock.readLock().unlock();
+        }
 
-            // Find the matching candidates.
-            Set<Capability> matches = capSet.match(sf, obeyMandatory);
+        if (matches != null)
+        {
             // Filter matching candidates.
             for (Capability cap : matches)
             {
@@ -484,7 +504,9 @@ class StatefulResolver
             ResolutionException rethrow = null;
             try
             {
-                // Resolve the revision.
+                // Resolve the revision; providers are only looked up
+                // concurrently if no resolver hooks have to see the
+                // requirements in order.
                 wireMap = m_resolver.resolve(
                     new ResolveContextImpl(
                         this,
@@ -492,7 +514,9 @@ class StatefulResolver
                         record,
                         mandatory,
                         optional,
-                        getFragments()));
+                        getFragments()),
+                    (m_executor instanceof ThreadPoolExecutor)
+                        && record.getResolverHookRefs().isEmpty());
             }
             catch (ResolutionException ex)
             {
@@ -1388,24 +1412,32 @@ class StatefulResolver
                 : br.getWiring().getCapabilities(null);
         if (caps != null)
         {
-            for (BundleCapability cap : caps)
+            m_capSetsLock.writeLock().lock();
+            try
             {
-                // If the capability is from a different revision, then
-                // don't index it since it is a capability from a fragment.
-                // In that case, the fragment capability is still indexed.
-                // It will be the resolver's responsibility to find all
-                // attached hosts for fragments.
-                if (cap.getRevision() == br)
+                for (BundleCapability cap : caps)
                 {
-                    CapabilitySet capSet = m_capSets.get(cap.getNamespace());
-                    if (capSet == null)
+                    // If the capability is from a different revision, then
+                    // don't index it since it is a capability from a fragment.
+                    // In that case, the fragment capability is still indexed.
+                    // It will be the resolver's responsibility to find all
+                    // attached hosts for fragments.
+                    if (cap.getRevision() == br)
                     {
-                        capSet = new CapabilitySet(null, true);
-                        m_capSets.put(cap.getNamespace(), capSet);
+                        CapabilitySet capSet = m_capSets.get(cap.getNamespace());
+                        if (capSet == null)
+                        {
+                            capSet = new CapabilitySet(null, true);
+                            m_capSets.put(cap.getNamespace(), capSet);
+                        }
+                        capSet.addCapability(cap);
                     }
-                    capSet.addCapability(cap);
                 }
             }
+            finally
+            {
+                m_capSetsLock.writeLock().unlock();
+            }
         }
     }
 
@@ -1417,14 +1449,22 @@ class StatefulResolver
         List<BundleCapability> caps = br.getDeclaredCapabilities(null);
         if (caps != null)
         {
-            for (BundleCapability cap : caps)
+            m_capSetsLock.writeLock().lock();
+            try
             {
-                CapabilitySet capSet = m_capSets.get(cap.getNamespace());
-                if (capSet != null)
+                for (BundleCapability cap : caps)
                 {
-                    capSet.removeCapability(cap);
+                    CapabilitySet capSet = m_capSets.get(cap.getNamespace());
+                    if (capSet != null)
+                    {
+                        capSet.removeCapability(cap);
+                    }
                 }
             }
+            finally
+            {
+                m_capSetsLock.writeLock().unlock();
+            }
         }
     }
 
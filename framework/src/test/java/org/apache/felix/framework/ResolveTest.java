@@ -19,9 +19,17 @@
 package org.apache.felix.framework;
 
 import junit.framework.TestCase;
+import org.apache.felix.framework.util.FelixConstants;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.hooks.resolver.ResolverHook;
+import org.osgi.framework.hooks.resolver.ResolverHookFactory;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
@@ -31,10 +39,14 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
@@ -275,6 +287,157 @@ public class ResolveTest extends TestCase
         assertEquals(requiredWires.get(1).getProvider().getBundle(), ho);
     }
 
+    public void testIncrementalResolveAfterRefresh() throws Exception
+    {
+        File incrementalCache = new File(tempDir, "felix-incremental-cache");
+        Map<String,String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, incrementalCache.getPath());
+        params.put(FelixConstants.RESOLVER_INCREMENTAL, "true");
+        Framework framework = new Felix(params);
+        framework.init();
+        framework.start();
+        try
+        {
+            String apimf = "Bundle-SymbolicName: test.api\n"
+                + "Bundle-Version: 1.0.0\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.api;uses:=\"test.spi\";version=\"1.0.0\",test.spi;version=\"1.0.0\"\n";
+            String api2mf = "Bundle-SymbolicName: test.api2\n"
+                + "Bundle-Version: 2.0.0\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.api;uses:=\"test.spi\";version=\"2.0.0\",test.spi;version=\"2.0.0\"\n";
+            String consumermf = "Bundle-SymbolicName: test.consumer\n"
+                + "Bundle-Version: 1.0.0\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: test.api,test.spi\n";
+            String clientmf = "Bundle-SymbolicName: test.client\n"
+                + "Bundle-Version: 1.0.0\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: test.api\n";
+
+            BundleContext context = framework.getBundleContext();
+            Bundle api = context.installBundle(createBundle(apimf).toURI().toASCIIString());
+            Bundle consumer = context.installBundle(createBundle(consumermf).toURI().toASCIIString());
+            FrameworkWiring wiring = framework.adapt(FrameworkWiring.class);
+            assertTrue(wiring.resolveBundles(Collections.singletonList(consumer)));
+            assertProviders(consumer, api, api);
+
+            // remove the provider, such that the consumer is wired to the new one
+            Bundle api2 = context.installBundle(createBundle(api2mf).toURI().toASCIIString());
+            api.uninstall();
+            final CountDownLatch refreshed = new CountDownLatch(1);
+            wiring.refreshBundles(Collections.singletonList(api), new FrameworkListener()
+            {
+                public void frameworkEvent(FrameworkEvent event)
+                {
+                    refreshed.countDown();
+                }
+            });
+            assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+            assertTrue(wiring.resolveBundles(Collections.singletonList(consumer)));
+            assertProviders(consumer, api2, api2);
+
+            // a bundle resolved later is wired consistently with the resolved bundles
+            Bundle client = context.installBundle(createBundle(clientmf).toURI().toASCIIString());
+            assertTrue(wiring.resolveBundles(Collections.singletonList(client)));
+            assertProviders(client, api2);
+        }
+        finally
+        {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
+    public void testConcurrentLookupsWithResolverHooks() throws Exception
+    {
+        File concurrentCache = new File(tempDir, "felix-concurrent-cache");
+        Map<String,String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, concurrentCache.getPath());
+        params.put(FelixConstants.RESOLVER_PARALLELISM, "4");
+        Framework framework = new Felix(params);
+        framework.init();
+        framework.start();
+        try
+        {
+            BundleContext context = framework.getBundleContext();
+            List<Bundle> providers = new ArrayList<Bundle>();
+            List<Bundle> consumers = new ArrayList<Bundle>();
+            for (int i = 0; i < 16; i++)
+            {
+                providers.add(context.installBundle(createBundle("Bundle-SymbolicName: test.provider" + i + "\n"
+                    + "Bundle-ManifestVersion: 2\n"
+                    + "Export-Package: test.pkg" + i + "\n").toURI().toASCIIString()));
+                consumers.add(context.installBundle(createBundle("Bundle-SymbolicName: test.consumer" + i + "\n"
+                    + "Bundle-ManifestVersion: 2\n"
+                    + "Import-Package: test.pkg" + i + "\n").toURI().toASCIIString()));
+            }
+
+            // without hooks the providers may be looked up concurrently
+            FrameworkWiring wiring = framework.adapt(FrameworkWiring.class);
+            assertTrue(wiring.resolveBundles(consumers.subList(0, 8)));
+            for (int i = 0; i < 8; i++)
+            {
+                assertProviders(consumers.get(i), providers.get(i));
+            }
+
+            // hooks see all matches on the resolving thread
+            final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+            context.registerService(ResolverHookFactory.class, new ResolverHookFactory()
+            {
+                public ResolverHook begin(Collection<BundleRevision> triggers)
+                {
+                    final Thread resolving = Thread.currentThread();
+                    return new ResolverHook()
+                    {
+                        public void filterResolvable(Collection<BundleRevision> candidates)
+                        {
+                        }
+
+                        public void filterSingletonCollisions(BundleCapability singleton,
+                            Collection<BundleCapability> collisionCandidates)
+                        {
+                        }
+
+                        public void filterMatches(BundleRequirement requirement,
+                            Collection<BundleCapability> candidates)
+                        {
+                            if (Thread.currentThread() != resolving)
+                            {
+                                threads.add(Thread.currentThread());
+                            }
+                        }
+
+                        public void end()
+                        {
+                        }
+                    };
+                }
+            }, null);
+            assertTrue(wiring.resolveBundles(consumers.subList(8, 16)));
+            for (int i = 8; i < 16; i++)
+            {
+                assertProviders(consumers.get(i), providers.get(i));
+            }
+            assertTrue(threads.isEmpty());
+        }
+        finally
+        {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
+    private static void assertProviders(Bundle bundle, Bundle... providers)
+    {
+        List<BundleWire> wires = bundle.adapt(BundleWiring.class).getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+        assertEquals(providers.length, wires.size());
+        for (int i = 0; i < providers.length; i++)
+        {
+            assertEquals(providers[i], wires.get(i).getProvider().getBundle());
+        }
+    }
+
     private File createBundle(String manifest) throws IOException
     {
         File f = File.createTempFile("felix-bundle", ".jar", tempDir);
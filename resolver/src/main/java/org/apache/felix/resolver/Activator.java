@@ -25,6 +25,8 @@ import org.osgi.service.resolver.Resolver;
 public class Activator implements BundleActivator
 {
     public static final String LOG_LEVEL = "felix.resolver.log.level";
+    public static final String INCREMENTAL = "felix.resolver.incremental";
+    public static final String CONCURRENT_LOOKUPS = "felix.resolver.concurrent.lookups";
 
     public void start(BundleContext bc) throws Exception
     {
@@ -40,9 +42,14 @@ public class Activator implements BundleActivator
                 // Use default log level.
             }
         }
+        boolean incremental = Boolean.parseBoolean(bc.getProperty(INCREMENTAL));
+        // Callers of the service may pass contexts that call resolver hooks,
+        // so providers are only looked up concurrently if configured.
+        boolean concurrentLookups = Boolean.parseBoolean(bc.getProperty(CONCURRENT_LOOKUPS));
         bc.registerService(
             Resolver.class,
-            new ResolverImpl(new Logger(logLevel)),
+            new ResolverImpl(new Logger(logLevel),
+                Runtime.getRuntime().availableProcessors(), incremental, concurrentLookups),
             null);
     }
 
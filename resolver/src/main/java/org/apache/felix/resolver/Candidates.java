@@ -20,9 +20,14 @@ package org.apache.felix.resolver;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.felix.resolver.ResolverImpl.PermutationType;
+import org.apache.felix.resolver.ResolutionStatistics.PermutationType;
 import org.apache.felix.resolver.ResolverImpl.ResolveSession;
 import org.apache.felix.resolver.reason.ReasonException;
 import org.apache.felix.resolver.util.*;
@@ -47,11 +52,125 @@ class Candidates
         }
     }
 
+    /**
+     * Looks up the providers of the requirements of the resources to populate
+     * ahead of the populate loop, on the executor of the session. The loop
+     * still processes the requirements one by one in the same order, so the
+     * candidates are the same as for a sequential lookup; only the calls to
+     * {@link ResolveContext#findProviders(Requirement)} of independent
+     * resources run concurrently, which the resolve context must support.
+     * Only used if the resolver was created with concurrent lookups enabled.
+     */
+    static class ProviderLookups {
+        private final Candidates m_candidates;
+        private final Executor m_executor;
+        private final Map<Resource, FutureTask<Map<Requirement, List<Capability>>>> m_lookups =
+            new HashMap<Resource, FutureTask<Map<Requirement, List<Capability>>>>();
+        private final AtomicBoolean m_closed = new AtomicBoolean();
+
+        private ProviderLookups(Candidates candidates, Executor executor) {
+            m_candidates = candidates;
+            m_executor = executor;
+        }
+
+        static ProviderLookups create(Candidates candidates) {
+            Executor executor = candidates.m_session.getExecutor();
+            if (!candidates.m_session.isConcurrentLookups()
+                || executor == null || executor instanceof ResolverImpl.DumbExecutor) {
+                return null;
+            }
+            return new ProviderLookups(candidates, executor);
+        }
+
+        void lookup(Collection<Resource> resources) {
+            for (Resource resource : resources) {
+                lookup(resource);
+            }
+        }
+
+        void lookup(final Resource resource) {
+            if (m_lookups.containsKey(resource)
+                || m_candidates.m_populateResultCache.containsKey(resource)) {
+                return;
+            }
+            FutureTask<Map<Requirement, List<Capability>>> task = new FutureTask<Map<Requirement, List<Capability>>>(
+                new Callable<Map<Requirement, List<Capability>>>() {
+                    public Map<Requirement, List<Capability>> call() {
+                        ResolveContext rc = m_candidates.m_session.getContext();
+                        Map<Requirement, List<Capability>> providers = new HashMap<Requirement, List<Capability>>();
+                        for (Requirement requirement : resource.getRequirements(null)) {
+                            if (m_closed.get()) {
+                                break;
+                            }
+                            if (m_candidates.isEffective(requirement)) {
+                                providers.put(requirement, rc.findProviders(requirement));
+                            }
+                        }
+                        return providers;
+                    }
+                });
+            try {
+                m_executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // fall back to looking up the providers when they are needed
+                return;
+            }
+            m_lookups.put(resource, task);
+        }
+
+        List<Capability> findProviders(Resource resource, Requirement requirement) {
+            FutureTask<Map<Requirement, List<Capability>>> task = m_lookups.get(resource);
+            if (task != null) {
+                List<Capability> providers = get(task).remove(requirement);
+                if (providers != null) {
+                    return providers;
+                }
+            }
+            return m_candidates.m_session.getContext().findProviders(requirement);
+        }
+
+        /**
+         * Stops the pending lookups and waits for the running ones, so that
+         * the resolve context is not called once populating is over.
+         */
+        void close() {
+            m_closed.set(true);
+            for (FutureTask<Map<Requirement, List<Capability>>> task : m_lookups.values()) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // ignore, the result is not needed anymore
+                }
+            }
+            m_lookups.clear();
+        }
+
+        private static Map<Requirement, List<Capability>> get(FutureTask<Map<Requirement, List<Capability>>> task) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
     private final ResolveSession m_session;
     // Maps a capability to requirements that match it.
     private final OpenHashMapSet<Capability, Requirement> m_dependentMap;
     // Maps a requirement to the capability it matches.
-    private final OpenHashMapList m_candidateMap;
+    private final CandidateSelectorMap m_candidateMap;
     // Maps a bundle revision to its associated wrapped revision; this only happens
     // when a revision being resolved has fragments to attach to it.
     private final Map<Resource, WrappedResource> m_allWrappedHosts;
@@ -70,7 +189,7 @@ class Candidates
         ResolveSession session,
         AtomicBoolean candidateSelectorsUnmodifiable,
         OpenHashMapSet<Capability, Requirement> dependentMap,
-        OpenHashMapList candidateMap,
+        CandidateSelectorMap candidateMap,
         Map<Resource, WrappedResource> wrappedHosts,
         OpenHashMap<Resource, PopulateResult> populateResultCache,
         Map<Capability, Requirement> substitutableMap,
@@ -94,7 +213,7 @@ class Candidates
         m_session = session;
         m_candidateSelectorsUnmodifiable = new AtomicBoolean(false);
         m_dependentMap = new OpenHashMapSet<Capability, Requirement>();
-        m_candidateMap = new OpenHashMapList();
+        m_candidateMap = new CandidateSelectorMap(session.getRequirementIds());
         m_allWrappedHosts = new HashMap<Resource, WrappedResource>();
         m_populateResultCache = new OpenHashMap<Resource, PopulateResult>();
         m_subtitutableMap = new OpenHashMap<Capability, Requirement>();
@@ -162,6 +281,38 @@ class Candidates
         ResolveContext rc = m_session.getContext();
         Set<Resource> toRemove = new HashSet<Resource>();
         LinkedList<Resource> toPopulate = new LinkedList<Resource>(resources);
+        ProviderLookups lookups = ProviderLookups.create(this);
+        try
+        {
+            if (lookups != null)
+            {
+                lookups.lookup(toPopulate);
+            }
+            populate(rc, toPopulate, toRemove, lookups);
+        }
+        finally
+        {
+            if (lookups != null)
+            {
+                lookups.close();
+            }
+        }
+
+        while (!toRemove.isEmpty())
+        {
+            Iterator<Resource> iterator = toRemove.iterator();
+            Resource resource = iterator.next();
+            iterator.remove();
+            remove(resource, toRemove);
+        }
+    }
+
+    private void populate(
+        ResolveContext rc,
+        LinkedList<Resource> toPopulate,
+        Set<Resource> toRemove,
+        ProviderLookups lookups)
+    {
         while (!toPopulate.isEmpty())
         {
             Resource resource = toPopulate.getFirst();
@@ -195,6 +346,10 @@ class Candidates
                         // This resource is a valid related resource;
                         // populate it now, consider it optional
                         toPopulate.addFirst(relatedResource);
+                        if (lookups != null)
+                        {
+                            lookups.lookup(relatedResource);
+                        }
                     }
                 }
                 continue;
@@ -205,9 +360,15 @@ class Candidates
             {
                 continue;
             }
-            List<Capability> candidates = rc.findProviders(requirement);
+            List<Capability> candidates = (lookups != null)
+                ? lookups.findProviders(resource, requirement)
+                : rc.findProviders(requirement);
             LinkedList<Resource> newToPopulate = new LinkedList<Resource>();
             ResolutionError thrown = processCandidates(newToPopulate, requirement, candidates);
+            if (lookups != null)
+            {
+                lookups.lookup(newToPopulate);
+            }
              if (candidates.isEmpty() && !Util.isOptional(requirement))
             {
                 if (Util.isFragment(resource) && rc.getWirings().containsKey(resource))
@@ -234,14 +395,6 @@ class Candidates
                 }
             }
         }
-
-        while (!toRemove.isEmpty())
-        {
-            Iterator<Resource> iterator = toRemove.iterator();
-            Resource resource = iterator.next();
-            iterator.remove();
-            remove(resource, toRemove);
-        }
     }
 
     private boolean isEffective(Requirement req) {
@@ -348,7 +501,7 @@ class Candidates
             {
                 for (Requirement dependent : dependents)
                 {
-                    CandidateSelector candidates = m_candidateMap.get(dependent);
+                    CandidateSelector candidates = m_candidateMap.getForUpdate(dependent);
                     if (candidates != null)
                     {
                         candidates:
@@ -712,9 +865,10 @@ class Candidates
 
     public void removeFirstCandidate(Requirement req)
     {
-        CandidateSelector candidates = m_candidateMap.get(req);
+        CandidateSelector candidates = m_candidateMap.getForUpdate(req);
         // Remove the conflicting candidate.
         Capability cap = candidates.removeCurrentCandidate();
+        m_session.getStatistics().requirementPermuted(req);
         if (candidates.isEmpty())
         {
             m_candidateMap.remove(req);
@@ -907,7 +1061,7 @@ class Candidates
                             // matter if they come from the host or fragment,
                             // since we are completing replacing the declaring
                             // host and fragments with the wrapped host.
-                            CandidateSelector cands = m_candidateMap.get(r);
+                            CandidateSelector cands = m_candidateMap.getForUpdate(r);
                             ShadowList shadow;
                             if (!(cands instanceof ShadowList))
                             {
@@ -957,7 +1111,6 @@ class Candidates
 
         populateSubstitutables();
 
-        m_candidateMap.trim();
         m_dependentMap.trim();
 
         // mark the selectors as unmodifiable now
@@ -1123,7 +1276,7 @@ class Candidates
     }
 
     private CandidateSelector removeCandidate(Requirement req, Capability cap) {
-        CandidateSelector candidates = m_candidateMap.get(req);
+        CandidateSelector candidates = m_candidateMap.getForUpdate(req);
         candidates.remove(cap);
         return candidates;
     }
@@ -1140,7 +1293,7 @@ class Candidates
                 m_session,
                 m_candidateSelectorsUnmodifiable,
                 m_dependentMap,
-                m_candidateMap.deepClone(),
+                m_candidateMap.copy(),
                 m_allWrappedHosts,
                 m_populateResultCache,
                 m_subtitutableMap,
@@ -1152,7 +1305,7 @@ class Candidates
         // Create set of all revisions from requirements.
         Set<Resource> resources = new CopyOnWriteSet<Resource>();
         for (Entry<Requirement, CandidateSelector> entry
-            : m_candidateMap.entrySet())
+            : m_candidateMap.fast())
         {
             resources.add(entry.getKey().getResource());
         }
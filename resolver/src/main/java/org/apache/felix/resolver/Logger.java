@@ -131,4 +131,16 @@ public class Logger
     {
         // do nothing by default
     }
+
+    /**
+     * Called with the statistics of each resolve operation once it completes,
+     * successfully or not. By default the statistics are logged at debug level.
+     */
+    public void logResolutionStatistics(ResolutionStatistics statistics)
+    {
+        if (isDebugEnabled())
+        {
+            debug(statistics.toString());
+        }
+    }
 }
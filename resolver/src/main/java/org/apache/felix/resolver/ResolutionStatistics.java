@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.resource.Requirement;
+
+/**
+ * Statistics of a single resolve operation: the time spent in each phase of
+ * the resolution, the number of candidate permutations by type and the
+ * requirements whose candidates were permuted most often.
+ * Once a resolve operation completes, successfully or not, its statistics are
+ * passed to {@link Logger#logResolutionStatistics(ResolutionStatistics)}.
+ * <p>
+ * Statistics are collected by the resolving thread and are not thread safe.
+ */
+public class ResolutionStatistics
+{
+    public enum Phase
+    {
+        /** Finding the candidates of all requirements. */
+        POPULATE,
+        /** Merging fragments into their hosts. */
+        PREPARE,
+        /** Calculating the package spaces of each permutation. */
+        PACKAGE_SPACES,
+        /** Checking the package spaces for uses constraint violations. */
+        CONSISTENCY,
+        /** Creating the wires of the selected permutation. */
+        WIRES
+    }
+
+    public enum PermutationType
+    {
+        USES,
+        IMPORT,
+        SUBSTITUTE
+    }
+
+    private final long m_start = System.nanoTime();
+    private long m_end;
+    private final long[] m_phaseNanos = new long[Phase.values().length];
+    private final int[] m_permutations = new int[PermutationType.values().length];
+    private int m_checkedPermutations;
+    private int m_skippedPermutations;
+    private final Map<Requirement, int[]> m_permutedRequirements = new HashMap<Requirement, int[]>();
+
+    void addPhaseTime(Phase phase, long startNanos)
+    {
+        m_phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+    }
+
+    void permutationCreated(PermutationType type)
+    {
+        m_permutations[type.ordinal()]++;
+    }
+
+    void permutationChecked()
+    {
+        m_checkedPermutations++;
+    }
+
+    void permutationSkipped()
+    {
+        m_skippedPermutations++;
+    }
+
+    void requirementPermuted(Requirement req)
+    {
+        int[] count = m_permutedRequirements.get(req);
+        if (count == null)
+        {
+            count = new int[1];
+            m_permutedRequirements.put(req, count);
+        }
+        count[0]++;
+    }
+
+    void done()
+    {
+        m_end = System.nanoTime();
+    }
+
+    /**
+     * Returns the total time of the resolve operation.
+     */
+    public long getTime(TimeUnit unit)
+    {
+        return unit.convert((m_end != 0 ? m_end : System.nanoTime()) - m_start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time spent in the given phase.
+     */
+    public long getPhaseTime(Phase phase, TimeUnit unit)
+    {
+        return unit.convert(m_phaseNanos[phase.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of permutations of the given type that were created.
+     * The initial permutation is counted as a uses permutation.
+     */
+    public int getPermutationCount(PermutationType type)
+    {
+        return m_permutations[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of permutations that were checked for consistency,
+     * including the initial one.
+     */
+    public int getCheckedPermutationCount()
+    {
+        return m_checkedPermutations;
+    }
+
+    /**
+     * Returns the number of permutations rejected without calculating their
+     * package spaces because they contain candidates known to conflict.
+     */
+    public int getSkippedPermutationCount()
+    {
+        return m_skippedPermutations;
+    }
+
+    /**
+     * Returns the requirements whose candidates were permuted most often,
+     * with the number of permutations created by removing their current
+     * candidate, in decreasing order.
+     */
+    public List<Map.Entry<Requirement, Integer>> getMostPermutedRequirements(int max)
+    {
+        List<Map.Entry<Requirement, Integer>> result = new ArrayList<Map.Entry<Requirement, Integer>>();
+        for (Map.Entry<Requirement, int[]> entry : m_permutedRequirements.entrySet())
+        {
+            result.add(new AbstractMap.SimpleImmutableEntry<Requirement, Integer>(
+                entry.getKey(), entry.getValue()[0]));
+        }
+        Collections.sort(result, new Comparator<Map.Entry<Requirement, Integer>>()
+        {
+            public int compare(Map.Entry<Requirement, Integer> o1, Map.Entry<Requirement, Integer> o2)
+            {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        return result.size() > max ? result.subList(0, max) : result;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Resolution took ").append(getTime(TimeUnit.MILLISECONDS)).append(" ms (");
+        for (Phase phase : Phase.values())
+        {
+            if (phase.ordinal() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(phase.name().toLowerCase().replace('_', ' ')).append(' ')
+                .append(getPhaseTime(phase, TimeUnit.MILLISECONDS)).append(" ms");
+        }
+        sb.append("); permutations: ");
+        for (PermutationType type : PermutationType.values())
+        {
+            sb.append(getPermutationCount(type)).append(' ')
+                .append(type.name().toLowerCase()).append(", ");
+        }
+        sb.append(m_checkedPermutations).append(" checked, ")
+            .append(m_skippedPermutations).append(" skipped");
+        List<Map.Entry<Requirement, Integer>> permuted = getMostPermutedRequirements(5);
+        if (!permuted.isEmpty())
+        {
+            sb.append("; most permuted requirements: ");
+            for (int i = 0; i < permuted.size(); i++)
+            {
+                Map.Entry<Requirement, Integer> entry = permuted.get(i);
+                if (i > 0)
+                {
+                    sb.append(", ");
+                }
+                sb.append(entry.getKey().getResource()).append(' ')
+                    .append(entry.getKey()).append(" (").append(entry.getValue()).append(')');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -24,9 +24,12 @@ import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.felix.resolver.ResolutionStatistics.Phase;
+import org.apache.felix.resolver.ResolutionStatistics.PermutationType;
 import org.apache.felix.resolver.reason.ReasonException;
 import org.apache.felix.resolver.util.ArrayMap;
 import org.apache.felix.resolver.util.CandidateSelector;
+import org.apache.felix.resolver.util.Interner;
 import org.apache.felix.resolver.util.OpenHashMap;
 import org.osgi.framework.namespace.*;
 import org.osgi.resource.*;
@@ -45,11 +48,13 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
-    enum PermutationType {
-        USES,
-        IMPORT,
-        SUBSTITUTE
-    }
+    // Holds the package spaces of resolved resources across resolve
+    // operations; only used in incremental mode.
+    private final PackagesCache m_packagesCache = new PackagesCache();
+
+    private final boolean m_incremental;
+
+    private final boolean m_concurrentLookups;
 
     // Note this class is not thread safe.
     // Only use in the context of a single thread.
@@ -89,12 +94,25 @@ public class ResolverImpl implements Resolver
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
         private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        private final PackagesCache m_packagesCache;
+        private final boolean m_concurrentLookups;
+        // Dense ids of the requirements of this session, used to index the
+        // candidate maps shared between permutations.
+        private final Interner<Requirement> m_requirementIds = new Interner<Requirement>();
+        // Holds the candidate choices proven to be inconsistent, indexed by
+        // the root requirement of their first uses chain and the candidate
+        // chosen for it, so only no goods making the same first choice as a
+        // permutation need to be matched against it.
+        private final Map<Requirement, Map<Capability, List<NoGood>>> m_noGoods =
+            new LinkedHashMap<Requirement, Map<Capability, List<NoGood>>>();
+        private final Set<Map<Requirement, Capability>> m_noGoodChoices = new HashSet<Map<Requirement, Capability>>();
+        private final ResolutionStatistics m_statistics = new ResolutionStatistics();
         private ResolutionError m_currentError;
         volatile private CancellationException m_isCancelled = null;
 
-        static ResolveSession createSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
+        static ResolveSession createSession(ResolveContext resolveContext, Executor executor, PackagesCache packagesCache, boolean concurrentLookups, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
         {
-            ResolveSession session = new ResolveSession(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates);
+            ResolveSession session = new ResolveSession(resolveContext, executor, packagesCache, concurrentLookups, dynamicHost, dynamicReq, dynamicCandidates);
             // call onCancel first
             session.getContext().onCancel(session);
             // now gather the mandatory and optional resources
@@ -102,10 +120,14 @@ public class ResolverImpl implements Resolver
             return session;
         }
 
-        private ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
+        private ResolveSession(ResolveContext resolveContext, Executor executor, PackagesCache packagesCache, boolean concurrentLookups, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
         {
             m_resolveContext = resolveContext;
             m_executor = executor;
+            // Without a shared cache, still reuse the package spaces of
+            // resolved resources across the permutations of this session.
+            m_packagesCache = (packagesCache != null) ? packagesCache : new PackagesCache();
+            m_concurrentLookups = concurrentLookups;
             m_dynamicHost = dynamicHost;
             m_dynamicReq = dynamicReq;
             m_dynamicCandidates = dynamicCandidates;
@@ -139,6 +161,36 @@ public class ResolverImpl implements Resolver
             return m_usesCache;
         }
 
+        PackagesCache getPackagesCache() {
+            return m_packagesCache;
+        }
+
+        boolean isConcurrentLookups() {
+            return m_concurrentLookups;
+        }
+
+        Interner<Requirement> getRequirementIds() {
+            return m_requirementIds;
+        }
+
+        ResolutionStatistics getStatistics() {
+            return m_statistics;
+        }
+
+        /**
+         * Returns the cached package space of the given resource if it is
+         * resolved and its wiring did not change since the package space was
+         * calculated. The dynamic host is never served from the cache since
+         * its package space is extended with the dynamic import.
+         */
+        CachedPackages getCachedPackages(Resource resource) {
+            if (resource.equals(m_dynamicHost))
+            {
+                return null;
+            }
+            return m_packagesCache.get(m_resolveContext, resource);
+        }
+
         void permutateIfNeeded(PermutationType type, Requirement req, Candidates permutation) {
             List<Capability> candidates = permutation.getCandidates(req);
             if ((candidates != null) && (candidates.size() > 1))
@@ -170,6 +222,7 @@ public class ResolverImpl implements Resolver
         void addPermutation(PermutationType type, Candidates permutation) {
             if (permutation != null)
             {
+                m_statistics.permutationCreated(type);
                 List<Candidates> typeToAddTo = null;
                 try {
                     switch (type) {
@@ -231,9 +284,49 @@ public class ResolverImpl implements Resolver
             m_substPermutations.clear();
             m_multipleCardCandidates = null;
             m_processedDeltas.clear();
+            m_noGoods.clear();
+            m_noGoodChoices.clear();
             m_currentError = null;
         }
 
+        void addNoGood(NoGood noGood) {
+            if (m_noGoodChoices.add(noGood.m_choices))
+            {
+                Map<Capability, List<NoGood>> byChoice = m_noGoods.get(noGood.m_key);
+                if (byChoice == null)
+                {
+                    byChoice = new HashMap<Capability, List<NoGood>>();
+                    m_noGoods.put(noGood.m_key, byChoice);
+                }
+                Capability choice = noGood.m_choices.get(noGood.m_key);
+                List<NoGood> noGoods = byChoice.get(choice);
+                if (noGoods == null)
+                {
+                    noGoods = new ArrayList<NoGood>(1);
+                    byChoice.put(choice, noGoods);
+                }
+                noGoods.add(noGood);
+            }
+        }
+
+        NoGood findNoGood(Candidates permutation) {
+            for (Entry<Requirement, Map<Capability, List<NoGood>>> entry : m_noGoods.entrySet())
+            {
+                List<NoGood> noGoods = entry.getValue().get(permutation.getFirstCandidate(entry.getKey()));
+                if (noGoods != null)
+                {
+                    for (NoGood noGood : noGoods)
+                    {
+                        if (noGood.matches(permutation))
+                        {
+                            return noGood;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
         boolean checkMultiple(
                 UsedBlames usedBlames,
                 Blame usedBlame,
@@ -354,24 +447,91 @@ public class ResolverImpl implements Resolver
     }
 
     public ResolverImpl(Logger logger, int parallelism)
+    {
+        this(logger, parallelism, false);
+    }
+
+    /**
+     * Creates a resolver that, if <tt>incremental</tt> is set, keeps the package
+     * spaces of resolved resources between resolve operations, so a resolve
+     * only calculates package spaces for the resources it actually resolves
+     * and for resolved resources whose wiring changed since the last resolve.
+     */
+    public ResolverImpl(Logger logger, int parallelism, boolean incremental)
+    {
+        this(logger, parallelism, incremental, false);
+    }
+
+    /**
+     * Creates a resolver that, if <tt>concurrentLookups</tt> is set, looks up
+     * the providers of the requirements of the resources to populate ahead
+     * of time on the executor of the resolver. The resolve context must
+     * support concurrent calls to {@link ResolveContext#findProviders(Requirement)}
+     * and must not depend on the order of these calls, which rules out
+     * contexts calling resolver hooks.
+     *
+     * @see #ResolverImpl(Logger, int, boolean)
+     */
+    public ResolverImpl(Logger logger, int parallelism, boolean incremental, boolean concurrentLookups)
     {
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_incremental = incremental;
+        this.m_concurrentLookups = concurrentLookups;
     }
 
     public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, false);
+    }
+
+    /**
+     * Creates a resolver using the given executor that, if <tt>incremental</tt>
+     * is set, keeps the package spaces of resolved resources between resolve
+     * operations.
+     *
+     * @see #ResolverImpl(Logger, int, boolean)
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental)
+    {
+        this(logger, executor, incremental, false);
+    }
+
+    /**
+     * Creates a resolver using the given executor that optionally keeps the
+     * package spaces of resolved resources between resolve operations and
+     * looks up providers concurrently.
+     *
+     * @see #ResolverImpl(Logger, int, boolean, boolean)
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental, boolean concurrentLookups)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_incremental = incremental;
+        this.m_concurrentLookups = concurrentLookups;
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
+    {
+        return resolve(rc, m_concurrentLookups);
+    }
+
+    /**
+     * Resolves the given context, looking up providers concurrently if
+     * <tt>concurrentLookups</tt> is set, whatever the resolver was created
+     * with. This lets a caller sharing one resolver decide per resolve
+     * operation, e.g. depending on whether its context calls resolver hooks.
+     *
+     * @see #ResolverImpl(Logger, int, boolean, boolean)
+     */
+    public Map<Resource, List<Wire>> resolve(ResolveContext rc, boolean concurrentLookups) throws ResolutionException
     {
         if (m_executor != null)
         {
-            return resolve(rc, m_executor);
+            return resolve(rc, m_executor, concurrentLookups);
         }
         else if (m_parallelism > 1)
         {
@@ -389,7 +549,7 @@ public class ResolverImpl implements Resolver
                     Executors.newFixedThreadPool(m_parallelism);
             try
             {
-                return resolve(rc, executor);
+                return resolve(rc, executor, concurrentLookups);
             }
             finally
             {
@@ -410,14 +570,30 @@ public class ResolverImpl implements Resolver
         }
         else
         {
-            return resolve(rc, new DumbExecutor());
+            return resolve(rc, new DumbExecutor(), concurrentLookups);
         }
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor) throws ResolutionException
     {
-        ResolveSession session = ResolveSession.createSession(rc, executor, null, null, null);
-        return doResolve(session);
+        return resolve(rc, executor, m_concurrentLookups);
+    }
+
+    private Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor, boolean concurrentLookups) throws ResolutionException
+    {
+        ResolveSession session = ResolveSession.createSession(rc, executor, m_incremental ? m_packagesCache : null, concurrentLookups, null, null, null);
+        try
+        {
+            return doResolve(session);
+        }
+        finally
+        {
+            session.getStatistics().done();
+            m_logger.logResolutionStatistics(session.getStatistics());
+            // Drop the package spaces of resources that were unresolved,
+            // refreshed or uninstalled since they were cached.
+            m_packagesCache.prune(rc);
+        }
     }
 
     private Map<Resource, List<Wire>> doResolve(ResolveSession session) throws ResolutionException {
@@ -466,6 +642,7 @@ public class ResolverImpl implements Resolver
                 // resolve, so populate the wire map.
                 else
                 {
+                    long start = System.nanoTime();
                     if (session.getMultipleCardCandidates() != null)
                     {
                         // Candidates for multiple cardinality requirements were
@@ -491,6 +668,7 @@ public class ResolverImpl implements Resolver
                             }
                         }
                     }
+                    session.getStatistics().addPhaseTime(Phase.WIRES, start);
                 }
             }
             finally
@@ -507,11 +685,13 @@ public class ResolverImpl implements Resolver
     private void getInitialCandidates(ResolveSession session) {
         // Create object to hold all candidates.
         Candidates initialCandidates;
+        long start = System.nanoTime();
         if (session.isDynamic()) {
             // Create all candidates pre-populated with the single candidate set
             // for the resolving dynamic import of the host.
             initialCandidates = new Candidates(session);
             ResolutionError prepareError = initialCandidates.populateDynamic();
+            session.getStatistics().addPhaseTime(Phase.POPULATE, start);
             if (prepareError != null) {
                 session.setCurrentError(prepareError);
                 return;
@@ -540,10 +720,13 @@ public class ResolverImpl implements Resolver
 
             initialCandidates = new Candidates(session);
             initialCandidates.populate(toPopulate);
+            session.getStatistics().addPhaseTime(Phase.POPULATE, start);
         }
 
         // Merge any fragments into hosts.
+        start = System.nanoTime();
         ResolutionError prepareError = initialCandidates.prepare();
+        session.getStatistics().addPhaseTime(Phase.PREPARE, start);
         if (prepareError != null)
         {
             session.setCurrentError(prepareError);
@@ -567,6 +750,7 @@ public class ResolverImpl implements Resolver
             }
 
 //allCandidates.dump();
+            session.getStatistics().permutationChecked();
 
             Map<Resource, ResolutionError> currentFaultyResources = new HashMap<Resource, ResolutionError>();
 
@@ -603,15 +787,36 @@ public class ResolverImpl implements Resolver
         Candidates allCandidates,
         Map<Resource, ResolutionError> currentFaultyResources)
     {
+        long start = System.nanoTime();
         ResolutionError rethrow = allCandidates.checkSubstitutes();
         if (rethrow != null)
         {
+            session.getStatistics().addPhaseTime(Phase.CONSISTENCY, start);
             return rethrow;
         }
+        // Skip the package space calculation if this permutation still
+        // contains a combination of candidates that already failed.
+        NoGood noGood = session.findNoGood(allCandidates);
+        if ((noGood != null) && permuteNoGood(session, allCandidates, noGood))
+        {
+            session.getStatistics().permutationSkipped();
+            session.getStatistics().addPhaseTime(Phase.CONSISTENCY, start);
+            if (m_logger.isDebugEnabled())
+            {
+                m_logger.debug("Candidate permutation skipped since it contains "
+                    + "candidates that are known to conflict; will try another if possible."
+                    + " (" + noGood.m_error.getMessage() + ")");
+            }
+            return noGood.m_error;
+        }
         Map<Resource, Resource> allhosts = allCandidates.getRootHosts();
+        session.getStatistics().addPhaseTime(Phase.CONSISTENCY, start);
         // Calculate package spaces
+        start = System.nanoTime();
         Map<Resource, Packages> resourcePkgMap =
             calculatePackageSpaces(session, allCandidates, allhosts.values());
+        session.getStatistics().addPhaseTime(Phase.PACKAGE_SPACES, start);
+        start = System.nanoTime();
         ResolutionError error = null;
         // Check package consistency
         Map<Resource, Object> resultCache =
@@ -622,6 +827,7 @@ public class ResolverImpl implements Resolver
                     session, entry.getValue(),
                     allCandidates, session.isDynamic(), resourcePkgMap, resultCache);
             if (session.isCancelled()) {
+                session.getStatistics().addPhaseTime(Phase.CONSISTENCY, start);
                 return null;
             }
             if (rethrow != null)
@@ -642,6 +848,7 @@ public class ResolverImpl implements Resolver
                 error = rethrow;
             }
         }
+        session.getStatistics().addPhaseTime(Phase.CONSISTENCY, start);
         return error;
     }
 
@@ -667,8 +874,16 @@ public class ResolverImpl implements Resolver
                         "Matching candidate does not provide a package name.");
                 }
             }
-            ResolveSession session = ResolveSession.createSession(context,  new DumbExecutor(), host, dynamicRequirement, matches);
-            return doResolve(session);
+            ResolveSession session = ResolveSession.createSession(context,  new DumbExecutor(), m_incremental ? m_packagesCache : null, false, host, dynamicRequirement, matches);
+            try
+            {
+                return doResolve(session);
+            }
+            finally
+            {
+                session.getStatistics().done();
+                m_logger.logResolutionStatistics(session.getStatistics());
+            }
         }
 
         throw new Candidates.MissingRequirementError(dynamicRequirement).toException();
@@ -898,6 +1113,122 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /**
+     * Computes the uses constraints of a resolved resource which is dynamically
+     * importing a package. The uses constraints implied by the existing wires
+     * of the host do not depend on the dynamic import, so they are kept in the
+     * packages cache and only extended with the wires added since, usually by
+     * previous dynamic imports. Only the uses constraints of the dynamically
+     * imported package are merged for each dynamic resolve.
+     */
+    private void computeDynamicUses(
+            ResolveSession session,
+            Map<Resource, List<WireCandidate>> allWireCandidates,
+            Map<Resource, Packages> resourcePkgMap,
+            Resource resource)
+    {
+        List<WireCandidate> wireCandidates = allWireCandidates.get(resource);
+        Packages resourcePkgs = resourcePkgMap.get(resource);
+        // The dynamic import is the last wire candidate.
+        int existing = wireCandidates.size() - 1;
+
+        DynamicUses base = session.getPackagesCache().getDynamicUses(
+            session.getContext(), resource, existing);
+        Packages usedPkgs;
+        if ((base != null) && (base.m_wireCount == existing))
+        {
+            usedPkgs = base.m_packages;
+        }
+        else
+        {
+            // Cached uses are shared between sessions and never modified,
+            // extend a copy with the uses of the wires added since.
+            usedPkgs = new Packages(resource);
+            int from = 0;
+            if (base != null)
+            {
+                copyUsedPackages(base.m_packages, usedPkgs);
+                from = base.m_wireCount;
+            }
+            Set<Requirement> newReqs = new HashSet<Requirement>();
+            for (WireCandidate w : wireCandidates.subList(from, existing))
+            {
+                newReqs.add(w.requirement);
+            }
+            mergeWireUses(session, resource, resourcePkgs, usedPkgs,
+                wireCandidates.subList(from, existing), newReqs, resourcePkgMap);
+            session.getPackagesCache().putDynamicUses(session.getContext(), resource,
+                existing, usedPkgs, wireCandidates.subList(0, existing));
+        }
+        copyUsedPackages(usedPkgs, resourcePkgs);
+        Requirement dynamicReq = wireCandidates.get(existing).requirement;
+        mergeWireUses(session, resource, resourcePkgs, resourcePkgs,
+            Collections.<WireCandidate>emptyList(),
+            Collections.singleton(dynamicReq), resourcePkgMap);
+    }
+
+    /**
+     * Merges the uses constraints of the given requirements of a resource
+     * into <tt>targetPkgs</tt>, taking their wiring from <tt>resourcePkgs</tt>.
+     */
+    private void mergeWireUses(
+            ResolveSession session,
+            Resource resource,
+            Packages resourcePkgs,
+            Packages targetPkgs,
+            List<WireCandidate> wireCandidates,
+            Set<Requirement> reqs,
+            Map<Resource, Packages> resourcePkgMap)
+    {
+        Set<Capability> usesCycleMap = new HashSet<Capability>();
+        for (WireCandidate w : wireCandidates)
+        {
+            if (!w.requirement.getNamespace().equals(BundleNamespace.BUNDLE_NAMESPACE)
+                && !w.requirement.getNamespace().equals(PackageNamespace.PACKAGE_NAMESPACE))
+            {
+                mergeUses(session, resource, targetPkgs, w.capability,
+                    Collections.singletonList(w.requirement), w.capability,
+                    resourcePkgMap, usesCycleMap);
+            }
+        }
+        for (List<Blame> blames : resourcePkgs.m_importedPkgs.values())
+        {
+            for (Blame blame : blames)
+            {
+                if (reqs.contains(blame.m_reqs.get(0)))
+                {
+                    mergeUses(session, resource, targetPkgs, blame.m_cap,
+                        Collections.singletonList(blame.m_reqs.get(0)), null,
+                        resourcePkgMap, usesCycleMap);
+                }
+            }
+        }
+        for (List<Blame> blames : resourcePkgs.m_requiredPkgs.values())
+        {
+            for (Blame blame : blames)
+            {
+                if (reqs.contains(blame.m_reqs.get(0)))
+                {
+                    mergeUses(session, resource, targetPkgs, blame.m_cap,
+                        Collections.singletonList(blame.m_reqs.get(0)), null,
+                        resourcePkgMap, usesCycleMap);
+                }
+            }
+        }
+    }
+
+    private static void copyUsedPackages(Packages from, Packages to)
+    {
+        for (Entry<String, ArrayMap<Set<Capability>, UsedBlames>> entry : from.m_usedPkgs.fast())
+        {
+            ArrayMap<Set<Capability>, UsedBlames> usedBlames = to.m_usedPkgs.getOrCompute(entry.getKey());
+            for (UsedBlames ub : entry.getValue().values())
+            {
+                usedBlames.getOrCompute(ub.m_caps).addAll(ub);
+            }
+        }
+    }
+
     private static void mergeCandidatePackages(
             ResolveSession session,
             Map<Resource, Packages> resourcePkgMap,
@@ -1129,6 +1460,10 @@ public class ResolverImpl implements Resolver
     {
         final EnhancedExecutor executor = new EnhancedExecutor(session.getExecutor());
 
+        // Package spaces of resolved resources reused from the cache; these
+        // are complete and must not be computed (nor modified) again.
+        final Map<Resource, CachedPackages> cachedPackages = new ConcurrentHashMap<Resource, CachedPackages>();
+
         // Parallel compute wire candidates
         final Map<Resource, List<WireCandidate>> allWireCandidates = new ConcurrentHashMap<Resource, List<WireCandidate>>();
         {
@@ -1142,7 +1477,17 @@ public class ResolverImpl implements Resolver
                 }
                 public void run()
                 {
-                    List<WireCandidate> wireCandidates = getWireCandidates(session, allCandidates, resource);
+                    List<WireCandidate> wireCandidates;
+                    CachedPackages cached = session.getCachedPackages(resource);
+                    if (cached != null)
+                    {
+                        cachedPackages.put(resource, cached);
+                        wireCandidates = cached.m_wireCandidates;
+                    }
+                    else
+                    {
+                        wireCandidates = getWireCandidates(session, allCandidates, resource);
+                    }
                     allWireCandidates.put(resource, wireCandidates);
                     for (WireCandidate w : wireCandidates)
                     {
@@ -1169,6 +1514,12 @@ public class ResolverImpl implements Resolver
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
         for (final Resource resource : allWireCandidates.keySet())
         {
+            CachedPackages cached = cachedPackages.get(resource);
+            if (cached != null)
+            {
+                allPackages.put(resource, cached.m_packages);
+                continue;
+            }
             final Packages packages = new Packages(resource);
             allPackages.put(resource, packages);
             executor.execute(new Runnable()
@@ -1185,6 +1536,10 @@ public class ResolverImpl implements Resolver
         // Parallel compute package lists
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (cachedPackages.containsKey(resource))
+            {
+                continue;
+            }
             executor.execute(new Runnable()
             {
                 public void run()
@@ -1203,7 +1558,7 @@ public class ResolverImpl implements Resolver
         {
             final Resource resource = entry.getKey();
             final Packages packages = entry.getValue();
-            if (!packages.m_requiredPkgs.isEmpty())
+            if (!packages.m_requiredPkgs.isEmpty() && !cachedPackages.containsKey(resource))
             {
                 getPackageSourcesInternal(session, allPackages, resource, packages);
             }
@@ -1214,7 +1569,7 @@ public class ResolverImpl implements Resolver
         {
             final Resource resource = entry.getKey();
             final Packages packages = entry.getValue();
-            if (packages.m_sources.isEmpty())
+            if (packages.m_sources.isEmpty() && !cachedPackages.containsKey(resource))
             {
                 executor.execute(new Runnable()
                 {
@@ -1230,16 +1585,39 @@ public class ResolverImpl implements Resolver
         // Parallel compute uses
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (cachedPackages.containsKey(resource))
+            {
+                continue;
+            }
             executor.execute(new Runnable()
             {
                 public void run()
                 {
-                    computeUses(session, allWireCandidates, allPackages, resource);
+                    if (resource.equals(session.getDynamicHost()))
+                    {
+                        computeDynamicUses(session, allWireCandidates, allPackages, resource);
+                    }
+                    else
+                    {
+                        computeUses(session, allWireCandidates, allPackages, resource);
+                    }
                 }
             });
         }
         executor.await();
 
+        // Cache the package spaces of resolved resources, they will not
+        // change as long as their wirings do not change.
+        for (Map.Entry<Resource, List<WireCandidate>> entry : allWireCandidates.entrySet())
+        {
+            Resource resource = entry.getKey();
+            if (!cachedPackages.containsKey(resource) && !resource.equals(session.getDynamicHost()))
+            {
+                session.getPackagesCache().put(session.getContext(), resource,
+                    entry.getValue(), allPackages.get(resource));
+            }
+        }
+
         return allPackages;
     }
 
@@ -1397,6 +1775,7 @@ public class ResolverImpl implements Resolver
             {
                 continue;
             }
+            List<UsedBlames> conflicts = null;
             for (UsedBlames usedBlames : pkgBlames.values())
             {
                 if (!isCompatible(exportBlame, usedBlames.m_caps, resourcePkgMap))
@@ -1404,6 +1783,10 @@ public class ResolverImpl implements Resolver
                     mutated = (mutated != null)
                             ? mutated
                             : new HashSet<Requirement>();
+                    conflicts = (conflicts != null)
+                            ? conflicts
+                            : new ArrayList<UsedBlames>(1);
+                    conflicts.add(usedBlames);
                     rethrow = permuteUsedBlames(session, rethrow, allCandidates, resource,
                             pkgName, null, usedBlames, permRef1, permRef2, mutated);
                 }
@@ -1416,6 +1799,9 @@ public class ResolverImpl implements Resolver
                     session.addPermutation(PermutationType.USES, permRef1.get());
                     session.addPermutation(PermutationType.USES, permRef2.get());
                 }
+                learnNoGood(session, allCandidates, resourcePkgMap, resource,
+                    Collections.singletonList(exportBlame), conflicts,
+                    Collections.<Requirement>emptyList(), rethrow);
                 if (m_logger.isDebugEnabled())
                 {
                     m_logger.debug("Candidate permutation failed due to a conflict between "
@@ -1482,9 +1868,11 @@ public class ResolverImpl implements Resolver
                     // Try to permutate the candidate for the original
                     // import requirement; only permutate it if we haven't
                     // done so already.
+                    List<Requirement> importReqs = new ArrayList<Requirement>(requirementBlames.size());
                     for (Blame requirementBlame : requirementBlames)
                     {
                         Requirement req = requirementBlame.m_reqs.get(0);
+                        importReqs.add(req);
                         if (!mutated.contains(req))
                         {
                             // Since there may be lots of uses constraint violations
@@ -1494,6 +1882,9 @@ public class ResolverImpl implements Resolver
                             session.permutateIfNeeded(PermutationType.IMPORT, req, allCandidates);
                         }
                     }
+                    learnNoGood(session, allCandidates, resourcePkgMap, resource,
+                        requirementBlames, Collections.singletonList(usedBlames),
+                        importReqs, rethrow);
 
                     if (m_logger.isDebugEnabled())
                     {
@@ -1574,40 +1965,165 @@ public class ResolverImpl implements Resolver
                 }
             }
 
-            // Create a candidate permutation that eliminates all candidates
-            // that conflict with existing selected candidates going from direct requirement -> root
-            Candidates perm1 = permRef1.get();
-            if (perm1 == null)
+            permuteUsedBlameChain(usedBlame.m_reqs, allCandidates, permRef1, permRef2, mutated);
+        }
+        return rethrow;
+    }
+
+    private void permuteUsedBlameChain(List<Requirement> reqs, Candidates allCandidates,
+          AtomicReference<Candidates> permRef1, AtomicReference<Candidates> permRef2,
+          Set<Requirement> mutated)
+    {
+        // Create a candidate permutation that eliminates all candidates
+        // that conflict with existing selected candidates going from direct requirement -> root
+        Candidates perm1 = permRef1.get();
+        if (perm1 == null)
+        {
+            perm1 = allCandidates.copy();
+            permRef1.set(perm1);
+        }
+        for (int reqIdx = reqs.size() - 1; reqIdx >= 0; reqIdx--)
+        {
+            Requirement req = reqs.get(reqIdx);
+            if (permuteUsedBlameRequirement(req, mutated, perm1))
             {
-                perm1 = allCandidates.copy();
-                permRef1.set(perm1);
+                break;
             }
-            for (int reqIdx = usedBlame.m_reqs.size() - 1; reqIdx >= 0; reqIdx--)
+        }
+        // Create a candidate permutation that eliminates all candidates
+        // that conflict with existing selected candidates going from root -> direct requirement
+        Candidates perm2 = permRef2.get();
+        if (perm2 == null)
+        {
+            perm2 = allCandidates.copy();
+            permRef2.set(perm2);
+        }
+        for (int reqIdx = 0; reqIdx < reqs.size(); reqIdx++)
+        {
+            Requirement req = reqs.get(reqIdx);
+            if (permuteUsedBlameRequirement(req, mutated, perm2))
             {
-                Requirement req = usedBlame.m_reqs.get(reqIdx);
-                if (permuteUsedBlameRequirement(req, mutated, perm1))
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records the candidate choices that caused a uses constraint violation,
+     * so that later permutations still containing all of them can be rejected
+     * without calculating their package spaces. The choices are the candidates
+     * of all requirements in the conflicting dependency chains, plus the
+     * candidates of the package requirements of the involved providers, since
+     * those decide whether a provider exports or substitutes a package.
+     * Conflicts which depend on more than these choices, i.e. that involve
+     * required bundles or multiple cardinality requirements, are not recorded.
+     */
+    private static void learnNoGood(
+        ResolveSession session, Candidates allCandidates,
+        Map<Resource, Packages> resourcePkgMap, Resource resource,
+        List<Blame> blames, List<UsedBlames> conflicts,
+        List<Requirement> importReqs, ResolutionError error)
+    {
+        if ((session.getMultipleCardCandidates() != null)
+            || !resourcePkgMap.get(resource).m_requiredPkgs.isEmpty())
+        {
+            return;
+        }
+        Map<Requirement, Capability> choices = new LinkedHashMap<Requirement, Capability>();
+        List<List<Requirement>> usedChains = new ArrayList<List<Requirement>>();
+        Set<Capability> caps = new HashSet<Capability>();
+        for (UsedBlames usedBlames : conflicts)
+        {
+            for (Blame usedBlame : usedBlames.m_blames)
+            {
+                if (!addChoices(usedBlame.m_reqs, allCandidates, choices))
                 {
-                    break;
+                    return;
                 }
+                usedChains.add(usedBlame.m_reqs);
+                caps.add(usedBlame.m_cap);
+            }
+            caps.addAll(usedBlames.m_caps);
+        }
+        for (Blame blame : blames)
+        {
+            if ((blame.m_reqs != null) && !addChoices(blame.m_reqs, allCandidates, choices))
+            {
+                return;
             }
-            // Create a candidate permutation that eliminates all candidates
-            // that conflict with existing selected candidates going from root -> direct requirement
-            Candidates perm2 = permRef2.get();
-            if (perm2 == null)
+            caps.add(blame.m_cap);
+        }
+        for (Capability cap : caps)
+        {
+            Packages capPkgs = resourcePkgMap.get(cap.getResource());
+            if ((capPkgs == null) || !capPkgs.m_requiredPkgs.isEmpty())
             {
-                perm2 = allCandidates.copy();
-                permRef2.set(perm2);
+                return;
             }
-            for (int reqIdx = 0; reqIdx < usedBlame.m_reqs.size(); reqIdx++)
+            if (cap.getNamespace().equals(PackageNamespace.PACKAGE_NAMESPACE)
+                && !session.getContext().getWirings().containsKey(cap.getResource()))
             {
-                Requirement req = usedBlame.m_reqs.get(reqIdx);
-                if (permuteUsedBlameRequirement(req, mutated, perm2))
+                Object pkgName = cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE);
+                for (Requirement req : cap.getResource().getRequirements(PackageNamespace.PACKAGE_NAMESPACE))
                 {
-                    break;
+                    Capability cand = allCandidates.getFirstCandidate(req);
+                    if ((cand == null)
+                        || pkgName.equals(cand.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE)))
+                    {
+                        choices.put(req, cand);
+                    }
                 }
             }
         }
-        return rethrow;
+        if (!usedChains.isEmpty())
+        {
+            session.addNoGood(new NoGood(usedChains.get(0).get(0), choices, usedChains, importReqs, error));
+        }
+    }
+
+    private static boolean addChoices(
+        List<Requirement> reqs, Candidates allCandidates, Map<Requirement, Capability> choices)
+    {
+        for (Requirement req : reqs)
+        {
+            if (Util.isMultiple(req)
+                || req.getNamespace().equals(BundleNamespace.BUNDLE_NAMESPACE))
+            {
+                return false;
+            }
+            choices.put(req, allCandidates.getFirstCandidate(req));
+        }
+        return true;
+    }
+
+    /**
+     * Creates the permutations the consistency check created for the conflict
+     * the given no good was learned from. Returns false if no new permutation
+     * could be created, in which case the permutation must be fully checked.
+     */
+    private boolean permuteNoGood(ResolveSession session, Candidates allCandidates, NoGood noGood)
+    {
+        long permCount = session.getPermutationCount();
+        AtomicReference<Candidates> permRef1 = new AtomicReference<Candidates>();
+        AtomicReference<Candidates> permRef2 = new AtomicReference<Candidates>();
+        Set<Requirement> mutated = new HashSet<Requirement>();
+        for (List<Requirement> usedChain : noGood.m_usedChains)
+        {
+            permuteUsedBlameChain(usedChain, allCandidates, permRef1, permRef2, mutated);
+        }
+        if (!mutated.isEmpty())
+        {
+            session.addPermutation(PermutationType.USES, permRef1.get());
+            session.addPermutation(PermutationType.USES, permRef2.get());
+        }
+        for (Requirement req : noGood.m_importReqs)
+        {
+            if (!mutated.contains(req))
+            {
+                session.permutateIfNeeded(PermutationType.IMPORT, req, allCandidates);
+            }
+        }
+        return session.getPermutationCount() > permCount;
     }
 
     private boolean permuteUsedBlameRequirement(Requirement req, Set<Requirement> mutated, Candidates permutation)
@@ -2113,6 +2629,273 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /**
+     * Caches the package spaces of resolved resources. A resolved resource's
+     * package space only depends on its wiring and on the wirings of its
+     * providers, so a cached package space stays valid as long as the resolve
+     * context returns the same wirings for them. Package spaces of unresolved
+     * resources are never cached.
+     */
+    static class PackagesCache
+    {
+        private final ConcurrentMap<Resource, CachedPackages> m_cache =
+            new ConcurrentHashMap<Resource, CachedPackages>();
+        private final ConcurrentMap<Resource, DynamicUses> m_dynamicUses =
+            new ConcurrentHashMap<Resource, DynamicUses>();
+
+        CachedPackages get(ResolveContext rc, Resource resource)
+        {
+            CachedPackages cached = m_cache.get(resource);
+            if (cached != null && !cached.isValid(rc))
+            {
+                m_cache.remove(resource, cached);
+                return null;
+            }
+            return cached;
+        }
+
+        void put(ResolveContext rc, Resource resource, List<WireCandidate> wireCandidates, Packages packages)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            Wiring wiring = wirings.get(resource);
+            if (wiring == null)
+            {
+                return;
+            }
+            Set<Resource> resources = new LinkedHashSet<Resource>();
+            resources.add(resource);
+            for (WireCandidate w : wireCandidates)
+            {
+                resources.add(w.capability.getResource());
+            }
+            addUsesClosure(packages, resources);
+            m_cache.put(resource, new CachedPackages(
+                resource, wiring, new WiringSnapshot(wirings, resources),
+                wireCandidates, packages));
+        }
+
+        /**
+         * Returns the uses constraints of the given dynamically importing
+         * host, if its wiring did not change except for wires added after
+         * those the uses were computed for.
+         */
+        DynamicUses getDynamicUses(ResolveContext rc, Resource host, int wireCount)
+        {
+            DynamicUses cached = m_dynamicUses.get(host);
+            if (cached != null && !cached.isValid(rc, wireCount))
+            {
+                m_dynamicUses.remove(host, cached);
+                return null;
+            }
+            return cached;
+        }
+
+        void putDynamicUses(ResolveContext rc, Resource host, int wireCount,
+            Packages packages, List<WireCandidate> wireCandidates)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            Wiring wiring = wirings.get(host);
+            Set<Resource> resources = new LinkedHashSet<Resource>();
+            for (WireCandidate w : wireCandidates)
+            {
+                resources.add(w.capability.getResource());
+            }
+            addUsesClosure(packages, resources);
+            // The host is checked separately, wires may be added to its wiring.
+            resources.remove(host);
+            m_dynamicUses.put(host, new DynamicUses(host, wiring,
+                new ArrayList<Wire>(wiring.getRequiredResourceWires(null).subList(0, wireCount)),
+                packages, new WiringSnapshot(wirings, resources)));
+        }
+
+        void prune(ResolveContext rc)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            for (Iterator<CachedPackages> it = m_cache.values().iterator(); it.hasNext();)
+            {
+                CachedPackages cached = it.next();
+                if (wirings.get(cached.m_resource) != cached.m_wiring)
+                {
+                    it.remove();
+                }
+            }
+            for (Iterator<DynamicUses> it = m_dynamicUses.values().iterator(); it.hasNext();)
+            {
+                DynamicUses cached = it.next();
+                if (wirings.get(cached.m_resource) != cached.m_wiring)
+                {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /*
+     * The uses constraints implied by the first m_wireCount wires of a
+     * resolved resource, as needed to check a dynamic import against them.
+     * Instances are shared between concurrent dynamic resolves and are
+     * never modified once created.
+     */
+    static final class DynamicUses
+    {
+        final Resource m_resource;
+        final Wiring m_wiring;
+        final List<Wire> m_wires;
+        final int m_wireCount;
+        final Packages m_packages;
+        // The wirings of all other resources in the uses closure.
+        final WiringSnapshot m_wirings;
+
+        DynamicUses(Resource resource, Wiring wiring, List<Wire> wires,
+            Packages packages, WiringSnapshot wirings)
+        {
+            m_resource = resource;
+            m_wiring = wiring;
+            m_wires = wires;
+            m_wireCount = wires.size();
+            m_packages = packages;
+            m_wirings = wirings;
+        }
+
+        boolean isValid(ResolveContext rc, int wireCount)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            Wiring wiring = wirings.get(m_resource);
+            if (wiring != m_wiring || wireCount < m_wireCount)
+            {
+                return false;
+            }
+            // Wires are only ever added to a wiring by dynamic imports.
+            if (!wiring.getRequiredResourceWires(null).subList(0, m_wireCount).equals(m_wires))
+            {
+                return false;
+            }
+            return m_wirings.isValid(wirings);
+        }
+    }
+
+    /*
+     * Adds the resources providing the packages in the given package space,
+     * directly or through uses constraints, which are all resources whose
+     * wirings the package space was calculated from.
+     */
+    private static void addUsesClosure(Packages packages, Set<Resource> resources)
+    {
+        for (Blame blame : packages.m_exportedPkgs.values())
+        {
+            addBlameResources(blame, resources);
+        }
+        for (Blame blame : packages.m_substitePkgs.values())
+        {
+            addBlameResources(blame, resources);
+        }
+        for (List<Blame> blames : packages.m_importedPkgs.values())
+        {
+            for (Blame blame : blames)
+            {
+                addBlameResources(blame, resources);
+            }
+        }
+        for (List<Blame> blames : packages.m_requiredPkgs.values())
+        {
+            for (Blame blame : blames)
+            {
+                addBlameResources(blame, resources);
+            }
+        }
+        for (ArrayMap<Set<Capability>, UsedBlames> usedBlames : packages.m_usedPkgs.values())
+        {
+            for (UsedBlames used : usedBlames.values())
+            {
+                for (Capability cap : used.m_caps)
+                {
+                    resources.add(cap.getResource());
+                }
+                for (Blame blame : used.m_blames)
+                {
+                    addBlameResources(blame, resources);
+                }
+            }
+        }
+    }
+
+    private static void addBlameResources(Blame blame, Set<Resource> resources)
+    {
+        resources.add(blame.m_cap.getResource());
+        if (blame.m_reqs != null)
+        {
+            for (Requirement req : blame.m_reqs)
+            {
+                resources.add(req.getResource());
+            }
+        }
+    }
+
+    /*
+     * The wirings of a set of resources as they were when something was
+     * calculated from them, including the number of their wires since
+     * dynamic imports add wires to an existing wiring.
+     */
+    static final class WiringSnapshot
+    {
+        private final Resource[] m_resources;
+        private final Wiring[] m_wirings;
+        private final int[] m_wireCounts;
+
+        WiringSnapshot(Map<Resource, Wiring> wirings, Collection<Resource> resources)
+        {
+            int size = resources.size();
+            m_resources = resources.toArray(new Resource[size]);
+            m_wirings = new Wiring[size];
+            m_wireCounts = new int[size];
+            for (int i = 0; i < size; i++)
+            {
+                Wiring wiring = wirings.get(m_resources[i]);
+                m_wirings[i] = wiring;
+                m_wireCounts[i] = wiring != null ? wiring.getRequiredResourceWires(null).size() : 0;
+            }
+        }
+
+        boolean isValid(Map<Resource, Wiring> wirings)
+        {
+            for (int i = 0; i < m_resources.length; i++)
+            {
+                Wiring wiring = wirings.get(m_resources[i]);
+                if (wiring != m_wirings[i]
+                    || (wiring != null && wiring.getRequiredResourceWires(null).size() != m_wireCounts[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class CachedPackages
+    {
+        final Resource m_resource;
+        final Wiring m_wiring;
+        // The wirings of the resource and of all resources in its uses closure.
+        final WiringSnapshot m_wirings;
+        final List<WireCandidate> m_wireCandidates;
+        final Packages m_packages;
+
+        CachedPackages(Resource resource, Wiring wiring, WiringSnapshot wirings,
+            List<WireCandidate> wireCandidates, Packages packages)
+        {
+            m_resource = resource;
+            m_wiring = wiring;
+            m_wirings = wirings;
+            m_wireCandidates = wireCandidates;
+            m_packages = packages;
+        }
+
+        boolean isValid(ResolveContext rc)
+        {
+            return m_wirings.isValid(rc.getWirings());
+        }
+    }
+
     public static class Packages
     {
         public final OpenHashMap<String, Blame> m_exportedPkgs;
@@ -2184,6 +2967,45 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    /*
+     * A NoGood is a combination of requirement to capability choices which
+     * was proven to violate a uses constraint. Any permutation that makes the
+     * same choices violates the same constraint. It also holds the blame chains
+     * of the violation, so the same permutations can be created from it.
+     */
+    static class NoGood
+    {
+        final Requirement m_key;
+        final Map<Requirement, Capability> m_choices;
+        final List<List<Requirement>> m_usedChains;
+        final List<Requirement> m_importReqs;
+        final ResolutionError m_error;
+
+        NoGood(Requirement key, Map<Requirement, Capability> choices,
+            List<List<Requirement>> usedChains, List<Requirement> importReqs,
+            ResolutionError error)
+        {
+            m_key = key;
+            m_choices = choices;
+            m_usedChains = usedChains;
+            m_importReqs = importReqs;
+            m_error = error;
+        }
+
+        boolean matches(Candidates permutation)
+        {
+            for (Entry<Requirement, Capability> choice : m_choices.entrySet())
+            {
+                Capability cap = permutation.getFirstCandidate(choice.getKey());
+                if ((cap == null) ? (choice.getValue() != null) : !cap.equals(choice.getValue()))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /*
      * UsedBlames hold a list of Blame that have a common used capability.
      * The UsedBlames stores sets of capabilities (root causes) that match a
@@ -2243,6 +3065,28 @@ public class ResolverImpl implements Resolver
             }
         }
 
+        public void addAll(UsedBlames usedBlames)
+        {
+            m_blames.addAll(usedBlames.m_blames);
+            if (usedBlames.m_rootCauses != null)
+            {
+                if (m_rootCauses == null)
+                {
+                    m_rootCauses = new HashMap<Requirement, Set<Capability>>();
+                }
+                for (Entry<Requirement, Set<Capability>> entry : usedBlames.m_rootCauses.entrySet())
+                {
+                    Set<Capability> rootCauses = m_rootCauses.get(entry.getKey());
+                    if (rootCauses == null)
+                    {
+                        rootCauses = new HashSet<Capability>();
+                        m_rootCauses.put(entry.getKey(), rootCauses);
+                    }
+                    rootCauses.addAll(entry.getValue());
+                }
+            }
+        }
+
         public Set<Capability> getRootCauses(Requirement req)
         {
             if (m_rootCauses == null)
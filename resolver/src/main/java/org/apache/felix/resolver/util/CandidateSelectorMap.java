@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.util;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.osgi.resource.Requirement;
+
+/**
+ * Maps requirements to their candidate selectors. Requirements are interned
+ * to dense ids by an {@link Interner} shared by all maps of a resolve session
+ * and the selectors are stored in fixed size pages indexed by id.
+ * <p>
+ * A {@link #copy()} shares the pages and the selectors with the map it was
+ * created from. A page or a selector is only copied by the first map that
+ * modifies it, so a copy costs one reference per page and a permutation only
+ * pays for the requirements it actually changes.
+ */
+public class CandidateSelectorMap {
+
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final Interner<Requirement> ids;
+    private CandidateSelector[][] pages;
+    // For each page, the slots holding selectors owned by this map; a page is
+    // owned by this map as long as any of its slots is.
+    private long[] owned;
+    private int size;
+
+    public CandidateSelectorMap(Interner<Requirement> ids) {
+        this.ids = ids;
+        this.pages = new CandidateSelector[Math.max(1, (ids.size() + PAGE_MASK) >>> PAGE_SHIFT)][];
+        this.owned = new long[pages.length];
+    }
+
+    private CandidateSelectorMap(CandidateSelectorMap map) {
+        this.ids = map.ids;
+        this.pages = map.pages.clone();
+        this.owned = new long[pages.length];
+        this.size = map.size;
+    }
+
+    /**
+     * Creates a copy of this map. Everything is shared until it is modified,
+     * either through this map or through the copy.
+     */
+    public CandidateSelectorMap copy() {
+        CandidateSelectorMap copy = new CandidateSelectorMap(this);
+        Arrays.fill(owned, 0L);
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the selector for the given requirement. The returned selector
+     * may be shared with other maps and must not be modified; use
+     * {@link #getForUpdate(Requirement)} instead.
+     */
+    public CandidateSelector get(Requirement req) {
+        int id = ids.indexOf(req);
+        if (id < 0) {
+            return null;
+        }
+        return get(id);
+    }
+
+    /**
+     * Returns the selector for the given requirement, copying it first if it
+     * is shared with another map.
+     */
+    public CandidateSelector getForUpdate(Requirement req) {
+        int id = ids.indexOf(req);
+        if (id < 0) {
+            return null;
+        }
+        CandidateSelector selector = get(id);
+        if (selector != null && !isOwned(id)) {
+            selector = selector.copy();
+            set(id, selector);
+        }
+        return selector;
+    }
+
+    public CandidateSelector put(Requirement req, CandidateSelector selector) {
+        int id = ids.intern(req);
+        CandidateSelector old = get(id);
+        set(id, selector);
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    public CandidateSelector remove(Requirement req) {
+        int id = ids.indexOf(req);
+        if (id < 0) {
+            return null;
+        }
+        CandidateSelector old = get(id);
+        if (old != null) {
+            set(id, null);
+            size--;
+        }
+        return old;
+    }
+
+    /**
+     * Iterates over the entries of this map in the order the requirements
+     * were interned.
+     */
+    public Iterable<Map.Entry<Requirement, CandidateSelector>> fast() {
+        return new Iterable<Map.Entry<Requirement, CandidateSelector>>() {
+            public Iterator<Map.Entry<Requirement, CandidateSelector>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    private CandidateSelector get(int id) {
+        int page = id >>> PAGE_SHIFT;
+        if (page >= pages.length || pages[page] == null) {
+            return null;
+        }
+        return pages[page][id & PAGE_MASK];
+    }
+
+    private boolean isOwned(int id) {
+        return (owned[id >>> PAGE_SHIFT] & (1L << (id & PAGE_MASK))) != 0;
+    }
+
+    private void set(int id, CandidateSelector selector) {
+        int page = id >>> PAGE_SHIFT;
+        if (page >= pages.length) {
+            int length = Math.max(page + 1, pages.length << 1);
+            pages = Arrays.copyOf(pages, length);
+            owned = Arrays.copyOf(owned, length);
+        }
+        if (pages[page] == null) {
+            pages[page] = new CandidateSelector[PAGE_SIZE];
+            owned[page] = -1L;
+        } else if (owned[page] == 0L) {
+            pages[page] = pages[page].clone();
+        }
+        pages[page][id & PAGE_MASK] = selector;
+        owned[page] |= 1L << (id & PAGE_MASK);
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Requirement, CandidateSelector>> {
+        private int next = -1;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            int max = ids.size();
+            do {
+                next++;
+            } while (next < max && get(next) == null);
+        }
+
+        public boolean hasNext() {
+            return next < ids.size();
+        }
+
+        public Map.Entry<Requirement, CandidateSelector> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Requirement, CandidateSelector> entry =
+                    new AbstractMap.SimpleImmutableEntry<Requirement, CandidateSelector>(ids.get(next), get(next));
+            advance();
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
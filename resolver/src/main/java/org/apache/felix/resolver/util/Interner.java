@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.util;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids to objects in the order they are first interned.
+ * Ids stay valid for the lifetime of the interner, so data keyed by the
+ * interned objects can be kept in arrays indexed by id.
+ */
+public class Interner<T> {
+
+    private final OpenHashMap<T, Integer> ids;
+    private Object[] values;
+    private int size;
+
+    public Interner() {
+        this(64);
+    }
+
+    public Interner(int expected) {
+        ids = new OpenHashMap<T, Integer>(expected);
+        values = new Object[Math.max(expected, 1)];
+    }
+
+    /**
+     * Returns the id of the given object, assigning the next free id if the
+     * object has not been interned yet.
+     */
+    public int intern(T t) {
+        Integer id = ids.get(t);
+        if (id != null) {
+            return id;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+        values[size] = t;
+        ids.put(t, size);
+        return size++;
+    }
+
+    /**
+     * Returns the id of the given object or -1 if it has not been interned.
+     */
+    public int indexOf(Object t) {
+        Integer id = ids.get(t);
+        return id != null ? id : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        return (T) values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolutionStatistics;
 import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.resolver.test.util.CandidateComparator;
 import org.apache.felix.resolver.test.util.CapabilitySet;
@@ -45,6 +46,8 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Version;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
@@ -54,6 +57,7 @@ import org.osgi.service.resolver.HostedCapability;
 import org.osgi.service.resolver.ResolveContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class BigResolutionTest {
 
@@ -118,6 +122,64 @@ public class BigResolutionTest {
         checkResolutions(wiring1, wiring2);
     }
 
+    @Test
+    public void testConflictingResolution() throws Exception {
+        ResolveContext rc = buildResolutionContext();
+
+        final List<ResolutionStatistics> statistics = new ArrayList<ResolutionStatistics>();
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_ERROR) {
+            @Override
+            public void logResolutionStatistics(ResolutionStatistics s) {
+                statistics.add(s);
+            }
+        }, 1);
+        Map<Resource, List<Wire>> wires = resolver.resolve(rc);
+
+        for (Resource resource : rc.getMandatoryResources()) {
+            assertTrue(wires.containsKey(resource));
+        }
+        assertEquals(247, wires.size());
+        int wireCount = 0;
+        for (List<Wire> resourceWires : wires.values()) {
+            wireCount += resourceWires.size();
+        }
+        assertEquals(3335, wireCount);
+
+        // Packages with several providers are wired the same way as without
+        // learning from conflicts
+        assertEquals("org.apache.karaf.shell.console",
+                getIdentity(getProvider(wires, "io.fabric8.fabric-core-agent-ssh", "jline.console")));
+        assertEquals("org.apache.karaf.shell.console",
+                getIdentity(getProvider(wires, "io.fabric8.fabric-commands", "org.fusesource.jansi")));
+        assertEquals("org.apache.servicemix.bundles.jaxb-impl",
+                getIdentity(getProvider(wires, "org.apache.servicemix.bundles.jaxb-xjc", "com.sun.xml.bind.v2.model.core")));
+
+        // The fixture runs into uses conflicts; permutations repeating a
+        // learned conflict are skipped instead of being checked again.
+        assertEquals(1, statistics.size());
+        ResolutionStatistics s = statistics.get(0);
+        assertEquals(36, s.getCheckedPermutationCount());
+        assertEquals(29, s.getSkippedPermutationCount());
+    }
+
+    private static Resource getProvider(Map<Resource, List<Wire>> wires, String identity, String pkg) {
+        for (Map.Entry<Resource, List<Wire>> entry : wires.entrySet()) {
+            if (identity.equals(getIdentity(entry.getKey()))) {
+                for (Wire wire : entry.getValue()) {
+                    if (pkg.equals(wire.getCapability().getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE))) {
+                        return wire.getProvider();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String getIdentity(Resource resource) {
+        List<Capability> caps = resource.getCapabilities(IdentityNamespace.IDENTITY_NAMESPACE);
+        return caps.isEmpty() ? null : (String) caps.get(0).getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE);
+    }
+
     private ResolveContext buildResolutionContext() throws IOException, BundleException {
         Object resolution;
 
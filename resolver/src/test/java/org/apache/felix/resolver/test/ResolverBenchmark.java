@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolutionStatistics;
+import org.apache.felix.resolver.ResolverImpl;
+import org.apache.felix.resolver.test.util.RepositoryGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Measures the resolver against repositories created by the
+ * {@link RepositoryGenerator}.
+ * <p>
+ * Run with {@code mvn -Pbenchmark verify} or run this class directly. JMH
+ * command line options are taken from the arguments, or from the
+ * {@code benchmark.args} property when run by maven, for example
+ * {@code -p resources=20000 -p usesDepth=8}. Allocation rates are reported by
+ * the JMH gc profiler. The {@link ResolutionStatistics} of resolving each
+ * generated repository, including its permutation counts, are printed when
+ * the repository is set up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ResolverBenchmark
+{
+    @Param({"1000", "5000", "20000"})
+    public int resources;
+
+    @Param("3")
+    public int exportFanOut;
+
+    @Param("4")
+    public int importFanOut;
+
+    @Param("4")
+    public int usesDepth;
+
+    @Param("2")
+    public int versions;
+
+    @Param("0.001")
+    public double narrowRangeRatio;
+
+    @Param("0.05")
+    public double fragmentRatio;
+
+    @Param("0.1")
+    public double substitutableRatio;
+
+    @Param("1")
+    public int parallelism;
+
+    private ResolveContext m_context;
+    private ResolverImpl m_resolver;
+
+    @Setup
+    public void setUp() throws ResolutionException
+    {
+        m_context = new RepositoryGenerator()
+            .resources(resources)
+            .exportFanOut(exportFanOut)
+            .importFanOut(importFanOut)
+            .usesDepth(usesDepth)
+            .versions(versions)
+            .narrowRangeRatio(narrowRangeRatio)
+            .fragmentRatio(fragmentRatio)
+            .substitutableRatio(substitutableRatio)
+            .generate();
+        m_resolver = new ResolverImpl(new Logger(Logger.LOG_ERROR), parallelism);
+
+        final ResolutionStatistics[] statistics = new ResolutionStatistics[1];
+        Logger logger = new Logger(Logger.LOG_ERROR)
+        {
+            @Override
+            public void logResolutionStatistics(ResolutionStatistics s)
+            {
+                statistics[0] = s;
+            }
+        };
+        Map<Resource, List<Wire>> wires = new ResolverImpl(logger, parallelism).resolve(m_context);
+        System.out.println();
+        System.out.println("Resolved " + wires.size() + " resources. " + statistics[0]);
+    }
+
+    @Benchmark
+    public Map<Resource, List<Wire>> resolve() throws ResolutionException
+    {
+        return m_resolver.resolve(m_context);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(ResolverBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.felix.resolver.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -32,8 +33,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolutionStatistics;
 import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.resolver.test.util.BundleCapability;
 import org.apache.felix.resolver.test.util.BundleRequirement;
@@ -41,6 +44,7 @@ import org.apache.felix.resolver.test.util.GenericCapability;
 import org.apache.felix.resolver.test.util.GenericRequirement;
 import org.apache.felix.resolver.test.util.PackageCapability;
 import org.apache.felix.resolver.test.util.PackageRequirement;
+import org.apache.felix.resolver.test.util.RepositoryGenerator;
 import org.apache.felix.resolver.test.util.ResolveContextImpl;
 import org.apache.felix.resolver.test.util.ResourceImpl;
 import org.junit.Test;
@@ -923,6 +927,418 @@ public class ResolverTest
         assertEquals("Wrong number of resolved bundles", 9, result.size());
     }
 
+    @Test
+    public void testIncrementalResolve() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        ResourceImpl a = new ResourceImpl("A");
+        Capability a_fooCap = addCap(a, PackageNamespace.PACKAGE_NAMESPACE, "foo", "bar");
+        Requirement a_barReq = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b1 = new ResourceImpl("B1");
+        Capability b1_barCap = addCap(b1, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b2 = new ResourceImpl("B2");
+        Capability b2_barCap = addCap(b2, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl c = new ResourceImpl("C");
+        Requirement c_fooReq = addReq(c, PackageNamespace.PACKAGE_NAMESPACE, "foo");
+
+        ResourceImpl d = new ResourceImpl("D");
+        Requirement d_fooReq = addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "foo");
+        Requirement d_barReq = addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        candMap.put(a_barReq, Collections.singletonList(b1_barCap));
+        candMap.put(c_fooReq, Collections.singletonList(a_fooCap));
+        candMap.put(d_fooReq, Collections.singletonList(a_fooCap));
+        candMap.put(d_barReq, Arrays.asList(b2_barCap, b1_barCap));
+
+        ResolverImpl incremental = new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1, true);
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1);
+
+        // Resolve the system first, then install D into the resolved system
+        Map<Resource, List<Wire>> wireMap = incremental.resolve(new ResolveContextImpl(
+            Collections.<Resource, Wiring> emptyMap(), candMap,
+            Arrays.<Resource> asList(a, b1, b2, c), Collections.<Resource> emptyList()));
+        assertEquals(4, wireMap.size());
+        Map<Resource, Wiring> wirings = createWirings(wireMap);
+
+        ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap,
+            Collections.<Resource> singletonList(d), Collections.<Resource> emptyList());
+        Map<Resource, List<Wire>> expected = resolver.resolve(rci);
+        // The uses constraint of the resolved A must be honored
+        assertEquals(b1, getProvider(expected.get(d), d_barReq));
+
+        // Once to populate the cache and once to use it
+        assertEquals(expected, incremental.resolve(rci));
+        assertEquals(expected, incremental.resolve(rci));
+
+        // Rewire A to B2, the cached package space of A must not be used anymore
+        Map<Resource, List<Wire>> rewired = new HashMap<Resource, List<Wire>>(wireMap);
+        rewired.put(a, Collections.<Wire> singletonList(new SimpleWire(a_barReq, b2_barCap)));
+        candMap.put(a_barReq, Collections.singletonList(b2_barCap));
+        rci = new ResolveContextImpl(createWirings(rewired), candMap,
+            Collections.<Resource> singletonList(d), Collections.<Resource> emptyList());
+        expected = resolver.resolve(rci);
+        assertEquals(b2, getProvider(expected.get(d), d_barReq));
+        assertEquals(expected, incremental.resolve(rci));
+    }
+
+    @Test
+    public void testRepeatedUsesConflicts() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        // A tangle of uses constraints between the providers of p0 to p4 in
+        // which different permutations run into the same conflicts again.
+        ResourceImpl p0_0 = new ResourceImpl("P0_0");
+        Capability p0_0_p0Cap = addCap(p0_0, PackageNamespace.PACKAGE_NAMESPACE, "p0", "p3");
+        Requirement p0_0_p3Req = addReq(p0_0, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+
+        ResourceImpl p1_0 = new ResourceImpl("P1_0");
+        Capability p1_0_p1Cap = addCap(p1_0, PackageNamespace.PACKAGE_NAMESPACE, "p1", "p4");
+        Requirement p1_0_p4Req = addReq(p1_0, PackageNamespace.PACKAGE_NAMESPACE, "p4");
+        ResourceImpl p1_1 = new ResourceImpl("P1_1");
+        Capability p1_1_p1Cap = addCap(p1_1, PackageNamespace.PACKAGE_NAMESPACE, "p1", "p4");
+        Requirement p1_1_p4Req = addReq(p1_1, PackageNamespace.PACKAGE_NAMESPACE, "p4");
+        ResourceImpl p1_2 = new ResourceImpl("P1_2");
+        Capability p1_2_p1Cap = addCap(p1_2, PackageNamespace.PACKAGE_NAMESPACE, "p1");
+
+        ResourceImpl p2_0 = new ResourceImpl("P2_0");
+        Capability p2_0_p2Cap = addCap(p2_0, PackageNamespace.PACKAGE_NAMESPACE, "p2", "p1");
+        Requirement p2_0_p1Req = addReq(p2_0, PackageNamespace.PACKAGE_NAMESPACE, "p1");
+        ResourceImpl p2_1 = new ResourceImpl("P2_1");
+        Capability p2_1_p2Cap = addCap(p2_1, PackageNamespace.PACKAGE_NAMESPACE, "p2", "p3");
+        Requirement p2_1_p3Req = addReq(p2_1, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+
+        ResourceImpl p3_0 = new ResourceImpl("P3_0");
+        Capability p3_0_p3Cap = addCap(p3_0, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+        ResourceImpl p3_1 = new ResourceImpl("P3_1");
+        Capability p3_1_p3Cap = addCap(p3_1, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+
+        ResourceImpl p4_0 = new ResourceImpl("P4_0");
+        Capability p4_0_p4Cap = addCap(p4_0, PackageNamespace.PACKAGE_NAMESPACE, "p4", "p1");
+        Requirement p4_0_p1Req = addReq(p4_0, PackageNamespace.PACKAGE_NAMESPACE, "p1");
+        ResourceImpl p4_1 = new ResourceImpl("P4_1");
+        Capability p4_1_p4Cap = addCap(p4_1, PackageNamespace.PACKAGE_NAMESPACE, "p4", "p1");
+        Requirement p4_1_p1Req = addReq(p4_1, PackageNamespace.PACKAGE_NAMESPACE, "p1");
+        ResourceImpl p4_2 = new ResourceImpl("P4_2");
+        Capability p4_2_p4Cap = addCap(p4_2, PackageNamespace.PACKAGE_NAMESPACE, "p4", "p3");
+        Requirement p4_2_p3Req = addReq(p4_2, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+
+        ResourceImpl r = new ResourceImpl("R");
+        Requirement r_p0Req = addReq(r, PackageNamespace.PACKAGE_NAMESPACE, "p0");
+        Requirement r_p1Req = addReq(r, PackageNamespace.PACKAGE_NAMESPACE, "p1");
+        Requirement r_p2Req = addReq(r, PackageNamespace.PACKAGE_NAMESPACE, "p2");
+        Requirement r_p3Req = addReq(r, PackageNamespace.PACKAGE_NAMESPACE, "p3");
+        Requirement r_p4Req = addReq(r, PackageNamespace.PACKAGE_NAMESPACE, "p4");
+
+        candMap.put(p0_0_p3Req, Collections.singletonList(p3_0_p3Cap));
+        candMap.put(p1_0_p4Req, Collections.singletonList(p4_0_p4Cap));
+        candMap.put(p1_1_p4Req, Arrays.asList(p4_2_p4Cap, p4_0_p4Cap));
+        candMap.put(p2_0_p1Req, Arrays.asList(p1_0_p1Cap, p1_2_p1Cap, p1_1_p1Cap));
+        candMap.put(p2_1_p3Req, Collections.singletonList(p3_1_p3Cap));
+        candMap.put(p4_0_p1Req, Arrays.asList(p1_2_p1Cap, p1_1_p1Cap));
+        candMap.put(p4_1_p1Req, Arrays.asList(p1_1_p1Cap, p1_0_p1Cap));
+        candMap.put(p4_2_p3Req, Collections.singletonList(p3_0_p3Cap));
+        candMap.put(r_p0Req, Collections.singletonList(p0_0_p0Cap));
+        candMap.put(r_p1Req, Arrays.asList(p1_0_p1Cap, p1_1_p1Cap, p1_2_p1Cap));
+        candMap.put(r_p2Req, Arrays.asList(p2_0_p2Cap, p2_1_p2Cap));
+        candMap.put(r_p3Req, Arrays.asList(p3_1_p3Cap, p3_0_p3Cap));
+        candMap.put(r_p4Req, Arrays.asList(p4_1_p4Cap, p4_0_p4Cap));
+
+        final List<ResolutionStatistics> statistics = new ArrayList<ResolutionStatistics>();
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG)
+        {
+            @Override
+            public void logResolutionStatistics(ResolutionStatistics s)
+            {
+                statistics.add(s);
+            }
+        }, 1);
+        Map<Resource, List<Wire>> wireMap = resolver.resolve(new ResolveContextImpl(
+            Collections.<Resource, Wiring> emptyMap(), candMap,
+            Collections.<Resource> singletonList(r), Collections.<Resource> emptyList()));
+
+        assertEquals(p0_0, getProvider(wireMap.get(r), r_p0Req));
+        assertEquals(p1_2, getProvider(wireMap.get(r), r_p1Req));
+        assertEquals(p2_0, getProvider(wireMap.get(r), r_p2Req));
+        assertEquals(p3_0, getProvider(wireMap.get(r), r_p3Req));
+        assertEquals(p4_0, getProvider(wireMap.get(r), r_p4Req));
+
+        // Permutations containing a learned conflict are skipped without
+        // calculating their package spaces; without learning 88 permutations
+        // are checked before a consistent one is found.
+        assertEquals(1, statistics.size());
+        ResolutionStatistics s = statistics.get(0);
+        assertEquals(11, s.getSkippedPermutationCount());
+        assertEquals(21, s.getCheckedPermutationCount());
+    }
+
+    @Test
+    public void testResolutionStatistics() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        ResourceImpl a = new ResourceImpl("A");
+        Capability a_fooCap = addCap(a, PackageNamespace.PACKAGE_NAMESPACE, "foo", "bar");
+        Requirement a_barReq = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b1 = new ResourceImpl("B1");
+        Capability b1_barCap = addCap(b1, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b2 = new ResourceImpl("B2");
+        Capability b2_barCap = addCap(b2, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl c = new ResourceImpl("C");
+        Requirement c_fooReq = addReq(c, PackageNamespace.PACKAGE_NAMESPACE, "foo");
+        Requirement c_barReq = addReq(c, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        candMap.put(a_barReq, Collections.singletonList(b1_barCap));
+        candMap.put(c_fooReq, Collections.singletonList(a_fooCap));
+        candMap.put(c_barReq, Arrays.asList(b2_barCap, b1_barCap));
+
+        final List<ResolutionStatistics> statistics = new ArrayList<ResolutionStatistics>();
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG)
+        {
+            @Override
+            public void logResolutionStatistics(ResolutionStatistics s)
+            {
+                statistics.add(s);
+            }
+        }, 1);
+        ResolveContextImpl rci = new ResolveContextImpl(Collections.<Resource, Wiring> emptyMap(), candMap,
+            Arrays.<Resource> asList(a, b1, b2, c), Collections.<Resource> emptyList());
+        Map<Resource, List<Wire>> wireMap = resolver.resolve(rci);
+        assertEquals(b1, getProvider(wireMap.get(c), c_barReq));
+
+        // The initial permutation conflicts on bar, the import permutation of C does not
+        assertEquals(1, statistics.size());
+        ResolutionStatistics s = statistics.get(0);
+        assertEquals(2, s.getCheckedPermutationCount());
+        assertEquals(1, s.getPermutationCount(ResolutionStatistics.PermutationType.IMPORT));
+        assertEquals(1, s.getMostPermutedRequirements(5).size());
+        assertEquals(c_barReq, s.getMostPermutedRequirements(5).get(0).getKey());
+        assertTrue(s.getTime(TimeUnit.NANOSECONDS) >= s.getPhaseTime(ResolutionStatistics.Phase.PACKAGE_SPACES, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testDynamicUsesOfGrowingWiring() throws Exception
+    {
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1, true);
+
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        ResourceImpl a = new ResourceImpl("A");
+        Capability a_fooCap = addCap(a, PackageNamespace.PACKAGE_NAMESPACE, "foo", "bar");
+        Requirement a_barReq = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b1 = new ResourceImpl("B1");
+        Capability b1_barCap = addCap(b1, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b2 = new ResourceImpl("B2");
+        Capability b2_barCap = addCap(b2, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+        Capability b2_bazCap = addCap(b2, PackageNamespace.PACKAGE_NAMESPACE, "baz", "bar");
+
+        ResourceImpl h = new ResourceImpl("H");
+        Requirement h_fooReq = addReq(h, PackageNamespace.PACKAGE_NAMESPACE, "foo");
+        Requirement h_bazReq = addReq(h, PackageNamespace.PACKAGE_NAMESPACE, "baz");
+        GenericRequirement h_dynReq = (GenericRequirement) addReq(h, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+        h_dynReq.addDirective(PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE, PackageNamespace.RESOLUTION_DYNAMIC);
+
+        candMap.put(h_dynReq, Arrays.asList(b2_barCap, b1_barCap));
+
+        Map<Resource, List<Wire>> wireMap = new HashMap<Resource, List<Wire>>();
+        wireMap.put(a, Collections.<Wire> singletonList(new SimpleWire(a_barReq, b1_barCap)));
+        wireMap.put(b1, Collections.<Wire> emptyList());
+        wireMap.put(b2, Collections.<Wire> emptyList());
+        wireMap.put(h, Collections.<Wire> singletonList(new SimpleWire(h_fooReq, a_fooCap)));
+        Map<Resource, Wiring> wirings = createWirings(wireMap);
+
+        ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap, Collections.<Resource> emptyList(),
+            Collections.<Resource> emptyList());
+
+        // The uses constraint of foo excludes B2, the second resolve reuses the host uses
+        for (int i = 0; i < 2; i++)
+        {
+            Map<Resource, List<Wire>> result = resolver.resolveDynamic(rci, wirings.get(h), h_dynReq);
+            assertEquals(1, result.size());
+            assertEquals(b1, result.get(h).get(0).getProvider());
+        }
+
+        // A wire appended to the host wiring must extend the reused uses,
+        // baz pulls in the bar of B2 which now conflicts with any choice.
+        ((SimpleWiring) wirings.get(h)).wires.get(h).add(new SimpleWire(h_bazReq, b2_bazCap));
+        try
+        {
+            resolver.resolveDynamic(rci, wirings.get(h), h_dynReq);
+            fail("Dynamic import of bar must conflict with the uses of foo and baz");
+        }
+        catch (ResolutionException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDynamicUsesOfRewiredUsesChain() throws Exception
+    {
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), 1, true);
+
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        ResourceImpl a = new ResourceImpl("A");
+        Capability a_fooCap = addCap(a, PackageNamespace.PACKAGE_NAMESPACE, "foo", "bar");
+        Requirement a_barReq = addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "bar");
+
+        ResourceImpl b = new ResourceImpl("B");
+        Capability b_barCap = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "bar", "baz");
+        Requirement b_bazReq = addReq(b, PackageNamespace.PACKAGE_NAMESPACE, "baz");
+
+        ResourceImpl c1 = new ResourceImpl("C1");
+        Capability c1_bazCap = addCap(c1, PackageNamespace.PACKAGE_NAMESPACE, "baz");
+
+        ResourceImpl c2 = new ResourceImpl("C2");
+        Capability c2_bazCap = addCap(c2, PackageNamespace.PACKAGE_NAMESPACE, "baz");
+
+        ResourceImpl h = new ResourceImpl("H");
+        Requirement h_fooReq = addReq(h, PackageNamespace.PACKAGE_NAMESPACE, "foo");
+        GenericRequirement h_dynReq = (GenericRequirement) addReq(h, PackageNamespace.PACKAGE_NAMESPACE, "baz");
+        h_dynReq.addDirective(PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE, PackageNamespace.RESOLUTION_DYNAMIC);
+
+        candMap.put(h_dynReq, Arrays.asList(c2_bazCap, c1_bazCap));
+
+        Map<Resource, List<Wire>> wireMap = new HashMap<Resource, List<Wire>>();
+        wireMap.put(a, Collections.<Wire> singletonList(new SimpleWire(a_barReq, b_barCap)));
+        wireMap.put(b, Collections.<Wire> singletonList(new SimpleWire(b_bazReq, c1_bazCap)));
+        wireMap.put(c1, Collections.<Wire> emptyList());
+        wireMap.put(c2, Collections.<Wire> emptyList());
+        wireMap.put(h, Collections.<Wire> singletonList(new SimpleWire(h_fooReq, a_fooCap)));
+        Map<Resource, Wiring> wirings = createWirings(wireMap);
+
+        // foo uses bar which uses the baz of C1
+        Map<Resource, List<Wire>> result = resolver.resolveDynamic(new ResolveContextImpl(wirings, candMap,
+            Collections.<Resource> emptyList(), Collections.<Resource> emptyList()), wirings.get(h), h_dynReq);
+        assertEquals(c1, result.get(h).get(0).getProvider());
+
+        // Re-wiring B to the baz of C2 changes the uses of H, although the
+        // wirings of H and of its direct provider A remain the same
+        Map<Resource, List<Wire>> rewiredMap = new HashMap<Resource, List<Wire>>(wireMap);
+        rewiredMap.put(b, Collections.<Wire> singletonList(new SimpleWire(b_bazReq, c2_bazCap)));
+        Map<Resource, Wiring> rewired = new HashMap<Resource, Wiring>(wirings);
+        rewired.put(b, createWirings(rewiredMap).get(b));
+
+        result = resolver.resolveDynamic(new ResolveContextImpl(rewired, candMap,
+            Collections.<Resource> emptyList(), Collections.<Resource> emptyList()), rewired.get(h), h_dynReq);
+        assertEquals(c2, result.get(h).get(0).getProvider());
+    }
+
+    @Test
+    public void testConcurrentPopulateIsDeterministic() throws Exception
+    {
+        ResolveContext rc = new RepositoryGenerator().seed(7).resources(300).fragmentRatio(0.05).generate();
+
+        Map<Resource, List<Wire>> sequential = new ResolverImpl(new Logger(Logger.LOG_ERROR), 1).resolve(rc);
+        Map<Resource, List<Wire>> concurrent = new ResolverImpl(new Logger(Logger.LOG_ERROR), 4, false, true).resolve(rc);
+
+        assertEquals(sequential.keySet(), concurrent.keySet());
+        for (Resource resource : sequential.keySet())
+        {
+            List<String> expected = new ArrayList<String>();
+            for (Wire wire : sequential.get(resource))
+            {
+                expected.add(wire.getRequirement() + " -> " + wire.getCapability());
+            }
+            List<String> actual = new ArrayList<String>();
+            for (Wire wire : concurrent.get(resource))
+            {
+                actual.add(wire.getRequirement() + " -> " + wire.getCapability());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsAreOptIn() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Resource> mandatory = new ArrayList<Resource>();
+        for (int i = 0; i < 16; i++)
+        {
+            ResourceImpl a = new ResourceImpl("A" + i);
+            ResourceImpl b = new ResourceImpl("B" + i);
+            Capability b_pkgCap = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "pkg" + i);
+            candMap.put(addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "pkg" + i),
+                Collections.singletonList(b_pkgCap));
+            mandatory.add(a);
+        }
+
+        final Thread resolving = Thread.currentThread();
+        final List<Thread> otherThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        ResolveContextImpl rci = new ResolveContextImpl(Collections.<Resource, Wiring> emptyMap(), candMap,
+            mandatory, Collections.<Resource> emptyList())
+        {
+            @Override
+            public List<Capability> findProviders(Requirement r)
+            {
+                if (Thread.currentThread() != resolving)
+                {
+                    otherThreads.add(Thread.currentThread());
+                }
+                return super.findProviders(r);
+            }
+        };
+
+        // Contexts may call order dependent resolver hooks, providers are only
+        // looked up concurrently if the resolver is told so
+        ResolverImpl resolver = new ResolverImpl(new Logger(Logger.LOG_ERROR), 4);
+        Map<Resource, List<Wire>> wireMap = resolver.resolve(rci);
+        assertEquals(32, wireMap.size());
+        assertTrue(otherThreads.isEmpty());
+
+        // ... either when it is created or for a single resolve operation
+        wireMap = resolver.resolve(rci, true);
+        assertEquals(32, wireMap.size());
+        assertFalse(otherThreads.isEmpty());
+    }
+
+    private static Map<Resource, Wiring> createWirings(Map<Resource, List<Wire>> wireMap)
+    {
+        Map<Resource, List<Wire>> wires = new HashMap<Resource, List<Wire>>();
+        Map<Resource, List<Wire>> invertedWires = new HashMap<Resource, List<Wire>>();
+        for (Resource resource : wireMap.keySet())
+        {
+            wires.put(resource, new ArrayList<Wire>(wireMap.get(resource)));
+            invertedWires.put(resource, new ArrayList<Wire>());
+        }
+        for (List<Wire> resourceWires : wireMap.values())
+        {
+            for (Wire wire : resourceWires)
+            {
+                invertedWires.get(wire.getProvider()).add(wire);
+            }
+        }
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        for (Resource resource : wireMap.keySet())
+        {
+            wirings.put(resource, new SimpleWiring(resource, resource.getCapabilities(null), wires, invertedWires));
+        }
+        return wirings;
+    }
+
+    private static Resource getProvider(List<Wire> wires, Requirement requirement)
+    {
+        for (Wire wire : wires)
+        {
+            if (wire.getRequirement().equals(requirement))
+            {
+                return wire.getProvider();
+            }
+        }
+        return null;
+    }
+
     private ResolveContext populateScenario17(boolean realSubstitute,
         boolean felixResolveContext, boolean existingWirings)
     {
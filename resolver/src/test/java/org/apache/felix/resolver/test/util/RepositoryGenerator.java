@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Generates synthetic repositories for measuring the resolver.
+ * <p>
+ * The repository consists of libraries, each available in a number of
+ * versions. A library exports a fixed number of packages, each using all the
+ * packages the library imports. Libraries are arranged in layers and only
+ * import from the layer below, so the length of the uses chains equals the
+ * number of layers minus one. Imports either accept all versions of the
+ * exporting library or are narrowed to a single version, which is what makes
+ * the uses constraints conflict. Optionally libraries also import one of their
+ * own packages (a substitutable export) or get a fragment contributing an
+ * additional package.
+ * <p>
+ * Generation is deterministic for a given seed and set of parameters.
+ */
+public class RepositoryGenerator
+{
+    private long m_seed = 0;
+    private int m_resources = 1000;
+    private int m_exportFanOut = 3;
+    private int m_importFanOut = 4;
+    private int m_usesDepth = 4;
+    private int m_versions = 2;
+    private double m_narrowRangeRatio = 0.001;
+    private double m_fragmentRatio = 0.05;
+    private double m_substitutableRatio = 0.1;
+
+    private final List<Resource> m_generated = new ArrayList<Resource>();
+    private final Map<Requirement, List<Capability>> m_candidates = new HashMap<Requirement, List<Capability>>();
+
+    /**
+     * Seed of the random generator.
+     */
+    public RepositoryGenerator seed(long seed)
+    {
+        m_seed = seed;
+        return this;
+    }
+
+    /**
+     * Number of bundles to generate, not counting fragments.
+     */
+    public RepositoryGenerator resources(int resources)
+    {
+        m_resources = resources;
+        return this;
+    }
+
+    /**
+     * Number of packages exported by each library.
+     */
+    public RepositoryGenerator exportFanOut(int exportFanOut)
+    {
+        m_exportFanOut = exportFanOut;
+        return this;
+    }
+
+    /**
+     * Number of packages imported by each library outside the lowest layer.
+     */
+    public RepositoryGenerator importFanOut(int importFanOut)
+    {
+        m_importFanOut = importFanOut;
+        return this;
+    }
+
+    /**
+     * Length of the longest uses chain, that is the number of layers minus one.
+     */
+    public RepositoryGenerator usesDepth(int usesDepth)
+    {
+        m_usesDepth = usesDepth;
+        return this;
+    }
+
+    /**
+     * Number of versions available for each library.
+     */
+    public RepositoryGenerator versions(int versions)
+    {
+        m_versions = versions;
+        return this;
+    }
+
+    /**
+     * Ratio of imports that only accept a single version of the exporter.
+     */
+    public RepositoryGenerator narrowRangeRatio(double narrowRangeRatio)
+    {
+        m_narrowRangeRatio = narrowRangeRatio;
+        return this;
+    }
+
+    /**
+     * Ratio of libraries that get a fragment attached to each of their versions.
+     */
+    public RepositoryGenerator fragmentRatio(double fragmentRatio)
+    {
+        m_fragmentRatio = fragmentRatio;
+        return this;
+    }
+
+    /**
+     * Ratio of libraries that import one of their own exported packages.
+     */
+    public RepositoryGenerator substitutableRatio(double substitutableRatio)
+    {
+        m_substitutableRatio = substitutableRatio;
+        return this;
+    }
+
+    /**
+     * Generates the repository; all generated resources, including fragments,
+     * are optional resources of the returned context.
+     */
+    public ResolveContext generate()
+    {
+        m_generated.clear();
+        m_candidates.clear();
+
+        Random random = new Random(m_seed);
+        int versions = Math.max(1, m_versions);
+        int libraries = Math.max(1, m_resources / versions);
+        int layers = Math.max(1, m_usesDepth + 1);
+
+        Library[] libs = new Library[libraries];
+        List<List<Library>> byLayer = new ArrayList<List<Library>>();
+        for (int i = 0; i < layers; i++)
+        {
+            byLayer.add(new ArrayList<Library>());
+        }
+        for (int i = 0; i < libraries; i++)
+        {
+            Library lib = new Library("lib" + i, (int) ((long) i * layers / libraries));
+            for (int j = 0; j < m_exportFanOut; j++)
+            {
+                lib.packages.add(lib.name + ".p" + j);
+            }
+            lib.fragment = random.nextDouble() < m_fragmentRatio;
+            if (lib.fragment)
+            {
+                lib.packages.add(lib.name + ".fragment");
+            }
+            libs[i] = lib;
+            byLayer.get(lib.layer).add(lib);
+        }
+
+        // Choose the imported packages per library, always from the layer
+        // just below so the uses chains reach the full depth.
+        for (Library lib : libs)
+        {
+            if (lib.layer == 0)
+            {
+                continue;
+            }
+            List<Library> below = byLayer.get(lib.layer - 1);
+            for (int j = 0; j < m_importFanOut; j++)
+            {
+                Library exporter = below.get(random.nextInt(below.size()));
+                String pkg = exporter.packages.get(random.nextInt(exporter.packages.size()));
+                if (!lib.imports.contains(pkg))
+                {
+                    lib.imports.add(pkg);
+                }
+            }
+        }
+
+        // Create the resources and capabilities.
+        Map<String, List<Capability>> exports = new HashMap<String, List<Capability>>();
+        for (Library lib : libs)
+        {
+            for (int v = 0; v < versions; v++)
+            {
+                Version version = new Version(1, v, 0);
+                ResourceImpl resource = new ResourceImpl(lib.name, IdentityNamespace.TYPE_BUNDLE, version);
+                m_generated.add(resource);
+                lib.resources.add(resource);
+                String uses = join(lib.imports);
+                for (int j = 0; j < m_exportFanOut; j++)
+                {
+                    addExport(exports, resource, lib.packages.get(j), version, uses);
+                }
+                if (lib.fragment)
+                {
+                    GenericCapability hostCap = new GenericCapability(resource, HostNamespace.HOST_NAMESPACE);
+                    hostCap.addAttribute(HostNamespace.HOST_NAMESPACE, lib.name);
+                    hostCap.addAttribute(HostNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE, version);
+                    resource.addCapability(hostCap);
+
+                    ResourceImpl fragment = new ResourceImpl(lib.name + ".fragment", IdentityNamespace.TYPE_FRAGMENT, version);
+                    m_generated.add(fragment);
+                    GenericRequirement hostReq = new GenericRequirement(fragment, HostNamespace.HOST_NAMESPACE);
+                    hostReq.addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE,
+                        "(&(" + HostNamespace.HOST_NAMESPACE + "=" + lib.name + ")("
+                            + HostNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE + "=" + version + "))");
+                    fragment.addRequirement(hostReq);
+                    m_candidates.put(hostReq, new ArrayList<Capability>(Collections.singletonList(hostCap)));
+                    addExport(exports, fragment, lib.name + ".fragment", version, uses);
+                    lib.fragments.add(fragment);
+                }
+            }
+        }
+
+        // Create the requirements now that all capabilities are known.
+        for (Library lib : libs)
+        {
+            boolean substitutable = random.nextDouble() < m_substitutableRatio;
+            for (int v = 0; v < versions; v++)
+            {
+                ResourceImpl resource = lib.resources.get(v);
+                for (int j = 0; j < lib.imports.size(); j++)
+                {
+                    Version exact = random.nextDouble() < m_narrowRangeRatio
+                        ? new Version(1, random.nextInt(versions), 0) : null;
+                    addImport(exports, resource, lib.imports.get(j), exact);
+                }
+                if (substitutable)
+                {
+                    addImport(exports, resource, lib.packages.get(0), null);
+                }
+                if (lib.fragment && !lib.imports.isEmpty())
+                {
+                    addImport(exports, lib.fragments.get(v), lib.imports.get(0), null);
+                }
+            }
+        }
+
+        return new ResolveContextImpl(
+            new HashMap<Resource, Wiring>(), m_candidates,
+            Collections.<Resource>emptyList(), new ArrayList<Resource>(m_generated));
+    }
+
+    /**
+     * Returns the resources created by the last call to {@link #generate()}.
+     */
+    public List<Resource> getResources()
+    {
+        return Collections.unmodifiableList(m_generated);
+    }
+
+    private static void addExport(
+        Map<String, List<Capability>> exports, ResourceImpl resource, String pkg, Version version, String uses)
+    {
+        PackageCapability cap = new PackageCapability(resource, pkg);
+        cap.addAttribute(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, version);
+        if (uses.length() > 0)
+        {
+            cap.addDirective(PackageNamespace.CAPABILITY_USES_DIRECTIVE, uses);
+        }
+        resource.addCapability(cap);
+        List<Capability> caps = exports.get(pkg);
+        if (caps == null)
+        {
+            caps = new ArrayList<Capability>();
+            exports.put(pkg, caps);
+        }
+        // Keep the providers sorted by descending version, as a framework would.
+        int idx = 0;
+        while (idx < caps.size() && version.compareTo(getVersion(caps.get(idx))) <= 0)
+        {
+            idx++;
+        }
+        caps.add(idx, cap);
+    }
+
+    private void addImport(
+        Map<String, List<Capability>> exports, ResourceImpl resource, String pkg, Version exact)
+    {
+        GenericRequirement req = new GenericRequirement(resource, PackageNamespace.PACKAGE_NAMESPACE);
+        String range = exact != null
+            ? "(" + PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE + "=" + exact + ")"
+            : "(" + PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE + ">=1.0.0)(!("
+                + PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE + ">=2.0.0))";
+        req.addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE,
+            "(&(" + PackageNamespace.PACKAGE_NAMESPACE + "=" + pkg + ")" + range + ")");
+        resource.addRequirement(req);
+        List<Capability> candidates = new ArrayList<Capability>();
+        for (Capability cap : exports.get(pkg))
+        {
+            if (exact == null || exact.equals(getVersion(cap)))
+            {
+                candidates.add(cap);
+            }
+        }
+        m_candidates.put(req, candidates);
+    }
+
+    private static Version getVersion(Capability cap)
+    {
+        return (Version) cap.getAttributes().get(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+    }
+
+    private static String join(Collection<String> strings)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String s : strings)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static class Library
+    {
+        final String name;
+        final int layer;
+        final List<String> packages = new ArrayList<String>();
+        final List<String> imports = new ArrayList<String>();
+        final List<ResourceImpl> resources = new ArrayList<ResourceImpl>();
+        final List<ResourceImpl> fragments = new ArrayList<ResourceImpl>();
+        boolean fragment;
+
+        Library(String name, int layer)
+        {
+            this.name = name;
+            this.layer = layer;
+        }
+    }
+}
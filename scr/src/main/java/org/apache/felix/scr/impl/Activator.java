@@ -18,25 +18,23 @@
  */
 package org.apache.felix.scr.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,8 +45,7 @@ import org.apache.felix.scr.impl.logger.ScrLoggerFactory;
 import org.apache.felix.scr.impl.logger.ScrLogger;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
-import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
-import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+import org.apache.felix.scr.impl.metadata.ComponentMetadataStore;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
 import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.osgi.framework.Bundle;
@@ -58,6 +55,7 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
@@ -95,14 +93,19 @@ public class Activator extends AbstractExtender
     // registry of managed component
     private ComponentRegistry m_componentRegistry;
 
-    //  thread acting upon configurations
-    private ComponentActorThread m_componentActor;
+    //  threads acting upon configurations
+    private volatile ComponentActor m_componentActor;
 
     private ServiceRegistration<ServiceComponentRuntime> m_runtime_reg;
 
     private ComponentCommands m_componentCommands;
 
-    private ConcurrentMap<Long, List<ComponentMetadata>> m_componentMetadataStore;
+    private volatile ComponentMetadataStore m_componentMetadataStore;
+
+    // the descriptors read ahead of loading the components by bundle id
+    private volatile Map<Long, DescriptorTask> m_descriptorTasks;
+
+    private volatile ExecutorService m_descriptorReaders;
 
     public Activator()
     {
@@ -157,7 +160,10 @@ public class Activator extends AbstractExtender
 
     public void restart(boolean globalExtender, boolean initialStart)
     {
-        m_componentMetadataStore = load(m_context, logger,
+        // close the previous store before opening the file again, so that
+        // the records compacted on closing are read by the new store
+        closeStore(m_componentMetadataStore, logger);
+        m_componentMetadataStore = openStore(m_context, logger,
             m_configuration.cacheMetadata());
         BundleContext context = m_globalContext;
         if ( globalExtender )
@@ -216,16 +222,20 @@ public class Activator extends AbstractExtender
                 runtime,
                 m_componentRegistry.getServiceRegistrationProperties() );
         m_componentRegistry.setRegistration(m_runtime_reg);
+        if ( m_configuration.sharedReferenceIndex() )
+        {
+            m_componentRegistry.setServiceReferenceIndex( new ServiceReferenceIndex( m_globalContext, logger ) );
+        }
 
         // log SCR startup
         logger.log(Level.INFO, " Version = {0}",
             null, m_bundle.getVersion().toString() );
 
-        // create and start the component actor
-        m_componentActor = new ComponentActorThread( this.logger );
-        Thread t = new Thread( m_componentActor, "SCR Component Actor" );
-        t.setDaemon( true );
-        t.start();
+        // create the component actor, which starts its threads on demand
+        m_componentActor = new ComponentActor( this.logger, m_configuration.activationThreads(),
+            m_configuration.activationVirtualThreads() );
+
+        startReadingDescriptors();
 
         super.doStart();
 
@@ -240,7 +250,8 @@ public class Activator extends AbstractExtender
     {
         super.stop( context );
         m_configuration.stop();
-        store(m_componentMetadataStore, context, logger, m_configuration.cacheMetadata());
+        closeStore(m_componentMetadataStore, logger);
+        m_componentMetadataStore = null;
         logger.close();
     }
 
@@ -253,134 +264,85 @@ public class Activator extends AbstractExtender
     public void bundleChanged(BundleEvent event)
     {
         super.bundleChanged(event);
-        if (event.getType() == BundleEvent.UPDATED
-            || event.getType() == BundleEvent.UNINSTALLED)
+        ComponentMetadataStore store = m_componentMetadataStore;
+        if (store != null && (event.getType() == BundleEvent.UPDATED
+            || event.getType() == BundleEvent.UNINSTALLED))
         {
-            m_componentMetadataStore.remove(event.getBundle().getBundleId());
+            try
+            {
+                store.remove(event.getBundle().getBundleId());
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.WARN,
+                    "Error removing cached component metadata of {0}.", e, event.getBundle());
+            }
         }
     }
 
-    private static ConcurrentMap<Long, List<ComponentMetadata>> load(
-        BundleContext context,
-        ScrLogger logger, boolean loadFromCache)
+    private static ComponentMetadataStore openStore(BundleContext context,
+        ScrLogger logger, boolean cacheMetadata)
     {
-        try
+        if (cacheMetadata)
         {
-            ConcurrentMap<Long, List<ComponentMetadata>> result = new ConcurrentHashMap<>();
-            if (!loadFromCache)
-            {
-                return result;
-            }
-            BundleContext systemContext = context.getBundle(
-                Constants.SYSTEM_BUNDLE_LOCATION).getBundleContext();
-
             File store = context.getDataFile("componentMetadataStore");
-            if (store.isFile())
+            if (store != null)
             {
-                try (DataInputStream in = new DataInputStream(
-                    new BufferedInputStream(new FileInputStream(store))))
+                try
                 {
-                    MetaDataReader metaDataReader = new MetaDataReader();
-                    if (!metaDataReader.isVersionSupported(in))
-                    {
-                        // the stored version is not compatible
-                        return result;
-                    }
-                    int numStrings = in.readInt();
-                    for (int i = 0; i < numStrings; i++)
-                    {
-                        metaDataReader.readIndexedString(in);
-                    }
-                    int numBundles = in.readInt();
-                    for (int i = 0; i < numBundles; i++)
-                    {
-                        // Read all the components for the ID even if the bundle does not exist;
-                        long bundleId = in.readLong();
-                        int numComponents = in.readInt();
-                        long lastModified = in.readLong();
-                        List<ComponentMetadata> components = new ArrayList<>(
-                            numComponents);
-                        for (int j = 0; j < numComponents; j++)
-                        {
-                            components.add(ComponentMetadata.load(in, metaDataReader));
-                        }
-                        // Check with system context by ID to avoid hooks hiding;
-                        Bundle b = systemContext.getBundle(bundleId);
-                        if (b != null)
-                        {
-                            if (lastModified == b.getLastModified())
-                            {
-                                result.put(bundleId, components);
-                            }
-                        }
-                    }
+                    return ComponentMetadataStore.open(store);
                 }
-                catch (IOException e)
+                catch (IOException | RuntimeException e)
                 {
+                    // avoid failing all of SCR start on cache load bug
                     logger.log(Level.WARN,
                         "Error loading component metadata cache.", e);
                 }
             }
-            return result;
         }
-        catch (RuntimeException re)
+        return ComponentMetadataStore.inMemory();
+    }
+
+    private static void closeStore(ComponentMetadataStore store, ScrLogger logger)
+    {
+        if (store != null)
         {
-            // avoid failing all of SCR start on cache load bug
-            logger.log(Level.ERROR,
-                "Error loading component metadata cache.", re);
-            return new ConcurrentHashMap<>();
+            try
+            {
+                store.close();
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.WARN, "Error storing component metadata cache.",
+                    e);
+            }
         }
-
     }
 
-    private static void store(Map<Long, List<ComponentMetadata>> componentsMap,
-        BundleContext context, ScrLogger logger, boolean storeCache)
+    private List<ComponentMetadata> getCachedComponents(Bundle bundle)
     {
-        if (!storeCache)
+        try
         {
-            return;
+            return m_componentMetadataStore.get(bundle.getBundleId(), bundle.getLastModified());
         }
-        BundleContext systemContext = context.getBundle(
-            Constants.SYSTEM_BUNDLE_LOCATION).getBundleContext();
-        File store = context.getDataFile("componentMetadataStore");
-        try (DataOutputStream out = new DataOutputStream(
-            new BufferedOutputStream(new FileOutputStream(store))))
+        catch (IOException | RuntimeException e)
         {
-            MetaDataWriter metaDataWriter = new MetaDataWriter();
-            metaDataWriter.writeVersion(out);
+            logger.log(Level.WARN,
+                "Error loading cached component metadata of {0}.", e, bundle);
+            return null;
+        }
+    }
 
-            Set<String> allStrings = new HashSet<>();
-            for (List<ComponentMetadata> components : componentsMap.values())
-            {
-                for (ComponentMetadata component : components)
-                {
-                    component.collectStrings(allStrings);
-                }
-            }
-            // remove possible null
-            allStrings.remove(null);
-            out.writeInt(allStrings.size());
-            for (String s : allStrings)
-            {
-                metaDataWriter.writeIndexedString(s, out);
-            }
-            out.writeInt(componentsMap.size());
-            for (Entry<Long, List<ComponentMetadata>> entry : componentsMap.entrySet())
-            {
-                out.writeLong(entry.getKey());
-                out.writeInt(entry.getValue().size());
-                Bundle b = systemContext.getBundle(entry.getKey());
-                out.writeLong(b == null ? -1 : b.getLastModified());
-                for (ComponentMetadata component : entry.getValue())
-                {
-                    component.store(out, metaDataWriter);
-                }
-            }
+    private void cacheComponents(Bundle bundle, List<ComponentMetadata> components)
+    {
+        try
+        {
+            m_componentMetadataStore.put(bundle.getBundleId(), bundle.getLastModified(), components);
         }
         catch (IOException e)
         {
-            logger.log(Level.WARN, "Error storing component metadata cache.",
-                e);
+            logger.log(Level.WARN,
+                "Error storing cached component metadata of {0}.", e, bundle);
         }
     }
 
@@ -395,6 +357,8 @@ public class Activator extends AbstractExtender
         // stop tracking
         super.doStop();
 
+        stopReadingDescriptors();
+
         if ( m_componentCommands != null )
         {
             m_componentCommands.unregister();
@@ -407,6 +371,12 @@ public class Activator extends AbstractExtender
         // dispose component registry
         if ( m_componentRegistry != null )
         {
+            final ServiceReferenceIndex index = m_componentRegistry.getServiceReferenceIndex();
+            if ( index != null )
+            {
+                m_componentRegistry.setServiceReferenceIndex( null );
+                index.close();
+            }
             m_componentRegistry.shutdown();
             m_componentRegistry = null;
         }
@@ -499,6 +469,152 @@ public class Activator extends AbstractExtender
         }
     }
 
+    /**
+     * Starts reading the descriptors of the bundles which are started or
+     * will be started by the start level, unless their components are
+     * cached, on the configured number of threads. So the descriptors of
+     * different bundles are read concurrently while the components are
+     * loaded one bundle after another.
+     */
+    private void startReadingDescriptors()
+    {
+        final int threads = m_configuration.descriptorThreads();
+        if ( threads <= 1 )
+        {
+            return;
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        // the threads end when idle, as descriptors of bundles not being
+        // started are kept until SCR stops
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( final Runnable runnable )
+            {
+                final Thread thread = new Thread( runnable, "SCR Descriptor Reader " + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        executor.allowCoreThreadTimeOut( true );
+        final Map<Long, DescriptorTask> tasks = new ConcurrentHashMap<>();
+        for ( final Bundle bundle : m_globalContext.getBundles() )
+        {
+            if ( isStarting( bundle )
+                && bundle.getHeaders( "" ).get( ComponentConstants.SERVICE_COMPONENT ) != null
+                && !m_componentMetadataStore.contains( bundle.getBundleId(), bundle.getLastModified() ) )
+            {
+                final DescriptorTask task = new DescriptorTask( bundle );
+                tasks.put( bundle.getBundleId(), task );
+                executor.execute( task );
+            }
+        }
+        if ( tasks.isEmpty() )
+        {
+            executor.shutdown();
+            return;
+        }
+        m_descriptorTasks = tasks;
+        m_descriptorReaders = executor;
+    }
+
+    private static boolean isStarting(final Bundle bundle)
+    {
+        switch ( bundle.getState() )
+        {
+            case Bundle.ACTIVE:
+            case Bundle.STARTING:
+                return true;
+            case Bundle.RESOLVED:
+                final BundleStartLevel startLevel = bundle.adapt( BundleStartLevel.class );
+                return startLevel != null && startLevel.isPersistentlyStarted();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Stops the descriptor readers once all descriptors read ahead have been
+     * taken or SCR stops. Descriptors not taken yet are not read any longer.
+     */
+    private void stopReadingDescriptors()
+    {
+        final ExecutorService executor = m_descriptorReaders;
+        final Map<Long, DescriptorTask> tasks = m_descriptorTasks;
+        m_descriptorReaders = null;
+        m_descriptorTasks = null;
+        if ( executor != null )
+        {
+            for ( final DescriptorTask task : tasks.values() )
+            {
+                task.cancel( false );
+            }
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the components read from the descriptors of the bundle while
+     * starting the extender, waiting for the reader if needed, or
+     * <code>null</code> if the descriptors have not been read.
+     */
+    private List<ComponentMetadata> takeDescriptors(final Bundle bundle)
+    {
+        final Map<Long, DescriptorTask> tasks = m_descriptorTasks;
+        final DescriptorTask task = tasks == null ? null : tasks.remove( bundle.getBundleId() );
+        if ( task == null )
+        {
+            return null;
+        }
+        if ( tasks.isEmpty() )
+        {
+            stopReadingDescriptors();
+        }
+        if ( task.isCancelled() || task.m_lastModified != bundle.getLastModified() )
+        {
+            return null;
+        }
+
+        // read in this thread unless a reader already started the task
+        task.run();
+        try
+        {
+            return task.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch ( final ExecutionException e )
+        {
+            // read again while loading, which reports the problem
+            return null;
+        }
+    }
+
+    // reads the descriptors of a bundle for loading its components later
+    private final class DescriptorTask extends FutureTask<List<ComponentMetadata>>
+    {
+        private final long m_lastModified;
+
+        DescriptorTask( final Bundle bundle )
+        {
+            super( new Callable<List<ComponentMetadata>>()
+            {
+                @Override
+                public List<ComponentMetadata> call()
+                {
+                    return BundleComponentActivator.readComponentMetadata( bundle, logger.bundle( bundle ),
+                        m_configuration, getTrueCondition() );
+                }
+            } );
+            m_lastModified = bundle.getLastModified();
+        }
+    }
+
     /**
      * Loads the components of the given bundle. If the bundle has no
      * <i>Service-Component</i> header, this method has no effect. The
@@ -511,7 +627,7 @@ public class Activator extends AbstractExtender
     private void loadComponents(Bundle bundle)
     {
         final Long bundleId = bundle.getBundleId();
-        List<ComponentMetadata> cached = m_componentMetadataStore.get(bundleId);
+        List<ComponentMetadata> cached = getCachedComponents(bundle);
         if (cached != null && cached.isEmpty())
         {
             // Cached that there are no components for this bundle.
@@ -522,8 +638,7 @@ public class Activator extends AbstractExtender
             && bundle.getHeaders("").get(ComponentConstants.SERVICE_COMPONENT) == null)
         {
             // Cache that there are no components
-            m_componentMetadataStore.put(bundleId,
-                Collections.<ComponentMetadata> emptyList());
+            cacheComponents(bundle, Collections.<ComponentMetadata> emptyList());
             // no components in the bundle, abandon
             return;
         }
@@ -588,18 +703,19 @@ public class Activator extends AbstractExtender
 
         try
         {
+            final List<ComponentMetadata> components = cached != null ? cached : takeDescriptors( bundle );
             BundleComponentActivator ga = new BundleComponentActivator( this.logger, m_componentRegistry, m_componentActor,
-                context, m_configuration, cached, getTrueCondition());
+                context, m_configuration, components, getTrueCondition());
             ga.initialEnable();
             if (cached == null)
             {
-                List<ComponentHolder<?>> components = ga.getSelectedComponents(null);
-                List<ComponentMetadata> metadatas = new ArrayList<>(components.size());
-                for (ComponentHolder<?> holder : ga.getSelectedComponents(null))
+                List<ComponentHolder<?>> holders = ga.getSelectedComponents(null);
+                List<ComponentMetadata> metadatas = new ArrayList<>(holders.size());
+                for (ComponentHolder<?> holder : holders)
                 {
                     metadatas.add(holder.getComponentMetadata());
                 }
-                m_componentMetadataStore.put(bundleId, metadatas);
+                cacheComponents(bundle, metadatas);
             }
             // replace bundle activator in the map
             synchronized ( m_componentBundles )
@@ -691,6 +807,38 @@ public class Activator extends AbstractExtender
         }
     }
 
+    /**
+     * Applies the configured number of activation threads to the component
+     * actor, if running.
+     */
+    public void updateComponentActor()
+    {
+        final ComponentActor actor = m_componentActor;
+        if ( actor != null )
+        {
+            actor.configure( m_configuration.activationThreads(), m_configuration.activationVirtualThreads() );
+        }
+    }
+
+    /**
+     * Returns the number of component tasks waiting to be run.
+     */
+    public int getActivationQueueDepth()
+    {
+        final ComponentActor actor = m_componentActor;
+        return actor == null ? 0 : actor.getQueueDepth();
+    }
+
+    /**
+     * Returns the average time in microseconds from scheduling a component
+     * task until it has been run.
+     */
+    public long getActivationLatency()
+    {
+        final ComponentActor actor = m_componentActor;
+        return actor == null ? 0 : actor.getAverageLatency();
+    }
+
     public void setLogger()
     {
         // TODO we only set the logger once
@@ -32,8 +32,6 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.felix.scr.impl.helper.ConfigAdminTracker;
 import org.apache.felix.scr.impl.logger.BundleLogger;
@@ -49,7 +47,7 @@ import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
 import org.apache.felix.scr.impl.manager.RegionConfigurationSupport;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
-import org.apache.felix.scr.impl.xml.XmlHandler;
+import org.apache.felix.scr.impl.xml.DescriptorReader;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -80,7 +78,7 @@ public class BundleComponentActivator implements ComponentActivator
     private final List<ComponentHolder<?>> m_holders = new ArrayList<>();
 
     // thread acting upon configurations
-    private final ComponentActorThread m_componentActor;
+    private final ComponentActor m_componentActor;
 
     // true as long as the dispose method is not called
     private final AtomicBoolean m_active = new AtomicBoolean( true );
@@ -140,6 +138,11 @@ public class BundleComponentActivator implements ComponentActivator
     public void addServiceListener(String serviceFilterString,
         ExtendedServiceListener<ExtendedServiceEvent> listener)
     {
+        final ServiceReferenceIndex index = m_componentRegistry.getServiceReferenceIndex();
+        if ( index != null && index.addServiceListener( serviceFilterString, m_bundle, listener ) )
+        {
+            return;
+        }
         ListenerInfo listenerInfo;
         synchronized ( listenerMap )
         {
@@ -168,6 +171,11 @@ public class BundleComponentActivator implements ComponentActivator
     public void removeServiceListener(String serviceFilterString,
         ExtendedServiceListener<ExtendedServiceEvent> listener)
     {
+        final ServiceReferenceIndex index = m_componentRegistry.getServiceReferenceIndex();
+        if ( index != null && index.removeServiceListener( serviceFilterString, listener ) )
+        {
+            return;
+        }
         synchronized ( listenerMap )
         {
             ListenerInfo listenerInfo = listenerMap.get( serviceFilterString );
@@ -195,10 +203,10 @@ public class BundleComponentActivator implements ComponentActivator
      */
     public BundleComponentActivator(final ScrLogger scrLogger,
             final ComponentRegistry componentRegistry,
-            final ComponentActorThread componentActor,
+            final ComponentActor componentActor,
             final BundleContext context,
             final ScrConfiguration configuration,
-            final List<ComponentMetadata> cachedComponentMetadata, 
+            final List<ComponentMetadata> componentMetadata,
             final ServiceReference<?> trueConditiion)
     throws ComponentException
     {
@@ -215,7 +223,7 @@ public class BundleComponentActivator implements ComponentActivator
 
         logger.log(Level.DEBUG, "BundleComponentActivator : Bundle active", null);
 
-        initialize(cachedComponentMetadata);
+        initialize(componentMetadata);
         ConfigAdminTracker tracker = null;
         for ( ComponentHolder<?> holder : m_holders )
         {
@@ -231,69 +239,98 @@ public class BundleComponentActivator implements ComponentActivator
     /**
      * Gets the MetaData location, parses the meta data and requests the processing
      * of binder instances
-     * @param cachedComponentMetadata
+     * @param componentMetadata the cached or already read component metadata
+     *      or <code>null</code> to read the component descriptors
      *
      * @throws IllegalStateException If the bundle has already been uninstalled.
      */
-    protected void initialize(List<ComponentMetadata> cachedComponentMetadata)
+    protected void initialize(List<ComponentMetadata> componentMetadata)
     {
-        if (cachedComponentMetadata != null)
+        if (componentMetadata == null)
         {
-            for (ComponentMetadata metadata : cachedComponentMetadata)
-            {
-                validateAndRegister(metadata);
-            }
+            componentMetadata = readComponentMetadata(m_bundle, logger, m_configuration, m_trueCondition);
         }
-        else
+        for (ComponentMetadata metadata : componentMetadata)
         {
-            // Get the Metadata-Location value from the manifest
-            String descriptorLocations = m_bundle.getHeaders("").get("Service-Component");
-            if (descriptorLocations == null)
-            {
-                throw new ComponentException(
-                    "Service-Component entry not found in the manifest");
-            }
+            validateAndRegister(metadata);
+        }
+    }
 
-            logger.log(Level.DEBUG,
-                "BundleComponentActivator : Descriptor locations {0}", null,
-                descriptorLocations);
+    /**
+     * Reads the components declared in the descriptors of the
+     * <i>Service-Component</i> header of the bundle. Errors reading a
+     * descriptor are logged and the other descriptors are still read.
+     * <p>
+     * This method does not depend on the state of SCR, so the descriptors
+     * of different bundles may be read concurrently.
+     *
+     * @throws ComponentException if the bundle has no <i>Service-Component</i>
+     *      header
+     * @throws IllegalStateException If the bundle has already been uninstalled.
+     */
+    static List<ComponentMetadata> readComponentMetadata(final Bundle bundle, final BundleLogger logger,
+        final ScrConfiguration configuration, final ServiceReference<?> trueCondition)
+    {
+        // Get the Metadata-Location value from the manifest
+        String descriptorLocations = bundle.getHeaders("").get("Service-Component");
+        if (descriptorLocations == null)
+        {
+            throw new ComponentException(
+                "Service-Component entry not found in the manifest");
+        }
 
-            // 112.4.1: The value of the the header is a comma separated list of XML entries within the Bundle
-            StringTokenizer st = new StringTokenizer(descriptorLocations, ", ");
+        logger.log(Level.DEBUG,
+            "BundleComponentActivator : Descriptor locations {0}", null,
+            descriptorLocations);
 
-            while (st.hasMoreTokens())
-            {
-                String descriptorLocation = st.nextToken();
+        final DescriptorReader reader = new DescriptorReader(bundle, logger, configuration.isFactoryEnabled(),
+            configuration.keepInstances(), trueCondition);
+        final List<ComponentMetadata> components = new ArrayList<>();
 
-                URL[] descriptorURLs = findDescriptors(m_bundle, descriptorLocation);
-                if (descriptorURLs.length == 0)
-                {
-                    // 112.4.1 If an XML document specified by the header cannot be located in the bundle and its attached
-                    // fragments, SCR must log an error message with the Log Service, if present, and continue.
-                    logger.log(Level.ERROR,
-                        "Component descriptor entry ''{0}'' not found", null,
-                        descriptorLocation);
-                    continue;
-                }
+        // 112.4.1: The value of the the header is a comma separated list of XML entries within the Bundle
+        StringTokenizer st = new StringTokenizer(descriptorLocations, ", ");
 
+        while (st.hasMoreTokens())
+        {
+            String descriptorLocation = st.nextToken();
 
-                // load from the descriptors
-                for (URL descriptorURL : descriptorURLs)
-                {
-                    loadDescriptor(descriptorURL);
-                }
+            URL[] descriptorURLs = findDescriptors(bundle, descriptorLocation);
+            if (descriptorURLs.length == 0)
+            {
+                // 112.4.1 If an XML document specified by the header cannot be located in the bundle and its attached
+                // fragments, SCR must log an error message with the Log Service, if present, and continue.
+                logger.log(Level.ERROR,
+                    "Component descriptor entry ''{0}'' not found", null,
+                    descriptorLocation);
+                continue;
+            }
+
+
+            // load from the descriptors
+            for (URL descriptorURL : descriptorURLs)
+            {
+                loadDescriptor(reader, descriptorURL, logger, components);
             }
         }
+        return components;
     }
 
     /**
      * Called outside the constructor so that the m_managers field is completely initialized.
      * A component might possibly start a thread to enable other components, which could access m_managers
+     * <p>
+     * If the component actor runs tasks on more than one thread the components
+     * are enabled asynchronously, so that independent components of the bundle
+     * are activated concurrently. Later tasks of a component run after its
+     * initial enablement.
      */
     void initialEnable()
     {
+        final ComponentActor actor = m_componentActor;
+        final boolean async = actor != null && m_configuration.activationThreads() > 1;
+
         //enable all the enabled components
-        for ( ComponentHolder<?> componentHolder : m_holders )
+        for ( final ComponentHolder<?> componentHolder : m_holders )
         {
             logger.log(Level.DEBUG,
                 "BundleComponentActivator : May enable component holder {0}", null,
@@ -301,31 +338,29 @@ public class BundleComponentActivator implements ComponentActivator
 
             if ( componentHolder.getComponentMetadata().isEnabled() )
             {
-                logger.log(Level.DEBUG,
-                    "BundleComponentActivator :Enabling component holder {0}", null,
-                    componentHolder.getComponentMetadata().getName() );
-
-                try
+                if ( async )
                 {
-                    componentHolder.enableComponents( false );
+                    schedule( componentHolder, new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if ( isActive() )
+                            {
+                                initialEnable( componentHolder );
+                            }
+                        }
+
+                        @Override
+                        public String toString()
+                        {
+                            return "Initial enable of " + componentHolder.getComponentMetadata().getName();
+                        }
+                    } );
                 }
-                catch ( Throwable t )
+                else
                 {
-                    // caught on unhandled RuntimeException or Error
-                    // (e.g. ClassDefNotFoundError)
-
-                    // make sure the component is properly disabled, just in case
-                    try
-                    {
-                        componentHolder.disableComponents( false );
-                    }
-                    catch ( Throwable ignore )
-                    {
-                    }
-
-                    logger.log(Level.ERROR,
-                        "BundleComponentActivator : Unexpected failure enabling component holder {0}", t,
-                        componentHolder.getComponentMetadata().getName() );
+                    initialEnable( componentHolder );
                 }
             }
             else
@@ -337,6 +372,36 @@ public class BundleComponentActivator implements ComponentActivator
         }
     }
 
+    private void initialEnable( final ComponentHolder<?> componentHolder )
+    {
+        logger.log(Level.DEBUG,
+            "BundleComponentActivator :Enabling component holder {0}", null,
+            componentHolder.getComponentMetadata().getName() );
+
+        try
+        {
+            componentHolder.enableComponents( false );
+        }
+        catch ( Throwable t )
+        {
+            // caught on unhandled RuntimeException or Error
+            // (e.g. ClassDefNotFoundError)
+
+            // make sure the component is properly disabled, just in case
+            try
+            {
+                componentHolder.disableComponents( false );
+            }
+            catch ( Throwable ignore )
+            {
+            }
+
+            logger.log(Level.ERROR,
+                "BundleComponentActivator : Unexpected failure enabling component holder {0}", t,
+                componentHolder.getComponentMetadata().getName() );
+        }
+    }
+
     /**
      * Finds component descriptors based on descriptor location.
      *
@@ -382,7 +447,8 @@ public class BundleComponentActivator implements ComponentActivator
         return urls.toArray( new URL[urls.size()] );
     }
 
-    private void loadDescriptor(final URL descriptorURL)
+    private static void loadDescriptor(final DescriptorReader reader, final URL descriptorURL,
+        final BundleLogger logger, final List<ComponentMetadata> components)
     {
         // simple path for log messages
         final String descriptorLocation = descriptorURL.getPath();
@@ -392,20 +458,9 @@ public class BundleComponentActivator implements ComponentActivator
         {
             stream = descriptorURL.openStream();
 
-            XmlHandler handler = new XmlHandler( m_bundle, this.logger, getConfiguration().isFactoryEnabled(),
-                getConfiguration().keepInstances(), m_trueCondition);
-            final SAXParserFactory factory = SAXParserFactory.newInstance();
-            factory.setNamespaceAware(true);
-            final SAXParser parser = factory.newSAXParser();
-
-            parser.parse( stream, handler );
-
             // 112.4.2 Component descriptors may contain a single, root component element
             // or one or more component elements embedded in a larger document
-            for ( ComponentMetadata metadata : handler.getComponentMetadataList() )
-            {
-                validateAndRegister(metadata);
-            }
+            components.addAll( reader.read( stream ) );
         }
         catch ( IOException ex )
         {
@@ -678,13 +733,35 @@ public class BundleComponentActivator implements ComponentActivator
      */
     @Override
     public void schedule(Runnable task)
+    {
+        schedule( null, task );
+    }
+
+    /**
+     * Schedules the given <code>task</code> like {@link #schedule(Runnable)}
+     * but after the tasks scheduled before with the same <code>key</code>
+     * instead of after all tasks scheduled before. A <code>null</code> key
+     * orders the task with all other tasks scheduled without key.
+     *
+     * @param key The key ordering the task, usually the component holder
+     * @param task The component task to execute
+     */
+    @Override
+    public void schedule(Object key, Runnable task)
     {
         if ( isActive() )
         {
-            ComponentActorThread cat = m_componentActor;
+            ComponentActor cat = m_componentActor;
             if ( cat != null )
             {
-                cat.schedule( task );
+                if ( key == null )
+                {
+                    cat.schedule( task );
+                }
+                else
+                {
+                    cat.schedule( key, task );
+                }
             }
             else
             {
@@ -711,6 +788,31 @@ public class BundleComponentActivator implements ComponentActivator
         }
     }
 
+    /**
+     * Runs the given <code>task</code> once on the timer thread of the
+     * component registry after <code>delay</code> milliseconds. If this
+     * instance is {@link #isActive() not active} when the delay elapsed, the
+     * task is not executed.
+     *
+     * @param task The task to execute
+     * @param delay The delay in milliseconds
+     */
+    @Override
+    public void scheduleTimer(final Runnable task, final long delay)
+    {
+        m_componentRegistry.scheduleTimer( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( isActive() )
+                {
+                    task.run();
+                }
+            }
+        }, delay );
+    }
+
     @Override
     public BundleLogger getLogger() {
         return logger;
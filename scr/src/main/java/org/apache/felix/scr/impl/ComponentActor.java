@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.felix.scr.impl.logger.InternalLogger.Level;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+
+
+/**
+ * The <code>ComponentActor</code> runs the tasks acting upon registered
+ * components of the service component runtime, like asynchronously enabling
+ * and disabling components.
+ * <p>
+ * Tasks are scheduled with a key, usually the component holder. Tasks with
+ * the same key run one after the other in the order they were scheduled,
+ * while tasks with different keys run concurrently on up to the configured
+ * number of threads. With a single thread all tasks run in scheduling order
+ * like with the former single actor thread.
+ */
+class ComponentActor
+{
+
+    // key of the tasks scheduled without a key
+    private static final Object DEFAULT_KEY = new Object()
+    {
+        @Override
+        public String toString()
+        {
+            return "SCR";
+        }
+    };
+
+    private final ScrLogger logger;
+
+    // lock for all fields below
+    private final Object lock = new Object();
+
+    // the pending tasks per key, compared by identity; keys without
+    // pending and running tasks are removed
+    private final Map<Object, KeyedTasks> tasks = new IdentityHashMap<>();
+
+    // the keys with pending tasks and no running task, ordered by the
+    // scheduling order of their next task
+    private final PriorityQueue<KeyedTasks> ready = new PriorityQueue<>( 16, new Comparator<KeyedTasks>()
+    {
+        @Override
+        public int compare( final KeyedTasks k1, final KeyedTasks k2 )
+        {
+            return Long.compare( k1.peekFirst().sequence, k2.peekFirst().sequence );
+        }
+    } );
+
+    private int threads;
+
+    private boolean virtualThreads;
+
+    private int workers;
+
+    private int idleWorkers;
+
+    private int pending;
+
+    private int running;
+
+    private long sequence;
+
+    private boolean terminated;
+
+    private long completed;
+
+    private long totalLatencyNanos;
+
+
+    ComponentActor( final ScrLogger log, final int threads, final boolean virtualThreads )
+    {
+        this.logger = log;
+        this.threads = Math.max( 1, threads );
+        this.virtualThreads = virtualThreads;
+    }
+
+
+    /**
+     * Changes the number of threads running the tasks and whether new threads
+     * are virtual threads. Surplus threads terminate once they are idle.
+     */
+    void configure( final int threads, final boolean virtualThreads )
+    {
+        synchronized ( lock )
+        {
+            this.threads = Math.max( 1, threads );
+            this.virtualThreads = virtualThreads;
+            startWorkers();
+            lock.notifyAll();
+        }
+    }
+
+
+    // waits for the pending tasks to be run and terminates the threads
+    void terminate()
+    {
+        synchronized ( lock )
+        {
+            terminated = true;
+            lock.notifyAll();
+            while ( pending > 0 || running > 0 )
+            {
+                boolean interrupted = Thread.interrupted();
+                try
+                {
+                    lock.wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                    logger.log(Level.ERROR,
+                        "Interrupted exception waiting for queue to empty", e);
+                }
+                finally
+                {
+                    if (interrupted)
+                    { // restore interrupt status
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+
+    // queue the given runnable to be run as soon as possible after the
+    // tasks scheduled without key before
+    void schedule( final Runnable task )
+    {
+        schedule( DEFAULT_KEY, task );
+    }
+
+
+    // queue the given runnable to be run as soon as possible after the
+    // tasks scheduled with the same key before
+    void schedule( final Object key, final Runnable task )
+    {
+        synchronized ( lock )
+        {
+            if ( terminated )
+            {
+                logger.log(Level.WARN, "Component Actor terminated; not scheduling {0}", null, task);
+                return;
+            }
+
+            KeyedTasks keyed = tasks.get( key );
+            if ( keyed == null )
+            {
+                keyed = new KeyedTasks( key );
+                tasks.put( key, keyed );
+            }
+            keyed.add( new ScheduledTask( task, sequence++ ) );
+            if ( !keyed.running && keyed.size() == 1 )
+            {
+                ready.add( keyed );
+            }
+            pending++;
+
+            logger.log(Level.DEBUG, "Adding task [{0}] as #{1} in the queue", null,
+                    task, pending);
+
+            startWorkers();
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     */
+    int getQueueDepth()
+    {
+        synchronized ( lock )
+        {
+            return pending;
+        }
+    }
+
+
+    /**
+     * Returns the average time in microseconds from scheduling a task until
+     * it has been run, or zero if no task has been run yet.
+     */
+    long getAverageLatency()
+    {
+        synchronized ( lock )
+        {
+            return completed == 0 ? 0 : totalLatencyNanos / completed / 1000;
+        }
+    }
+
+
+    // starts worker threads for the ready keys not taken by idle threads
+    private void startWorkers()
+    {
+        while ( !terminated && workers < threads && ready.size() > idleWorkers )
+        {
+            final Thread thread = newThread( new Worker(), "SCR Component Actor" + ( workers == 0 ? "" : " " + workers ) );
+            workers++;
+            thread.start();
+        }
+    }
+
+
+    private Thread newThread( final Runnable runnable, final String name )
+    {
+        if ( virtualThreads )
+        {
+            try
+            {
+                // Java 21 and later
+                final Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+                final Method unstarted = Class.forName( "java.lang.Thread$Builder" ).getMethod( "unstarted",
+                    Runnable.class );
+                final Thread thread = (Thread) unstarted.invoke( builder, runnable );
+                thread.setName( name );
+                return thread;
+            }
+            catch ( final Exception e )
+            {
+                logger.log(Level.DEBUG, "Virtual threads not supported, using platform threads", null);
+                virtualThreads = false;
+            }
+        }
+        final Thread thread = new Thread( runnable, name );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+
+    // waits on keys with tasks becoming ready. As they do, this method runs
+    // the next task of the key, logs any exception happening and keeps on
+    // waiting for the next key. Terminates once the actor is terminated and
+    // all tasks have been run or if there are more threads than configured.
+    private void work()
+    {
+        logger.log(Level.DEBUG, "Starting {0}", null, Thread.currentThread().getName());
+        for ( ;; )
+        {
+            final KeyedTasks keyed;
+            final ScheduledTask task;
+            synchronized ( lock )
+            {
+                while ( ready.isEmpty() )
+                {
+                    if ( terminated || workers > threads )
+                    {
+                        workers--;
+                        lock.notifyAll();
+                        logger.log(Level.DEBUG, "Shutting down {0}", null, Thread.currentThread().getName());
+                        return;
+                    }
+                    idleWorkers++;
+                    try
+                    {
+                        lock.wait();
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        // don't care
+                    }
+                    finally
+                    {
+                        idleWorkers--;
+                    }
+                }
+
+                keyed = ready.remove();
+                task = keyed.removeFirst();
+                keyed.running = true;
+                pending--;
+                running++;
+            }
+
+            try
+            {
+                // execute the task, log any issues
+                logger.log(Level.DEBUG, "Running task: " + task.task, null);
+                task.task.run();
+            }
+            catch ( Throwable t )
+            {
+                logger.log(Level.ERROR, "Unexpected problem executing task " + task.task,
+                    t);
+            }
+            finally
+            {
+                synchronized ( lock )
+                {
+                    running--;
+                    completed++;
+                    totalLatencyNanos += System.nanoTime() - task.scheduled;
+                    keyed.running = false;
+                    if ( keyed.isEmpty() )
+                    {
+                        tasks.remove( keyed.key );
+                    }
+                    else
+                    {
+                        ready.add( keyed );
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+
+    private final class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            work();
+        }
+    }
+
+
+    private static final class ScheduledTask
+    {
+        final Runnable task;
+
+        final long sequence;
+
+        final long scheduled = System.nanoTime();
+
+        ScheduledTask( final Runnable task, final long sequence )
+        {
+            this.task = task;
+            this.sequence = sequence;
+        }
+    }
+
+
+    // the pending tasks of a key
+    private static final class KeyedTasks extends ArrayDeque<ScheduledTask>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Object key;
+
+        boolean running;
+
+        KeyedTasks( final Object key )
+        {
+            this.key = key;
+        }
+    }
+}
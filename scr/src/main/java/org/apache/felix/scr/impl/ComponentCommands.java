@@ -40,6 +40,9 @@ import java.util.TreeMap;
 
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.info.ScrInfo;
+import org.apache.felix.scr.runtime.dto.ComponentMetricsDTO;
+import org.apache.felix.scr.runtime.dto.ExtComponentConfigurationDTO;
+import org.apache.felix.scr.runtime.dto.ReferenceMetricsDTO;
 import org.apache.felix.service.command.Converter;
 import org.apache.felix.service.command.Descriptor;
 import org.osgi.framework.Bundle;
@@ -104,7 +107,8 @@ public class ComponentCommands implements ServiceTrackerCustomizer<Object, Servi
                 "disable",
                 "enable",
                 "info",
-                "list"
+                "list",
+                "metrics"
         });
         svcProps.put(Constants.SERVICE_DESCRIPTION, "SCR Gogo Shell Support");
         svcProps.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
@@ -230,16 +234,106 @@ public class ComponentCommands implements ServiceTrackerCustomizer<Object, Servi
         out.put("Log Level", scrConfig.getLogLevel().toString());
         out.put("Obsolete Component Factory with Factory Configuration", Boolean.toString(scrConfig.isFactoryEnabled()));
         out.put("Keep instances with no references", scrConfig.keepInstances() ? "Supported" : "Unsupported");
+        out.put("Delayed idle timeout ms", Long.toString(scrConfig.delayedIdleTimeout()));
+        out.put("Descriptor threads", Integer.toString(scrConfig.descriptorThreads()));
         out.put("Lock timeout ms", Long.toString(scrConfig.lockTimeout()));
         out.put("Stop timeout ms", Long.toString(scrConfig.stopTimeout()));
         out.put("Global extender", Boolean.toString(scrConfig.globalExtender()));
         out.put("Info Service registered", scrConfig.infoAsService() ? "Supported" : "Unsupported");
+        out.put("Activation threads", Integer.toString(scrConfig.activationThreads()));
+        out.put("Activation on virtual threads", Boolean.toString(scrConfig.activationVirtualThreads()));
+        out.put("Activation queue depth", Integer.toString(scrConfig.activationQueueDepth()));
+        out.put("Activation latency us", Long.toString(scrConfig.activationLatency()));
+        out.put("Shared reference index", Boolean.toString(scrConfig.sharedReferenceIndex()));
+        out.put("Configuration coalescing ms", Long.toString(scrConfig.configurationCoalesceWindow()));
 
         StringBuilder builder = new StringBuilder();
         printColumnsAligned("SCR Configuration", out, '=', builder);
         return builder.toString();
     }
 
+    @Descriptor("List the component configurations by the total time of their activations")
+    public String metrics() {
+        return metrics("activation");
+    }
+
+    @Descriptor("List the component configurations by their cost")
+    public String metrics(@Descriptor("Cost to sort by: activation, deactivation, modified, bind or unbind") final String cost) {
+        final List<ExtComponentConfigurationDTO> configs = new ArrayList<>();
+        for (ComponentDescriptionDTO descDto : scr.getComponentDescriptionDTOs()) {
+            for (ComponentConfigurationDTO configDto : scr.getComponentConfigurationDTOs(descDto)) {
+                if (configDto instanceof ExtComponentConfigurationDTO && ((ExtComponentConfigurationDTO) configDto).metrics != null) {
+                    configs.add((ExtComponentConfigurationDTO) configDto);
+                }
+            }
+        }
+        final long[][] costs = new long[configs.size()][];
+        final Integer[] order = new Integer[configs.size()];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = getCost(configs.get(i).metrics, cost);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Long.compare(costs[i2][1], costs[i1][1]);
+            }
+        });
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%12s %8s %10s %8s  %s", "Total ms", "Count", "Max ms", "Id", "Component"));
+        for (Integer i : order) {
+            final ExtComponentConfigurationDTO configDto = configs.get(i);
+            builder.append('\n').append(String.format("%12.3f %8d %10.3f %8d  %s",
+                    costs[i][1] / 1000000d, costs[i][0], costs[i][2] / 1000000d, configDto.id, configDto.description.name));
+        }
+        return builder.toString();
+    }
+
+    // returns the count, total and maximum nanos of the cost
+    private static long[] getCost(ComponentMetricsDTO metrics, String cost) {
+        switch (cost.toLowerCase()) {
+            case "activation":
+                return new long[] { metrics.activationCount, metrics.activationTime, metrics.activationMaxTime };
+            case "deactivation":
+                return new long[] { metrics.deactivationCount, metrics.deactivationTime, 0 };
+            case "modified":
+                return new long[] { metrics.modifiedCount, metrics.modifiedTime, 0 };
+            case "bind":
+            case "unbind":
+                final boolean bind = "bind".equalsIgnoreCase(cost);
+                final long[] result = new long[3];
+                for (ReferenceMetricsDTO ref : metrics.references) {
+                    result[0] += bind ? ref.bindCount : ref.unbindCount;
+                    result[1] += bind ? ref.bindTime : ref.unbindTime;
+                    result[2] = Math.max(result[2], bind ? ref.bindMaxTime : ref.unbindMaxTime);
+                }
+                return result;
+            default:
+                throw new IllegalArgumentException(MessageFormat.format("Unknown cost \"{0}\", expected activation, deactivation, modified, bind or unbind.", cost));
+        }
+    }
+
+    String printMetrics(ComponentMetricsDTO metrics) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Activation: %d in %.3f ms (max %.3f ms, constructor %.3f ms)",
+                metrics.activationCount, metrics.activationTime / 1000000d, metrics.activationMaxTime / 1000000d, metrics.constructionTime / 1000000d));
+        sb.append('\n').append(INDENT_1).append(String.format("Deactivation: %d in %.3f ms", metrics.deactivationCount, metrics.deactivationTime / 1000000d));
+        sb.append('\n').append(INDENT_1).append(String.format("Modified: %d in %.3f ms", metrics.modifiedCount, metrics.modifiedTime / 1000000d));
+        if (metrics.evictionCount > 0) {
+            sb.append('\n').append(INDENT_1).append(String.format("Idle evictions: %d, reactivations: %d", metrics.evictionCount, metrics.reactivationCount));
+        }
+        if (metrics.coalescedUpdateCount > 0) {
+            sb.append('\n').append(INDENT_1).append(String.format("Coalesced configuration updates: %d", metrics.coalescedUpdateCount));
+        }
+        for (ReferenceMetricsDTO ref : metrics.references) {
+            sb.append('\n').append(INDENT_1).append(String.format("Reference %s: %d binds in %.3f ms (max %.3f ms), %d unbinds in %.3f ms (max %.3f ms)",
+                    ref.name, ref.bindCount, ref.bindTime / 1000000d, ref.bindMaxTime / 1000000d,
+                    ref.unbindCount, ref.unbindTime / 1000000d, ref.unbindMaxTime / 1000000d));
+        }
+        return sb.toString();
+    }
+
     public Object convert(Class<?> desiredType, Object in) throws Exception {
         return null;
     }
@@ -384,6 +478,11 @@ public class ComponentCommands implements ServiceTrackerCustomizer<Object, Servi
             if (configDto.failure != null) {
                 out.put("Failure", configDto.failure);
             }
+
+            // Print Metrics
+            if (configDto instanceof ExtComponentConfigurationDTO && ((ExtComponentConfigurationDTO) configDto).metrics != null) {
+                out.put("Metrics", printMetrics(((ExtComponentConfigurationDTO) configDto).metrics));
+            }
             printColumnsAligned(title, out, '-', builder);
         }
     }
@@ -130,6 +130,8 @@ public class ComponentRegistry
 
     private final ScrConfiguration m_configuration;
 
+    private volatile ServiceReferenceIndex m_serviceReferenceIndex;
+
     public ComponentRegistry( final ScrConfiguration scrConfiguration, final ScrLogger logger )
     {
         m_configuration = scrConfiguration;
@@ -560,7 +562,7 @@ public class ComponentRegistry
      * @param serviceReference
      * @param actor
      */
-    public synchronized <T> void missingServicePresent( final ServiceReference<T> serviceReference, ComponentActorThread actor )
+    public synchronized <T> void missingServicePresent( final ServiceReference<T> serviceReference, ComponentActor actor )
     {
         final List<Entry<?, ?>> dependencyManagers = m_missingDependencies.remove( serviceReference );
         if ( dependencyManagers != null )
@@ -646,6 +648,20 @@ public class ComponentRegistry
 
     private final ConcurrentMap<Long, RegionConfigurationSupport> bundleToRcsMap = new ConcurrentHashMap<>();
 
+    /**
+     * Returns the SCR-wide index of the services referenced by components or
+     * <code>null</code> if each bundle tracks the services on its own.
+     */
+    ServiceReferenceIndex getServiceReferenceIndex()
+    {
+        return m_serviceReferenceIndex;
+    }
+
+    void setServiceReferenceIndex( final ServiceReferenceIndex serviceReferenceIndex )
+    {
+        m_serviceReferenceIndex = serviceReferenceIndex;
+    }
+
     public RegionConfigurationSupport registerRegionConfigurationSupport(
             ServiceReference<ConfigurationAdmin> reference) {
         Bundle bundle = reference.getBundle();
@@ -775,10 +791,59 @@ public class ComponentRegistry
         }
     }
 
+    private Timer componentTimer;
+
+    private final Object componentTimerLock = new Object();
+
+    /**
+     * Runs the task once on the component timer thread after the delay in
+     * milliseconds, unless the registry is shut down before.
+     */
+    public void scheduleTimer(final Runnable task, final long delay)
+    {
+        final TimerTask timerTask = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                catch ( final Throwable t )
+                {
+                    m_logger.log(Level.WARN, "Unexpected problem executing timer task", t);
+                }
+            }
+        };
+        synchronized ( this.componentTimerLock )
+        {
+            if ( this.componentTimer == null )
+            {
+                this.componentTimer = new Timer("SCR Component Timer", true);
+            }
+            try
+            {
+                this.componentTimer.schedule(timerTask, delay);
+            }
+            catch ( final IllegalStateException ise )
+            {
+                // the registry has been shut down
+            }
+        }
+    }
+
     public void shutdown() {
         final Timer timer = changeCountTimer;
         if (timer != null) {
             timer.cancel();
         }
+        synchronized ( this.componentTimerLock )
+        {
+            if ( this.componentTimer != null )
+            {
+                this.componentTimer.cancel();
+            }
+        }
     }
 }
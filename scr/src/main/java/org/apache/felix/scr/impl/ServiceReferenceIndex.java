@@ -0,0 +1,466 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.felix.scr.impl.logger.InternalLogger.Level;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ExtendedServiceEvent;
+import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
+import org.osgi.framework.AllServiceListener;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+
+/**
+ * The <code>ServiceReferenceIndex</code> tracks the services of the
+ * interfaces referenced by components of all bundles with a single service
+ * listener per interface, registered with the bundle context of SCR.
+ * <p>
+ * For each interface the index keeps the registered references sorted by
+ * service id. The reference listeners of the components are grouped by their
+ * filter, which is the interface clause combined with the target filter of
+ * the reference. A service event of an interface is processed once: each
+ * filter is evaluated once against the reference and the resulting event is
+ * forwarded to the listeners of the filter whose bundle is class space
+ * compatible with the service, like the framework does for the service
+ * listeners of the bundles.
+ * <p>
+ * Service event listener hooks see the events delivered to SCR instead of
+ * the events delivered to the component bundles, so the index is only used
+ * if enabled by configuration.
+ */
+class ServiceReferenceIndex
+{
+
+    private static final String OBJECTCLASS_CLAUSE = "(" + Constants.OBJECTCLASS + "=";
+
+    private final BundleContext m_context;
+
+    private final ScrLogger m_logger;
+
+    // the indexed interfaces by class name
+    private final Map<String, InterfaceIndex> m_interfaces = new HashMap<>();
+
+
+    ServiceReferenceIndex( final BundleContext context, final ScrLogger logger )
+    {
+        m_context = context;
+        m_logger = logger;
+    }
+
+
+    /**
+     * Adds the listener for services matching the filter on behalf of the
+     * bundle, if the filter is the filter of a reference to a named
+     * interface.
+     *
+     * @return <code>true</code> if the listener has been added, otherwise the
+     *      caller has to register a service listener itself
+     */
+    boolean addServiceListener( final String filterString, final Bundle bundle,
+        final ExtendedServiceListener<ExtendedServiceEvent> listener )
+    {
+        final String className = getClassName( filterString );
+        if ( className == null )
+        {
+            return false;
+        }
+        final Filter filter;
+        try
+        {
+            filter = FrameworkUtil.createFilter( filterString );
+        }
+        catch ( final InvalidSyntaxException e )
+        {
+            return false;
+        }
+
+        synchronized ( m_interfaces )
+        {
+            InterfaceIndex index = m_interfaces.get( className );
+            if ( index == null )
+            {
+                index = new InterfaceIndex( className );
+                try
+                {
+                    index.open();
+                }
+                catch ( final InvalidSyntaxException e )
+                {
+                    return false;
+                }
+                m_interfaces.put( className, index );
+            }
+            index.add( filterString, filter, bundle, listener );
+            return true;
+        }
+    }
+
+
+    /**
+     * Removes the listener added for the filter.
+     *
+     * @return <code>true</code> if the listener had been added to this index
+     */
+    boolean removeServiceListener( final String filterString,
+        final ExtendedServiceListener<ExtendedServiceEvent> listener )
+    {
+        final String className = getClassName( filterString );
+        if ( className == null )
+        {
+            return false;
+        }
+        synchronized ( m_interfaces )
+        {
+            final InterfaceIndex index = m_interfaces.get( className );
+            if ( index == null || !index.remove( filterString, listener ) )
+            {
+                return false;
+            }
+            if ( index.isEmpty() )
+            {
+                m_interfaces.remove( className );
+                index.close();
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Unregisters the service listeners of all interfaces.
+     */
+    void close()
+    {
+        synchronized ( m_interfaces )
+        {
+            for ( final InterfaceIndex index : m_interfaces.values() )
+            {
+                index.close();
+            }
+            m_interfaces.clear();
+        }
+    }
+
+
+    /**
+     * Returns the interface name of a filter built by the dependency
+     * managers, <code>(objectClass=name)</code> optionally combined with
+     * other filters in an <code>(&amp;...)</code> expression, or
+     * <code>null</code> for other filters and references to any service.
+     */
+    static String getClassName( final String filterString )
+    {
+        int start;
+        if ( filterString.startsWith( OBJECTCLASS_CLAUSE ) )
+        {
+            start = OBJECTCLASS_CLAUSE.length();
+        }
+        else if ( filterString.startsWith( "(&" + OBJECTCLASS_CLAUSE ) )
+        {
+            start = 2 + OBJECTCLASS_CLAUSE.length();
+        }
+        else
+        {
+            return null;
+        }
+        final int end = filterString.indexOf( ')', start );
+        if ( end <= start )
+        {
+            return null;
+        }
+        final String className = filterString.substring( start, end );
+        if ( className.indexOf( '*' ) >= 0 || className.indexOf( '\\' ) >= 0 || className.indexOf( '(' ) >= 0 )
+        {
+            return null;
+        }
+        return className;
+    }
+
+
+    // the services of an interface and the listeners for them, receiving the
+    // events of all services as the class space of each bundle is checked
+    // when the events are delivered to its listeners
+    private final class InterfaceIndex implements AllServiceListener
+    {
+        private final String m_className;
+
+        // the registered services by service id
+        private final TreeMap<Long, ServiceReference<?>> m_references = new TreeMap<>();
+
+        // the listeners by filter
+        private final Map<String, FilterListeners> m_filters = new LinkedHashMap<>();
+
+        InterfaceIndex( final String className )
+        {
+            m_className = className;
+        }
+
+        void open() throws InvalidSyntaxException
+        {
+            final String filter = OBJECTCLASS_CLAUSE + m_className + ")";
+            m_context.addServiceListener( this, filter );
+            final ServiceReference<?>[] references = m_context.getAllServiceReferences( m_className, null );
+            if ( references != null )
+            {
+                synchronized ( this )
+                {
+                    for ( final ServiceReference<?> reference : references )
+                    {
+                        // skip services unregistered since they were found
+                        if ( reference.getBundle() != null )
+                        {
+                            m_references.put( getServiceId( reference ), reference );
+                        }
+                    }
+                }
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                m_context.removeServiceListener( this );
+            }
+            catch ( final IllegalStateException e )
+            {
+                // SCR is stopping
+            }
+        }
+
+        synchronized void add( final String filterString, final Filter filter, final Bundle bundle,
+            final ExtendedServiceListener<ExtendedServiceEvent> listener )
+        {
+            FilterListeners listeners = m_filters.get( filterString );
+            if ( listeners == null )
+            {
+                listeners = new FilterListeners( filter );
+                for ( final ServiceReference<?> reference : m_references.values() )
+                {
+                    if ( filter.match( reference ) )
+                    {
+                        listeners.m_matching.add( reference );
+                    }
+                }
+                m_filters.put( filterString, listeners );
+            }
+            listeners.add( bundle, listener );
+        }
+
+        synchronized boolean remove( final String filterString,
+            final ExtendedServiceListener<ExtendedServiceEvent> listener )
+        {
+            final FilterListeners listeners = m_filters.get( filterString );
+            if ( listeners == null || !listeners.remove( listener ) )
+            {
+                return false;
+            }
+            if ( listeners.isEmpty() )
+            {
+                m_filters.remove( filterString );
+            }
+            return true;
+        }
+
+        synchronized boolean isEmpty()
+        {
+            return m_filters.isEmpty();
+        }
+
+        @Override
+        public void serviceChanged( final ServiceEvent event )
+        {
+            final ServiceReference<?> reference = event.getServiceReference();
+            final List<Delivery> deliveries = new ArrayList<>();
+            synchronized ( this )
+            {
+                if ( event.getType() == ServiceEvent.UNREGISTERING )
+                {
+                    m_references.remove( getServiceId( reference ) );
+                }
+                else
+                {
+                    m_references.put( getServiceId( reference ), reference );
+                }
+
+                for ( final FilterListeners listeners : m_filters.values() )
+                {
+                    final int type = listeners.update( event.getType(), reference );
+                    if ( type != 0 )
+                    {
+                        deliveries.add( new Delivery( type, listeners.m_listeners ) );
+                    }
+                }
+            }
+
+            // the framework does the same check for each bundle listener
+            final Map<Bundle, Boolean> assignable = new HashMap<>();
+            for ( final Delivery delivery : deliveries )
+            {
+                final ExtendedServiceEvent extEvent = new ExtendedServiceEvent( delivery.m_type, reference );
+                for ( final BundleListener listener : delivery.m_listeners )
+                {
+                    Boolean isAssignable = assignable.get( listener.m_bundle );
+                    if ( isAssignable == null )
+                    {
+                        isAssignable = reference.isAssignableTo( listener.m_bundle, m_className );
+                        assignable.put( listener.m_bundle, isAssignable );
+                    }
+                    if ( isAssignable )
+                    {
+                        try
+                        {
+                            listener.m_listener.serviceChanged( extEvent );
+                        }
+                        catch ( final RuntimeException e )
+                        {
+                            m_logger.log(Level.ERROR, "Unexpected problem handling service event {0} of {1}", e,
+                                delivery.m_type, reference);
+                        }
+                    }
+                }
+                extEvent.activateManagers();
+            }
+        }
+    }
+
+
+    // the listeners of a filter and the services matching it
+    private static final class FilterListeners
+    {
+        private final Filter m_filter;
+
+        private final Set<ServiceReference<?>> m_matching = new HashSet<>();
+
+        // copied on write, so events are delivered without holding a lock
+        private List<BundleListener> m_listeners = new ArrayList<>();
+
+        FilterListeners( final Filter filter )
+        {
+            m_filter = filter;
+        }
+
+        void add( final Bundle bundle, final ExtendedServiceListener<ExtendedServiceEvent> listener )
+        {
+            final List<BundleListener> listeners = new ArrayList<>( m_listeners );
+            listeners.add( new BundleListener( bundle, listener ) );
+            m_listeners = listeners;
+        }
+
+        boolean remove( final ExtendedServiceListener<ExtendedServiceEvent> listener )
+        {
+            final List<BundleListener> listeners = new ArrayList<>( m_listeners );
+            for ( int i = 0; i < listeners.size(); i++ )
+            {
+                if ( listeners.get( i ).m_listener == listener )
+                {
+                    listeners.remove( i );
+                    m_listeners = listeners;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty()
+        {
+            return m_listeners.isEmpty();
+        }
+
+        /**
+         * Updates the matching services and returns the type of the event to
+         * deliver to the listeners, or zero if the event is not delivered.
+         */
+        int update( final int type, final ServiceReference<?> reference )
+        {
+            switch ( type )
+            {
+                case ServiceEvent.REGISTERED:
+                case ServiceEvent.MODIFIED:
+                    if ( m_filter.match( reference ) )
+                    {
+                        m_matching.add( reference );
+                        return type;
+                    }
+                    if ( m_matching.remove( reference ) )
+                    {
+                        return ServiceEvent.MODIFIED_ENDMATCH;
+                    }
+                    return 0;
+
+                case ServiceEvent.UNREGISTERING:
+                    return m_matching.remove( reference ) ? type : 0;
+
+                default:
+                    return 0;
+            }
+        }
+    }
+
+
+    private static final class BundleListener
+    {
+        private final Bundle m_bundle;
+
+        private final ExtendedServiceListener<ExtendedServiceEvent> m_listener;
+
+        BundleListener( final Bundle bundle, final ExtendedServiceListener<ExtendedServiceEvent> listener )
+        {
+            m_bundle = bundle;
+            m_listener = listener;
+        }
+    }
+
+
+    private static final class Delivery
+    {
+        private final int m_type;
+
+        private final List<BundleListener> m_listeners;
+
+        Delivery( final int type, final List<BundleListener> listeners )
+        {
+            m_type = type;
+            m_listeners = listeners;
+        }
+    }
+
+
+    private static Long getServiceId( final ServiceReference<?> reference )
+    {
+        return (Long) reference.getProperty( Constants.SERVICE_ID );
+    }
+}
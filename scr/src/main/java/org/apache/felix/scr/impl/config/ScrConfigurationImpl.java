@@ -95,6 +95,18 @@ public class ScrConfigurationImpl implements ScrConfiguration
 
     private Boolean globalExtender;
 
+    private int activationThreads = DEFAULT_ACTIVATION_THREADS;
+
+    private boolean activationVirtualThreads;
+
+    private boolean sharedReferenceIndex;
+
+    private long configurationCoalesceWindow;
+
+    private long delayedIdleTimeout;
+
+    private int descriptorThreads = DEFAULT_DESCRIPTOR_THREADS;
+
     private volatile BundleContext bundleContext;
 
     private volatile ServiceRegistration<?> managedServiceRef;
@@ -182,6 +194,12 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         serviceChangecountTimeout = DEFAULT_SERVICE_CHANGECOUNT_TIMEOUT_MILLISECONDS;
                         newGlobalExtender = false;
                         cacheMetadata = false;
+                        activationThreads = DEFAULT_ACTIVATION_THREADS;
+                        activationVirtualThreads = false;
+                        sharedReferenceIndex = false;
+                        configurationCoalesceWindow = 0;
+                        delayedIdleTimeout = 0;
+                        descriptorThreads = DEFAULT_DESCRIPTOR_THREADS;
                         isLogEnabled = true;
                         isLogExtensionEnabled = false;
                     }
@@ -196,6 +214,13 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         serviceChangecountTimeout = getServiceChangecountTimeout();
                         newGlobalExtender = getDefaultGlobalExtender();
                         cacheMetadata = getDefaultCacheMetadata();
+                        activationThreads = getDefaultActivationThreads();
+                        activationVirtualThreads = getDefaultActivationVirtualThreads();
+                        sharedReferenceIndex = getDefaultSharedReferenceIndex();
+                        configurationCoalesceWindow = getDefaultConfigurationCoalesceWindow();
+                        delayedIdleTimeout = getDefaultDelayedIdleTimeout();
+                        descriptorThreads = getThreadCount( bundleContext.getProperty( PROP_DESCRIPTOR_THREADS ),
+                            DEFAULT_DESCRIPTOR_THREADS );
                         isLogEnabled = getDefaultLogEnabled();
                         isLogExtensionEnabled = getDefaultLogExtension();
                     }
@@ -218,6 +243,16 @@ public class ScrConfigurationImpl implements ScrConfiguration
                 newGlobalExtender = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_GLOBAL_EXTENDER) ) );
                 cacheMetadata = VALUE_TRUE.equalsIgnoreCase(
                     String.valueOf(config.get(PROP_CACHE_METADATA)));
+                activationThreads = getThreadCount( config.get( PROP_ACTIVATION_THREADS ), DEFAULT_ACTIVATION_THREADS );
+                activationVirtualThreads = VALUE_TRUE.equalsIgnoreCase(
+                    String.valueOf(config.get(PROP_ACTIVATION_VIRTUAL_THREADS)));
+                sharedReferenceIndex = VALUE_TRUE.equalsIgnoreCase(
+                    String.valueOf(config.get(PROP_SHARED_REFERENCE_INDEX)));
+                timeout = ( Long ) config.get( PROP_CONFIGURATION_COALESCE );
+                configurationCoalesceWindow = timeout == null? 0: Math.max( 0, timeout );
+                timeout = ( Long ) config.get( PROP_DELAYED_IDLE_TIMEOUT );
+                delayedIdleTimeout = timeout == null? 0: Math.max( 0, timeout );
+                descriptorThreads = getThreadCount( config.get( PROP_DESCRIPTOR_THREADS ), DEFAULT_DESCRIPTOR_THREADS );
                 isLogEnabled = checkIfLogEnabled(config);
                 isLogExtensionEnabled = VALUE_TRUE.equalsIgnoreCase(String.valueOf(config.get(PROP_LOG_EXTENSION)));
             }
@@ -229,6 +264,7 @@ public class ScrConfigurationImpl implements ScrConfiguration
             this.globalExtender = newGlobalExtender;
         }
         activator.setLogger();
+        activator.updateComponentActor();
         if ( newGlobalExtender != oldGlobalExtender )
         {
             activator.restart( newGlobalExtender, initialStart );
@@ -290,6 +326,54 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return cacheMetadata;
     }
 
+    @Override
+    public int activationThreads()
+    {
+        return activationThreads;
+    }
+
+    @Override
+    public boolean activationVirtualThreads()
+    {
+        return activationVirtualThreads;
+    }
+
+    @Override
+    public boolean sharedReferenceIndex()
+    {
+        return sharedReferenceIndex;
+    }
+
+    @Override
+    public long configurationCoalesceWindow()
+    {
+        return configurationCoalesceWindow;
+    }
+
+    @Override
+    public long delayedIdleTimeout()
+    {
+        return delayedIdleTimeout;
+    }
+
+    @Override
+    public int descriptorThreads()
+    {
+        return descriptorThreads;
+    }
+
+    @Override
+    public int activationQueueDepth()
+    {
+        return activator.getActivationQueueDepth();
+    }
+
+    @Override
+    public long activationLatency()
+    {
+        return activator.getActivationLatency();
+    }
+
     @Override
     public long serviceChangecountTimeout()
     {
@@ -328,6 +412,26 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return Long.parseLong( val );
     }
 
+    private long getDefaultConfigurationCoalesceWindow()
+    {
+        String val = bundleContext.getProperty( PROP_CONFIGURATION_COALESCE );
+        if ( val == null )
+        {
+            return 0;
+        }
+        return Math.max( 0, Long.parseLong( val ) );
+    }
+
+    private long getDefaultDelayedIdleTimeout()
+    {
+        String val = bundleContext.getProperty( PROP_DELAYED_IDLE_TIMEOUT );
+        if ( val == null )
+        {
+            return 0;
+        }
+        return Math.max( 0, Long.parseLong( val ) );
+    }
+
     private long getDefaultStopTimeout()
     {
         String val = bundleContext.getProperty( PROP_STOP_TIMEOUT);
@@ -359,6 +463,43 @@ public class ScrConfigurationImpl implements ScrConfiguration
             bundleContext.getProperty(PROP_CACHE_METADATA));
     }
 
+    private int getDefaultActivationThreads()
+    {
+        return getThreadCount( bundleContext.getProperty( PROP_ACTIVATION_THREADS ), DEFAULT_ACTIVATION_THREADS );
+    }
+
+    private boolean getDefaultActivationVirtualThreads()
+    {
+        return VALUE_TRUE.equalsIgnoreCase(
+            bundleContext.getProperty(PROP_ACTIVATION_VIRTUAL_THREADS));
+    }
+
+    private boolean getDefaultSharedReferenceIndex()
+    {
+        return VALUE_TRUE.equalsIgnoreCase(
+            bundleContext.getProperty(PROP_SHARED_REFERENCE_INDEX));
+    }
+
+    private int getThreadCount(final Object value, final int defaultValue)
+    {
+        if ( value instanceof Number )
+        {
+            return Math.max( 1, ( (Number) value ).intValue() );
+        }
+        if ( value != null )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( value.toString().trim() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // use the default
+            }
+        }
+        return defaultValue;
+    }
+
     private Level getLogLevel(final Object levelObject)
     {
         if ( levelObject != null )
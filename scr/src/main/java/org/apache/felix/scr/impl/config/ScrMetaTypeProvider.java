@@ -101,6 +101,25 @@ class ScrMetaTypeProvider implements MetaTypeProvider
                     + "may be EventHandler services. The default is to dispose of unused components.", this
                     .configuration.keepInstances() ) );
 
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_DELAYED_IDLE_TIMEOUT,
+                "Delayed idle timeout milliseconds",
+                "How long instances of delayed components kept without users are retained before they are "
+                    + "deactivated. The service stays registered and a new instance is created on the next use. "
+                    + "Zero keeps the instances until the service is unregistered.",
+                AttributeDefinition.LONG,
+                new String[] { String.valueOf(this.configuration.delayedIdleTimeout())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_DESCRIPTOR_THREADS,
+                "Descriptor threads",
+                "Number of threads reading the component descriptors of the bundles already started when SCR "
+                    + "starts. With more than one thread the descriptors of different bundles are read concurrently.",
+                AttributeDefinition.INTEGER,
+                new String[] { String.valueOf(this.configuration.descriptorThreads())},
+                0, null, null) );
+
         adList.add( new AttributeDefinitionImpl(
                 ScrConfiguration.PROP_LOCK_TIMEOUT,
                 "Lock timeout milliseconds",
@@ -123,6 +142,39 @@ class ScrMetaTypeProvider implements MetaTypeProvider
                 "Whether to extend all bundles whether or not visible to this bundle.",
                 false ) );
 
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_THREADS,
+                "Activation threads",
+                "Number of threads enabling and activating components asynchronously. With more than one thread "
+                    + "the components of a bundle are enabled concurrently when the bundle is started.",
+                AttributeDefinition.INTEGER,
+                new String[] { String.valueOf(this.configuration.activationThreads())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_VIRTUAL_THREADS,
+                "Activation on virtual threads",
+                "Whether the threads enabling and activating components are virtual threads, if supported by the runtime.",
+                this.configuration.activationVirtualThreads() ) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_SHARED_REFERENCE_INDEX,
+                "Shared Reference Index",
+                "Whether the services referenced by components are tracked with one service listener per interface "
+                    + "for all bundles instead of service listeners of each bundle. Service event listener hooks then "
+                    + "see the service events of SCR instead of the events of the component bundles. Applied when SCR "
+                    + "is started.",
+                this.configuration.sharedReferenceIndex() ) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_CONFIGURATION_COALESCE,
+                "Configuration coalescing milliseconds",
+                "How long configuration updates of a PID already configured for a component are collected before "
+                    + "only the latest of them is applied. Zero applies every update immediately.",
+                AttributeDefinition.LONG,
+                new String[] { String.valueOf(this.configuration.configurationCoalesceWindow())},
+                0, null, null) );
+
         return new ObjectClassDefinition()
         {
 
@@ -19,6 +19,7 @@
 package org.apache.felix.scr.impl.inject.field;
 
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
@@ -40,6 +41,7 @@ import org.apache.felix.scr.impl.inject.ValueUtils;
 import org.apache.felix.scr.impl.inject.ValueUtils.ValueType;
 import org.apache.felix.scr.impl.inject.field.FieldUtils.FieldSearchResult;
 import org.apache.felix.scr.impl.inject.internal.ClassUtils;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.InternalLogger.Level;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
@@ -56,9 +58,18 @@ public class FieldHandler
     /** The component class. */
     private final Class<?> componentClass;
 
+    /** The member cache of the component. */
+    private final MemberHandles memberHandles;
+
     /** The field used for the injection. */
     private volatile Field field;
 
+    /** Handle reading the field, null to read it reflectively. */
+    private volatile MethodHandle fieldGetter;
+
+    /** Handle setting the field, null to set it reflectively. */
+    private volatile MethodHandle fieldSetter;
+
     /** Value type. */
     private volatile ValueType valueType;
 
@@ -70,12 +81,15 @@ public class FieldHandler
      * @param fieldName name of the field
      * @param componentClass component class
      * @param referenceClassName service class name
+     * @param memberHandles member cache of the component
      */
     public FieldHandler( final ReferenceMetadata metadata,
-            final Class<?> componentClass)
+            final Class<?> componentClass,
+            final MemberHandles memberHandles)
     {
         this.metadata = metadata;
         this.componentClass = componentClass;
+        this.memberHandles = memberHandles;
         this.state = NotResolved.INSTANCE;
     }
 
@@ -321,6 +335,19 @@ public class FieldHandler
     private void setFieldValue(final Object componentInstance, final Object value)
     throws InvocationTargetException
     {
+        final MethodHandle setter = fieldSetter;
+        if ( setter != null )
+        {
+            try
+            {
+                setter.invokeExact(componentInstance, value);
+                return;
+            }
+            catch ( final Throwable t )
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
         try
         {
             field.set(componentInstance, value);
@@ -338,6 +365,18 @@ public class FieldHandler
     private Object getFieldValue(final Object componentInstance)
     throws InvocationTargetException
     {
+        final MethodHandle getter = fieldGetter;
+        if ( getter != null )
+        {
+            try
+            {
+                return getter.invokeExact(componentInstance);
+            }
+            catch ( final Throwable t )
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
         try
         {
             return field.get(componentInstance);
@@ -463,6 +502,8 @@ public class FieldHandler
 
     synchronized void setSearchResult(FieldSearchResult result, ComponentLogger logger)
     {
+        fieldGetter = null;
+        fieldSetter = null;
         if (result == null)
         {
             field = null;
@@ -483,6 +524,20 @@ public class FieldHandler
             {
                 valueType = ValueUtils.getReferenceValueType(componentClass, metadata,
                     result.field.getType(), result.field, logger);
+                try
+                {
+                    fieldGetter = memberHandles.fieldGetter(result.field);
+                    // final fields are only read, see initField
+                    if ( !Modifier.isFinal(result.field.getModifiers()) )
+                    {
+                        fieldSetter = memberHandles.fieldSetter(result.field);
+                    }
+                }
+                catch ( final IllegalAccessException | RuntimeException e )
+                {
+                    logger.log(Level.DEBUG, "Cannot create handles for field {0}, using reflection",
+                        e, result.field);
+                }
             }
             state = Resolved.INSTANCE;
             logger.log(Level.DEBUG, "Found field: {0}",
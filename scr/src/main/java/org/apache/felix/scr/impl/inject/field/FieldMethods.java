@@ -21,6 +21,7 @@ package org.apache.felix.scr.impl.inject.field;
 import org.apache.felix.scr.impl.inject.InitReferenceMethod;
 import org.apache.felix.scr.impl.inject.ReferenceMethod;
 import org.apache.felix.scr.impl.inject.ReferenceMethods;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
 
@@ -38,11 +39,13 @@ public class FieldMethods implements ReferenceMethods
     public FieldMethods( final ReferenceMetadata m_dependencyMetadata,
             final Class<?> instanceClass,
             final DSVersion dsVersion,
-            final boolean configurableServiceProperties )
+            final boolean configurableServiceProperties,
+            final MemberHandles memberHandles )
     {
         final FieldHandler handler = new FieldHandler(
                 m_dependencyMetadata,
-                instanceClass
+                instanceClass,
+                memberHandles
         );
         bind = handler.getBind();
         unbind = handler.getUnbind();
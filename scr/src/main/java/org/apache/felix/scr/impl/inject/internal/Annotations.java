@@ -358,12 +358,21 @@ public class Annotations
         return sb.toString();
     }
 
+    /**
+     * The values are coerced once when the proxy is created and never change,
+     * so a member call is a single map lookup and the hash code and string
+     * representation are computed only once.
+     */
     private final static class Handler implements InvocationHandler
     {
         private final Map<String, Object> values;
 
         private final Class<?> type;
 
+        private volatile Integer hashCode;
+
+        private volatile String string;
+
         public Handler(final Map<String, Object> values, final Class<?> type)
         {
             this.values = values;
@@ -382,19 +391,23 @@ public class Annotations
             {
                 // check for methods of the Annotations class like hashCode, toString, equals etc.
                 if (method.getName().equals("hashCode") &&
-                    method.getParameterTypes().length == 0 )
+                    method.getParameterCount() == 0 )
                 {
-                    int hashCode = 0;
-                    for (final Map.Entry<String, Object> entry : values.entrySet()) {
-                        if (value instanceof Invalid) {
-                            continue;
+                    if ( hashCode == null )
+                    {
+                        int result = 0;
+                        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+                            if (value instanceof Invalid) {
+                                continue;
+                            }
+                            result += (127 * entry.getKey().hashCode()) ^ entry.getValue().hashCode();
                         }
-                        hashCode += (127 * entry.getKey().hashCode()) ^ entry.getValue().hashCode();
+                        hashCode = result;
                     }
                     value = hashCode;
                 }
                 else if (method.getName().equals("equals")
-                         && method.getParameterTypes().length == 1)
+                         && method.getParameterCount() == 1)
                 {
                     final Object other = args[0];
                     if (proxy == other)
@@ -414,12 +427,16 @@ public class Annotations
                     }
                 }
                 else if (method.getName().equals("toString")
-                        && method.getParameterTypes().length == 0 )
+                        && method.getParameterCount() == 0 )
                 {
-                    value = type.getName() + " : " + values;
+                    if ( string == null )
+                    {
+                        string = type.getName() + " : " + values;
+                    }
+                    value = string;
                 }
                 else if (method.getName().equals("annotationType")
-                         && method.getParameterTypes().length == 0 )
+                         && method.getParameterCount() == 0 )
                 {
                     value = type;
                 }
@@ -52,6 +52,8 @@ public class ComponentMethodsImpl<T> implements ComponentMethods<T>
 
     private final Map<String, ReferenceMethods> bindMethodMap = new HashMap<>();
 
+    private final MemberHandles m_memberHandles = new MemberHandles();
+
     @Override
     @SuppressWarnings({ "rawtypes", "unchecked" })
 	public synchronized void initComponentMethods(
@@ -74,11 +76,12 @@ public class ComponentMethodsImpl<T> implements ComponentMethods<T>
         		implementationObjectClass,
         		dsVersion,
         		configurableServiceProperties,
-        		supportsInterfaces);
+        		supportsInterfaces,
+        		m_memberHandles);
         m_deactivateMethod = new DeactivateMethod( componentMetadata.getDeactivate(),
-                componentMetadata.isDeactivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+                componentMetadata.isDeactivateDeclared(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces, m_memberHandles );
 
-        m_modifiedMethod = new ModifiedMethod( componentMetadata.getModified(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+        m_modifiedMethod = new ModifiedMethod( componentMetadata.getModified(), implementationObjectClass, dsVersion, configurableServiceProperties, supportsInterfaces, m_memberHandles );
 
         for ( ReferenceMetadata referenceMetadata: componentMetadata.getDependencies() )
         {
@@ -86,11 +89,11 @@ public class ComponentMethodsImpl<T> implements ComponentMethods<T>
             final List<ReferenceMethods> methods = new ArrayList<>();
             if ( referenceMetadata.getField() != null )
             {
-                methods.add(new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties));
+                methods.add(new FieldMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberHandles));
             }
             if ( referenceMetadata.getBind() != null )
             {
-                methods.add(new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties));
+                methods.add(new BindMethods( referenceMetadata, implementationObjectClass, dsVersion, configurableServiceProperties, m_memberHandles));
             }
 
             if ( methods.isEmpty() )
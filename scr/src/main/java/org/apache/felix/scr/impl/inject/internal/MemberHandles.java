@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the members of the classes of a component: the
+ * declared methods by name, which are looked up for every candidate
+ * signature of a component method, and the method handles used to invoke
+ * the component methods and to access the reference fields once they have
+ * been resolved.
+ * <p>
+ * The cache is held by the {@link ComponentMethodsImpl} of the component,
+ * so it goes away together with the component holder once the bundle
+ * component activator is disposed.
+ */
+public class MemberHandles
+{
+    private static final MethodType METHOD_INVOKER_TYPE = MethodType.methodType( Object.class, Object.class,
+        Object[].class );
+
+    private static final MethodType FIELD_GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+
+    private static final MethodType FIELD_SETTER_TYPE = MethodType.methodType( void.class, Object.class,
+        Object.class );
+
+    private static final Method[] NO_METHODS = new Method[0];
+
+    private final ConcurrentMap<Class<?>, ClassMembers> m_members = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Method, MethodHandle> m_invokers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Field, MethodHandle> m_getters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Field, MethodHandle> m_setters = new ConcurrentHashMap<>();
+
+    private ClassMembers getMembers(final Class<?> clazz)
+    {
+        ClassMembers members = m_members.get( clazz );
+        if ( members == null )
+        {
+            members = new ClassMembers( clazz );
+            final ClassMembers existing = m_members.putIfAbsent( clazz, members );
+            if ( existing != null )
+            {
+                members = existing;
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Returns the methods declared by the class, like
+     * {@link Class#getDeclaredMethods()} but sharing the method objects
+     * between all callers.
+     */
+    public Method[] getDeclaredMethods(final Class<?> clazz)
+    {
+        return getMembers( clazz ).getDeclaredMethods().clone();
+    }
+
+    /**
+     * Returns the method declared by the class with the given name and
+     * parameter types, like {@link Class#getDeclaredMethod(String, Class...)}
+     * but without copying the declared methods of the class on every call
+     * and returning <code>null</code> instead of throwing an exception if
+     * there is no such method.
+     */
+    public Method findDeclaredMethod(final Class<?> clazz, final String name, final Class<?>[] parameterTypes)
+    {
+        final Class<?>[] types = parameterTypes == null ? new Class<?>[0] : parameterTypes;
+        Method result = null;
+        for ( final Method method : getMembers( clazz ).getDeclaredMethods( name ) )
+        {
+            // like getDeclaredMethod prefer the most specific return type
+            // over bridge methods with the same parameters
+            if ( Arrays.equals( method.getParameterTypes(), types )
+                && ( result == null || result.getReturnType().isAssignableFrom( method.getReturnType() ) ) )
+            {
+                result = method;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a handle of type {@code (Object, Object[])Object} invoking the
+     * given method on the instance passed as first argument with the
+     * parameters of the array. Methods returning {@code void} return
+     * {@code null}. The method must have been made accessible before.
+     *
+     * @throws IllegalAccessException If the method is not accessible
+     */
+    public MethodHandle methodInvoker(final Method method) throws IllegalAccessException
+    {
+        MethodHandle handle = m_invokers.get( method );
+        if ( handle == null )
+        {
+            handle = MethodHandles.lookup().unreflect( method )
+                .asSpreader( Object[].class, method.getParameterCount() )
+                .asType( METHOD_INVOKER_TYPE );
+            m_invokers.putIfAbsent( method, handle );
+        }
+        return handle;
+    }
+
+    /**
+     * Returns a handle of type {@code (Object)Object} reading the given field
+     * of the instance passed as argument. The field must have been made
+     * accessible before.
+     *
+     * @throws IllegalAccessException If the field is not accessible
+     */
+    public MethodHandle fieldGetter(final Field field) throws IllegalAccessException
+    {
+        MethodHandle handle = m_getters.get( field );
+        if ( handle == null )
+        {
+            handle = MethodHandles.lookup().unreflectGetter( field ).asType( FIELD_GETTER_TYPE );
+            m_getters.putIfAbsent( field, handle );
+        }
+        return handle;
+    }
+
+    /**
+     * Returns a handle of type {@code (Object, Object)void} setting the given
+     * field of the instance passed as first argument. The field must have
+     * been made accessible before; final fields cannot be set with a handle
+     * and yield an {@code IllegalAccessException}.
+     *
+     * @throws IllegalAccessException If the field is not accessible
+     */
+    public MethodHandle fieldSetter(final Field field) throws IllegalAccessException
+    {
+        MethodHandle handle = m_setters.get( field );
+        if ( handle == null )
+        {
+            handle = MethodHandles.lookup().unreflectSetter( field ).asType( FIELD_SETTER_TYPE );
+            m_setters.putIfAbsent( field, handle );
+        }
+        return handle;
+    }
+
+    private static final class ClassMembers
+    {
+        private final Class<?> m_class;
+
+        private volatile Method[] m_declaredMethods;
+
+        private volatile Map<String, Method[]> m_declaredMethodsByName;
+
+        ClassMembers(final Class<?> clazz)
+        {
+            m_class = clazz;
+        }
+
+        Method[] getDeclaredMethods()
+        {
+            Method[] declaredMethods = m_declaredMethods;
+            if ( declaredMethods == null )
+            {
+                // may throw NoClassDefFoundError just like getDeclaredMethod
+                // if a signature refers to a class which cannot be loaded; in
+                // that case nothing is cached and the next call tries again
+                declaredMethods = m_class.getDeclaredMethods();
+                m_declaredMethods = declaredMethods;
+            }
+            return declaredMethods;
+        }
+
+        Method[] getDeclaredMethods(final String name)
+        {
+            Map<String, Method[]> byName = m_declaredMethodsByName;
+            if ( byName == null )
+            {
+                final Map<String, List<Method>> lists = new HashMap<>();
+                for ( final Method method : getDeclaredMethods() )
+                {
+                    List<Method> methods = lists.get( method.getName() );
+                    if ( methods == null )
+                    {
+                        methods = new ArrayList<>( 1 );
+                        lists.put( method.getName(), methods );
+                    }
+                    methods.add( method );
+                }
+                byName = new HashMap<>( lists.size() * 2 );
+                for ( final Map.Entry<String, List<Method>> entry : lists.entrySet() )
+                {
+                    byName.put( entry.getKey(), entry.getValue().toArray( new Method[0] ) );
+                }
+                m_declaredMethodsByName = byName;
+            }
+            final Method[] methods = byName.get( name );
+            return methods == null ? NO_METHODS : methods;
+        }
+    }
+}
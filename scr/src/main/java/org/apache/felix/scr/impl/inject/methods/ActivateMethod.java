@@ -32,6 +32,7 @@ import org.apache.felix.scr.impl.inject.MethodResult;
 import org.apache.felix.scr.impl.inject.ScrComponentContext;
 import org.apache.felix.scr.impl.inject.internal.Annotations;
 import org.apache.felix.scr.impl.inject.internal.ClassUtils;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.InternalLogger.Level;
 import org.apache.felix.scr.impl.metadata.DSVersion;
@@ -47,9 +48,10 @@ public class ActivateMethod extends BaseMethod<ActivatorParameter, Object> imple
             final Class<?> componentClass,
             final DSVersion dsVersion,
             final boolean configurableServiceProperties,
-            final boolean supportsInterfaces)
+            final boolean supportsInterfaces,
+            final MemberHandles memberHandles)
     {
-        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties );
+        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties, memberHandles );
         m_supportsInterfaces = supportsInterfaces;
     }
 
@@ -197,7 +199,7 @@ public class ActivateMethod extends BaseMethod<ActivatorParameter, Object> imple
     List<Method> getSortedMethods(Class<?> targetClass)
     {
         List<Method> result = new ArrayList<>();
-        Method[] methods = targetClass.getDeclaredMethods();
+        Method[] methods = getMemberHandles().getDeclaredMethods( targetClass );
         for (Method m: methods)
         {
             if (m.getName().equals(getMethodName()))
@@ -19,6 +19,7 @@
 package org.apache.felix.scr.impl.inject.methods;
 
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -30,6 +31,7 @@ import java.util.Map;
 import org.apache.felix.scr.impl.inject.BaseParameter;
 import org.apache.felix.scr.impl.inject.MethodResult;
 import org.apache.felix.scr.impl.inject.internal.ClassUtils;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.InternalLogger.Level;
 import org.apache.felix.scr.impl.metadata.DSVersion;
@@ -46,9 +48,13 @@ public abstract class BaseMethod<P extends BaseParameter, T>
 
     private final String m_methodName;
     private final Class<?> m_componentClass;
+    private final MemberHandles m_memberHandles;
 
     private volatile Method m_method;
 
+    // handle invoking m_method, null to invoke it reflectively
+    private volatile MethodHandle m_invoker;
+
     private final boolean m_methodRequired;
 
     private volatile State m_state;
@@ -57,13 +63,15 @@ public abstract class BaseMethod<P extends BaseParameter, T>
             final boolean methodRequired,
             final Class<?> componentClass,
             final DSVersion dsVersion,
-            final boolean configurableServiceProperties )
+            final boolean configurableServiceProperties,
+            final MemberHandles memberHandles )
     {
         m_methodName = methodName;
         m_methodRequired = methodRequired;
         m_componentClass = componentClass;
         this.dsVersion = dsVersion;
         this.configurableServiceProperties = configurableServiceProperties;
+        m_memberHandles = memberHandles;
         if ( m_methodName == null )
         {
             m_state = NotApplicable.INSTANCE;
@@ -101,14 +109,29 @@ public abstract class BaseMethod<P extends BaseParameter, T>
         return m_componentClass;
     }
 
+    protected final MemberHandles getMemberHandles()
+    {
+        return m_memberHandles;
+    }
+
     protected abstract void setTypes(T types);
 
     synchronized void setMethod(MethodInfo<T> methodInfo, ComponentLogger logger)
     {
         this.m_method = methodInfo == null ? null : methodInfo.getMethod();
+        this.m_invoker = null;
 
         if (m_method != null)
         {
+            try
+            {
+                m_invoker = m_memberHandles.methodInvoker( m_method );
+            }
+            catch ( IllegalAccessException | RuntimeException e )
+            {
+                logger.log(Level.DEBUG, "Cannot create handle for {0} method: {1}, using reflection", e,
+                        getMethodNamePrefix(), m_method );
+            }
             setTypes(methodInfo.getTypes());
             m_state = Resolved.INSTANCE;
             logger.log(Level.DEBUG, "Found {0} method: {1}", null,
@@ -242,7 +265,7 @@ public abstract class BaseMethod<P extends BaseParameter, T>
                             getMethodName(), Arrays.asList(getParametersForLogging(params)));
                 }
                 @SuppressWarnings("unchecked")
-                final Map<String, Object> result = (Map<String, Object>) m_method.invoke(
+                final Map<String, Object> result = (Map<String, Object>) invoke(
                     componentInstance, params);
                 logger.log(Level.DEBUG, "invoked {0}: {1}", null,
                         getMethodNamePrefix(), getMethodName() );
@@ -284,6 +307,24 @@ public abstract class BaseMethod<P extends BaseParameter, T>
         return MethodResult.VOID;
     }
 
+    private Object invoke(final Object componentInstance, final Object[] params)
+        throws IllegalAccessException, InvocationTargetException
+    {
+        final MethodHandle invoker = m_invoker;
+        if ( invoker == null )
+        {
+            return m_method.invoke( componentInstance, params );
+        }
+        try
+        {
+            return invoker.invokeExact( componentInstance, params );
+        }
+        catch ( Throwable t )
+        {
+            throw new InvocationTargetException( t );
+        }
+    }
+
     protected boolean returnValue()
     {
         // allow returning Map if declared as DS 1.2-Felix or newer
@@ -344,7 +385,19 @@ public abstract class BaseMethod<P extends BaseParameter, T>
         try
         {
             // find the declared method in this class
-            Method method = clazz.getDeclaredMethod( name, parameterTypes );
+            Method method = m_memberHandles.findDeclaredMethod( clazz, name, parameterTypes );
+
+            if ( method == null )
+            {
+                // no method is declared with the given name and parameters
+                if (logger.isLogEnabled(Level.DEBUG))
+                {
+                    String argList = ( parameterTypes != null ) ? Arrays.asList( parameterTypes ).toString() : "";
+                    logger.log(Level.DEBUG, "Declared Method {0}.{1}({2}) not found", null,
+                            clazz.getName(), name, argList );
+                }
+                return null;
+            }
 
             // accept public and protected methods only and ensure accessibility
             if ( accept( method, acceptPrivate, acceptPackage, returnValue() ) )
@@ -355,17 +408,6 @@ public abstract class BaseMethod<P extends BaseParameter, T>
             // the method would fit the requirements but is not acceptable
             throw new SuitableMethodNotAccessibleException();
         }
-        catch ( NoSuchMethodException nsme )
-        {
-            // thrown if no method is declared with the given name and
-            // parameters
-            if (logger.isLogEnabled(Level.DEBUG))
-            {
-                String argList = ( parameterTypes != null ) ? Arrays.asList( parameterTypes ).toString() : "";
-                logger.log(Level.DEBUG, "Declared Method {0}.{1}({2}) not found", null,
-                        clazz.getName(), name, argList );
-            }
-        }
         catch ( NoClassDefFoundError cdfe )
         {
             // may be thrown if a method would be found but the signature
@@ -30,6 +30,7 @@ import org.apache.felix.scr.impl.inject.RefPair;
 import org.apache.felix.scr.impl.inject.ScrComponentContext;
 import org.apache.felix.scr.impl.inject.ValueUtils;
 import org.apache.felix.scr.impl.inject.internal.ClassUtils;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.InternalLogger.Level;
 import org.apache.felix.scr.impl.metadata.DSVersion;
@@ -51,9 +52,10 @@ implements org.apache.felix.scr.impl.inject.ReferenceMethod
             final Class<?> componentClass,
             final String referenceClassName,
             final DSVersion dsVersion,
-            final boolean configurableServiceProperties )
+            final boolean configurableServiceProperties,
+            final MemberHandles memberHandles )
     {
-        super( methodName, methodName != null, componentClass, dsVersion, configurableServiceProperties );
+        super( methodName, methodName != null, componentClass, dsVersion, configurableServiceProperties, memberHandles );
         m_referenceClassName = referenceClassName;
     }
 
@@ -274,7 +276,7 @@ implements org.apache.felix.scr.impl.inject.ReferenceMethod
             // Case 7 - Multiple parameters
             if ( getDSVersion().isDS13() )
             {
-                for (Method m: targetClass.getDeclaredMethods())
+                for (Method m: getMemberHandles().getDeclaredMethods( targetClass ))
                 {
                     if (getMethodName().equals(m.getName())) {
                         Class<?>[] parameterTypes = m.getParameterTypes();
@@ -474,7 +476,7 @@ implements org.apache.felix.scr.impl.inject.ReferenceMethod
             boolean acceptPrivate, boolean acceptPackage, ComponentLogger logger ) throws SuitableMethodNotAccessibleException
     {
         // Get all potential bind methods
-        Method candidateBindMethods[] = targetClass.getDeclaredMethods();
+        Method candidateBindMethods[] = getMemberHandles().getDeclaredMethods( targetClass );
         boolean suitableNotAccessible = false;
 
         if (logger.isLogEnabled(Level.DEBUG))
@@ -599,7 +601,7 @@ implements org.apache.felix.scr.impl.inject.ReferenceMethod
             boolean acceptPrivate, boolean acceptPackage ) throws SuitableMethodNotAccessibleException
     {
         // Get all potential bind methods
-        Method candidateBindMethods[] = targetClass.getDeclaredMethods();
+        Method candidateBindMethods[] = getMemberHandles().getDeclaredMethods( targetClass );
         boolean suitableNotAccessible = false;
 
         // Iterate over them
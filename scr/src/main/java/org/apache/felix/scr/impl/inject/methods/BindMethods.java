@@ -22,6 +22,7 @@ package org.apache.felix.scr.impl.inject.methods;
 import org.apache.felix.scr.impl.inject.InitReferenceMethod;
 import org.apache.felix.scr.impl.inject.ReferenceMethod;
 import org.apache.felix.scr.impl.inject.ReferenceMethods;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
 
@@ -35,25 +36,26 @@ public class BindMethods implements ReferenceMethods
     private final ReferenceMethod m_unbind;
 
     public BindMethods( ReferenceMetadata m_dependencyMetadata, Class<?> instanceClass,
-            final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberHandles memberHandles )
     {
         m_bind = new BindMethod(
                 m_dependencyMetadata.getBind(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberHandles
         );
         m_updated = new UpdatedMethod(
                 m_dependencyMetadata.getUpdated(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberHandles
         );
         m_unbind = new UnbindMethod(
                 m_dependencyMetadata.getUnbind(),
                 instanceClass,
                 m_dependencyMetadata.getInterface(),
-                dsVersion, configurableServiceProperties
+                dsVersion, configurableServiceProperties, memberHandles
         );
     }
 
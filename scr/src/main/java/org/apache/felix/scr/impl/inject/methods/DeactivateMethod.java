@@ -18,6 +18,7 @@
  */
 package org.apache.felix.scr.impl.inject.methods;
 
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 
 
@@ -31,9 +32,10 @@ public class DeactivateMethod extends ActivateMethod
     }
 
     public DeactivateMethod( final String methodName,
-            final boolean methodRequired, final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties, boolean supportsInterfaces )
+            final boolean methodRequired, final Class<?> componentClass, final DSVersion dsVersion, final boolean configurableServiceProperties, boolean supportsInterfaces,
+            final MemberHandles memberHandles )
     {
-        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties, supportsInterfaces );
+        super( methodName, methodRequired, componentClass, dsVersion, configurableServiceProperties, supportsInterfaces, memberHandles );
     }
 
     protected String getMethodNamePrefix()
@@ -18,6 +18,7 @@
  */
 package org.apache.felix.scr.impl.inject.methods;
 
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 
 
@@ -29,9 +30,10 @@ implements org.apache.felix.scr.impl.inject.ReferenceMethod
 {
 
     public UpdatedMethod( final String methodName,
-            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties )
+            final Class<?> componentClass, final String referenceClassName, final DSVersion dsVersion, final boolean configurableServiceProperties,
+            final MemberHandles memberHandles )
     {
-        super( methodName, componentClass, referenceClassName, dsVersion, configurableServiceProperties );
+        super( methodName, componentClass, referenceClassName, dsVersion, configurableServiceProperties, memberHandles );
     }
 
 
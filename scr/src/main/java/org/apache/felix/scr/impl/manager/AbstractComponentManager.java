@@ -135,6 +135,8 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
     // The dependency managers that manage every dependency
     private final List<DependencyManager<S, ?>> m_dependencyManagers;
 
+    private final ComponentMetrics m_metrics = new ComponentMetrics();
+
     private volatile boolean m_dependencyManagersInitialized;
 
     private final AtomicInteger m_trackingCount = new AtomicInteger();
@@ -448,7 +450,7 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
         if (async)
         {
             final Deferred<Void> latch = enableLatch;
-            m_container.getActivator().schedule(new Runnable()
+            m_container.getActivator().schedule(m_container, new Runnable()
             {
 
                 long count = taskCounter.incrementAndGet();
@@ -540,7 +542,7 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
         if (async)
         {
             final Deferred<Void> latch = enableLatch;
-            m_container.getActivator().schedule(new Runnable()
+            m_container.getActivator().schedule(m_container, new Runnable()
             {
 
                 long count = taskCounter.incrementAndGet();
@@ -1246,6 +1248,12 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
         return m_dependencyManagers;
     }
 
+    @Override
+    public ComponentMetrics getMetrics()
+    {
+        return m_metrics;
+    }
+
     /**
      * Returns an iterator over the {@link DependencyManager} objects
      * representing the declared references in reversed declaration order
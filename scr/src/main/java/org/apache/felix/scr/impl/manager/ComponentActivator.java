@@ -36,6 +36,19 @@ public interface ComponentActivator extends ExtendedServiceListenerContext<Exten
 
     void schedule(Runnable runnable);
 
+    /**
+     * Schedules the task to run after the tasks scheduled before with the
+     * same key, usually the component holder. Tasks with different keys may
+     * run concurrently.
+     */
+    void schedule(Object key, Runnable runnable);
+
+    /**
+     * Runs the task once on a timer thread after the delay in milliseconds,
+     * unless SCR is stopped before.
+     */
+    void scheduleTimer(Runnable runnable, long delay);
+
     long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager);
 
     void unregisterComponentId(AbstractComponentManager<?> sAbstractComponentManager);
@@ -112,6 +112,13 @@ public interface ComponentHolder<S>
     boolean isEnabled();
 
 
+    /**
+     * Returns the number of configuration updates which have been superseded
+     * within the configuration coalescing window and thus never applied.
+     */
+    long getCoalescedUpdates();
+
+
     /**
      * Disposes off all components of this holder.
      * @param reason
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The <code>ComponentMetrics</code> class collects how often and how long
+ * a component manager activated, deactivated and modified its component
+ * and bound and unbound the services of its references.
+ */
+public class ComponentMetrics
+{
+
+    private final Timing m_activation = new Timing();
+
+    private final Timing m_construction = new Timing();
+
+    private final Timing m_deactivation = new Timing();
+
+    private final Timing m_modification = new Timing();
+
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    private final AtomicLong m_reactivations = new AtomicLong();
+
+    // the reference metrics by reference name in declaration order
+    private final Map<String, ReferenceMetrics> m_references = new LinkedHashMap<>();
+
+
+    /**
+     * Returns the timing of successful activations, from acquiring the bound
+     * services up to returning from the activate method.
+     */
+    public Timing getActivation()
+    {
+        return m_activation;
+    }
+
+
+    /**
+     * Returns the timing of the constructor calls, including constructor
+     * injection of references and activation fields.
+     */
+    public Timing getConstruction()
+    {
+        return m_construction;
+    }
+
+
+    /**
+     * Returns the timing of deactivations, including unbinding the references.
+     */
+    public Timing getDeactivation()
+    {
+        return m_deactivation;
+    }
+
+
+    /**
+     * Returns the timing of the modified method calls.
+     */
+    public Timing getModification()
+    {
+        return m_modification;
+    }
+
+
+    /**
+     * Returns how often the instance of a delayed component has been
+     * deactivated after being unused for the idle timeout.
+     */
+    public long getEvictions()
+    {
+        return m_evictions.get();
+    }
+
+
+    /**
+     * Returns how often the instance of a delayed component has been created
+     * again after it had been evicted.
+     */
+    public long getReactivations()
+    {
+        return m_reactivations.get();
+    }
+
+
+    void recordEviction()
+    {
+        m_evictions.incrementAndGet();
+    }
+
+
+    void recordReactivation()
+    {
+        m_reactivations.incrementAndGet();
+    }
+
+
+    /**
+     * Returns the metrics of the reference with the given name, creating them
+     * on first access.
+     */
+    public ReferenceMetrics getReference( final String name )
+    {
+        synchronized ( m_references )
+        {
+            ReferenceMetrics metrics = m_references.get( name );
+            if ( metrics == null )
+            {
+                metrics = new ReferenceMetrics( name );
+                m_references.put( name, metrics );
+            }
+            return metrics;
+        }
+    }
+
+
+    /**
+     * Returns the metrics of all references in declaration order.
+     */
+    public ReferenceMetrics[] getReferences()
+    {
+        synchronized ( m_references )
+        {
+            return m_references.values().toArray( new ReferenceMetrics[m_references.size()] );
+        }
+    }
+
+
+    /**
+     * Returns the current time for measuring a duration with
+     * {@link Timing#record(long)}.
+     */
+    static long start()
+    {
+        return System.nanoTime();
+    }
+
+
+    /**
+     * The number, total and maximum duration of a recurring operation.
+     */
+    public static final class Timing
+    {
+        private long m_count;
+
+        private long m_totalNanos;
+
+        private long m_maxNanos;
+
+
+        /**
+         * Records an operation started at the given {@link ComponentMetrics#start() time}.
+         */
+        synchronized void record( final long start )
+        {
+            final long duration = System.nanoTime() - start;
+            m_count++;
+            m_totalNanos += duration;
+            if ( duration > m_maxNanos )
+            {
+                m_maxNanos = duration;
+            }
+        }
+
+
+        public synchronized long getCount()
+        {
+            return m_count;
+        }
+
+
+        public synchronized long getTotalNanos()
+        {
+            return m_totalNanos;
+        }
+
+
+        public synchronized long getMaxNanos()
+        {
+            return m_maxNanos;
+        }
+    }
+
+
+    /**
+     * The bind and unbind timings of a reference.
+     */
+    public static final class ReferenceMetrics
+    {
+        private final String m_name;
+
+        private final Timing m_bind = new Timing();
+
+        private final Timing m_unbind = new Timing();
+
+
+        ReferenceMetrics( final String name )
+        {
+            m_name = name;
+        }
+
+
+        public String getName()
+        {
+            return m_name;
+        }
+
+
+        /**
+         * Returns the timing of binding services, including getting the
+         * service objects and calling the bind method or setting the field.
+         */
+        public Timing getBind()
+        {
+            return m_bind;
+        }
+
+
+        /**
+         * Returns the timing of unbinding services.
+         */
+        public Timing getUnbind()
+        {
+            return m_unbind;
+        }
+    }
+}
@@ -143,6 +143,27 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
 
     private final ComponentLogger logger;
 
+    /**
+     * Configuration updates of already configured PIDs received during the
+     * coalescing window, indexed by <code>service.pid</code>. Only the
+     * latest update of each PID is kept and applied once the window elapsed.
+     */
+    private final Map<String, PendingUpdate> m_pendingUpdates = new HashMap<>();
+
+    /**
+     * Serializes applying configuration updates and deletions received from
+     * Configuration Admin with coalesced updates applied by the timer.
+     */
+    private final Object m_configurationLock = new Object();
+
+    /**
+     * Whether an update has ever been deferred. Until then configuration
+     * changes are applied without taking the configuration lock.
+     */
+    private volatile boolean m_coalescing;
+
+    private long m_coalescedUpdates;
+
     public ConfigurableComponentHolder( final ComponentActivator activator,
             final ComponentMetadata metadata,
             final ComponentLogger logger)
@@ -248,6 +269,21 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
      */
     @Override
     public void configurationDeleted( final TargetedPID pid, TargetedPID factoryPid )
+    {
+        if ( !m_coalescing )
+        {
+            deleteConfiguration( pid, factoryPid );
+            return;
+        }
+        synchronized ( m_configurationLock )
+        {
+            // the deletion supersedes a pending update
+            removePendingUpdate( pid.getServicePid() );
+            deleteConfiguration( pid, factoryPid );
+        }
+    }
+
+    private void deleteConfiguration( final TargetedPID pid, final TargetedPID factoryPid )
     {
         logger.log(Level.DEBUG,
             "ImmediateComponentHolder configuration deleted for pid {0}", null, pid);
@@ -353,9 +389,69 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
      * @return true if a new configuration was created, false otherwise.
      *
      * TODO there are now 3 states..... still not satisfied, existing, and new
+     * <p>
+     * If a {@link ScrConfiguration#configurationCoalesceWindow() coalescing window}
+     * is configured, updates of a PID already configured for enabled
+     * components are not applied immediately. Instead the latest update
+     * received for the PID within the window is applied once the window
+     * elapsed, so a burst of updates modifies or reactivates the components
+     * only once. The update is applied by the component actor, ordered with
+     * the other tasks of this holder.
      */
     @Override
     public boolean configurationUpdated( TargetedPID pid, TargetedPID factoryPid, final Dictionary<String, Object> props, long changeCount )
+    {
+        final long window = getCoalesceWindow();
+        if ( window > 0 && isConfigured( pid, factoryPid ) )
+        {
+            final String servicePid = pid.getServicePid();
+            synchronized ( m_pendingUpdates )
+            {
+                final PendingUpdate pending = m_pendingUpdates.get( servicePid );
+                if ( pending != null )
+                {
+                    pending.replace( pid, factoryPid, props, changeCount );
+                    return false;
+                }
+                m_pendingUpdates.put( servicePid, new PendingUpdate( pid, factoryPid, props, changeCount ) );
+                m_coalescing = true;
+            }
+            logger.log(Level.DEBUG,
+                "ConfigurableComponentHolder deferring configuration update for pid {0} with change count {1} by {2}ms",
+                null, pid, changeCount, window);
+            // the timer only hands the update over to the component actor, so
+            // applying it does not hold up other timer tasks
+            m_activator.scheduleTimer( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    m_activator.schedule( ConfigurableComponentHolder.this, new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            applyPendingUpdate( servicePid );
+                        }
+                    } );
+                }
+            }, window );
+            return false;
+        }
+
+        if ( !m_coalescing )
+        {
+            return updateConfiguration( pid, factoryPid, props, changeCount );
+        }
+        synchronized ( m_configurationLock )
+        {
+            // an update received after the window has been disabled supersedes a pending update
+            removePendingUpdate( pid.getServicePid() );
+            return updateConfiguration( pid, factoryPid, props, changeCount );
+        }
+    }
+
+    private boolean updateConfiguration( TargetedPID pid, TargetedPID factoryPid, final Dictionary<String, Object> props, long changeCount )
     {
         logger.log(Level.DEBUG,
                 "ConfigurableComponentHolder configuration updated for pid {0} with change count {1}", null, pid,
@@ -455,6 +551,87 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
         return created;
     }
 
+    /**
+     * Returns the number of configuration updates which have been superseded
+     * by later updates or deletions of the same PID within the coalescing
+     * window and thus have never been applied.
+     */
+    @Override
+    public long getCoalescedUpdates()
+    {
+        synchronized ( m_pendingUpdates )
+        {
+            return m_coalescedUpdates;
+        }
+    }
+
+    private long getCoalesceWindow()
+    {
+        final ScrConfiguration configuration = m_activator.getConfiguration();
+        return configuration == null ? 0 : configuration.configurationCoalesceWindow();
+    }
+
+    // whether a configuration with the pid has been applied to enabled components
+    private boolean isConfigured( final TargetedPID pid, final TargetedPID factoryPid )
+    {
+        synchronized ( m_components )
+        {
+            if ( !m_enabled )
+            {
+                return false;
+            }
+            final String servicePid = pid.getServicePid();
+            if ( factoryPid != null )
+            {
+                return m_components.containsKey( servicePid )
+                    && factoryPid.equals( m_factoryTargetedPids.get( servicePid ) );
+            }
+            final int index = m_componentMetadata.getPidIndex( pid );
+            return index != -1 && m_changeCount[index] != null && pid.equals( m_targetedPids[index] );
+        }
+    }
+
+    private void applyPendingUpdate( final String servicePid )
+    {
+        synchronized ( m_configurationLock )
+        {
+            final PendingUpdate pending;
+            synchronized ( m_pendingUpdates )
+            {
+                pending = m_pendingUpdates.remove( servicePid );
+            }
+            if ( pending == null )
+            {
+                // applied or superseded in the meantime
+                return;
+            }
+            logger.log(Level.DEBUG,
+                "ConfigurableComponentHolder applying configuration update for pid {0} with change count {1}, coalesced {2} earlier updates",
+                null, pending.m_pid, pending.m_changeCount, pending.m_coalesced);
+            try
+            {
+                updateConfiguration( pending.m_pid, pending.m_factoryPid, pending.m_props, pending.m_changeCount );
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.log(Level.ERROR,
+                    "ConfigurableComponentHolder failed applying configuration update for pid {0}", e,
+                    pending.m_pid);
+            }
+        }
+    }
+
+    private void removePendingUpdate( final String servicePid )
+    {
+        synchronized ( m_pendingUpdates )
+        {
+            if ( m_pendingUpdates.remove( servicePid ) != null )
+            {
+                m_coalescedUpdates++;
+            }
+        }
+    }
+
     private Map<String, Object> mergeProperties(String servicePid) {
         Map<String, Object> properties = new HashMap<>(m_componentMetadata.getProperties());
         List<String> pids = null;
@@ -711,6 +888,13 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
     @Override
     public void disposeComponents( final int reason )
     {
+        if ( m_coalescing )
+        {
+            synchronized ( m_pendingUpdates )
+            {
+                m_pendingUpdates.clear();
+            }
+        }
         List<AbstractComponentManager<S>> cms;
         synchronized ( m_components )
         {
@@ -862,4 +1046,44 @@ public abstract class ConfigurableComponentHolder<S> implements ComponentHolder<
         }
     }
 
+
+
+    /**
+     * The latest configuration update of a PID received within the
+     * coalescing window.
+     */
+    private final class PendingUpdate
+    {
+        private TargetedPID m_pid;
+        private TargetedPID m_factoryPid;
+        private Dictionary<String, Object> m_props;
+        private long m_changeCount;
+        private int m_coalesced;
+
+        PendingUpdate( final TargetedPID pid, final TargetedPID factoryPid,
+            final Dictionary<String, Object> props, final long changeCount )
+        {
+            m_pid = pid;
+            m_factoryPid = factoryPid;
+            m_props = props;
+            m_changeCount = changeCount;
+        }
+
+        // called with the pending updates locked
+        void replace( final TargetedPID pid, final TargetedPID factoryPid,
+            final Dictionary<String, Object> props, final long changeCount )
+        {
+            // keep the pending update if it is not older, like updateConfiguration does
+            if ( changeCount <= m_changeCount && pid.equals( m_pid ) )
+            {
+                return;
+            }
+            m_pid = pid;
+            m_factoryPid = factoryPid;
+            m_props = props;
+            m_changeCount = changeCount;
+            m_coalesced++;
+            m_coalescedUpdates++;
+        }
+    }
 }
@@ -83,6 +83,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
 
     private volatile int m_minCardinality;
 
+    private final ComponentMetrics.ReferenceMetrics m_metrics;
+
     /**
      * Constructor that receives several parameters.
      * @param dependency An object that contains data about the dependency
@@ -94,6 +96,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         m_dependencyMetadata = dependency;
         m_index = index;
         m_customizer = newCustomizer();
+        m_metrics = componentManager.getMetrics().getReference(dependency.getName());
 
         m_minCardinality = defaultMinimumCardinality(dependency);
 
@@ -2075,6 +2078,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             RefPair<S, T> refPair,
         int trackingCount)
     {
+        final long start = ComponentMetrics.start();
         if (!getServiceObject(componentContext, bindMethod, refPair))
         {
             m_componentManager.getLogger().log(Level.WARN,
@@ -2085,6 +2089,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         }
         MethodResult result = bindMethod.invoke(componentContext.getImplementationObject(false),
             new BindParameters(componentContext, refPair), MethodResult.VOID);
+        m_metrics.getBind().record(start);
         if (result == null)
         {
             return false;
@@ -2201,6 +2206,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
                 return;
             }
 
+            final long start = ComponentMetrics.start();
             if (!getServiceObject(componentContext, m_bindMethods.getUnbind(), refPair))
             {
                 m_componentManager.getLogger().log(Level.WARN,
@@ -2211,6 +2217,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             }
             MethodResult methodResult = m_bindMethods.getUnbind().invoke(
                 componentContext.getImplementationObject(false), new BindParameters(componentContext, refPair), MethodResult.VOID);
+            m_metrics.getUnbind().record(start);
             if (methodResult != null)
             {
                 m_componentManager.setServiceProperties(methodResult, trackingCount);
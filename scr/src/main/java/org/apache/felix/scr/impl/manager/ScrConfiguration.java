@@ -68,6 +68,22 @@ public interface ScrConfiguration extends LogConfiguration
     String PROP_SERVICE_CHANGECOUNT_TIMEOUT = "ds.service.changecount.timeout";
 
     String PROP_CACHE_METADATA = "ds.cache.metadata";
+
+    String PROP_ACTIVATION_THREADS = "ds.activation.threads";
+
+    String PROP_ACTIVATION_VIRTUAL_THREADS = "ds.activation.virtualThreads";
+
+    int DEFAULT_ACTIVATION_THREADS = 1;
+
+    String PROP_SHARED_REFERENCE_INDEX = "ds.shared.reference.index";
+
+    String PROP_CONFIGURATION_COALESCE = "ds.configuration.coalesce.milliseconds";
+
+    String PROP_DELAYED_IDLE_TIMEOUT = "ds.delayed.idle.timeout.milliseconds";
+
+    String PROP_DESCRIPTOR_THREADS = "ds.descriptor.threads";
+
+    int DEFAULT_DESCRIPTOR_THREADS = 1;
     
 
     boolean isFactoryEnabled();
@@ -94,4 +110,76 @@ public interface ScrConfiguration extends LogConfiguration
 
     boolean cacheMetadata();
 
+    /**
+     * Returns the number of threads enabling and activating components
+     * asynchronously. With more than one thread the components of a bundle
+     * are enabled concurrently when the bundle is started, while the tasks
+     * of each component still run in order.
+     *
+     * @since 2.3
+     */
+    int activationThreads();
+
+    /**
+     * Returns whether the threads enabling and activating components are
+     * virtual threads, if supported by the runtime.
+     *
+     * @since 2.3
+     */
+    boolean activationVirtualThreads();
+
+    /**
+     * Returns the number of component tasks currently waiting to be run.
+     *
+     * @since 2.3
+     */
+    int activationQueueDepth();
+
+    /**
+     * Returns the average time in microseconds from scheduling a component
+     * task, like enabling a component, until it has been run.
+     *
+     * @since 2.3
+     */
+    long activationLatency();
+
+    /**
+     * Returns whether the services referenced by components are tracked by
+     * a single service listener per interface for all bundles instead of
+     * service listeners registered by each bundle. This is read when SCR is
+     * started.
+     *
+     * @since 2.3
+     */
+    boolean sharedReferenceIndex();
+
+    /**
+     * Returns the time in milliseconds configuration updates of a PID already
+     * configured for a component are collected before the latest of them is
+     * applied to the component. Zero applies every update immediately.
+     *
+     * @since 2.3
+     */
+    long configurationCoalesceWindow();
+
+    /**
+     * Returns the time in milliseconds after which the instance of a delayed
+     * component, kept although no bundle uses it any longer, is deactivated.
+     * The service stays registered and a new instance is created on the next
+     * use. Zero keeps the instances.
+     *
+     * @since 2.3
+     */
+    long delayedIdleTimeout();
+
+    /**
+     * Returns the number of threads reading the component descriptors of
+     * the bundles already started when SCR starts. With more than one thread
+     * the descriptors of different bundles are read concurrently, while the
+     * components are still loaded one bundle after another.
+     *
+     * @since 2.3
+     */
+    int descriptorThreads();
+
 }
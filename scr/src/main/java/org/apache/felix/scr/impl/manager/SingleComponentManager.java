@@ -26,6 +26,7 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.scr.impl.inject.ComponentMethods;
@@ -58,6 +59,12 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
     // keep the using bundles as reference "counters" for instance deactivation
     private final AtomicInteger m_useCount = new AtomicInteger( );
 
+    // when the kept instance has last been released by all using bundles
+    private volatile long m_unusedSince;
+
+    // whether the instance has been evicted since it has last been created
+    private volatile boolean m_evicted;
+
     // The context that will be passed to the implementationObject
     private volatile ComponentContextImpl<S> m_componentContext;
 
@@ -242,6 +249,8 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
             return null;
         }
 
+        final long start = ComponentMetrics.start();
+
         // bind target services
         final List<OpenStatus<S, ?>> openStatusList = new ArrayList<>();
 
@@ -283,10 +292,11 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
         {
             try
             {
+                final long constructionStart = ComponentMetrics.start();
                 implementationObject = getComponentMethods().getConstructor().newInstance(
                         componentContext,
                         paramMap);
-
+                getMetrics().getConstruction().record( constructionStart );
             }
             catch ( final InstantiationException ie)
             {
@@ -402,6 +412,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
             setServiceProperties( result, null );
         }
 
+        getMetrics().getActivation().record( start );
         return implementationObject;
     }
 
@@ -414,6 +425,8 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
 
         if ( implementationObject != null )
         {
+            final long start = ComponentMetrics.start();
+
             // 1. Call the deactivate method, if present
             // don't care for the result, the error (acccording to 112.5.12 If the deactivate
             // method throws an exception, SCR must log an error message containing the
@@ -429,6 +442,7 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
             {
                 md.close( componentContext, componentContext.getEdgeInfo( md ) );
             }
+            getMetrics().getDeactivation().record( start );
         }
         componentContext.cleanup();
     }
@@ -807,7 +821,9 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
         try
         {
             //cf 112.5.12 where invoking modified method before updating target services is specified.
+            final long start = ComponentMetrics.start();
             final MethodResult result = invokeModifiedMethod();
+            getMetrics().getModification().record( start );
             updateTargets( props );
             if ( result == null )
             {
@@ -980,6 +996,11 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
                     else
                     {
                         setState(previousState, State.active);
+                        if ( m_evicted )
+                        {
+                            m_evicted = false;
+                            getMetrics().recordReactivation();
+                        }
                     }
                 }
             }
@@ -1037,11 +1058,68 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
             // any longer unless delayed component instances have to
             // be kept (FELIX-3039)
             if ( m_useCount.decrementAndGet() == 0 && !isImmediate()
-                    && !getComponentMetadata().isFactory() && !keepInstances() )
+                    && !getComponentMetadata().isFactory() )
+            {
+                if ( !keepInstances() )
+                {
+                    final State previousState = getState();
+                    deleteComponent( ComponentConstants.DEACTIVATION_REASON_UNSPECIFIED );
+                    setState(previousState, State.satisfied);
+                }
+                else
+                {
+                    scheduleEviction();
+                }
+            }
+        }
+        finally
+        {
+            releaseStateLock(  );
+        }
+    }
+
+    /**
+     * Schedules the eviction of the instance kept although no bundle is
+     * using it any longer, if an idle timeout is configured. Instances still
+     * used by a bundle are never evicted, as the framework keeps returning
+     * the service object it got first to the bundle.
+     */
+    private void scheduleEviction()
+    {
+        final ScrConfiguration configuration = m_container.getActivator().getConfiguration();
+        final long timeout = configuration == null ? 0 : configuration.delayedIdleTimeout();
+        if ( timeout <= 0 )
+        {
+            return;
+        }
+        final long unusedSince = System.nanoTime();
+        m_unusedSince = unusedSince;
+        m_container.getActivator().scheduleTimer( new Runnable()
+        {
+            @Override
+            public void run()
             {
+                evict( unusedSince );
+            }
+        }, timeout );
+    }
+
+    private void evict( final long unusedSince )
+    {
+        obtainStateLock( );
+        try
+        {
+            // skip if the instance has been used again in the meantime
+            if ( m_useCount.get() == 0 && m_unusedSince == unusedSince && m_componentContext != null )
+            {
+                getLogger().log(Level.DEBUG,
+                    "Deactivating delayed component instance unused for {0}ms", null,
+                    TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - unusedSince ) );
                 final State previousState = getState();
                 deleteComponent( ComponentConstants.DEACTIVATION_REASON_UNSPECIFIED );
                 setState(previousState, State.satisfied);
+                m_evicted = true;
+                getMetrics().recordEviction();
             }
         }
         finally
@@ -0,0 +1,520 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+
+/**
+ * The <code>ComponentMetadataStore</code> caches the component metadata of
+ * bundles, keyed by bundle id and valid for the last modification time of
+ * the bundle the metadata has been read from.
+ * <p>
+ * A store backed by a file appends a record for each bundle whose metadata
+ * is added or removed, instead of rewriting the whole store. Each record
+ * holds its own string table, so it can be decoded on its own. When the
+ * store is opened only the record headers are read to build the index of
+ * the records by bundle id; the records are decoded from the memory-mapped
+ * file when the metadata of a bundle is requested and are not kept on the
+ * heap. Superseded records are dropped by compacting the file on close if
+ * they take up more than half of it. The compacted file is written next to
+ * the store file and only replaces it when the store is opened again, as a
+ * file cannot be replaced reliably while it is still mapped.
+ * <p>
+ * A store without file keeps the metadata in memory.
+ */
+public class ComponentMetadataStore
+{
+    // length of a record header: bundle id, last modified and data length
+    private static final int HEADER_LENGTH = 8 + 8 + 4;
+
+    // data length of a record removing the metadata of a bundle
+    private static final int REMOVED = -1;
+
+    // don't bother compacting small files
+    private static final long COMPACT_MIN_LENGTH = 64 * 1024;
+
+    private final File m_file;
+
+    private final Map<Long, Entry> m_entries = new HashMap<>();
+
+    private RandomAccessFile m_raf;
+
+    private FileChannel m_channel;
+
+    // the part of the file present when opening the store
+    private MappedByteBuffer m_mapped;
+
+    private long m_length;
+
+    private long m_liveLength;
+
+    /**
+     * Returns a store keeping the metadata in memory.
+     */
+    public static ComponentMetadataStore inMemory()
+    {
+        return new ComponentMetadataStore( null );
+    }
+
+    /**
+     * Opens the store backed by the given file, creating the file if it does
+     * not exist or discarding its contents if it has not been written in the
+     * format of this store.
+     *
+     * @throws IOException If the file cannot be read or written
+     */
+    public static ComponentMetadataStore open(final File file) throws IOException
+    {
+        final ComponentMetadataStore store = new ComponentMetadataStore( file );
+        try
+        {
+            store.openFile();
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private ComponentMetadataStore(final File file)
+    {
+        m_file = file;
+    }
+
+    private void openFile() throws IOException
+    {
+        replaceByCompacted();
+        m_raf = new RandomAccessFile( m_file, "rw" );
+        m_channel = m_raf.getChannel();
+        final long length = m_channel.size();
+        if ( !readIndex( length ) )
+        {
+            // empty, written by an older version or broken
+            m_entries.clear();
+            m_liveLength = 0;
+            m_channel.truncate( 0 );
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            new MetaDataWriter().writeVersion( new DataOutputStream( header ) );
+            m_channel.write( ByteBuffer.wrap( header.toByteArray() ), 0 );
+            m_length = header.size();
+            m_mapped = null;
+        }
+    }
+
+    // replaces the store file by the file compacted when the store has been
+    // closed, which is dropped if the store file is still in use
+    private void replaceByCompacted()
+    {
+        final File compacted = compactedFile();
+        if ( compacted.isFile() )
+        {
+            if ( ( m_file.exists() && !m_file.delete() ) || !compacted.renameTo( m_file ) )
+            {
+                compacted.delete();
+            }
+        }
+    }
+
+    private File compactedFile()
+    {
+        return new File( m_file.getPath() + ".compacted" );
+    }
+
+    // reads the record headers of the file, returns false if it is empty or
+    // not in the format of this store. The file is only mapped once it has
+    // been truncated to its complete records
+    private boolean readIndex(final long length) throws IOException
+    {
+        if ( length < 4 || length > Integer.MAX_VALUE )
+        {
+            return false;
+        }
+        final byte[] version = new byte[4];
+        readFully( ByteBuffer.wrap( version ), 0 );
+        if ( !new MetaDataReader().isVersionSupported( new DataInputStream( new ByteArrayInputStream( version ) ) ) )
+        {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate( HEADER_LENGTH );
+        long position = 4;
+        while ( position + HEADER_LENGTH <= length )
+        {
+            header.clear();
+            readFully( header, position );
+            final long bundleId = header.getLong( 0 );
+            final long lastModified = header.getLong( 8 );
+            final int dataLength = header.getInt( 16 );
+            if ( dataLength == REMOVED )
+            {
+                removeEntry( bundleId );
+                position += HEADER_LENGTH;
+                continue;
+            }
+            if ( dataLength < 0 || position + HEADER_LENGTH + dataLength > length )
+            {
+                // incomplete last record
+                break;
+            }
+            putEntry( bundleId, new Entry( lastModified, position + HEADER_LENGTH, dataLength, null ) );
+            position += HEADER_LENGTH + dataLength;
+        }
+        if ( position < length )
+        {
+            // drop the incomplete last record
+            m_channel.truncate( position );
+        }
+        m_mapped = m_channel.map( FileChannel.MapMode.READ_ONLY, 0, position );
+        m_length = position;
+        return true;
+    }
+
+    /**
+     * Returns the cached metadata of the bundle or <code>null</code> if there
+     * is none for the given last modification time of the bundle.
+     *
+     * @throws IOException If the cached metadata cannot be read
+     */
+    public synchronized List<ComponentMetadata> get(final long bundleId, final long lastModified)
+        throws IOException
+    {
+        final Entry entry = m_entries.get( bundleId );
+        if ( entry == null || entry.lastModified != lastModified )
+        {
+            return null;
+        }
+        if ( entry.components != null )
+        {
+            return entry.components;
+        }
+        final MappedByteBuffer mapped = m_mapped;
+        if ( mapped != null && entry.position + entry.length <= mapped.capacity() )
+        {
+            return decode( new BufferInputStream( mapped, (int) entry.position, entry.length ) );
+        }
+        return decode( new ByteArrayInputStream( read( entry ) ) );
+    }
+
+    /**
+     * Returns whether metadata of the bundle is cached for the given last
+     * modification time of the bundle, without reading the metadata.
+     */
+    public synchronized boolean contains(final long bundleId, final long lastModified)
+    {
+        final Entry entry = m_entries.get( bundleId );
+        return entry != null && entry.lastModified == lastModified;
+    }
+
+    /**
+     * Caches the metadata of the bundle for the given last modification time
+     * of the bundle.
+     *
+     * @throws IOException If the metadata cannot be written to the file
+     */
+    public synchronized void put(final long bundleId, final long lastModified,
+        final List<ComponentMetadata> components) throws IOException
+    {
+        if ( m_file == null )
+        {
+            putEntry( bundleId, new Entry( lastModified, 0, 0, components ) );
+            return;
+        }
+        ensureOpen();
+        final byte[] data = encode( components );
+        final long position = append( bundleId, lastModified, data );
+        putEntry( bundleId, new Entry( lastModified, position + HEADER_LENGTH, data.length, null ) );
+    }
+
+    /**
+     * Removes the cached metadata of the bundle.
+     *
+     * @throws IOException If the removal cannot be written to the file
+     */
+    public synchronized void remove(final long bundleId) throws IOException
+    {
+        if ( removeEntry( bundleId ) && m_file != null )
+        {
+            ensureOpen();
+            append( bundleId, -1, null );
+        }
+    }
+
+    /**
+     * Closes the file of the store, compacting it if more than half of it
+     * is taken by superseded records.
+     */
+    public synchronized void close() throws IOException
+    {
+        if ( m_channel == null )
+        {
+            return;
+        }
+        try
+        {
+            if ( m_length > COMPACT_MIN_LENGTH && m_liveLength < m_length / 2 )
+            {
+                compact();
+            }
+        }
+        finally
+        {
+            m_mapped = null;
+            m_channel = null;
+            final RandomAccessFile raf = m_raf;
+            m_raf = null;
+            raf.close();
+        }
+    }
+
+    // writes the live records to the compacted file replacing the store file
+    // when it is opened again
+    private void compact() throws IOException
+    {
+        final File tmp = new File( m_file.getPath() + ".tmp" );
+        try (RandomAccessFile out = new RandomAccessFile( tmp, "rw" ))
+        {
+            out.setLength( 0 );
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            new MetaDataWriter().writeVersion( new DataOutputStream( header ) );
+            out.write( header.toByteArray() );
+            for ( final Map.Entry<Long, Entry> e : m_entries.entrySet() )
+            {
+                final byte[] data = read( e.getValue() );
+                out.writeLong( e.getKey() );
+                out.writeLong( e.getValue().lastModified );
+                out.writeInt( data.length );
+                out.write( data );
+            }
+            out.getFD().sync();
+        }
+        final File compacted = compactedFile();
+        compacted.delete();
+        if ( !tmp.renameTo( compacted ) )
+        {
+            tmp.delete();
+            throw new IOException( "Cannot create compacted store " + compacted );
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if ( m_channel == null )
+        {
+            throw new IOException( "Store " + m_file + " is closed" );
+        }
+    }
+
+    private long append(final long bundleId, final long lastModified, final byte[] data) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( HEADER_LENGTH + ( data == null ? 0 : data.length ) );
+        buffer.putLong( bundleId );
+        buffer.putLong( lastModified );
+        buffer.putInt( data == null ? REMOVED : data.length );
+        if ( data != null )
+        {
+            buffer.put( data );
+        }
+        buffer.flip();
+        final long position = m_length;
+        long offset = position;
+        while ( buffer.hasRemaining() )
+        {
+            offset += m_channel.write( buffer, offset );
+        }
+        m_length = offset;
+        return position;
+    }
+
+    private byte[] read(final Entry entry) throws IOException
+    {
+        final byte[] data = new byte[entry.length];
+        final MappedByteBuffer mapped = m_mapped;
+        if ( mapped != null && entry.position + entry.length <= mapped.capacity() )
+        {
+            final ByteBuffer slice = mapped.duplicate();
+            slice.position( (int) entry.position );
+            slice.get( data );
+            return data;
+        }
+        // appended since the store has been opened
+        ensureOpen();
+        readFully( ByteBuffer.wrap( data ), entry.position );
+        return data;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException
+    {
+        long offset = position;
+        while ( buffer.hasRemaining() )
+        {
+            final int read = m_channel.read( buffer, offset );
+            if ( read < 0 )
+            {
+                throw new IOException( "Unexpected end of " + m_file );
+            }
+            offset += read;
+        }
+    }
+
+    private void putEntry(final long bundleId, final Entry entry)
+    {
+        removeEntry( bundleId );
+        m_entries.put( bundleId, entry );
+        m_liveLength += HEADER_LENGTH + entry.length;
+    }
+
+    private boolean removeEntry(final long bundleId)
+    {
+        final Entry old = m_entries.remove( bundleId );
+        if ( old != null )
+        {
+            m_liveLength -= HEADER_LENGTH + old.length;
+            return true;
+        }
+        return false;
+    }
+
+    static byte[] encode(final List<ComponentMetadata> components) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( bytes );
+        final MetaDataWriter metaDataWriter = new MetaDataWriter();
+
+        final Set<String> allStrings = new HashSet<>();
+        for ( final ComponentMetadata component : components )
+        {
+            component.collectStrings( allStrings );
+        }
+        // remove possible null
+        allStrings.remove( null );
+        out.writeInt( allStrings.size() );
+        for ( final String s : allStrings )
+        {
+            metaDataWriter.writeIndexedString( s, out );
+        }
+        out.writeInt( components.size() );
+        for ( final ComponentMetadata component : components )
+        {
+            component.store( out, metaDataWriter );
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<ComponentMetadata> decode(final InputStream data) throws IOException
+    {
+        final DataInputStream in = new DataInputStream( data );
+        final MetaDataReader metaDataReader = new MetaDataReader();
+        final int numStrings = in.readInt();
+        for ( int i = 0; i < numStrings; i++ )
+        {
+            metaDataReader.readIndexedString( in );
+        }
+        final int numComponents = in.readInt();
+        if ( numComponents == 0 )
+        {
+            return Collections.emptyList();
+        }
+        final List<ComponentMetadata> components = new ArrayList<>( numComponents );
+        for ( int i = 0; i < numComponents; i++ )
+        {
+            components.add( ComponentMetadata.load( in, metaDataReader ) );
+        }
+        return components;
+    }
+
+    private static final class Entry
+    {
+        final long lastModified;
+
+        // position and length of the record data in the file
+        final long position;
+
+        final int length;
+
+        // the metadata of a store without file
+        final List<ComponentMetadata> components;
+
+        Entry(final long lastModified, final long position, final int length,
+            final List<ComponentMetadata> components)
+        {
+            this.lastModified = lastModified;
+            this.position = position;
+            this.length = length;
+            this.components = components;
+        }
+    }
+
+    // reads a region of a buffer without copying it
+    private static final class BufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(final ByteBuffer buffer, final int position, final int length)
+        {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position( position );
+            duplicate.limit( position + length );
+            this.buffer = duplicate.slice();
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+            final int n = Math.min( len, buffer.remaining() );
+            buffer.get( b, off, n );
+            return n;
+        }
+    }
+}
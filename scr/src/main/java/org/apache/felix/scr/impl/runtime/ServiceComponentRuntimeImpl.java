@@ -28,9 +28,13 @@ import java.util.Map;
 import org.apache.felix.scr.impl.ComponentRegistry;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
 import org.apache.felix.scr.impl.manager.ComponentManager;
+import org.apache.felix.scr.impl.manager.ComponentMetrics;
 import org.apache.felix.scr.impl.manager.ReferenceManager;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.apache.felix.scr.runtime.dto.ComponentMetricsDTO;
+import org.apache.felix.scr.runtime.dto.ExtComponentConfigurationDTO;
+import org.apache.felix.scr.runtime.dto.ReferenceMetricsDTO;
 import org.osgi.dto.DTO;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -131,7 +135,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
             List<ComponentConfigurationDTO> result = new ArrayList<>(managers.size());
             for (ComponentManager<?> manager: managers)
             {
-                result.add(managerToConfiguration(manager, description));
+                result.add(managerToConfiguration(manager, description, holder.getCoalescedUpdates()));
             }
             return result;
         }
@@ -211,9 +215,10 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
         }
     }
 
-    private ComponentConfigurationDTO managerToConfiguration(final ComponentManager<?> manager, final ComponentDescriptionDTO description)
+    private ComponentConfigurationDTO managerToConfiguration(final ComponentManager<?> manager, final ComponentDescriptionDTO description,
+        final long coalescedUpdates)
     {
-        final ComponentConfigurationDTO dto = new ComponentConfigurationDTO();
+        final ExtComponentConfigurationDTO dto = new ExtComponentConfigurationDTO();
         dto.satisfiedReferences = satisfiedRefManagersToDTO(manager.getReferenceManagers());
         dto.unsatisfiedReferences = unsatisfiedRefManagersToDTO(manager.getReferenceManagers());
         dto.description = description;
@@ -231,6 +236,39 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
             dto.state = ComponentConfigurationDTO.FAILED_ACTIVATION;
             dto.failure = manager.getFailureReason();
         }
+        dto.metrics = metricsToDTO(manager.getMetrics());
+        dto.metrics.coalescedUpdateCount = coalescedUpdates;
+        return dto;
+    }
+
+    private ComponentMetricsDTO metricsToDTO(final ComponentMetrics metrics)
+    {
+        final ComponentMetricsDTO dto = new ComponentMetricsDTO();
+        dto.activationCount = metrics.getActivation().getCount();
+        dto.activationTime = metrics.getActivation().getTotalNanos();
+        dto.activationMaxTime = metrics.getActivation().getMaxNanos();
+        dto.constructionTime = metrics.getConstruction().getTotalNanos();
+        dto.deactivationCount = metrics.getDeactivation().getCount();
+        dto.deactivationTime = metrics.getDeactivation().getTotalNanos();
+        dto.modifiedCount = metrics.getModification().getCount();
+        dto.modifiedTime = metrics.getModification().getTotalNanos();
+        dto.evictionCount = metrics.getEvictions();
+        dto.reactivationCount = metrics.getReactivations();
+
+        final ComponentMetrics.ReferenceMetrics[] references = metrics.getReferences();
+        dto.references = new ReferenceMetricsDTO[references.length];
+        for ( int i = 0; i < references.length; i++ )
+        {
+            final ReferenceMetricsDTO refDto = new ReferenceMetricsDTO();
+            refDto.name = references[i].getName();
+            refDto.bindCount = references[i].getBind().getCount();
+            refDto.bindTime = references[i].getBind().getTotalNanos();
+            refDto.bindMaxTime = references[i].getBind().getMaxNanos();
+            refDto.unbindCount = references[i].getUnbind().getCount();
+            refDto.unbindTime = references[i].getUnbind().getTotalNanos();
+            refDto.unbindMaxTime = references[i].getUnbind().getMaxNanos();
+            dto.references[i] = refDto;
+        }
         return dto;
     }
 
@@ -0,0 +1,973 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.felix.scr.impl.logger.BundleLogger;
+import org.apache.felix.scr.impl.logger.ComponentLogger;
+import org.apache.felix.scr.impl.logger.InternalLogger.Level;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads component descriptors with a parser specialised for the subset of
+ * XML used by them and reports the elements to an {@link XmlHandler} like a
+ * namespace aware SAX parser does.
+ * <p>
+ * The descriptor is read into memory and parsed in a single pass without
+ * looking up a parser factory. Element and attribute names and namespace
+ * URIs are interned in a table seeded with the names of the DS schemas, and
+ * character data is passed to the handler without copying where possible.
+ * <p>
+ * Documents using features the reader does not support, like a document
+ * type declaration, an encoding other than UTF-8 or ISO-8859-1 or entity
+ * references other than the predefined ones, and malformed documents are
+ * parsed again with a SAX parser, which also reports the errors.
+ */
+public class DescriptorReader
+{
+
+    private static final String XML_NAMESPACE_URI = "http://www.w3.org/XML/1998/namespace";
+
+    // the names known up front, all other names are added while parsing
+    private static final String[] NAMES = {
+        XmlConstants.NAMESPACE_URI_EMPTY, XmlConstants.NAMESPACE_URI, XmlConstants.NAMESPACE_URI_1_1,
+        XmlConstants.NAMESPACE_URI_1_1_FELIX, XmlConstants.NAMESPACE_URI_1_2, XmlConstants.NAMESPACE_URI_1_2_FELIX,
+        XmlConstants.NAMESPACE_URI_1_3, XmlConstants.NAMESPACE_URI_1_0_FELIX_EXTENSIONS,
+        XmlConstants.NAMESPACE_URI_1_4, XmlConstants.NAMESPACE_URI_1_5, XML_NAMESPACE_URI,
+        "xml", "xmlns", "scr",
+        XmlConstants.EL_COMPONENT, XmlConstants.EL_COMPONENTS, XmlConstants.EL_FACTORY_PROPERTY,
+        XmlConstants.EL_FACTORY_PROPERTIES, XmlConstants.EL_IMPL, XmlConstants.EL_PROPERTY,
+        XmlConstants.EL_PROPERTIES, XmlConstants.EL_PROVIDE, XmlConstants.EL_REF, XmlConstants.EL_SERVICE,
+        XmlConstants.ATTR_ACTIVATE, XmlConstants.ATTR_ACTIVATION_FIELDS, XmlConstants.ATTR_CLASS,
+        XmlConstants.ATTR_CONFIG_PID, XmlConstants.ATTR_CONFIG_POLICY, XmlConstants.ATTR_DEACTIVATE,
+        XmlConstants.ATTR_ENABLED, XmlConstants.ATTR_ENTRY, XmlConstants.ATTR_FACTORY,
+        XmlConstants.ATTR_IMMEDIATE, XmlConstants.ATTR_INIT, XmlConstants.ATTR_INTERFACE,
+        XmlConstants.ATTR_MODIFIED, XmlConstants.ATTR_NAME, XmlConstants.ATTR_TYPE, XmlConstants.ATTR_VALUE,
+        XmlConstants.ATTR_CONFIGURABLE_SERVICE_PROPERTIES, XmlConstants.ATTR_PERSISTENT_FACTORY_COMPONENT,
+        XmlConstants.ATTR_DELETE_CALLS_MODIFY, XmlConstants.ATTR_OBSOLETE_FACTORY_COMPONENT_FACTORY,
+        XmlConstants.ATTR_CONFIGURE_WITH_INTERFACES, XmlConstants.ATTR_DELAYED_KEEP_INSTANCES,
+        "servicefactory", "scope", "cardinality", "policy", "policy-option", "target", "bind", "updated",
+        "unbind", "field", "field-option", "field-collection-type", "parameter"
+    };
+
+    // the bundle containing the descriptors
+    private final Bundle m_bundle;
+
+    // logger for any messages
+    private final BundleLogger m_logger;
+
+    private final boolean m_globalObsoleteFactoryComponentFactory;
+
+    private final boolean m_globalDelayedKeepInstances;
+
+    private final ServiceReference<?> m_trueCondition;
+
+    // creates an instance with the bundle owning the component descriptors
+    // read by this instance and the arguments of the XmlHandler
+    public DescriptorReader(Bundle bundle, BundleLogger logger, boolean globalObsoleteFactoryComponentFactory, boolean globalDelayedKeepInstances, ServiceReference<?> trueCondition)
+    {
+        m_bundle = bundle;
+        m_logger = logger;
+        m_globalObsoleteFactoryComponentFactory = globalObsoleteFactoryComponentFactory;
+        m_globalDelayedKeepInstances = globalDelayedKeepInstances;
+        m_trueCondition = trueCondition;
+    }
+
+
+    /**
+     * Reads the components declared in the descriptor from the stream. The
+     * stream is read completely but not closed.
+     *
+     * @return the components in the order of the descriptor
+     *
+     * @throws IOException if the stream cannot be read
+     * @throws SAXException if the descriptor is malformed or the handler
+     *      fails processing an element
+     * @throws ParserConfigurationException if no SAX parser is available for
+     *      a document not supported by this reader
+     */
+    public List<ComponentMetadata> read( final InputStream stream ) throws IOException, SAXException, ParserConfigurationException
+    {
+        final byte[] data = readFully( stream );
+
+        // the messages of the handler are dropped if the document is parsed
+        // again, as the SAX parser reports the same elements again
+        final BufferedLogger bufferedLogger = new BufferedLogger( m_logger );
+        XmlHandler handler = createHandler( bufferedLogger );
+        try
+        {
+            final CharBuffer chars = decode( data );
+            new Parser( chars.array(), chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit(), handler ).parse();
+        }
+        catch ( final UnsupportedDocumentException e )
+        {
+            bufferedLogger.discard();
+            m_logger.log(Level.DEBUG,
+                "Reading descriptor with SAX parser: {0} (bundle {1})", null,
+                    e.getMessage(), m_bundle.getLocation() );
+
+            handler = createHandler( m_logger );
+            final SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware( true );
+            factory.newSAXParser().parse( new ByteArrayInputStream( data ), handler );
+        }
+        finally
+        {
+            bufferedLogger.flush();
+        }
+        return handler.getComponentMetadataList();
+    }
+
+
+    private XmlHandler createHandler( final BundleLogger logger )
+    {
+        return new XmlHandler( m_bundle, logger, m_globalObsoleteFactoryComponentFactory,
+            m_globalDelayedKeepInstances, m_trueCondition );
+    }
+
+
+    private static byte[] readFully( final InputStream stream ) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( 4096 );
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ( ( read = stream.read( buffer ) ) >= 0 )
+        {
+            out.write( buffer, 0, read );
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Decodes the document in the encoding of its XML declaration, which
+     * defaults to UTF-8.
+     */
+    static CharBuffer decode( final byte[] data ) throws UnsupportedDocumentException
+    {
+        int offset = 0;
+        if ( data.length >= 3 && ( data[0] & 0xFF ) == 0xEF && ( data[1] & 0xFF ) == 0xBB && ( data[2] & 0xFF ) == 0xBF )
+        {
+            offset = 3;
+        }
+        else if ( data.length >= 2 && ( ( data[0] & 0xFF ) == 0xFE && ( data[1] & 0xFF ) == 0xFF
+            || ( data[0] & 0xFF ) == 0xFF && ( data[1] & 0xFF ) == 0xFE ) )
+        {
+            throw new UnsupportedDocumentException( "UTF-16 encoding" );
+        }
+
+        Charset charset = StandardCharsets.UTF_8;
+        final String encoding = getDeclaredEncoding( data, offset );
+        if ( encoding != null )
+        {
+            if ( encoding.equalsIgnoreCase( "ISO-8859-1" ) || encoding.equalsIgnoreCase( "latin1" ) )
+            {
+                charset = StandardCharsets.ISO_8859_1;
+            }
+            else if ( !encoding.equalsIgnoreCase( "UTF-8" ) && !encoding.equalsIgnoreCase( "US-ASCII" )
+                && !encoding.equalsIgnoreCase( "ASCII" ) )
+            {
+                throw new UnsupportedDocumentException( "Encoding " + encoding );
+            }
+        }
+
+        try
+        {
+            return charset.newDecoder().decode( ByteBuffer.wrap( data, offset, data.length - offset ) );
+        }
+        catch ( final CharacterCodingException e )
+        {
+            throw new UnsupportedDocumentException( "Invalid " + charset.name() + " content" );
+        }
+    }
+
+
+    private static String getDeclaredEncoding( final byte[] data, final int offset ) throws UnsupportedDocumentException
+    {
+        // the XML declaration only contains ASCII characters
+        final int length = Math.min( data.length - offset, 256 );
+        final String start = new String( data, offset, length, StandardCharsets.ISO_8859_1 );
+        if ( !start.startsWith( "<?xml" ) || start.length() == 5 || !isWhitespace( start.charAt( 5 ) ) )
+        {
+            return null;
+        }
+        final int end = start.indexOf( "?>" );
+        if ( end < 0 )
+        {
+            throw new UnsupportedDocumentException( "Unterminated XML declaration" );
+        }
+        int pos = start.indexOf( "encoding", 5 );
+        if ( pos < 0 || pos > end )
+        {
+            return null;
+        }
+        pos += "encoding".length();
+        while ( pos < end && start.charAt( pos ) != '\'' && start.charAt( pos ) != '"' )
+        {
+            pos++;
+        }
+        final int close = pos < end ? start.indexOf( start.charAt( pos ), pos + 1 ) : -1;
+        if ( close < 0 || close > end )
+        {
+            throw new UnsupportedDocumentException( "Malformed XML declaration" );
+        }
+        return start.substring( pos + 1, close );
+    }
+
+
+    private static boolean isWhitespace( final char c )
+    {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+
+    // the single pass parser of a decoded document
+    private static final class Parser
+    {
+        private final char[] m_buf;
+
+        private final int m_end;
+
+        private final XmlHandler m_handler;
+
+        private final NameTable m_names = new NameTable();
+
+        private final AttributesImpl m_attributes = new AttributesImpl();
+
+        // the attributes of the current start tag before resolving prefixes
+        private final List<String> m_attributeNames = new ArrayList<>();
+
+        private final List<String> m_attributeValues = new ArrayList<>();
+
+        // the namespace declarations in scope as prefix and URI pairs
+        private String[] m_namespaces = new String[16];
+
+        private int m_namespaceCount;
+
+        // the open elements as qualified name, local name, URI and
+        // namespace count before the element
+        private Object[] m_elements = new Object[32];
+
+        private int m_depth;
+
+        private int m_pos;
+
+        // the position of the prefix separator of the last name read
+        private int m_colon;
+
+        Parser( final char[] buf, final int start, final int end, final XmlHandler handler )
+        {
+            m_buf = buf;
+            m_pos = start;
+            m_end = end;
+            m_handler = handler;
+            declare( m_names.get( "xml" ), m_names.get( XML_NAMESPACE_URI ) );
+            declare( XmlConstants.NAMESPACE_URI_EMPTY, XmlConstants.NAMESPACE_URI_EMPTY );
+        }
+
+        void parse() throws UnsupportedDocumentException, SAXException
+        {
+            skipMisc();
+            if ( m_pos >= m_end || m_buf[m_pos] != '<' )
+            {
+                throw new UnsupportedDocumentException( "Missing root element" );
+            }
+            startTag();
+            while ( m_depth > 0 )
+            {
+                if ( m_pos >= m_end )
+                {
+                    throw new UnsupportedDocumentException( "Unexpected end of document" );
+                }
+                if ( m_buf[m_pos] != '<' )
+                {
+                    text();
+                }
+                else if ( startsWith( "</" ) )
+                {
+                    endTag();
+                }
+                else if ( startsWith( "<!--" ) )
+                {
+                    skipPast( "-->", 4 );
+                }
+                else if ( startsWith( "<![CDATA[" ) )
+                {
+                    cdata();
+                }
+                else if ( startsWith( "<?" ) )
+                {
+                    skipPast( "?>", 2 );
+                }
+                else if ( startsWith( "<!" ) )
+                {
+                    throw new UnsupportedDocumentException( "Declaration in content" );
+                }
+                else
+                {
+                    startTag();
+                }
+            }
+            skipMisc();
+            if ( m_pos < m_end )
+            {
+                throw new UnsupportedDocumentException( "Content after the root element" );
+            }
+        }
+
+        // skips whitespace, comments and processing instructions outside
+        // of the root element
+        private void skipMisc() throws UnsupportedDocumentException
+        {
+            while ( true )
+            {
+                skipWhitespace();
+                if ( startsWith( "<?" ) )
+                {
+                    skipPast( "?>", 2 );
+                }
+                else if ( startsWith( "<!--" ) )
+                {
+                    skipPast( "-->", 4 );
+                }
+                else if ( startsWith( "<!" ) )
+                {
+                    throw new UnsupportedDocumentException( "Document type declaration" );
+                }
+                else
+                {
+                    return;
+                }
+            }
+        }
+
+        private void startTag() throws UnsupportedDocumentException, SAXException
+        {
+            m_pos++;
+            final String qName = name();
+            final int colon = m_colon;
+            final int namespaceCount = m_namespaceCount;
+
+            m_attributeNames.clear();
+            m_attributeValues.clear();
+            boolean empty = false;
+            while ( true )
+            {
+                final boolean whitespace = skipWhitespace();
+                if ( startsWith( "/>" ) )
+                {
+                    m_pos += 2;
+                    empty = true;
+                    break;
+                }
+                if ( m_pos < m_end && m_buf[m_pos] == '>' )
+                {
+                    m_pos++;
+                    break;
+                }
+                if ( !whitespace )
+                {
+                    throw new UnsupportedDocumentException( "Malformed start tag " + qName );
+                }
+
+                final String attributeName = name();
+                final int attributeColon = m_colon;
+                skipWhitespace();
+                expect( '=' );
+                skipWhitespace();
+                final String value = attributeValue();
+
+                if ( "xmlns".equals( attributeName ) )
+                {
+                    declare( XmlConstants.NAMESPACE_URI_EMPTY, m_names.get( value ) );
+                }
+                else if ( attributeColon == 5 && attributeName.startsWith( "xmlns" ) )
+                {
+                    declare( m_names.get( attributeName.substring( 6 ) ), m_names.get( value ) );
+                }
+                else
+                {
+                    for ( final String other : m_attributeNames )
+                    {
+                        if ( other == attributeName )
+                        {
+                            throw new UnsupportedDocumentException( "Duplicate attribute " + attributeName );
+                        }
+                    }
+                    m_attributeNames.add( attributeName );
+                    m_attributeValues.add( value );
+                }
+            }
+
+            final String localName = colon < 0 ? qName : m_names.get( qName.substring( colon + 1 ) );
+            final String uri = resolve( colon < 0 ? XmlConstants.NAMESPACE_URI_EMPTY : qName.substring( 0, colon ) );
+
+            m_attributes.clear();
+            for ( int i = 0; i < m_attributeNames.size(); i++ )
+            {
+                final String attributeName = m_attributeNames.get( i );
+                final int attributeColon = attributeName.indexOf( ':' );
+                if ( attributeColon < 0 )
+                {
+                    m_attributes.addAttribute( XmlConstants.NAMESPACE_URI_EMPTY, attributeName, attributeName,
+                        "CDATA", m_attributeValues.get( i ) );
+                }
+                else
+                {
+                    m_attributes.addAttribute( resolve( attributeName.substring( 0, attributeColon ) ),
+                        m_names.get( attributeName.substring( attributeColon + 1 ) ), attributeName, "CDATA",
+                        m_attributeValues.get( i ) );
+                }
+            }
+
+            m_handler.startElement( uri, localName, qName, m_attributes );
+            if ( empty )
+            {
+                m_handler.endElement( uri, localName, qName );
+                m_namespaceCount = namespaceCount;
+            }
+            else
+            {
+                if ( m_depth * 4 == m_elements.length )
+                {
+                    final Object[] elements = new Object[m_elements.length * 2];
+                    System.arraycopy( m_elements, 0, elements, 0, m_elements.length );
+                    m_elements = elements;
+                }
+                m_elements[m_depth * 4] = qName;
+                m_elements[m_depth * 4 + 1] = localName;
+                m_elements[m_depth * 4 + 2] = uri;
+                m_elements[m_depth * 4 + 3] = namespaceCount;
+                m_depth++;
+            }
+        }
+
+        private void endTag() throws UnsupportedDocumentException, SAXException
+        {
+            m_pos += 2;
+            final String qName = name();
+            skipWhitespace();
+            expect( '>' );
+
+            m_depth--;
+            if ( m_elements[m_depth * 4] != qName )
+            {
+                throw new UnsupportedDocumentException( "Mismatched end tag " + qName );
+            }
+            m_handler.endElement( ( String ) m_elements[m_depth * 4 + 2], ( String ) m_elements[m_depth * 4 + 1],
+                qName );
+            m_namespaceCount = ( Integer ) m_elements[m_depth * 4 + 3];
+            m_elements[m_depth * 4] = null;
+        }
+
+        private void text() throws UnsupportedDocumentException, SAXException
+        {
+            final int start = m_pos;
+            while ( m_pos < m_end && m_buf[m_pos] != '<' && m_buf[m_pos] != '&' && m_buf[m_pos] != '\r' )
+            {
+                m_pos++;
+            }
+            if ( m_pos == m_end || m_buf[m_pos] == '<' )
+            {
+                // plain text is passed without copying
+                m_handler.characters( m_buf, start, m_pos - start );
+                return;
+            }
+
+            final StringBuilder builder = new StringBuilder( m_pos - start + 16 );
+            builder.append( m_buf, start, m_pos - start );
+            while ( m_pos < m_end && m_buf[m_pos] != '<' )
+            {
+                final char c = m_buf[m_pos];
+                if ( c == '&' )
+                {
+                    reference( builder );
+                }
+                else if ( c == '\r' )
+                {
+                    builder.append( '\n' );
+                    m_pos++;
+                    if ( m_pos < m_end && m_buf[m_pos] == '\n' )
+                    {
+                        m_pos++;
+                    }
+                }
+                else
+                {
+                    builder.append( c );
+                    m_pos++;
+                }
+            }
+            characters( builder );
+        }
+
+        private void cdata() throws UnsupportedDocumentException, SAXException
+        {
+            m_pos += 9;
+            final int start = m_pos;
+            skipPast( "]]>", 0 );
+            final int end = m_pos - 3;
+            final StringBuilder builder = new StringBuilder( end - start );
+            for ( int i = start; i < end; i++ )
+            {
+                if ( m_buf[i] == '\r' )
+                {
+                    builder.append( '\n' );
+                    if ( i + 1 < end && m_buf[i + 1] == '\n' )
+                    {
+                        i++;
+                    }
+                }
+                else
+                {
+                    builder.append( m_buf[i] );
+                }
+            }
+            characters( builder );
+        }
+
+        private void characters( final StringBuilder builder ) throws SAXException
+        {
+            final char[] chars = new char[builder.length()];
+            builder.getChars( 0, chars.length, chars, 0 );
+            m_handler.characters( chars, 0, chars.length );
+        }
+
+        // reads a quoted attribute value, normalizing whitespace
+        private String attributeValue() throws UnsupportedDocumentException
+        {
+            if ( m_pos >= m_end || ( m_buf[m_pos] != '"' && m_buf[m_pos] != '\'' ) )
+            {
+                throw new UnsupportedDocumentException( "Unquoted attribute value" );
+            }
+            final char quote = m_buf[m_pos++];
+            final int start = m_pos;
+            while ( m_pos < m_end && m_buf[m_pos] != quote )
+            {
+                final char c = m_buf[m_pos];
+                if ( c == '&' || c == '<' || c == '\n' || c == '\r' || c == '\t' )
+                {
+                    break;
+                }
+                m_pos++;
+            }
+            if ( m_pos < m_end && m_buf[m_pos] == quote )
+            {
+                return new String( m_buf, start, m_pos++ - start );
+            }
+
+            final StringBuilder builder = new StringBuilder( m_pos - start + 16 );
+            builder.append( m_buf, start, m_pos - start );
+            while ( m_pos < m_end && m_buf[m_pos] != quote )
+            {
+                final char c = m_buf[m_pos];
+                if ( c == '&' )
+                {
+                    reference( builder );
+                }
+                else if ( c == '<' )
+                {
+                    throw new UnsupportedDocumentException( "'<' in attribute value" );
+                }
+                else
+                {
+                    // line breaks are normalized before whitespace
+                    if ( c == '\r' && m_pos + 1 < m_end && m_buf[m_pos + 1] == '\n' )
+                    {
+                        m_pos++;
+                    }
+                    builder.append( isWhitespace( c ) ? ' ' : c );
+                    m_pos++;
+                }
+            }
+            expect( quote );
+            return builder.toString();
+        }
+
+        // resolves a predefined entity or character reference
+        private void reference( final StringBuilder builder ) throws UnsupportedDocumentException
+        {
+            final int start = m_pos + 1;
+            int end = start;
+            while ( end < m_end && end - start < 12 && m_buf[end] != ';' )
+            {
+                end++;
+            }
+            if ( end == m_end || m_buf[end] != ';' || end == start )
+            {
+                throw new UnsupportedDocumentException( "Malformed reference" );
+            }
+            final String name = new String( m_buf, start, end - start );
+            m_pos = end + 1;
+            if ( name.charAt( 0 ) == '#' )
+            {
+                try
+                {
+                    final int codePoint = name.length() > 1 && name.charAt( 1 ) == 'x'
+                        ? Integer.parseInt( name.substring( 2 ), 16 ) : Integer.parseInt( name.substring( 1 ) );
+                    builder.appendCodePoint( codePoint );
+                }
+                catch ( final IllegalArgumentException e )
+                {
+                    throw new UnsupportedDocumentException( "Malformed character reference &" + name + ";" );
+                }
+            }
+            else if ( name.equals( "amp" ) )
+            {
+                builder.append( '&' );
+            }
+            else if ( name.equals( "lt" ) )
+            {
+                builder.append( '<' );
+            }
+            else if ( name.equals( "gt" ) )
+            {
+                builder.append( '>' );
+            }
+            else if ( name.equals( "quot" ) )
+            {
+                builder.append( '"' );
+            }
+            else if ( name.equals( "apos" ) )
+            {
+                builder.append( '\'' );
+            }
+            else
+            {
+                throw new UnsupportedDocumentException( "Entity reference &" + name + ";" );
+            }
+        }
+
+        // reads an interned name, recording the position of its prefix separator
+        private String name() throws UnsupportedDocumentException
+        {
+            final int start = m_pos;
+            m_colon = -1;
+            while ( m_pos < m_end )
+            {
+                final char c = m_buf[m_pos];
+                if ( c == ':' )
+                {
+                    if ( m_colon >= 0 )
+                    {
+                        throw new UnsupportedDocumentException( "Malformed name" );
+                    }
+                    m_colon = m_pos - start;
+                }
+                else if ( isWhitespace( c ) || c == '=' || c == '>' || c == '/' || c == '<' || c == '"' || c == '\'' )
+                {
+                    break;
+                }
+                m_pos++;
+            }
+            if ( m_pos == start || m_colon == 0 || m_colon == m_pos - start - 1 )
+            {
+                throw new UnsupportedDocumentException( "Malformed name" );
+            }
+            final char first = m_buf[start];
+            if ( first == '-' || first == '.' || ( first >= '0' && first <= '9' ) )
+            {
+                throw new UnsupportedDocumentException( "Malformed name" );
+            }
+            return m_names.get( m_buf, start, m_pos - start );
+        }
+
+        private void declare( final String prefix, final String uri )
+        {
+            if ( m_namespaceCount * 2 == m_namespaces.length )
+            {
+                final String[] namespaces = new String[m_namespaces.length * 2];
+                System.arraycopy( m_namespaces, 0, namespaces, 0, m_namespaces.length );
+                m_namespaces = namespaces;
+            }
+            m_namespaces[m_namespaceCount * 2] = prefix;
+            m_namespaces[m_namespaceCount * 2 + 1] = uri;
+            m_namespaceCount++;
+        }
+
+        private String resolve( final String prefix ) throws UnsupportedDocumentException
+        {
+            for ( int i = m_namespaceCount - 1; i >= 0; i-- )
+            {
+                if ( m_namespaces[i * 2].equals( prefix ) )
+                {
+                    final String uri = m_namespaces[i * 2 + 1];
+                    if ( uri.isEmpty() && !prefix.isEmpty() )
+                    {
+                        break;
+                    }
+                    return uri;
+                }
+            }
+            throw new UnsupportedDocumentException( "Undeclared prefix " + prefix );
+        }
+
+        private boolean skipWhitespace()
+        {
+            final int start = m_pos;
+            while ( m_pos < m_end && isWhitespace( m_buf[m_pos] ) )
+            {
+                m_pos++;
+            }
+            return m_pos > start;
+        }
+
+        private void expect( final char c ) throws UnsupportedDocumentException
+        {
+            if ( m_pos >= m_end || m_buf[m_pos] != c )
+            {
+                throw new UnsupportedDocumentException( "Expected '" + c + "'" );
+            }
+            m_pos++;
+        }
+
+        private boolean startsWith( final String s )
+        {
+            if ( m_pos + s.length() > m_end )
+            {
+                return false;
+            }
+            for ( int i = 0; i < s.length(); i++ )
+            {
+                if ( m_buf[m_pos + i] != s.charAt( i ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // moves past the terminator, searching from the given offset
+        private void skipPast( final String terminator, final int offset ) throws UnsupportedDocumentException
+        {
+            m_pos += offset;
+            while ( m_pos < m_end )
+            {
+                if ( startsWith( terminator ) )
+                {
+                    m_pos += terminator.length();
+                    return;
+                }
+                m_pos++;
+            }
+            throw new UnsupportedDocumentException( "Missing " + terminator );
+        }
+    }
+
+
+    /**
+     * Open addressing table of interned names, so equal names read from
+     * the document are the same string instances as the DS vocabulary.
+     */
+    /**
+     * Logger keeping the messages until they are flushed to the logger it
+     * wraps or discarded. Messages of disabled levels are dropped right away.
+     */
+    private static final class BufferedLogger implements BundleLogger
+    {
+        private final BundleLogger m_logger;
+
+        private final List<Object[]> m_messages = new ArrayList<>();
+
+        BufferedLogger( final BundleLogger logger )
+        {
+            m_logger = logger;
+        }
+
+        @Override
+        public void log( final Level level, final String message, final Throwable ex )
+        {
+            log( level, message, ex, (Object[]) null );
+        }
+
+        @Override
+        public void log( final Level level, final String message, final Throwable ex, final Object... args )
+        {
+            if ( m_logger.isLogEnabled( level ) )
+            {
+                m_messages.add( new Object[] { level, message, ex, args } );
+            }
+        }
+
+        @Override
+        public boolean isLogEnabled( final Level level )
+        {
+            return m_logger.isLogEnabled( level );
+        }
+
+        @Override
+        public ComponentLogger component( final Bundle bundle, final String implementationClassName,
+            final String name )
+        {
+            return m_logger.component( bundle, implementationClassName, name );
+        }
+
+        void flush()
+        {
+            for ( final Object[] message : m_messages )
+            {
+                if ( message[3] == null )
+                {
+                    m_logger.log( (Level) message[0], (String) message[1], (Throwable) message[2] );
+                }
+                else
+                {
+                    m_logger.log( (Level) message[0], (String) message[1], (Throwable) message[2],
+                        (Object[]) message[3] );
+                }
+            }
+            m_messages.clear();
+        }
+
+        void discard()
+        {
+            m_messages.clear();
+        }
+    }
+
+
+    static final class NameTable
+    {
+        private String[] m_names = new String[256];
+
+        private int m_size;
+
+        NameTable()
+        {
+            for ( final String name : NAMES )
+            {
+                get( name );
+            }
+        }
+
+        String get( final char[] buf, final int start, final int length )
+        {
+            int hash = 0;
+            for ( int i = start; i < start + length; i++ )
+            {
+                hash = 31 * hash + buf[i];
+            }
+            int index = index( hash );
+            String name;
+            while ( ( name = m_names[index] ) != null )
+            {
+                if ( name.hashCode() == hash && matches( name, buf, start, length ) )
+                {
+                    return name;
+                }
+                index = ( index + 1 ) & ( m_names.length - 1 );
+            }
+            return add( index, new String( buf, start, length ) );
+        }
+
+        String get( final String s )
+        {
+            final int hash = s.hashCode();
+            int index = index( hash );
+            String name;
+            while ( ( name = m_names[index] ) != null )
+            {
+                if ( name.hashCode() == hash && name.equals( s ) )
+                {
+                    return name;
+                }
+                index = ( index + 1 ) & ( m_names.length - 1 );
+            }
+            return add( index, s );
+        }
+
+        private int index( final int hash )
+        {
+            return ( hash ^ ( hash >>> 16 ) ) & ( m_names.length - 1 );
+        }
+
+        private String add( final int index, final String name )
+        {
+            m_names[index] = name;
+            if ( ++m_size * 2 > m_names.length )
+            {
+                final String[] names = m_names;
+                m_names = new String[names.length * 2];
+                for ( final String existing : names )
+                {
+                    if ( existing != null )
+                    {
+                        int i = index( existing.hashCode() );
+                        while ( m_names[i] != null )
+                        {
+                            i = ( i + 1 ) & ( m_names.length - 1 );
+                        }
+                        m_names[i] = existing;
+                    }
+                }
+            }
+            return name;
+        }
+
+        private static boolean matches( final String name, final char[] buf, final int start, final int length )
+        {
+            if ( name.length() != length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( name.charAt( i ) != buf[start + i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Thrown for documents which are not supported by this reader or are
+     * malformed, to read them with a SAX parser instead.
+     */
+    static final class UnsupportedDocumentException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedDocumentException( final String message )
+        {
+            // thrown for control flow only, no stack trace needed
+            super( message, null, false, false );
+        }
+    }
+}
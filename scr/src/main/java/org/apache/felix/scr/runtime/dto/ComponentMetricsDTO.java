@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.runtime.dto;
+
+
+import org.osgi.dto.DTO;
+
+
+/**
+ * The <code>ComponentMetricsDTO</code> describes how often and how long the
+ * life cycle methods of a component configuration have been called since it
+ * has been created. All times are in nanoseconds.
+ */
+public class ComponentMetricsDTO extends DTO
+{
+
+    /**
+     * The number of successful activations.
+     */
+    public long activationCount;
+
+    /**
+     * The total time of successful activations, from getting the bound
+     * services up to returning from the activate method.
+     */
+    public long activationTime;
+
+    /**
+     * The longest successful activation.
+     */
+    public long activationMaxTime;
+
+    /**
+     * The total time spent in the constructor of the component, including
+     * constructor injection.
+     */
+    public long constructionTime;
+
+    /**
+     * The number of deactivations.
+     */
+    public long deactivationCount;
+
+    /**
+     * The total time of deactivations, including unbinding the references.
+     */
+    public long deactivationTime;
+
+    /**
+     * The number of calls of the modified method.
+     */
+    public long modifiedCount;
+
+    /**
+     * The total time spent in the modified method.
+     */
+    public long modifiedTime;
+
+    /**
+     * The number of times the instance of the delayed component has been
+     * deactivated after being unused for the idle timeout.
+     */
+    public long evictionCount;
+
+    /**
+     * The number of times the instance of the delayed component has been
+     * created again after being evicted.
+     */
+    public long reactivationCount;
+
+    /**
+     * The number of configuration updates of the component which have been
+     * superseded within the configuration coalescing window and thus never
+     * applied. Counted for the component description, so all of its
+     * component configurations report the same number.
+     */
+    public long coalescedUpdateCount;
+
+    /**
+     * The metrics of the references of the component in declaration order.
+     */
+    public ReferenceMetricsDTO[] references;
+}
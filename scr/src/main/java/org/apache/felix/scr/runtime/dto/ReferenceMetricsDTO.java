@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.runtime.dto;
+
+
+import org.osgi.dto.DTO;
+
+
+/**
+ * The <code>ReferenceMetricsDTO</code> describes how often and how long the
+ * services of a reference have been bound and unbound. All times are in
+ * nanoseconds.
+ */
+public class ReferenceMetricsDTO extends DTO
+{
+
+    /**
+     * The name of the reference.
+     */
+    public String name;
+
+    /**
+     * The number of services bound, including services injected into the
+     * constructor and fields.
+     */
+    public long bindCount;
+
+    /**
+     * The total time of binding services, including getting the services.
+     */
+    public long bindTime;
+
+    /**
+     * The longest time of binding a service.
+     */
+    public long bindMaxTime;
+
+    /**
+     * The number of services unbound.
+     */
+    public long unbindCount;
+
+    /**
+     * The total time of unbinding services.
+     */
+    public long unbindTime;
+
+    /**
+     * The longest time of unbinding a service.
+     */
+    public long unbindMaxTime;
+}
@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.benchmark;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.felix.scr.benchmark.components.ConfigurationCreator;
+import org.apache.felix.scr.benchmark.components.Node;
+import org.apache.felix.scr.benchmark.components.NodeComponent;
+
+
+/**
+ * Generates bundles declaring a graph of components for the
+ * {@link ScrStartupBenchmark}.
+ * <p>
+ * The components are arranged in {@link #depth(int) layers}. Each component
+ * provides a {@link Node} service and references {@link #fanIn(int)} distinct
+ * components of the layer below by their <code>node.id</code>, so the
+ * components of the top layer are satisfied once all layers below are. A
+ * ratio of the references is optional, dynamic or greedy, and a ratio of the
+ * components requires a configuration, which is created by the components
+ * API bundle. Factory components are only placed in the top layer, as their
+ * factory service is not a {@link Node}. The same seed always generates the
+ * same bundles.
+ */
+public class ComponentGraphGenerator
+{
+
+    static final String API_BUNDLE = "org.apache.felix.scr.benchmark.components";
+
+    static final String FACTORY_PREFIX = "benchmark.factory.";
+
+    private int m_components = 1000;
+
+    private int m_componentsPerBundle = 100;
+
+    private int m_depth = 4;
+
+    private int m_fanIn = 2;
+
+    private double m_optionalRatio;
+
+    private double m_dynamicRatio;
+
+    private double m_greedyRatio;
+
+    private double m_factoryRatio;
+
+    private double m_configurationRequiredRatio;
+
+    private boolean m_immediate;
+
+    private long m_seed = 42;
+
+
+    public ComponentGraphGenerator components( int components )
+    {
+        m_components = components;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator componentsPerBundle( int componentsPerBundle )
+    {
+        m_componentsPerBundle = componentsPerBundle;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator depth( int depth )
+    {
+        m_depth = depth;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator fanIn( int fanIn )
+    {
+        m_fanIn = fanIn;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator optionalRatio( double optionalRatio )
+    {
+        m_optionalRatio = optionalRatio;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator dynamicRatio( double dynamicRatio )
+    {
+        m_dynamicRatio = dynamicRatio;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator greedyRatio( double greedyRatio )
+    {
+        m_greedyRatio = greedyRatio;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator factoryRatio( double factoryRatio )
+    {
+        m_factoryRatio = factoryRatio;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator configurationRequiredRatio( double configurationRequiredRatio )
+    {
+        m_configurationRequiredRatio = configurationRequiredRatio;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator immediate( boolean immediate )
+    {
+        m_immediate = immediate;
+        return this;
+    }
+
+
+    public ComponentGraphGenerator seed( long seed )
+    {
+        m_seed = seed;
+        return this;
+    }
+
+
+    /**
+     * Writes the components API bundle and the component bundles to the
+     * directory.
+     */
+    public Graph generate( final File directory ) throws IOException
+    {
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new IOException( "Cannot create " + directory );
+        }
+        final Random random = new Random( m_seed );
+        final int depth = Math.max( 1, Math.min( m_depth, m_components ) );
+        final List<String> pids = new ArrayList<>();
+        final List<File> bundles = new ArrayList<>();
+        int factories = 0;
+
+        StringBuilder xml = null;
+        for ( int i = 0; i < m_components; i++ )
+        {
+            if ( i % m_componentsPerBundle == 0 )
+            {
+                if ( xml != null )
+                {
+                    bundles.add( writeComponentBundle( directory, bundles.size(), xml ) );
+                }
+                xml = new StringBuilder( "<components xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.3.0\">\n" );
+            }
+
+            final int layer = layerOf( i, depth );
+            final String name = "benchmark.node." + i;
+            final boolean factory = layer == depth - 1 && depth > 1 && random.nextDouble() < m_factoryRatio;
+            final boolean configurationRequired = !factory && random.nextDouble() < m_configurationRequiredRatio;
+
+            xml.append( "<scr:component name=\"" ).append( name ).append( "\" immediate=\"" ).append( m_immediate ).append( '"' );
+            if ( factory )
+            {
+                xml.append( " factory=\"" ).append( FACTORY_PREFIX ).append( i ).append( '"' );
+                factories++;
+            }
+            if ( configurationRequired )
+            {
+                xml.append( " configuration-policy=\"require\"" );
+                pids.add( name );
+            }
+            xml.append( ">\n" );
+            xml.append( "  <implementation class=\"" ).append( NodeComponent.class.getName() ).append( "\"/>\n" );
+            xml.append( "  <property name=\"node.id\" value=\"" ).append( i ).append( "\"/>\n" );
+            xml.append( "  <service><provide interface=\"" ).append( Node.class.getName() ).append( "\"/></service>\n" );
+
+            if ( layer > 0 )
+            {
+                final int first = firstOf( layer - 1, depth );
+                final int size = firstOf( layer, depth ) - first;
+                final int references = Math.min( m_fanIn, size );
+                final int offset = random.nextInt( size );
+                for ( int r = 0; r < references; r++ )
+                {
+                    final int target = first + ( offset + r ) % size;
+                    xml.append( "  <reference name=\"r" ).append( r )
+                        .append( "\" interface=\"" ).append( Node.class.getName() )
+                        .append( "\" target=\"(node.id=" ).append( target )
+                        .append( ")\" cardinality=\"" ).append( random.nextDouble() < m_optionalRatio ? "0..1" : "1..1" )
+                        .append( "\" policy=\"" ).append( random.nextDouble() < m_dynamicRatio ? "dynamic" : "static" )
+                        .append( "\" policy-option=\"" ).append( random.nextDouble() < m_greedyRatio ? "greedy" : "reluctant" )
+                        .append( "\" bind=\"bind\" unbind=\"unbind\"/>\n" );
+                }
+            }
+            xml.append( "</scr:component>\n" );
+        }
+        if ( xml != null )
+        {
+            bundles.add( writeComponentBundle( directory, bundles.size(), xml ) );
+        }
+
+        final File api = writeApiBundle( directory, pids );
+        return new Graph( api, bundles, m_components - factories, factories, pids.size() );
+    }
+
+
+    // the components are split into layers of equal size, layer 0 first
+    private int layerOf( final int component, final int depth )
+    {
+        return (int) ( (long) component * depth / m_components );
+    }
+
+
+    private int firstOf( final int layer, final int depth )
+    {
+        return (int) ( ( (long) layer * m_components + depth - 1 ) / depth );
+    }
+
+
+    private File writeComponentBundle( final File directory, final int index, final StringBuilder xml )
+        throws IOException
+    {
+        xml.append( "</components>\n" );
+        final Manifest manifest = newManifest( "benchmark.bundle." + index );
+        manifest.getMainAttributes().putValue( "Import-Package", API_BUNDLE );
+        manifest.getMainAttributes().putValue( "Service-Component", "OSGI-INF/components.xml" );
+
+        final File file = new File( directory, "benchmark.bundle." + index + ".jar" );
+        try (JarOutputStream jar = new JarOutputStream( new FileOutputStream( file ), manifest ))
+        {
+            jar.putNextEntry( new JarEntry( "OSGI-INF/components.xml" ) );
+            jar.write( xml.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return file;
+    }
+
+
+    private File writeApiBundle( final File directory, final List<String> pids ) throws IOException
+    {
+        final Manifest manifest = newManifest( API_BUNDLE );
+        manifest.getMainAttributes().putValue( "Export-Package", API_BUNDLE );
+        if ( pids.isEmpty() )
+        {
+            manifest.getMainAttributes().putValue( "Import-Package", "org.osgi.framework" );
+        }
+        else
+        {
+            manifest.getMainAttributes().putValue( "Import-Package", "org.osgi.framework,org.osgi.service.cm" );
+            manifest.getMainAttributes().putValue( "Bundle-Activator", ConfigurationCreator.class.getName() );
+        }
+
+        final File file = new File( directory, API_BUNDLE + ".jar" );
+        try (JarOutputStream jar = new JarOutputStream( new FileOutputStream( file ), manifest ))
+        {
+            for ( Class<?> type : new Class<?>[] { Node.class, NodeComponent.class, ConfigurationCreator.class } )
+            {
+                final String entry = type.getName().replace( '.', '/' ) + ".class";
+                jar.putNextEntry( new JarEntry( entry ) );
+                try (InputStream in = type.getClassLoader().getResourceAsStream( entry ))
+                {
+                    copy( in, jar );
+                }
+            }
+            final StringBuilder lines = new StringBuilder();
+            for ( String pid : pids )
+            {
+                lines.append( pid ).append( '\n' );
+            }
+            jar.putNextEntry( new JarEntry( ConfigurationCreator.PIDS ) );
+            jar.write( lines.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return file;
+    }
+
+
+    private static Manifest newManifest( final String symbolicName )
+    {
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        attributes.putValue( "Bundle-ManifestVersion", "2" );
+        attributes.putValue( "Bundle-SymbolicName", symbolicName );
+        return manifest;
+    }
+
+
+    private static void copy( final InputStream in, final OutputStream out ) throws IOException
+    {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) > 0 )
+        {
+            out.write( buffer, 0, read );
+        }
+    }
+
+
+    /**
+     * The generated bundles and the services expected once all components
+     * are satisfied.
+     */
+    public static final class Graph
+    {
+        private final File m_apiBundle;
+
+        private final List<File> m_componentBundles;
+
+        private final int m_nodes;
+
+        private final int m_factories;
+
+        private final int m_configurations;
+
+
+        Graph( final File apiBundle, final List<File> componentBundles, final int nodes, final int factories,
+            final int configurations )
+        {
+            m_apiBundle = apiBundle;
+            m_componentBundles = componentBundles;
+            m_nodes = nodes;
+            m_factories = factories;
+            m_configurations = configurations;
+        }
+
+
+        public File getApiBundle()
+        {
+            return m_apiBundle;
+        }
+
+
+        public List<File> getComponentBundles()
+        {
+            return m_componentBundles;
+        }
+
+
+        /**
+         * Returns the number of {@link Node} services registered once all
+         * components are satisfied.
+         */
+        public int getNodes()
+        {
+            return m_nodes;
+        }
+
+
+        /**
+         * Returns the number of component factory services registered once
+         * all factory components are satisfied.
+         */
+        public int getFactories()
+        {
+            return m_factories;
+        }
+
+
+        /**
+         * Returns the number of configurations created by the API bundle.
+         */
+        public int getConfigurations()
+        {
+            return m_configurations;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.benchmark;
+
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.felix.scr.impl.logger.MockBundleLogger;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.xml.DescriptorReader;
+import org.apache.felix.scr.impl.xml.XmlHandler;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.Bundle;
+
+
+/**
+ * Compares reading a component descriptor with the {@link DescriptorReader}
+ * to reading it with a SAX parser created for each descriptor, as SCR did
+ * before. The descriptor declares the given number of components, each
+ * with a service, properties and references like the descriptors generated
+ * by bnd. Run with more JMH threads, for example {@code -t 4}, to measure
+ * reading the descriptors of several bundles concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorReaderBenchmark
+{
+    @Param({"1", "10", "100"})
+    public int components;
+
+    private byte[] m_descriptor;
+
+    private Bundle m_bundle;
+
+    private MockBundleLogger m_logger;
+
+    @Setup
+    public void generate()
+    {
+        final StringBuilder sb = new StringBuilder( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        sb.append( "<components xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.4.0\">\n" );
+        for ( int i = 0; i < components; i++ )
+        {
+            sb.append( "  <scr:component name=\"org.example.Component" ).append( i )
+                .append( "\" immediate=\"true\" activate=\"activate\" deactivate=\"deactivate\">\n" );
+            sb.append( "    <implementation class=\"org.example.Component" ).append( i ).append( "\"/>\n" );
+            sb.append( "    <service>\n" );
+            sb.append( "      <provide interface=\"org.example.Service" ).append( i ).append( "\"/>\n" );
+            sb.append( "    </service>\n" );
+            sb.append( "    <property name=\"service.ranking\" type=\"Integer\" value=\"" ).append( i ).append( "\"/>\n" );
+            sb.append( "    <property name=\"names\" type=\"String\">\n      first\n      second &amp; third\n    </property>\n" );
+            for ( int r = 0; r < 3; r++ )
+            {
+                sb.append( "    <reference name=\"ref" ).append( r ).append( "\" interface=\"org.example.Service" )
+                    .append( r ).append( "\" cardinality=\"0..n\" policy=\"dynamic\" bind=\"bind" ).append( r )
+                    .append( "\" unbind=\"unbind" ).append( r )
+                    .append( "\" target=\"(&amp;(type=x)(id=" ).append( r ).append( "))\"/>\n" );
+            }
+            sb.append( "  </scr:component>\n" );
+        }
+        sb.append( "</components>\n" );
+        m_descriptor = sb.toString().getBytes( StandardCharsets.UTF_8 );
+
+        m_bundle = Mockito.mock( Bundle.class );
+        Mockito.when( m_bundle.getLocation() ).thenReturn( "benchmark" );
+        m_logger = new MockBundleLogger();
+    }
+
+    @Benchmark
+    public List<ComponentMetadata> sax() throws Exception
+    {
+        final XmlHandler handler = new XmlHandler( m_bundle, m_logger, false, false, null );
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware( true );
+        factory.newSAXParser().parse( new ByteArrayInputStream( m_descriptor ), handler );
+        return handler.getComponentMetadataList();
+    }
+
+    @Benchmark
+    public List<ComponentMetadata> reader() throws Exception
+    {
+        return new DescriptorReader( m_bundle, m_logger, false, false, null )
+            .read( new ByteArrayInputStream( m_descriptor ) );
+    }
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( new CommandLineOptions( args ) )
+            .include( DescriptorReaderBenchmark.class.getName() )
+            .addProfiler( GCProfiler.class );
+        new Runner( options.build() ).run();
+    }
+}
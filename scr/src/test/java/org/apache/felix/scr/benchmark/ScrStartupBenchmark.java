@@ -0,0 +1,444 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.benchmark;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.scr.benchmark.components.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.AllServiceListener;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.launch.FrameworkFactory;
+import org.osgi.service.component.ComponentConstants;
+import org.osgi.service.component.ComponentFactory;
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Promise;
+
+
+/**
+ * Measures the time from starting the bundles generated by the
+ * {@link ComponentGraphGenerator} in an embedded Felix framework until all
+ * their components are satisfied, that is until all {@link Node} and
+ * component factory services are registered.
+ * <p>
+ * Run with {@code mvn -Pbenchmark verify} or run this class directly with
+ * the {@code project.bundle.file} system property pointing to the SCR bundle.
+ * JMH command line options are taken from the arguments, or from the
+ * {@code benchmark.args} property when run by maven, for example
+ * {@code -p components=50000 -p scrProperties=ds.activation.threads=4}.
+ * Allocation rates are reported by the JMH gc profiler. While the bundles
+ * start, the threads blocked on a lock are sampled, and the samples are
+ * printed after each run by the SCR class whose lock they wait for, along
+ * with the total time the threads have been blocked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScrStartupBenchmark
+{
+    static final String BUNDLE_FILE = "project.bundle.file";
+
+    @Param({"1000", "10000", "50000"})
+    public int components;
+
+    @Param("100")
+    public int componentsPerBundle;
+
+    @Param("4")
+    public int depth;
+
+    @Param("2")
+    public int fanIn;
+
+    @Param("0.2")
+    public double optionalRatio;
+
+    @Param("0.5")
+    public double dynamicRatio;
+
+    @Param("0.2")
+    public double greedyRatio;
+
+    @Param("0.01")
+    public double factoryRatio;
+
+    @Param("0.05")
+    public double configurationRequiredRatio;
+
+    @Param("false")
+    public boolean immediate;
+
+    /**
+     * Framework properties passed to SCR, as comma separated
+     * <code>name=value</code> pairs.
+     */
+    @Param("")
+    public String scrProperties;
+
+    private File m_directory;
+    private ComponentGraphGenerator.Graph m_graph;
+
+    private Framework m_framework;
+    private List<Bundle> m_bundles;
+    private CountDownLatch m_satisfied;
+    private ContentionSampler m_sampler;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException
+    {
+        m_directory = File.createTempFile( "scr-benchmark", "" );
+        m_directory.delete();
+        m_graph = new ComponentGraphGenerator()
+            .components( components )
+            .componentsPerBundle( componentsPerBundle )
+            .depth( depth )
+            .fanIn( fanIn )
+            .optionalRatio( optionalRatio )
+            .dynamicRatio( dynamicRatio )
+            .greedyRatio( greedyRatio )
+            .factoryRatio( factoryRatio )
+            .configurationRequiredRatio( configurationRequiredRatio )
+            .immediate( immediate )
+            .generate( m_directory );
+        System.out.println();
+        System.out.println( "Generated " + m_graph.getComponentBundles().size() + " bundles with "
+            + m_graph.getNodes() + " node components, " + m_graph.getFactories() + " factory components and "
+            + m_graph.getConfigurations() + " configurations" );
+    }
+
+    /**
+     * Starts a new framework with SCR and installs, but does not start, the
+     * component bundles.
+     */
+    @Setup(Level.Invocation)
+    public void launch() throws Exception
+    {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put( Constants.FRAMEWORK_STORAGE, new File( m_directory, "framework" ).getAbsolutePath() );
+        properties.put( Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT );
+        for ( String property : scrProperties.split( "," ) )
+        {
+            final int eq = property.indexOf( '=' );
+            if ( eq > 0 )
+            {
+                properties.put( property.substring( 0, eq ).trim(), property.substring( eq + 1 ).trim() );
+            }
+        }
+        m_framework = ServiceLoader.load( FrameworkFactory.class ).iterator().next().newFramework( properties );
+        m_framework.start();
+
+        final BundleContext context = m_framework.getBundleContext();
+        final List<Bundle> infrastructure = new ArrayList<>();
+        infrastructure.add( install( context, jarOf( Function.class ) ) );
+        infrastructure.add( install( context, jarOf( Promise.class ) ) );
+        infrastructure.add( install( context, jarOf( ComponentConstants.class ) ) );
+        if ( m_graph.getConfigurations() > 0 )
+        {
+            infrastructure.add( install( context, configAdminJar() ) );
+        }
+        infrastructure.add( install( context, getScrBundle() ) );
+        infrastructure.add( install( context, m_graph.getApiBundle() ) );
+        for ( Bundle bundle : infrastructure )
+        {
+            if ( bundle.getHeaders().get( Constants.FRAGMENT_HOST ) == null )
+            {
+                bundle.start();
+            }
+        }
+
+        m_bundles = new ArrayList<>();
+        for ( File file : m_graph.getComponentBundles() )
+        {
+            m_bundles.add( install( context, file ) );
+        }
+
+        final CountDownLatch satisfied = new CountDownLatch( m_graph.getNodes() + m_graph.getFactories() );
+        context.addServiceListener( new AllServiceListener()
+        {
+            @Override
+            public void serviceChanged( final ServiceEvent event )
+            {
+                if ( event.getType() == ServiceEvent.REGISTERED )
+                {
+                    satisfied.countDown();
+                }
+            }
+        }, "(|(" + Constants.OBJECTCLASS + "=" + Node.class.getName() + ")(&(" + Constants.OBJECTCLASS + "="
+            + ComponentFactory.class.getName() + ")(" + ComponentConstants.COMPONENT_FACTORY + "="
+            + ComponentGraphGenerator.FACTORY_PREFIX + "*)))" );
+        m_satisfied = satisfied;
+        m_sampler = new ContentionSampler();
+    }
+
+    @Benchmark
+    public long startComponents() throws BundleException, InterruptedException
+    {
+        m_sampler.start();
+        for ( Bundle bundle : m_bundles )
+        {
+            bundle.start();
+        }
+        if ( !m_satisfied.await( 30, TimeUnit.MINUTES ) )
+        {
+            throw new IllegalStateException( m_satisfied.getCount() + " components are not satisfied" );
+        }
+        m_sampler.stop();
+        return m_satisfied.getCount();
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdown() throws Exception
+    {
+        m_sampler.stop();
+        m_sampler.print();
+        m_framework.stop();
+        m_framework.waitForStop( 0 );
+        m_framework = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void delete()
+    {
+        delete( m_directory );
+    }
+
+    private static Bundle install( final BundleContext context, final File file ) throws BundleException
+    {
+        return context.installBundle( file.toURI().toString() );
+    }
+
+    private static File getScrBundle()
+    {
+        final String file = System.getProperty( BUNDLE_FILE );
+        if ( file == null )
+        {
+            throw new IllegalStateException( "The " + BUNDLE_FILE + " system property must point to the SCR bundle" );
+        }
+        return new File( file.trim() );
+    }
+
+    // the jar of the bundle on the class path containing the class
+    private static File jarOf( final Class<?> type ) throws Exception
+    {
+        return new File( type.getProtectionDomain().getCodeSource().getLocation().toURI() );
+    }
+
+    private static File configAdminJar() throws Exception
+    {
+        final URL url = ScrStartupBenchmark.class.getClassLoader().getResource( "org/apache/felix/cm/PersistenceManager.class" );
+        if ( url == null )
+        {
+            throw new IllegalStateException( "Configuration Admin is not on the class path" );
+        }
+        return new File( ( (JarURLConnection) url.openConnection() ).getJarFileURL().toURI() );
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( new CommandLineOptions( args ) )
+            .include( ScrStartupBenchmark.class.getName() )
+            .addProfiler( GCProfiler.class );
+        if ( System.getProperty( BUNDLE_FILE ) != null )
+        {
+            options.jvmArgsAppend( "-D" + BUNDLE_FILE + "=" + System.getProperty( BUNDLE_FILE ).trim() );
+        }
+        new Runner( options.build() ).run();
+    }
+
+
+    /**
+     * Samples the threads waiting for a lock held by another thread and
+     * counts the samples by the innermost SCR class on the stack of the
+     * waiting thread.
+     */
+    static final class ContentionSampler implements Runnable
+    {
+        private static final String SCR_PACKAGE = "org.apache.felix.scr.impl.";
+
+        private final ThreadMXBean m_threads = ManagementFactory.getThreadMXBean();
+
+        private final Map<String, Integer> m_samples = new HashMap<>();
+
+        private volatile boolean m_running;
+
+        private Thread m_thread;
+
+        private int m_sampleCount;
+
+        private long m_blockedTime;
+
+        void start()
+        {
+            if ( m_threads.isThreadContentionMonitoringSupported() )
+            {
+                m_threads.setThreadContentionMonitoringEnabled( true );
+            }
+            m_blockedTime = -getBlockedTime();
+            m_running = true;
+            m_thread = new Thread( this, "SCR Benchmark Contention Sampler" );
+            m_thread.setDaemon( true );
+            m_thread.start();
+        }
+
+        void stop() throws InterruptedException
+        {
+            if ( m_running )
+            {
+                m_running = false;
+                m_thread.join();
+                m_blockedTime += getBlockedTime();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while ( m_running )
+            {
+                for ( ThreadInfo info : m_threads.dumpAllThreads( true, true ) )
+                {
+                    if ( info.getLockOwnerId() != -1 )
+                    {
+                        sample( info );
+                    }
+                }
+                m_sampleCount++;
+                try
+                {
+                    Thread.sleep( 1 );
+                }
+                catch ( InterruptedException e )
+                {
+                    return;
+                }
+            }
+        }
+
+        private void sample( final ThreadInfo info )
+        {
+            for ( StackTraceElement element : info.getStackTrace() )
+            {
+                if ( element.getClassName().startsWith( SCR_PACKAGE ) )
+                {
+                    String className = element.getClassName().substring( SCR_PACKAGE.length() );
+                    final int inner = className.indexOf( '$' );
+                    if ( inner > 0 )
+                    {
+                        className = className.substring( 0, inner );
+                    }
+                    final Integer count = m_samples.get( className );
+                    m_samples.put( className, count == null ? 1 : count + 1 );
+                    return;
+                }
+            }
+        }
+
+        // the total time all live threads have been blocked entering a monitor
+        private long getBlockedTime()
+        {
+            long blocked = 0;
+            for ( ThreadInfo info : m_threads.getThreadInfo( m_threads.getAllThreadIds() ) )
+            {
+                if ( info != null && info.getBlockedTime() > 0 )
+                {
+                    blocked += info.getBlockedTime();
+                }
+            }
+            return blocked;
+        }
+
+        void print()
+        {
+            final List<Map.Entry<String, Integer>> entries = new ArrayList<>( m_samples.entrySet() );
+            Collections.sort( entries, new Comparator<Map.Entry<String, Integer>>()
+            {
+                @Override
+                public int compare( Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2 )
+                {
+                    return e2.getValue().compareTo( e1.getValue() );
+                }
+            } );
+            final StringBuilder builder = new StringBuilder();
+            builder.append( "Contention: " ).append( m_sampleCount ).append( " samples, blocked " )
+                .append( m_blockedTime ).append( " ms" );
+            for ( Map.Entry<String, Integer> entry : entries )
+            {
+                builder.append( ", " ).append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+            }
+            System.out.println();
+            System.out.println( builder );
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.benchmark.components;
+
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+
+/**
+ * Creates the configurations of the generated components requiring a
+ * configuration, whose PIDs are listed in the {@link #PIDS} resource of the
+ * bundle. Configuration Admin has to be started before this bundle.
+ */
+public class ConfigurationCreator implements BundleActivator
+{
+
+    public static final String PIDS = "benchmark/pids.txt";
+
+
+    @Override
+    public void start( final BundleContext context ) throws Exception
+    {
+        final ServiceReference<ConfigurationAdmin> reference = context.getServiceReference( ConfigurationAdmin.class );
+        if ( reference == null )
+        {
+            throw new IllegalStateException( "Configuration Admin is not available" );
+        }
+        final ConfigurationAdmin configurationAdmin = context.getService( reference );
+        try (BufferedReader reader = new BufferedReader( new InputStreamReader(
+            context.getBundle().getEntry( PIDS ).openStream(), StandardCharsets.UTF_8 ) ))
+        {
+            String pid;
+            while ( ( pid = reader.readLine() ) != null )
+            {
+                final Dictionary<String, Object> properties = new Hashtable<>();
+                properties.put( "benchmark", Boolean.TRUE );
+                configurationAdmin.getConfiguration( pid, "?" ).update( properties );
+            }
+        }
+        finally
+        {
+            context.ungetService( reference );
+        }
+    }
+
+
+    @Override
+    public void stop( final BundleContext context )
+    {
+    }
+}
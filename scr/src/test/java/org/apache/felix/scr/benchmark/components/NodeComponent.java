@@ -16,30 +16,38 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package org.apache.felix.resolver.util;
+package org.apache.felix.scr.benchmark.components;
 
-import org.osgi.resource.Requirement;
 
-public class OpenHashMapList extends OpenHashMap<Requirement, CandidateSelector> {
-    private static final long serialVersionUID = 0L;
+import java.util.ArrayList;
+import java.util.List;
 
-    public OpenHashMapList() {
-        super();
-    }
 
-    public OpenHashMapList(int initialCapacity) {
-        super(initialCapacity);
-    }
+/**
+ * The implementation of all components generated for the
+ * {@link org.apache.felix.scr.benchmark.ScrStartupBenchmark}, binding the
+ * nodes it references.
+ */
+public class NodeComponent implements Node
+{
+
+    private final List<Node> m_bound = new ArrayList<>();
 
-    public OpenHashMapList deepClone() {
-        OpenHashMapList copy = (OpenHashMapList) super.clone();
-        Object[] values = copy.value;
-        for (int i = values.length; i-- > 0;) {
-            if (values[i] != null) {
-                values[i] = ((CandidateSelector) values[i]).copy();
-            }
+
+    protected void bind( final Node node )
+    {
+        synchronized ( m_bound )
+        {
+            m_bound.add( node );
         }
-        return copy;
     }
 
+
+    protected void unbind( final Node node )
+    {
+        synchronized ( m_bound )
+        {
+            m_bound.remove( node );
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.mockito.Mockito;
+
+import junit.framework.TestCase;
+
+public class ComponentActorTest extends TestCase
+{
+
+    private final ScrLogger logger = Mockito.mock( ScrLogger.class );
+
+    public void testSingleThreadRunsTasksInOrder() throws Exception
+    {
+        final ComponentActor actor = new ComponentActor( logger, 1, false );
+        final List<String> runs = Collections.synchronizedList( new ArrayList<String>() );
+        for ( int i = 0; i < 20; i++ )
+        {
+            actor.schedule( i % 2 == 0 ? "a" : "b", new Record( runs, Integer.toString( i ) ) );
+        }
+        actor.terminate();
+
+        assertEquals( 20, runs.size() );
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertEquals( Integer.toString( i ), runs.get( i ) );
+        }
+        assertEquals( 0, actor.getQueueDepth() );
+    }
+
+    public void testTasksOfDifferentKeysRunConcurrently() throws Exception
+    {
+        final ComponentActor actor = new ComponentActor( logger, 2, false );
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger concurrent = new AtomicInteger();
+        for ( final String key : new String[] { "a", "b" } )
+        {
+            actor.schedule( key, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    started.countDown();
+                    try
+                    {
+                        if ( started.await( 5, TimeUnit.SECONDS ) )
+                        {
+                            concurrent.incrementAndGet();
+                        }
+                        release.await( 5, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } );
+        }
+        assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+        release.countDown();
+        actor.terminate();
+
+        assertEquals( 2, concurrent.get() );
+    }
+
+    public void testTasksOfSameKeyRunInOrder() throws Exception
+    {
+        final ComponentActor actor = new ComponentActor( logger, 4, false );
+        final List<List<String>> runs = new ArrayList<>();
+        for ( int k = 0; k < 4; k++ )
+        {
+            runs.add( Collections.synchronizedList( new ArrayList<String>() ) );
+        }
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        for ( int i = 0; i < 400; i++ )
+        {
+            final int k = i % 4;
+            final Record record = new Record( runs.get( k ), Integer.toString( i ) );
+            actor.schedule( runs.get( k ), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ( active.incrementAndGet() > 4 )
+                    {
+                        overlaps.incrementAndGet();
+                    }
+                    record.run();
+                    active.decrementAndGet();
+                }
+            } );
+        }
+        actor.terminate();
+
+        assertEquals( 0, overlaps.get() );
+        for ( int k = 0; k < 4; k++ )
+        {
+            final List<String> keyRuns = runs.get( k );
+            assertEquals( 100, keyRuns.size() );
+            for ( int i = 0; i < 100; i++ )
+            {
+                assertEquals( Integer.toString( i * 4 + k ), keyRuns.get( i ) );
+            }
+        }
+        assertTrue( actor.getAverageLatency() >= 0 );
+    }
+
+    public void testFailingTaskDoesNotStopActor() throws Exception
+    {
+        final ComponentActor actor = new ComponentActor( logger, 1, false );
+        final List<String> runs = Collections.synchronizedList( new ArrayList<String>() );
+        actor.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new IllegalStateException( "fail" );
+            }
+        } );
+        actor.schedule( new Record( runs, "after" ) );
+        actor.terminate();
+
+        assertEquals( Collections.singletonList( "after" ), runs );
+    }
+
+    public void testNoTasksAfterTerminate() throws Exception
+    {
+        final ComponentActor actor = new ComponentActor( logger, 2, false );
+        actor.terminate();
+
+        final List<String> runs = Collections.synchronizedList( new ArrayList<String>() );
+        actor.schedule( new Record( runs, "late" ) );
+        assertEquals( 0, actor.getQueueDepth() );
+        assertTrue( runs.isEmpty() );
+    }
+
+    private static final class Record implements Runnable
+    {
+        private final List<String> runs;
+
+        private final String name;
+
+        Record( final List<String> runs, final String name )
+        {
+            this.runs = runs;
+            this.name = name;
+        }
+
+        @Override
+        public void run()
+        {
+            runs.add( name );
+        }
+    }
+}
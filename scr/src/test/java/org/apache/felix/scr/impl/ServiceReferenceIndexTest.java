@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ExtendedServiceEvent;
+import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.AllServiceListener;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+public class ServiceReferenceIndexTest extends TestCase
+{
+
+    public void testGetClassName()
+    {
+        assertEquals( "org.example.Foo", ServiceReferenceIndex.getClassName( "(objectClass=org.example.Foo)" ) );
+        assertEquals( "org.example.Foo",
+            ServiceReferenceIndex.getClassName( "(&(objectClass=org.example.Foo)(name=bar))" ) );
+    }
+
+    public void testGetClassNameOfOtherFilters()
+    {
+        assertNull( ServiceReferenceIndex.getClassName( "(objectClass=*)" ) );
+        assertNull( ServiceReferenceIndex.getClassName( "(objectClass=org.example.*)" ) );
+        assertNull( ServiceReferenceIndex.getClassName( "(objectClass=)" ) );
+        assertNull( ServiceReferenceIndex.getClassName( "(name=bar)" ) );
+        assertNull( ServiceReferenceIndex.getClassName( "(|(objectClass=org.example.Foo)(name=bar))" ) );
+    }
+
+    public void testEventDelivery() throws Exception
+    {
+        final BundleContext context = Mockito.mock( BundleContext.class );
+        final ServiceReferenceIndex index = new ServiceReferenceIndex( context, Mockito.mock( ScrLogger.class ) );
+        final Bundle bundle = Mockito.mock( Bundle.class );
+        final Bundle otherBundle = Mockito.mock( Bundle.class );
+        final RecordingListener listener = new RecordingListener();
+        final RecordingListener otherListener = new RecordingListener();
+        final RecordingListener unfilteredListener = new RecordingListener();
+
+        assertTrue( index.addServiceListener( "(&(objectClass=org.example.Foo)(name=bar))", bundle, listener ) );
+        assertTrue( index.addServiceListener( "(&(objectClass=org.example.Foo)(name=bar))", otherBundle,
+            otherListener ) );
+        assertTrue( index.addServiceListener( "(objectClass=org.example.Foo)", bundle, unfilteredListener ) );
+
+        // a single listener for the interface, receiving the events of all services
+        final ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass( ServiceListener.class );
+        Mockito.verify( context ).addServiceListener( captor.capture(), Mockito.eq( "(objectClass=org.example.Foo)" ) );
+        final ServiceListener serviceListener = captor.getValue();
+        assertTrue( serviceListener instanceof AllServiceListener );
+
+        // the service is not in the class space of the other bundle
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put( "name", "bar" );
+        final ServiceReference<?> reference = reference( 1L, properties );
+        Mockito.when( reference.isAssignableTo( bundle, "org.example.Foo" ) ).thenReturn( true );
+
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.REGISTERED, reference ) );
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, reference ) );
+        properties.put( "name", "baz" );
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, reference ) );
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, reference ) );
+        properties.put( "name", "bar" );
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, reference ) );
+        serviceListener.serviceChanged( new ServiceEvent( ServiceEvent.UNREGISTERING, reference ) );
+
+        assertTypes( listener.types, ServiceEvent.REGISTERED, ServiceEvent.MODIFIED, ServiceEvent.MODIFIED_ENDMATCH,
+            ServiceEvent.MODIFIED, ServiceEvent.UNREGISTERING );
+        assertTypes( unfilteredListener.types, ServiceEvent.REGISTERED, ServiceEvent.MODIFIED,
+            ServiceEvent.MODIFIED, ServiceEvent.MODIFIED, ServiceEvent.MODIFIED, ServiceEvent.UNREGISTERING );
+        assertTypes( otherListener.types );
+        for ( final ExtendedServiceEvent event : listener.events )
+        {
+            assertSame( reference, event.getServiceReference() );
+        }
+    }
+
+    public void testRegisteredServicesMatchAddedFilters() throws Exception
+    {
+        final BundleContext context = Mockito.mock( BundleContext.class );
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put( "name", "bar" );
+        final ServiceReference<?> reference = reference( 1L, properties );
+        final Bundle bundle = Mockito.mock( Bundle.class );
+        Mockito.when( reference.isAssignableTo( bundle, "org.example.Foo" ) ).thenReturn( true );
+        Mockito.when( context.getAllServiceReferences( "org.example.Foo", null ) ).thenReturn(
+            new ServiceReference<?>[] { reference } );
+
+        final ServiceReferenceIndex index = new ServiceReferenceIndex( context, Mockito.mock( ScrLogger.class ) );
+        final RecordingListener listener = new RecordingListener();
+        assertTrue( index.addServiceListener( "(&(objectClass=org.example.Foo)(name=bar))", bundle, listener ) );
+        final ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass( ServiceListener.class );
+        Mockito.verify( context ).addServiceListener( captor.capture(), Mockito.anyString() );
+
+        // the service found when opening the index ends matching
+        properties.put( "name", "baz" );
+        captor.getValue().serviceChanged( new ServiceEvent( ServiceEvent.MODIFIED, reference ) );
+        assertTypes( listener.types, ServiceEvent.MODIFIED_ENDMATCH );
+
+        // no more events after the last listener of the interface is removed
+        assertTrue( index.removeServiceListener( "(&(objectClass=org.example.Foo)(name=bar))", listener ) );
+        Mockito.verify( context ).removeServiceListener( captor.getValue() );
+        assertFalse( index.removeServiceListener( "(&(objectClass=org.example.Foo)(name=bar))", listener ) );
+    }
+
+    private static ServiceReference<?> reference( final long serviceId, final Map<String, Object> properties )
+    {
+        properties.put( Constants.SERVICE_ID, serviceId );
+        properties.put( Constants.OBJECTCLASS, new String[] { "org.example.Foo" } );
+        final ServiceReference<?> reference = Mockito.mock( ServiceReference.class );
+        Mockito.when( reference.getProperty( Mockito.anyString() ) ).thenAnswer( new Answer<Object>()
+        {
+            @Override
+            public Object answer( final InvocationOnMock invocation )
+            {
+                return properties.get( invocation.getArguments()[0] );
+            }
+        } );
+        Mockito.when( reference.getBundle() ).thenReturn( Mockito.mock( Bundle.class ) );
+        return reference;
+    }
+
+    private static void assertTypes( final List<Integer> actual, final Integer... expected )
+    {
+        assertEquals( Arrays.asList( expected ), actual );
+    }
+
+    private static final class RecordingListener implements ExtendedServiceListener<ExtendedServiceEvent>
+    {
+        final List<ExtendedServiceEvent> events = new ArrayList<>();
+
+        final List<Integer> types = new ArrayList<>();
+
+        @Override
+        public void serviceChanged( final ExtendedServiceEvent event )
+        {
+            events.add( event );
+            types.add( event.getType() );
+        }
+    }
+}
@@ -506,6 +506,22 @@ public class AnnotationTest extends TestCase
         checkAI1(a);
     }
 
+    public void testAI1Equality() throws Exception
+    {
+        AI1 a = Annotations.toObject( AI1.class, allValues(), mockBundle(), true);
+        AI1 other = Annotations.toObject( AI1.class, allValues(), mockBundle(), true);
+
+        assertEquals(a, other);
+        assertEquals(a.hashCode(), other.hashCode());
+        assertEquals(a.hashCode(), a.hashCode());
+        // computed once, as the values never change
+        assertSame(a.toString(), a.toString());
+
+        Map<String, Object> values = allValues();
+        values.put("string", "4");
+        assertFalse(a.equals(Annotations.toObject( AI1.class, values, mockBundle(), true)));
+    }
+
     private void checkAI1(AI1 a)
     {
         assertEquals(true, a.bool());
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class MemberHandlesTest extends TestCase
+{
+    private final MemberHandles memberHandles = new MemberHandles();
+
+    public void testFindDeclaredMethod() throws Exception
+    {
+        assertEquals( Component.class.getDeclaredMethod( "activate", Map.class ),
+            memberHandles.findDeclaredMethod( Component.class, "activate", new Class<?>[] { Map.class } ) );
+        assertEquals( Component.class.getDeclaredMethod( "deactivate" ),
+            memberHandles.findDeclaredMethod( Component.class, "deactivate", null ) );
+        assertNull( memberHandles.findDeclaredMethod( Component.class, "activate", new Class<?>[0] ) );
+        assertNull( memberHandles.findDeclaredMethod( Component.class, "modified", null ) );
+
+        // the cached method objects are shared
+        assertSame( memberHandles.findDeclaredMethod( Component.class, "deactivate", null ),
+            memberHandles.findDeclaredMethod( Component.class, "deactivate", null ) );
+    }
+
+    public void testCachePerInstance() throws Exception
+    {
+        final Method deactivate = memberHandles.findDeclaredMethod( Component.class, "deactivate", null );
+        deactivate.setAccessible( true );
+
+        // the members are cached by the component methods only, which are
+        // dropped together with the bundle component activator
+        final MemberHandles other = new MemberHandles();
+        assertNotSame( deactivate, other.findDeclaredMethod( Component.class, "deactivate", null ) );
+        assertNotSame( memberHandles.methodInvoker( deactivate ), other.methodInvoker( deactivate ) );
+    }
+
+    public void testFindDeclaredMethodPrefersCovariantReturnType() throws Exception
+    {
+        assertEquals( Object.class,
+            memberHandles.findDeclaredMethod( Parent.class, "self", null ).getReturnType() );
+        assertEquals( Child.class,
+            memberHandles.findDeclaredMethod( Child.class, "self", null ).getReturnType() );
+    }
+
+    public void testMethodInvoker() throws Throwable
+    {
+        final Component component = new Component();
+
+        final Method activate = Component.class.getDeclaredMethod( "activate", Map.class );
+        activate.setAccessible( true );
+        final MethodHandle invoker = memberHandles.methodInvoker( activate );
+        assertSame( invoker, memberHandles.methodInvoker( activate ) );
+
+        final Map<String, Object> props = Collections.<String, Object> singletonMap( "a", "b" );
+        assertSame( props, invoker.invokeExact( (Object) component, new Object[] { props } ) );
+        assertSame( props, component.props );
+
+        final Method deactivate = Component.class.getDeclaredMethod( "deactivate" );
+        deactivate.setAccessible( true );
+        assertNull( memberHandles.methodInvoker( deactivate ).invokeExact( (Object) component, new Object[0] ) );
+        assertNull( component.props );
+    }
+
+    public void testMethodInvokerThrowsMethodException() throws Throwable
+    {
+        final Method fail = Component.class.getDeclaredMethod( "fail" );
+        fail.setAccessible( true );
+        try
+        {
+            final Object result = memberHandles.methodInvoker( fail ).invokeExact( (Object) new Component(),
+                new Object[0] );
+            fail( "Expected exception, got " + result );
+        }
+        catch ( IllegalStateException ise )
+        {
+            assertEquals( "fail", ise.getMessage() );
+        }
+    }
+
+    public void testFieldHandles() throws Throwable
+    {
+        final Component component = new Component();
+        final Field field = Component.class.getDeclaredField( "service" );
+        field.setAccessible( true );
+
+        memberHandles.fieldSetter( field ).invokeExact( (Object) component, (Object) "svc" );
+        assertEquals( "svc", component.service );
+        assertEquals( "svc", memberHandles.fieldGetter( field ).invokeExact( (Object) component ) );
+
+        try
+        {
+            memberHandles.fieldSetter( field ).invokeExact( (Object) component, (Object) Integer.valueOf( 1 ) );
+            fail( "Expected ClassCastException" );
+        }
+        catch ( ClassCastException cce )
+        {
+            // expected
+        }
+    }
+
+    private static class Component
+    {
+        private String service;
+
+        private Map<String, Object> props;
+
+        @SuppressWarnings("unused")
+        private Map<String, Object> activate(final Map<String, Object> props)
+        {
+            this.props = props;
+            return props;
+        }
+
+        @SuppressWarnings("unused")
+        private void deactivate()
+        {
+            this.props = null;
+        }
+
+        @SuppressWarnings("unused")
+        private void fail()
+        {
+            throw new IllegalStateException( "fail" );
+        }
+    }
+
+    private static class Parent
+    {
+        Object self()
+        {
+            return this;
+        }
+    }
+
+    private static class Child extends Parent
+    {
+        @Override
+        Child self()
+        {
+            return this;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.Map;
 
 import org.apache.felix.scr.impl.inject.ActivatorParameter;
 import org.apache.felix.scr.impl.inject.internal.ComponentMethodsImpl;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.MockComponentLogger;
 import org.apache.felix.scr.impl.manager.ComponentActivator;
@@ -291,7 +292,7 @@ public class ActivateMethodTest extends TestCase
         ComponentContainer<Object> container = newContainer();
         SingleComponentManager<?> icm = new SingleComponentManager<>(container,
             new ComponentMethodsImpl<>());
-        ActivateMethod am = new ActivateMethod( methodName, methodName != null, obj.getClass(), version, false, false );
+        ActivateMethod am = new ActivateMethod( methodName, methodName != null, obj.getClass(), version, false, false, new MemberHandles() );
 
         am.invoke(obj,
             new ActivatorParameter(new ComponentContextImpl<>(icm, m_bundle, null), -1),
@@ -376,7 +377,7 @@ public class ActivateMethodTest extends TestCase
         ComponentContainer<Object> container = newContainer();
         SingleComponentManager<Object> icm = new SingleComponentManager<>(container,
             new ComponentMethodsImpl<>());
-        ActivateMethod am = new ActivateMethod( methodName, methodName != null, obj.getClass(), version, false, false );
+        ActivateMethod am = new ActivateMethod( methodName, methodName != null, obj.getClass(), version, false, false, new MemberHandles() );
         am.invoke(obj,
             new ActivatorParameter(new ComponentContextImpl<>(icm, m_bundle, null), -1),
             null);
@@ -415,7 +416,7 @@ public class ActivateMethodTest extends TestCase
     }
     public void testMethodSorting() throws Exception
     {
-        ActivateMethod am = new ActivateMethod( "a", true, Sort.class, DSVersion.DS11, false, false );
+        ActivateMethod am = new ActivateMethod( "a", true, Sort.class, DSVersion.DS11, false, false, new MemberHandles() );
         List<Method> ms = am.getSortedMethods(Sort.class);
         assertEquals(8, ms.size());
         assertEquals(1, ms.get(0).getParameterTypes().length);
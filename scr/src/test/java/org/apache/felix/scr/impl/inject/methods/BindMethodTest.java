@@ -23,6 +23,7 @@ import org.apache.felix.scr.impl.MockBundle;
 import org.apache.felix.scr.impl.inject.BindParameters;
 import org.apache.felix.scr.impl.inject.RefPair;
 import org.apache.felix.scr.impl.inject.internal.ComponentMethodsImpl;
+import org.apache.felix.scr.impl.inject.internal.MemberHandles;
 import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.logger.MockComponentLogger;
 import org.apache.felix.scr.impl.manager.ComponentActivator;
@@ -451,7 +452,7 @@ public class BindMethodTest extends TestCase
         SingleComponentManager<Object> icm = new SingleComponentManager<>(container,
             new ComponentMethodsImpl<>());
         BindMethod bm = new BindMethod( methodName, component.getClass(),
-                FakeService.class.getName(), dsVersion, false );
+                FakeService.class.getName(), dsVersion, false, new MemberHandles() );
         RefPair<Object, FakeService> refPair = new SingleRefPair<>(m_serviceReference);
         ComponentContextImpl<Object> cc = new ComponentContextImpl<>(icm,
             new MockBundle(), null);
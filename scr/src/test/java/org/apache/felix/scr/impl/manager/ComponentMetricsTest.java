@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+import junit.framework.TestCase;
+
+public class ComponentMetricsTest extends TestCase
+{
+
+    public void testTiming() throws Exception
+    {
+        final ComponentMetrics.Timing timing = new ComponentMetrics().getActivation();
+        assertEquals( 0, timing.getCount() );
+
+        long start = ComponentMetrics.start();
+        Thread.sleep( 2 );
+        timing.record( start );
+        final long first = timing.getTotalNanos();
+        assertTrue( first >= 2000000 );
+        assertEquals( first, timing.getMaxNanos() );
+
+        start = ComponentMetrics.start();
+        timing.record( start );
+        assertEquals( 2, timing.getCount() );
+        assertTrue( timing.getTotalNanos() >= first );
+        assertEquals( first, timing.getMaxNanos() );
+    }
+
+    public void testReferencesInDeclarationOrder()
+    {
+        final ComponentMetrics metrics = new ComponentMetrics();
+        final ComponentMetrics.ReferenceMetrics b = metrics.getReference( "b" );
+        metrics.getReference( "a" );
+        assertSame( b, metrics.getReference( "b" ) );
+
+        final ComponentMetrics.ReferenceMetrics[] references = metrics.getReferences();
+        assertEquals( 2, references.length );
+        assertEquals( "b", references[0].getName() );
+        assertEquals( "a", references[1].getName() );
+    }
+
+    public void testEvictions()
+    {
+        final ComponentMetrics metrics = new ComponentMetrics();
+        metrics.recordEviction();
+        metrics.recordEviction();
+        metrics.recordReactivation();
+        assertEquals( 2, metrics.getEvictions() );
+        assertEquals( 1, metrics.getReactivations() );
+    }
+}
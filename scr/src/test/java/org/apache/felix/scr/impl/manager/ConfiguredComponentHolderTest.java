@@ -30,6 +30,7 @@ import org.apache.felix.scr.impl.logger.ComponentLogger;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.apache.felix.scr.impl.metadata.DSVersion;
 import org.apache.felix.scr.impl.metadata.TargetedPID;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import junit.framework.TestCase;
@@ -166,6 +167,61 @@ final Map<String, Object> componentConfig = ((MockImmediateComponentManager<Obje
     }
 
 
+    public void test_coalesced_updates()
+    {
+        // setup a holder coalescing updates within 100ms
+        final String name = "test.coalesced";
+        final ComponentMetadata cm = createComponentMetadata( name );
+        final ScrConfiguration scrConfiguration = Mockito.mock( ScrConfiguration.class );
+        Mockito.when( scrConfiguration.configurationCoalesceWindow() ).thenReturn( 100L );
+        final ComponentActivator activator = Mockito.mock( ComponentActivator.class );
+        Mockito.when( activator.getConfiguration() ).thenReturn( scrConfiguration );
+        final TestingConfiguredComponentHolder holder = new TestingConfiguredComponentHolder( cm, activator );
+
+        holder.enableComponents(false);
+
+        // the first configuration is applied immediately
+        final TargetedPID targetedPid = new TargetedPID(name);
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v0" ), 0 );
+        final MockImmediateComponentManager<Object> cmgr = (MockImmediateComponentManager<Object>) getSingleManager(holder);
+        assertEquals( "v0", cmgr.getConfiguration().get( "value" ) );
+
+        // a burst of updates is deferred, outdated updates are ignored
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v1" ), 1 );
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v3" ), 3 );
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v2" ), 2 );
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v4" ), 4 );
+        assertEquals( "v0", cmgr.getConfiguration().get( "value" ) );
+
+        final ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass( Runnable.class );
+        Mockito.verify( activator ).scheduleTimer( flush.capture(), Mockito.eq( 100L ) );
+
+        // the timer hands the update over to the component actor
+        flush.getValue().run();
+        assertEquals( "v0", cmgr.getConfiguration().get( "value" ) );
+        final ArgumentCaptor<Runnable> apply = ArgumentCaptor.forClass( Runnable.class );
+        Mockito.verify( activator ).schedule( Mockito.same( holder ), apply.capture() );
+
+        // only the latest update is applied
+        apply.getValue().run();
+        assertEquals( "v4", cmgr.getConfiguration().get( "value" ) );
+        assertEquals( 2, holder.getCoalescedUpdates() );
+
+        // a deletion supersedes a pending update
+        holder.configurationUpdated( targetedPid, null, createConfiguration( "v5" ), 5 );
+        holder.configurationDeleted( targetedPid, null );
+        assertEquals( 3, holder.getCoalescedUpdates() );
+    }
+
+
+    private static Dictionary<String, Object> createConfiguration( String value )
+    {
+        final Dictionary<String, Object> config = new Hashtable<>();
+        config.put( "value", value );
+        return config;
+    }
+
+
     private static ComponentMetadata createComponentMetadata( String name )
     {
         final ComponentMetadata metadata = new ComponentMetadata( DSVersion.DS11 );
@@ -196,7 +252,13 @@ final Map<String, Object> componentConfig = ((MockImmediateComponentManager<Obje
     {
         TestingConfiguredComponentHolder( ComponentMetadata metadata )
         {
-            super( Mockito.mock(ComponentActivator.class), metadata, Mockito.mock(ComponentLogger.class) );
+            this( metadata, Mockito.mock(ComponentActivator.class) );
+        }
+
+
+        TestingConfiguredComponentHolder( ComponentMetadata metadata, ComponentActivator activator )
+        {
+            super( activator, metadata, Mockito.mock(ComponentLogger.class) );
         }
 
 
@@ -93,6 +93,16 @@ public class SingleComponentManagerTest
 
         }
 
+        @Override
+        public void schedule(Object key, Runnable runnable)
+        {
+        }
+
+        @Override
+        public void scheduleTimer(Runnable runnable, long delay)
+        {
+        }
+
         @Override
         public long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager)
         {
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+public class ComponentMetadataStoreTest extends ComponentBase
+{
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        file = File.createTempFile( "componentMetadataStore", ".bin" );
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        file.delete();
+        new File( file.getPath() + ".compacted" ).delete();
+        super.tearDown();
+    }
+
+    private List<ComponentMetadata> components(final String xmlFile) throws Exception
+    {
+        final List<ComponentMetadata> components = readMetadata( xmlFile );
+        for ( final ComponentMetadata component : components )
+        {
+            component.validate();
+        }
+        return components;
+    }
+
+    public void testReopen() throws Exception
+    {
+        ComponentMetadataStore store = ComponentMetadataStore.open( file );
+        store.put( 1, 100, components( "/components_14.xml" ) );
+        store.put( 2, 200, Collections.<ComponentMetadata> emptyList() );
+        store.close();
+
+        store = ComponentMetadataStore.open( file );
+        final List<ComponentMetadata> cached = store.get( 1, 100 );
+        assertEquals( 1, cached.size() );
+        assertEquals( components( "/components_14.xml" ).get( 0 ).getName(), cached.get( 0 ).getName() );
+        assertEquals( DSVersion.DS14, cached.get( 0 ).getDSVersion() );
+        assertTrue( store.get( 2, 200 ).isEmpty() );
+
+        // modified bundles and unknown bundles are not cached
+        assertNull( store.get( 1, 101 ) );
+        assertNull( store.get( 3, 100 ) );
+        assertTrue( store.contains( 1, 100 ) );
+        assertFalse( store.contains( 1, 101 ) );
+        assertFalse( store.contains( 3, 100 ) );
+        store.close();
+    }
+
+    public void testIncrementalUpdates() throws Exception
+    {
+        ComponentMetadataStore store = ComponentMetadataStore.open( file );
+        store.put( 1, 100, components( "/components_13.xml" ) );
+        final long length = file.length();
+        store.put( 2, 200, components( "/components_14.xml" ) );
+        assertTrue( file.length() > length );
+
+        // replaced and removed metadata is visible before and after reopening
+        store.put( 1, 101, components( "/components_14.xml" ) );
+        store.remove( 2 );
+        assertNull( store.get( 1, 100 ) );
+        assertEquals( DSVersion.DS14, store.get( 1, 101 ).get( 0 ).getDSVersion() );
+        assertNull( store.get( 2, 200 ) );
+        store.close();
+
+        store = ComponentMetadataStore.open( file );
+        assertNull( store.get( 1, 100 ) );
+        assertEquals( DSVersion.DS14, store.get( 1, 101 ).get( 0 ).getDSVersion() );
+        assertNull( store.get( 2, 200 ) );
+        store.close();
+    }
+
+    public void testCompactOnClose() throws Exception
+    {
+        ComponentMetadataStore store = ComponentMetadataStore.open( file );
+        final List<ComponentMetadata> components = components( "/components_14.xml" );
+        for ( int i = 0; i < 500; i++ )
+        {
+            store.put( 1, i, components );
+        }
+        final long length = file.length();
+        store.close();
+
+        // the mapped store file is only replaced when it is opened again
+        final File compacted = new File( file.getPath() + ".compacted" );
+        assertEquals( length, file.length() );
+        assertTrue( compacted.length() < length / 100 );
+
+        store = ComponentMetadataStore.open( file );
+        assertFalse( compacted.exists() );
+        assertTrue( file.length() < length / 100 );
+        assertEquals( 1, store.get( 1, 499 ).size() );
+        store.close();
+    }
+
+    public void testIncompleteRecordIsDropped() throws Exception
+    {
+        ComponentMetadataStore store = ComponentMetadataStore.open( file );
+        store.put( 1, 100, components( "/components_14.xml" ) );
+        store.close();
+        final long length = file.length();
+
+        try (DataOutputStream out = new DataOutputStream( new FileOutputStream( file, true ) ))
+        {
+            out.writeLong( 2 );
+            out.writeLong( 200 );
+            out.writeInt( 1000 );
+            out.writeInt( 0 );
+        }
+
+        store = ComponentMetadataStore.open( file );
+        assertEquals( length, file.length() );
+        assertEquals( 1, store.get( 1, 100 ).size() );
+        assertNull( store.get( 2, 200 ) );
+        store.close();
+    }
+
+    public void testOldFormatIsDiscarded() throws Exception
+    {
+        try (DataOutputStream out = new DataOutputStream( new FileOutputStream( file ) ))
+        {
+            out.writeInt( 1 );
+            out.writeInt( 0 );
+            out.writeInt( 0 );
+        }
+
+        final ComponentMetadataStore store = ComponentMetadataStore.open( file );
+        assertNull( store.get( 1, 100 ) );
+        store.put( 1, 100, Collections.<ComponentMetadata> emptyList() );
+        assertTrue( store.get( 1, 100 ).isEmpty() );
+        store.close();
+    }
+
+    public void testInMemory() throws Exception
+    {
+        final ComponentMetadataStore store = ComponentMetadataStore.inMemory();
+        final List<ComponentMetadata> components = components( "/components_14.xml" );
+        store.put( 1, 100, components );
+        assertSame( components, store.get( 1, 100 ) );
+        assertNull( store.get( 1, 101 ) );
+        assertTrue( store.contains( 1, 100 ) );
+        store.remove( 1 );
+        assertNull( store.get( 1, 100 ) );
+        assertFalse( store.contains( 1, 100 ) );
+        store.close();
+    }
+}
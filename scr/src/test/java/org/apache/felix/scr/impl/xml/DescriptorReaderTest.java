@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.felix.scr.impl.logger.BundleLogger;
+import org.apache.felix.scr.impl.logger.ComponentLogger;
+import org.apache.felix.scr.impl.logger.InternalLogger.Level;
+import org.apache.felix.scr.impl.logger.MockBundleLogger;
+import org.apache.felix.scr.impl.logger.MockComponentLogger;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.xml.sax.SAXException;
+
+public class DescriptorReaderTest {
+
+    private static final String[] DESCRIPTORS = { "/components_10.xml", "/components_11.xml",
+            "/components_13.xml", "/components_14.xml", "/components_all_elements_10.xml",
+            "/components_anonymous_11.xml", "/components_no_namespace.xml", "/components_properties_11.xml",
+            "/parsertest-nopropvalue.xml", "/satisfying-condition-specified.xml",
+            "/integration_test_simple_components.xml", "/integration_test_target_properties.xml" };
+
+    private final Bundle bundle = mockBundle();
+
+    @Test
+    public void testSameMetadataAsSax() throws Exception {
+        for (final String descriptor : DESCRIPTORS) {
+            final byte[] data = read(descriptor);
+            assertEquals(descriptor, describe(parseWithSax(data)), describe(parse(data)));
+        }
+    }
+
+    @Test
+    public void testCharacterData() throws Exception {
+        final String descriptor = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<!-- comment -->\r\n"
+            + "<scr:component xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.1.0\" name=\"a&amp;b&#x43;&#68;\">\r\n"
+            + "<implementation class=\"x.Y\"/>\r\n"
+            + "<property name=\"body\" type=\"String\">\r\n  one&lt;\r\n  <![CDATA[<two>]]>\r\n</property>\r\n"
+            + "<property name=\"attr\" value=\"a\tb\r\nc\"/>\r\n"
+            + "<?ignored instruction?>\r\n"
+            + "<reference name=\"r\" interface=\"I\" target=\"(&amp;(a=b)(c=d))\"/>\r\n"
+            + "</scr:component>";
+        final byte[] data = descriptor.getBytes(StandardCharsets.UTF_8);
+        assertEquals(describe(parseWithSax(data)), describe(parse(data)));
+
+        final ComponentMetadata cm = parse(data).get(0);
+        cm.validate();
+        assertEquals("a&bCD", cm.getName());
+        assertArrayEquals(new String[] { "one<", "<two>" }, (String[]) cm.getProperties().get("body"));
+        assertEquals("a b c", cm.getProperties().get("attr"));
+        assertEquals("(&(a=b)(c=d))", cm.getDependencies().get(0).getTarget());
+    }
+
+    @Test
+    public void testUnsupportedDocumentIsReadWithSax() throws Exception {
+        final byte[] data = ("<?xml version=\"1.0\"?>\n<!DOCTYPE components>\n"
+            + "<components><component name=\"c\" xmlns=\"http://www.osgi.org/xmlns/scr/v1.3.0\">"
+            + "<implementation class=\"x.Y\"/></component></components>").getBytes(StandardCharsets.UTF_8);
+        final List<ComponentMetadata> components = parse(data);
+        assertEquals(1, components.size());
+        assertEquals("c", components.get(0).getName());
+    }
+
+    @Test
+    public void testMalformedDocument() throws Exception {
+        final byte[] data = "<component name=\"c\"><implementation class=\"x.Y\"/></components>"
+            .getBytes(StandardCharsets.UTF_8);
+        try {
+            parse(data);
+            fail("Expected SAXException");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMessagesOfReadDocument() throws Exception {
+        final byte[] data = ("<components><scr:component xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.1.0\" name=\"c\">"
+            + "<x:foo xmlns:x=\"urn:other\"/><implementation class=\"x.Y\"/></scr:component></components>")
+            .getBytes(StandardCharsets.UTF_8);
+        final RecordingLogger logger = new RecordingLogger();
+        new DescriptorReader(bundle, logger, false, false, null).read(new ByteArrayInputStream(data));
+        assertEquals(Arrays.asList("Not currently parsing a component; ignoring element components (bundle bundle)",
+            "Ignoring unsupported element {urn:other}foo (bundle bundle)"), logger.messages);
+    }
+
+    @Test
+    public void testMessagesAreLoggedOnceWhenReadWithSax() throws Exception {
+        // the reader gives up on the attribute value after the foo element
+        final byte[] data = ("<components><scr:component xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.1.0\" name=\"c\">"
+            + "<x:foo xmlns:x=\"urn:other\"/><implementation class=\"<\"/></scr:component></components>")
+            .getBytes(StandardCharsets.UTF_8);
+        final RecordingLogger logger = new RecordingLogger();
+        try {
+            new DescriptorReader(bundle, logger, false, false, null).read(new ByteArrayInputStream(data));
+            fail("Expected SAXException");
+        } catch (SAXException e) {
+            // expected
+        }
+        assertEquals(Arrays.asList("Reading descriptor with SAX parser: '<' in attribute value (bundle bundle)",
+            "Not currently parsing a component; ignoring element components (bundle bundle)",
+            "Ignoring unsupported element {urn:other}foo (bundle bundle)"), logger.messages);
+    }
+
+    @Test
+    public void testNamesAreInterned() {
+        final DescriptorReader.NameTable names = new DescriptorReader.NameTable();
+        final char[] buf = "<reference interface".toCharArray();
+        assertSame(XmlConstants.EL_REF, names.get(buf, 1, 9));
+        assertSame(XmlConstants.ATTR_INTERFACE, names.get(buf, 11, 9));
+        final String other = names.get("other");
+        assertSame(other, names.get("xother".toCharArray(), 1, 5));
+    }
+
+    private List<ComponentMetadata> parse(final byte[] data) throws Exception {
+        return new DescriptorReader(bundle, new MockBundleLogger(), false, false, null)
+            .read(new ByteArrayInputStream(data));
+    }
+
+    private List<ComponentMetadata> parseWithSax(final byte[] data) throws Exception {
+        final XmlHandler handler = new XmlHandler(bundle, new MockBundleLogger(), false, false, null);
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newSAXParser().parse(new ByteArrayInputStream(data), handler);
+        return handler.getComponentMetadataList();
+    }
+
+    private static String describe(final List<ComponentMetadata> components) {
+        final StringBuilder sb = new StringBuilder();
+        for (final ComponentMetadata cm : components) {
+            try {
+                cm.validate();
+            } catch (RuntimeException e) {
+                sb.append("invalid: ").append(e.getMessage()).append('\n');
+                continue;
+            }
+            sb.append(cm.getName()).append(' ').append(cm.getDSVersion()).append(' ')
+                .append(cm.getImplementationClassName()).append(' ').append(cm.getConfigurationPolicy())
+                .append(' ').append(cm.getActivate()).append(' ').append(cm.getDeactivate()).append(' ')
+                .append(cm.getModified()).append(' ').append(cm.getFactoryIdentifier()).append('\n');
+            sb.append(" properties ").append(describe(cm.getProperties())).append('\n');
+            sb.append(" factory properties ").append(describe(cm.getFactoryProperties())).append('\n');
+            if (cm.getServiceMetadata() != null) {
+                sb.append(" service ").append(cm.getServiceScope()).append(' ')
+                    .append(Arrays.toString(cm.getServiceMetadata().getProvides())).append('\n');
+            }
+            for (final ReferenceMetadata rm : cm.getDependencies()) {
+                sb.append(" reference ").append(rm.getName()).append(' ').append(rm.getInterface()).append(' ')
+                    .append(rm.getCardinality()).append(' ').append(rm.getPolicy()).append(' ')
+                    .append(rm.getPolicyOption()).append(' ').append(rm.getTarget()).append(' ')
+                    .append(rm.getBind()).append(' ').append(rm.getUpdated()).append(' ').append(rm.getUnbind())
+                    .append(' ').append(rm.getField()).append(' ').append(rm.getScope()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String describe(final Map<String, Object> properties) {
+        final Map<String, String> sorted = new TreeMap<>();
+        for (final Map.Entry<String, Object> entry : properties.entrySet()) {
+            sorted.put(entry.getKey(), Arrays.deepToString(new Object[] { entry.getValue() }));
+        }
+        return sorted.toString();
+    }
+
+    private byte[] read(final String resource) throws Exception {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static final class RecordingLogger implements BundleLogger {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public boolean isLogEnabled(final Level level) {
+            return true;
+        }
+
+        @Override
+        public void log(final Level level, final String pattern, final Throwable ex, final Object... arguments) {
+            log(level, MessageFormat.format(pattern, arguments), ex);
+        }
+
+        @Override
+        public void log(final Level level, final String message, final Throwable ex) {
+            messages.add(message);
+        }
+
+        @Override
+        public ComponentLogger component(final Bundle bundle, final String implementationClassName,
+                final String name) {
+            return new MockComponentLogger();
+        }
+    }
+
+    private static Bundle mockBundle() {
+        final Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getLocation()).thenReturn("bundle");
+        Mockito.when(bundle.getEntry(Mockito.anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                return DescriptorReaderTest.class.getResource("/" + invocation.getArguments()[0]);
+            }
+        });
+        return bundle;
+    }
+}